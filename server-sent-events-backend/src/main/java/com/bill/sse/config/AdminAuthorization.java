@@ -0,0 +1,40 @@
+package com.bill.sse.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 管理端點的 admin token 檢查，由各端點在處理前呼叫
+ * token 未設定或不符時回應 403
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AdminAuthorization {
+
+    private static final LogLimiter DENIED_LOG = LogLimiter.perSecond(1, 10);
+
+    private final SseAdminProperties properties;
+
+    public void authorize(ServerWebExchange exchange) {
+        String expected = properties.getToken();
+        String token = exchange.getRequest().getHeaders().getFirst(properties.getTokenHeader());
+        // 固定時間比對，避免由回應時間猜出 token
+        if (expected == null || expected.isBlank() || token == null
+                || !MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            DENIED_LOG.atWarn(log)
+                    .addKeyValue("path", exchange.getRequest().getPath().value())
+                    .addKeyValue("client", exchange.getRequest().getRemoteAddress() != null
+                            ? exchange.getRequest().getRemoteAddress().getHostString() : "unknown")
+                    .log("管理端點拒絕未授權的請求");
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+    }
+}
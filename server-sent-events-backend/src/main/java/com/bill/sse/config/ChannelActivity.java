@@ -0,0 +1,97 @@
+package com.bill.sse.config;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelException;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.epoll.EpollTcpInfo;
+import io.netty.util.AttributeKey;
+
+/**
+ * 單一 channel 的讀寫活動，由 ChannelActivityHandler 在 event loop 上更新，其他 thread 只讀取
+ * 寫入以「交給 kernel 完成」計算: 有未完成的寫入卻一直沒有進展代表 socket buffer 已滿，客戶端沒有在讀
+ * epoll 時另外可讀取 kernel 的 TCP_INFO，看得到已送出但對方一直沒有 ACK 的資料 (half-open)
+ */
+public final class ChannelActivity {
+
+    static final AttributeKey<ChannelActivity> KEY = AttributeKey.valueOf("sse.activity");
+
+    private final Channel channel;
+    // 未完成的寫入數，以及最後一次有進展 (開始等待或完成一筆) 的時間
+    private volatile int pendingWrites;
+    private volatile long progressAt;
+    private volatile long lastWriteCompleted;
+    private volatile long lastWriteLatencyNanos;
+    private volatile long lastRead;
+
+    ChannelActivity(Channel channel, long now) {
+        this.channel = channel;
+        this.progressAt = now;
+        this.lastWriteCompleted = now;
+        this.lastRead = now;
+    }
+
+    // 沒有經過 ChannelActivityHandler 的 channel 回傳 null
+    public static ChannelActivity of(Channel channel) {
+        return channel.attr(KEY).get();
+    }
+
+    void onRead(long now) {
+        lastRead = now;
+    }
+
+    void onWrite(long now) {
+        if (pendingWrites++ == 0) {
+            progressAt = now;
+        }
+    }
+
+    void onWriteComplete(long startedAt, long now) {
+        pendingWrites--;
+        progressAt = now;
+        lastWriteCompleted = now;
+        lastWriteLatencyNanos = now - startedAt;
+    }
+
+    public int pendingWrites() {
+        return pendingWrites;
+    }
+
+    // 有未完成的寫入且持續沒有進展的時間，沒有待寫入時為 0
+    public long writeStalledNanos(long now) {
+        return pendingWrites > 0 ? Math.max(0, now - progressAt) : 0;
+    }
+
+    // 沒有任何讀取也沒有完成任何寫入的時間
+    public long idleNanos(long now) {
+        return Math.max(0, now - Math.max(lastRead, lastWriteCompleted));
+    }
+
+    public long lastWriteLatencyNanos() {
+        return lastWriteLatencyNanos;
+    }
+
+    // kernel 的 TCP 狀態，非 epoll 或 channel 已關閉時回傳 null
+    public TcpState tcpState() {
+        if (!(channel instanceof EpollSocketChannel epoll) || !epoll.isOpen()) {
+            return null;
+        }
+        try {
+            EpollTcpInfo info = epoll.tcpInfo();
+            return new TcpState(info.unacked(), info.lastAckRecv(), info.retransmits() + info.probes());
+        } catch (ChannelException e) {
+            return null;
+        }
+    }
+
+    public void close() {
+        channel.close();
+    }
+
+    /**
+     * @param unacked       已送出但還沒被 ACK 的 segment 數
+     * @param lastAckMillis 距離最後一次收到 ACK 的時間
+     * @param timeouts      尚未恢復的重送逾時與 zero window probe 次數
+     */
+    public record TcpState(long unacked, long lastAckMillis, int timeouts) {
+    }
+}
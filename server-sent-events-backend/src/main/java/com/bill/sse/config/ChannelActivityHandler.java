@@ -0,0 +1,63 @@
+package com.bill.sse.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 記錄每個 channel 最後的讀取、寫入完成時間與寫入完成的延遲 (IdleStateHandler 的概念，但只記錄不觸發事件)
+ * 是否要關閉由 ConnectionReaper 定期判斷；由 NettyServerConfig 加在 pipeline 最前面，看得到所有實際寫出的資料
+ */
+@Component
+@ChannelHandler.Sharable
+public class ChannelActivityHandler extends ChannelDuplexHandler {
+
+    public static final String NAME = "sse.activity";
+
+    private final Timer writeLatency;
+
+    public ChannelActivityHandler(MeterRegistry meterRegistry) {
+        this.writeLatency = Timer.builder("sse.netty.write.latency")
+                .description("資料從寫入 pipeline 到交給 kernel 的時間")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        ctx.channel().attr(ChannelActivity.KEY).setIfAbsent(new ChannelActivity(ctx.channel(), System.nanoTime()));
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ChannelActivity activity = ChannelActivity.of(ctx.channel());
+        if (activity != null) {
+            activity.onRead(System.nanoTime());
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        ChannelActivity activity = ChannelActivity.of(ctx.channel());
+        if (activity == null) {
+            ctx.write(msg, promise);
+            return;
+        }
+        long startedAt = System.nanoTime();
+        activity.onWrite(startedAt);
+        // void promise 無法加 listener，換成一般的 promise
+        ChannelPromise tracked = promise.unvoid();
+        tracked.addListener(future -> {
+            long now = System.nanoTime();
+            activity.onWriteComplete(startedAt, now);
+            writeLatency.record(now - startedAt, TimeUnit.NANOSECONDS);
+        });
+        ctx.write(msg, tracked);
+    }
+}
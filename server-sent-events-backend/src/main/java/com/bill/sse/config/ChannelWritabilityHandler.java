@@ -0,0 +1,117 @@
+package com.bill.sse.config;
+
+import com.bill.sse.service.SseConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 追蹤每個 channel 的可寫狀態: 待寫出的資料超過 write buffer high watermark 時 channel 變成無法寫入，
+ * 代表客戶端讀取的速度跟不上；綁定在 channel 上的 SSE 連接會暫停發送並被視為慢的連接，降到 low watermark 以下才恢復
+ *
+ * channel 關閉時一併關閉綁定的 SSE 連接: 在 response header 送出前就斷線的客戶端不會等到寫入失敗才被移除
+ *
+ * 由 NettyServerConfig 加在每個 channel 的 pipeline 最前面，所有 channel 共用同一個實例
+ */
+@Component
+@ChannelHandler.Sharable
+@Slf4j
+public class ChannelWritabilityHandler extends ChannelInboundHandlerAdapter {
+
+    public static final String NAME = "sse.writability";
+
+    private static final AttributeKey<SseConnection> CONNECTION = AttributeKey.valueOf("sse.connection");
+    private static final AttributeKey<Long> UNWRITABLE_SINCE = AttributeKey.valueOf("sse.unwritableSince");
+
+    private static final LogLimiter SLOW_LOG = LogLimiter.perSecond(5, 20);
+
+    static final String CLOSED_REASON = "client-closed";
+
+    private final AtomicInteger unwritableChannels = new AtomicInteger();
+    private final Counter unwritable;
+    private final Timer pauses;
+
+    public ChannelWritabilityHandler(MeterRegistry meterRegistry) {
+        Gauge.builder("sse.netty.unwritable.channels", unwritableChannels, AtomicInteger::get)
+                .description("目前無法寫入的 channel 數")
+                .register(meterRegistry);
+        this.unwritable = Counter.builder("sse.netty.unwritable")
+                .description("channel 超過 write buffer high watermark 的次數")
+                .register(meterRegistry);
+        this.pauses = Timer.builder("sse.netty.unwritable.time")
+                .description("channel 無法寫入持續的時間")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    // SSE 連接建立後綁定到 channel，之後的可寫狀態變化會通知連接；讀寫活動交給 ConnectionReaper 檢查
+    // 綁定前 channel 已關閉時直接關閉連接；之後才關閉的由 channelInactive 處理 (isActive 先變為 false 才觸發 channelInactive)
+    public static void bind(Channel channel, SseConnection connection) {
+        channel.attr(CONNECTION).set(connection);
+        connection.setChannelActivity(ChannelActivity.of(channel));
+        connection.onWritabilityChanged(channel.isWritable());
+        if (!channel.isActive()) {
+            connection.close(CLOSED_REASON);
+        }
+    }
+
+    public static void unbind(Channel channel, SseConnection connection) {
+        channel.attr(CONNECTION).compareAndSet(connection, null);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        Channel channel = ctx.channel();
+        boolean writable = channel.isWritable();
+        Long since = channel.attr(UNWRITABLE_SINCE).get();
+        if (!writable && since == null) {
+            channel.attr(UNWRITABLE_SINCE).set(System.nanoTime());
+            unwritableChannels.incrementAndGet();
+            unwritable.increment();
+        } else if (writable && since != null) {
+            recordRecovered(channel, since);
+        }
+
+        SseConnection connection = channel.attr(CONNECTION).get();
+        if (connection != null && connection.onWritabilityChanged(writable) && !writable) {
+            SLOW_LOG.atWarn(log)
+                    .addKeyValue("connectionId", connection.getId())
+                    .addKeyValue("client", connection.getClientIp())
+                    .addKeyValue("pendingBytes", channel.unsafe().outboundBuffer() != null
+                            ? channel.unsafe().outboundBuffer().totalPendingWriteBytes() : 0)
+                    .addKeyValue("queueDepth", connection.getQueueDepth().get())
+                    .log("SSE 連接無法寫入, 暫停發送");
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        Long since = ctx.channel().attr(UNWRITABLE_SINCE).get();
+        if (since != null) {
+            recordRecovered(ctx.channel(), since);
+        }
+        SseConnection connection = ctx.channel().attr(CONNECTION).get();
+        if (connection != null) {
+            connection.close(CLOSED_REASON);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    private void recordRecovered(Channel channel, long since) {
+        channel.attr(UNWRITABLE_SINCE).set(null);
+        unwritableChannels.decrementAndGet();
+        pauses.record(System.nanoTime() - since, TimeUnit.NANOSECONDS);
+    }
+}
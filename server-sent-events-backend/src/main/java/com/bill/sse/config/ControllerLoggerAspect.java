@@ -6,6 +6,8 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.slf4j.spi.NOPLoggingEventBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ServerWebExchange;
@@ -13,17 +15,19 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.lang.reflect.Method;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Aspect
 @Component
 @Slf4j
 public class ControllerLoggerAspect {
 
+    private final Map<Method, LogLimiter> limiters = new ConcurrentHashMap<>();
+
     @Pointcut("within(@org.springframework.web.bind.annotation.RestController *)")
     public void restControllerMethods() {
     }
@@ -36,55 +40,85 @@ public class ControllerLoggerAspect {
         String controllerName = joinPoint.getTarget().getClass().getSimpleName();
         String methodName = method.getName();
 
-        String requestMapping = getRequestMapping(method);
+        // 每個 endpoint 各自限流，被略過的呼叫不組參數也不記錄完成
+        LoggingEventBuilder entry = limiters.computeIfAbsent(method, key -> LogLimiter.perSecond(10, 20, 100)).atInfo(log);
+        boolean sampled = !(entry instanceof NOPLoggingEventBuilder);
 
-        String[] paramNames = methodSignature.getParameterNames();
-        Object[] paramValues = joinPoint.getArgs();
+        if (sampled) {
+            String[] paramNames = methodSignature.getParameterNames();
+            Object[] paramValues = joinPoint.getArgs();
 
-        Map<String, Object> params = new LinkedHashMap<>();
-        for (int i = 0; i < paramNames.length; i++) {
-            if (!(paramValues[i] instanceof ServerWebExchange) &&
-                    !isSensitiveOrBinaryData(paramValues[i])) {
-                params.put(paramNames[i], formatParamValue(paramValues[i]));
+            Map<String, Object> params = new LinkedHashMap<>();
+            for (int i = 0; i < paramNames.length; i++) {
+                if (!(paramValues[i] instanceof ServerWebExchange) &&
+                        !isSensitiveOrBinaryData(paramValues[i])) {
+                    params.put(paramNames[i], formatParamValue(paramValues[i]));
+                }
             }
-        }
 
-        log.info("[controller] {}.{}, mapping: {}, params: {}", controllerName, methodName, requestMapping, params);
+            entry.addKeyValue("controller", controllerName)
+                    .addKeyValue("method", methodName)
+                    .addKeyValue("mapping", getRequestMapping(method))
+                    .addKeyValue("params", params)
+                    .log("[controller] 呼叫");
+        }
 
-        Instant startTime = Instant.now();
+        long startTime = System.nanoTime();
 
         try {
             Object result = joinPoint.proceed();
 
             if (result instanceof Mono) {
                 return ((Mono<?>) result).doOnSuccess(value -> {
-                    Duration duration = Duration.between(startTime, Instant.now());
-                    log.info("[controller], {}.{} | 耗時: {}ms | 返回類型: Mono<{}>", controllerName, methodName, duration.toMillis(),
-                            value != null ? value.getClass().getSimpleName() : "Void");
-                }).doOnError(error -> {
-                    Duration duration = Duration.between(startTime, Instant.now());
-                    log.error("[controller], {}.{} | 耗時: {}ms | 錯誤: {}", controllerName, methodName, duration.toMillis(), error.getMessage());
-                });
+                    if (sampled) {
+                        logCompleted(controllerName, methodName, startTime, "Mono<" + (value != null ? value.getClass().getSimpleName() : "Void") + ">");
+                    }
+                }).doOnError(error -> logFailed(controllerName, methodName, startTime, error));
             } else if (result instanceof Flux) {
                 return ((Flux<?>) result).doOnComplete(() -> {
-                    Duration duration = Duration.between(startTime, Instant.now());
-                    log.info("[controller], {}.{} | 耗時: {}ms | 返回類型: Flux<?> [流式數據]", controllerName, methodName, duration.toMillis());
-                }).doOnError(error -> {
-                    Duration duration = Duration.between(startTime, Instant.now());
-                    log.error("[controller], {}.{} | 耗時: {}ms | 錯誤: {}", controllerName, methodName, duration.toMillis(), error.getMessage());
-                });
+                    if (sampled) {
+                        logCompleted(controllerName, methodName, startTime, "Flux<?> [流式數據]");
+                    }
+                }).doOnError(error -> logFailed(controllerName, methodName, startTime, error));
             } else {
-                Duration duration = Duration.between(startTime, Instant.now());
-                log.info("[controller], {}.{} | 耗時: {}ms | 返回類型: {}", controllerName, methodName, duration.toMillis(), result != null ? result.getClass().getSimpleName() : "void");
+                if (sampled) {
+                    logCompleted(controllerName, methodName, startTime, result != null ? result.getClass().getSimpleName() : "void");
+                }
                 return result;
             }
         } catch (Throwable e) {
-            Duration duration = Duration.between(startTime, Instant.now());
-            log.error("endpoint異常, {}.{} | 耗時: {}ms | 異常: {}", controllerName, methodName, duration.toMillis(), e.getMessage());
+            log.atError()
+                    .addKeyValue("controller", controllerName)
+                    .addKeyValue("method", methodName)
+                    .addKeyValue("elapsedMs", elapsedMillis(startTime))
+                    .addKeyValue("error", e.getMessage())
+                    .log("endpoint異常");
             throw e;
         }
     }
 
+    private void logCompleted(String controllerName, String methodName, long startTime, String returnType) {
+        log.atInfo()
+                .addKeyValue("controller", controllerName)
+                .addKeyValue("method", methodName)
+                .addKeyValue("elapsedMs", elapsedMillis(startTime))
+                .addKeyValue("returnType", returnType)
+                .log("[controller] 完成");
+    }
+
+    private void logFailed(String controllerName, String methodName, long startTime, Throwable error) {
+        log.atError()
+                .addKeyValue("controller", controllerName)
+                .addKeyValue("method", methodName)
+                .addKeyValue("elapsedMs", elapsedMillis(startTime))
+                .addKeyValue("error", error.getMessage())
+                .log("[controller] 錯誤");
+    }
+
+    private static long elapsedMillis(long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
     private String getRequestMapping(Method method) {
         try {
             StringBuilder mapping = new StringBuilder();
@@ -0,0 +1,325 @@
+package com.bill.sse.config;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 直接在請求的 ByteBuffer 上逐 byte 掃描 JSON 物件，不建立中間的字串或 Map
+ * 欄位名稱以 byte 比對，不需要的欄位只移動位置不做解析
+ */
+final class JsonFieldScanner {
+
+    // nextField: 物件結束
+    static final int END = -2;
+    // readScaledLong: 格式無效 / 值為 null
+    static final long INVALID = Long.MIN_VALUE;
+    static final long MISSING = Long.MIN_VALUE + 1;
+
+    private static final int MAX_LONG_DIGITS = 19;
+
+    private final ByteBuffer buffer;
+    private final int end;
+    private int position;
+    private boolean firstField = true;
+    // 最近一次 readScaledLong 的原始內容位置，只在記錄錯誤時才轉成字串
+    private int valueStart;
+    private int valueEnd;
+
+    JsonFieldScanner(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.end = buffer.limit();
+    }
+
+    void beginObject() {
+        expect('{');
+    }
+
+    // 讀取下一個欄位名稱，回傳在 names 中的 index，不認識的欄位回傳 -1，物件結束時回傳 END
+    int nextField(byte[][] names) {
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            expectEnd();
+            return END;
+        }
+        if (!firstField) {
+            expect(',');
+        }
+        firstField = false;
+        expect('"');
+        int start = position;
+        skipStringBody();
+        int length = position - 1 - start;
+        expect(':');
+        for (int i = 0; i < names.length; i++) {
+            if (matches(start, length, names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 字串值，沒有跳脫字元時直接從 buffer 解碼
+    String readString() {
+        skipWhitespace();
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('"');
+        int start = position;
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b == '"') {
+                String value = text(start, position);
+                position++;
+                return value;
+            }
+            if (b == '\\') {
+                return readEscapedString(start);
+            }
+            position++;
+        }
+        throw new IllegalArgumentException("字串未結束");
+    }
+
+    // 數字或以字串表示的數字，轉成小數 scale 位的 long (超過的位數四捨五入，可用指數表示)；
+    // 格式無效或超出範圍時回傳 INVALID，null 回傳 MISSING
+    long readScaledLong(int scale) {
+        skipWhitespace();
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return MISSING;
+        }
+        valueStart = position;
+        skipValue();
+        valueEnd = position;
+        int from = valueStart;
+        int to = valueEnd;
+        if (buffer.get(from) == '"') {
+            from++;
+            to--;
+        }
+        return parseScaled(from, to, scale);
+    }
+
+    // 略過目前的值 (字串、數字、物件、陣列或常數)
+    void skipValue() {
+        skipWhitespace();
+        byte b = peek();
+        if (b == '"') {
+            position++;
+            skipStringBody();
+        } else if (b == '{' || b == '[') {
+            int depth = 0;
+            do {
+                b = buffer.get(position++);
+                if (b == '"') {
+                    skipStringBody();
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            } while (depth > 0 && position < end);
+            if (depth != 0) {
+                throw new IllegalArgumentException("物件或陣列未結束");
+            }
+        } else {
+            int start = position;
+            while (position < end && !isDelimiter(buffer.get(position))) {
+                position++;
+            }
+            if (position == start) {
+                throw new IllegalArgumentException("無效的值, 位置: " + start);
+            }
+        }
+    }
+
+    String lastValue() {
+        return text(valueStart, valueEnd);
+    }
+
+    // heap buffer 直接由底層陣列建立字串，direct buffer 才需要先複製
+    private String text(int from, int to) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 一般的整數或不超過 scale 位小數直接逐位計算，其他寫法 (更多小數位、指數) 交給 parseDecimal
+    private long parseScaled(int from, int to, int scale) {
+        int i = from;
+        boolean negative = i < to && buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        int integerDigits = 0;
+        int fractionDigits = -1;
+        try {
+            for (; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b == '.' && fractionDigits < 0 && integerDigits > 0) {
+                    fractionDigits = 0;
+                    continue;
+                }
+                if (b < '0' || b > '9' || fractionDigits >= scale) {
+                    return parseDecimal(from, to, scale);
+                }
+                value = Math.addExact(Math.multiplyExact(value, 10), b - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                } else {
+                    integerDigits++;
+                }
+            }
+            if (integerDigits == 0 || fractionDigits == 0) {
+                return parseDecimal(from, to, scale);
+            }
+            for (int pad = Math.max(fractionDigits, 0); pad < scale; pad++) {
+                value = Math.multiplyExact(value, 10);
+            }
+        } catch (ArithmeticException e) {
+            return INVALID;
+        }
+        return negative ? -value : value;
+    }
+
+    // 慢速路徑: 以 BigDecimal 解析後四捨五入到 scale 位
+    // 先以有效位數判斷大小，避免 1e999999999 這類指數讓 setScale 計算巨大的數字
+    private long parseDecimal(int from, int to, int scale) {
+        BigDecimal decimal;
+        try {
+            decimal = new BigDecimal(text(from, to));
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+        long magnitude = (long) decimal.precision() - decimal.scale();
+        if (magnitude > MAX_LONG_DIGITS) {
+            return INVALID;
+        }
+        if (magnitude < -scale) {
+            // 小於 10^-(scale+1)，四捨五入後為 0
+            return 0;
+        }
+        try {
+            return decimal.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            return INVALID;
+        }
+    }
+
+    // 字串中有跳脫字元時的慢速路徑
+    private String readEscapedString(int start) {
+        StringBuilder builder = new StringBuilder(text(start, position));
+        int segment = position;
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b == '"') {
+                builder.append(text(segment, position));
+                position++;
+                return builder.toString();
+            }
+            if (b != '\\') {
+                position++;
+                continue;
+            }
+            builder.append(text(segment, position));
+            byte escaped = buffer.get(position + 1);
+            position += 2;
+            switch (escaped) {
+                case '"', '\\', '/' -> builder.append((char) escaped);
+                case 'b' -> builder.append('\b');
+                case 'f' -> builder.append('\f');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    builder.append((char) Integer.parseInt(text(position, position + 4), 16));
+                    position += 4;
+                }
+                default -> throw new IllegalArgumentException("無效的跳脫字元: \\" + (char) escaped);
+            }
+            segment = position;
+        }
+        throw new IllegalArgumentException("字串未結束");
+    }
+
+    // 由開頭的引號之後開始，停在結尾引號之後
+    private void skipStringBody() {
+        while (position < end) {
+            byte b = buffer.get(position++);
+            if (b == '\\') {
+                position++;
+            } else if (b == '"') {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("字串未結束");
+    }
+
+    private boolean matches(int start, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void expectEnd() {
+        skipWhitespace();
+        if (position != end) {
+            throw new IllegalArgumentException("物件結束後還有多餘的內容");
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            expectByte(literal.charAt(i));
+        }
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        expectByte(c);
+    }
+
+    private void expectByte(char c) {
+        if (position >= end || buffer.get(position) != c) {
+            throw new IllegalArgumentException("預期 '" + c + "', 位置: " + position);
+        }
+        position++;
+    }
+
+    private byte peek() {
+        if (position >= end) {
+            throw new IllegalArgumentException("內容未結束");
+        }
+        return buffer.get(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
@@ -0,0 +1,53 @@
+package com.bill.sse.config;
+
+import com.bill.sse.service.LoadShedder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * 最高降載等級時 /api/payment/initialize 直接回傳 503
+ * /callback 與訂單狀態查詢不受影響，已建立的訂單仍能完成付款
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LoadSheddingFilter implements WebFilter, Ordered {
+
+    static final String INITIALIZE_PATH = "/api/payment/initialize";
+
+    private final LoadShedder loadShedder;
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 5;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() != HttpMethod.POST
+                || !INITIALIZE_PATH.equals(request.getPath().value())
+                || !loadShedder.shouldRejectInitialize()) {
+            return chain.filter(exchange);
+        }
+
+        loadShedder.record(LoadShedder.Action.INITIALIZE_REJECTED);
+        log.warn("降載中, 拒絕初始化付款請求, 等級: {}", loadShedder.level());
+
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, loadShedder.retryAfter().toSeconds())));
+        return response.setComplete();
+    }
+}
@@ -0,0 +1,96 @@
+package com.bill.sse.config;
+
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.slf4j.spi.NOPLoggingEventBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 單一 log 呼叫點的限流與取樣，每個呼叫點各自持有一個 (static final 或依 key 建立)
+ * 以 GCRA 限制每秒筆數，超過時每 sampleEvery 筆仍放行 1 筆；被略過的筆數會附在下一筆的 suppressed 欄位
+ *
+ * 用法: limiter.atInfo(log).addKeyValue("orderId", orderId).log("發布付款事件")
+ */
+public final class LogLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final int sampleEvery;
+    private final LongSupplier clock;
+
+    private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong limited = new AtomicLong();
+
+    LogLimiter(double perSecond, int burst, int sampleEvery, LongSupplier clock) {
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * Math.max(0, burst - 1);
+        this.sampleEvery = sampleEvery;
+        this.clock = clock;
+    }
+
+    // 每秒最多 perSecond 筆，可瞬間輸出 burst 筆
+    public static LogLimiter perSecond(double perSecond, int burst) {
+        return new LogLimiter(perSecond, burst, 0, System::nanoTime);
+    }
+
+    // 同上，超過限制時每 sampleEvery 筆取樣 1 筆
+    public static LogLimiter perSecond(double perSecond, int burst, int sampleEvery) {
+        return new LogLimiter(perSecond, burst, sampleEvery, System::nanoTime);
+    }
+
+    public LoggingEventBuilder atInfo(Logger logger) {
+        return at(logger, Level.INFO);
+    }
+
+    public LoggingEventBuilder atWarn(Logger logger) {
+        return at(logger, Level.WARN);
+    }
+
+    public LoggingEventBuilder atError(Logger logger) {
+        return at(logger, Level.ERROR);
+    }
+
+    // 被限流時回傳 NOP builder，後續的 addKeyValue 與 log 都不做事
+    public LoggingEventBuilder at(Logger logger, Level level) {
+        if (!logger.isEnabledForLevel(level)) {
+            return NOPLoggingEventBuilder.singleton();
+        }
+        if (!tryAcquire()) {
+            return NOPLoggingEventBuilder.singleton();
+        }
+        LoggingEventBuilder builder = logger.atLevel(level);
+        long skipped = suppressed.getAndSet(0);
+        if (skipped > 0) {
+            builder.addKeyValue("suppressed", skipped);
+        }
+        return builder;
+    }
+
+    public boolean tryAcquire() {
+        long now = clock.getAsLong();
+        while (true) {
+            long current = tat.get();
+            long base = Math.max(current, now);
+            if (base - burstToleranceNanos > now) {
+                // 超過限制時仍取樣，取樣的這筆會帶走累計的 suppressed
+                if (sampleEvery > 0 && limited.incrementAndGet() % sampleEvery == 0) {
+                    return true;
+                }
+                suppressed.incrementAndGet();
+                return false;
+            }
+            if (tat.compareAndSet(current, base + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    public long suppressed() {
+        return suppressed.get();
+    }
+}
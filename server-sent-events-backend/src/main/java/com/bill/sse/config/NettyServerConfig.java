@@ -0,0 +1,64 @@
+package com.bill.sse.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorResourceFactory;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * 把 sse.netty.* 套用到內嵌的 Netty server: event loop 數量、原生 transport、socket 選項與 write buffer watermark
+ * 並在每個 channel 加上 ChannelWritabilityHandler 與 ChannelActivityHandler，讓 SSE 連接知道客戶端是否跟得上、是否還在
+ */
+@Configuration
+@Slf4j
+public class NettyServerConfig {
+
+    // 指定 event loop 數量時改用專用的 LoopResources，server 與 EventLoopLagMonitor 都從這裡取得
+    @Bean
+    public ReactorResourceFactory sseReactorResourceFactory(SseNettyProperties properties) {
+        ReactorResourceFactory factory = new ReactorResourceFactory();
+        if (properties.getEventLoopThreads() > 0) {
+            factory.setUseGlobalResources(false);
+            factory.setLoopResourcesSupplier(() -> LoopResources.create("sse-http", 1, properties.getEventLoopThreads(), true));
+        }
+        return factory;
+    }
+
+    @Bean
+    public NettyServerCustomizer sseNettyServerCustomizer(SseNettyProperties properties, ReactorResourceFactory resourceFactory,
+                                                          ChannelWritabilityHandler writabilityHandler,
+                                                          ChannelActivityHandler activityHandler) {
+        return httpServer -> {
+            boolean nativeTransport = properties.isNativeTransport() && Epoll.isAvailable();
+            WriteBufferWaterMark waterMark = new WriteBufferWaterMark(
+                    (int) properties.getWriteBufferLowWaterMark().toBytes(),
+                    (int) properties.getWriteBufferHighWaterMark().toBytes());
+            HttpServer server = httpServer
+                    .runOn(resourceFactory.getLoopResources(), properties.isNativeTransport())
+                    .childOption(ChannelOption.TCP_NODELAY, properties.isTcpNoDelay())
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark)
+                    // 可寫狀態的變化從 pipeline 最前面開始傳遞，放在最前面不會被後面的 handler 攔下，也看得到所有實際寫出的資料
+                    .doOnChannelInit((observer, channel, remoteAddress) -> channel.pipeline()
+                            .addFirst(ChannelActivityHandler.NAME, activityHandler)
+                            .addFirst(ChannelWritabilityHandler.NAME, writabilityHandler));
+            if (properties.getSendBufferSize() != null) {
+                server = server.childOption(ChannelOption.SO_SNDBUF, (int) properties.getSendBufferSize().toBytes());
+            }
+            // 接收 buffer 需在 listen socket 上設定，accept 的連接才會以此協商 TCP window
+            if (properties.getReceiveBufferSize() != null) {
+                server = server.option(ChannelOption.SO_RCVBUF, (int) properties.getReceiveBufferSize().toBytes());
+            }
+            log.info("Netty server transport: {}, eventLoopThreads: {}, tcpNoDelay: {}, writeBufferWaterMark: {}",
+                    nativeTransport ? "epoll" : "nio",
+                    properties.getEventLoopThreads() > 0 ? properties.getEventLoopThreads() : "default",
+                    properties.isTcpNoDelay(), waterMark);
+            return server;
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package com.bill.sse.config;
+
+import com.bill.sse.service.FlightEvents;
+import com.bill.sse.vo.InitializePaymentRequest;
+import com.bill.sse.vo.PaymentCallbackRequest;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * /api/payment/initialize 與 /callback 的請求解碼器
+ * 直接從 DataBuffer 讀取已知欄位，金額轉成 long，不認識的欄位略過不解析，不經過 Jackson 的 Map
+ * 金額超過兩位小數時四捨五入；未提供或為 null 時使用預設值，格式無效時回應 400
+ * callback 缺少 orderId 或 status (或為 null)、status 不是 SUCCESS / FAILURE 時回應 400，不會進入 callback 佇列
+ */
+public class PaymentRequestDecoder implements Decoder<Object> {
+
+    // 請求內容很小，超過視為異常請求
+    private static final int MAX_IN_MEMORY_SIZE = 64 * 1024;
+
+    private static final List<MimeType> MIME_TYPES = List.of(MediaType.APPLICATION_JSON);
+
+    private static final byte[][] INITIALIZE_FIELDS = names("amount");
+    private static final byte[][] CALLBACK_FIELDS = names("orderId", "status", "reason");
+
+    // OrderStore 認得的 callback 狀態
+    private static final Set<String> CALLBACK_STATUSES = Set.of("SUCCESS", "FAILURE");
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        Class<?> type = elementType.toClass();
+        return (type == InitializePaymentRequest.class || type == PaymentCallbackRequest.class)
+                && (mimeType == null || MediaType.APPLICATION_JSON.isCompatibleWith(mimeType));
+    }
+
+    @Override
+    public Flux<Object> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(decodeToMono(inputStream, elementType, mimeType, hints));
+    }
+
+    @Override
+    public Mono<Object> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return DataBufferUtils.join(inputStream, MAX_IN_MEMORY_SIZE)
+                .map(buffer -> decode(buffer, elementType, mimeType, hints));
+    }
+
+    @Override
+    public Object decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) throws DecodingException {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            JsonFieldScanner scanner = new JsonFieldScanner(singleByteBuffer(buffer, iterator));
+            if (targetType.toClass() == InitializePaymentRequest.class) {
+                return readInitialize(scanner);
+            }
+            FlightEvents.CallbackDecoded decoded = new FlightEvents.CallbackDecoded();
+            decoded.begin();
+            PaymentCallbackRequest callback = readCallback(scanner);
+            if (decoded.shouldCommit()) {
+                decoded.orderId = callback.orderId();
+                decoded.status = callback.status();
+                decoded.bytes = buffer.readableByteCount();
+                decoded.commit();
+            }
+            return callback;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new DecodingException("JSON 格式錯誤: " + e.getMessage(), e);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    @Override
+    public List<MimeType> getDecodableMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    private InitializePaymentRequest readInitialize(JsonFieldScanner scanner) {
+        long amount = InitializePaymentRequest.DEFAULT_AMOUNT;
+        scanner.beginObject();
+        int field;
+        while ((field = scanner.nextField(INITIALIZE_FIELDS)) != JsonFieldScanner.END) {
+            if (field == 0) {
+                amount = scanner.readScaledLong(InitializePaymentRequest.AMOUNT_SCALE);
+                if (amount == JsonFieldScanner.INVALID) {
+                    // 客戶端送出的金額無法解析時拒絕請求 (400)，不以預設值代替
+                    throw new IllegalArgumentException("金額格式無效: " + scanner.lastValue());
+                } else if (amount == JsonFieldScanner.MISSING) {
+                    amount = InitializePaymentRequest.DEFAULT_AMOUNT;
+                }
+            } else {
+                scanner.skipValue();
+            }
+        }
+        return new InitializePaymentRequest(amount);
+    }
+
+    private PaymentCallbackRequest readCallback(JsonFieldScanner scanner) {
+        String orderId = null;
+        String status = null;
+        String reason = null;
+        scanner.beginObject();
+        int field;
+        while ((field = scanner.nextField(CALLBACK_FIELDS)) != JsonFieldScanner.END) {
+            switch (field) {
+                case 0 -> orderId = scanner.readString();
+                case 1 -> status = scanner.readString();
+                case 2 -> reason = scanner.readString();
+                default -> scanner.skipValue();
+            }
+        }
+        if (orderId == null) {
+            throw new IllegalArgumentException("缺少 orderId");
+        }
+        if (status == null) {
+            throw new IllegalArgumentException("缺少 status");
+        }
+        if (!CALLBACK_STATUSES.contains(status)) {
+            throw new IllegalArgumentException("無效的 status: " + status);
+        }
+        return new PaymentCallbackRequest(orderId, status, reason);
+    }
+
+    // join 後通常只有一段，由多段組成時才複製成連續的 ByteBuffer
+    private static ByteBuffer singleByteBuffer(DataBuffer buffer, DataBuffer.ByteBufferIterator iterator) {
+        if (!iterator.hasNext()) {
+            return ByteBuffer.allocate(0);
+        }
+        ByteBuffer first = iterator.next();
+        if (!iterator.hasNext()) {
+            return first;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(buffer.readableByteCount());
+        buffer.toByteBuffer(buffer.readPosition(), copy, 0, copy.capacity());
+        return copy.clear();
+    }
+
+    private static byte[][] names(String... names) {
+        byte[][] bytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            bytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+}
@@ -1,5 +1,6 @@
 package com.bill.sse.config;
 
+import com.bill.sse.vo.TraceContext;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.annotation.Order;
 import org.springframework.http.server.reactive.ServerHttpRequest;
@@ -20,7 +21,9 @@ public class RequestLoggingFilter implements WebFilter {
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-        String requestId = UUID.randomUUID().toString().substring(0, 8);
+        // TracingFilter 在前面執行，有 trace 時以 traceId 作為 requestId，可與推送的事件對照
+        TraceContext trace = exchange.getAttribute(TracingFilter.TRACE_ATTRIBUTE);
+        String requestId = trace != null ? trace.traceId() : UUID.randomUUID().toString().substring(0, 8);
 
         // 取得請求相關資訊
         ServerHttpRequest request = exchange.getRequest();
@@ -0,0 +1,234 @@
+package com.bill.sse.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+import org.slf4j.event.KeyValuePair;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 非同步 log appender: 呼叫端只把事件放進固定大小的 ring buffer (CAS，不使用鎖)，由單一背景 thread 寫到下游 appender
+ * buffer 滿時直接丟棄並計數，不會讓 event loop 等待 I/O；丟棄的筆數由背景 thread 以一筆 WARN 補記
+ *
+ * ring buffer 為 Vyukov 的 bounded queue: 每個 slot 有 sequence，生產者 CAS 搶 tail，單一消費者依序讀取
+ */
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+    // 需為 2 的次方
+    private int capacity = 8192;
+    private boolean includeCallerData;
+    // 停止時最多等待多久把剩下的事件寫完
+    private int maxFlushTimeMillis = 1000;
+
+    private AtomicReferenceArray<ILoggingEvent> slots;
+    private AtomicLongArray sequences;
+    private int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // 只有背景 thread 讀寫
+    private long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean sleeping;
+    private volatile boolean running;
+    private Thread worker;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (Integer.bitCount(capacity) != 1) {
+            addError("capacity 需為 2 的次方: " + capacity);
+            return;
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+        running = true;
+        worker = new Thread(this::drainLoop, "log-ring-buffer-" + getName());
+        worker.setDaemon(true);
+        super.start();
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(maxFlushTimeMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            addWarn("停止時仍有 log 未寫出, 放棄等待");
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // 在呼叫端 thread 取出 thread 名稱、MDC 等資料，之後才由背景 thread 處理
+        event.prepareForDeferredProcessing();
+        if (includeCallerData) {
+            event.getCallerData();
+        }
+        if (!offer(event)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (sleeping) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private boolean offer(ILoggingEvent event) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            long difference = sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, event);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private ILoggingEvent poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        ILoggingEvent event = slots.get(index);
+        slots.set(index, null);
+        sequences.set(index, head + capacity);
+        head++;
+        return event;
+    }
+
+    private void drainLoop() {
+        long reportedDropped = 0;
+        while (true) {
+            ILoggingEvent event = poll();
+            if (event != null) {
+                appenders.appendLoopOnAppenders(event);
+                continue;
+            }
+            long droppedNow = dropped.get();
+            if (droppedNow != reportedDropped) {
+                appenders.appendLoopOnAppenders(droppedEvent(droppedNow - reportedDropped));
+                reportedDropped = droppedNow;
+            }
+            if (!running) {
+                return;
+            }
+            // 沒有事件時休眠，生產者看到 sleeping 才需要喚醒
+            sleeping = true;
+            if (sequences.get((int) (head & mask)) != head + 1 && running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            sleeping = false;
+        }
+    }
+
+    private ILoggingEvent droppedEvent(long count) {
+        Logger logger = ((LoggerContext) getContext()).getLogger(RingBufferAppender.class);
+        LoggingEvent event = new LoggingEvent(RingBufferAppender.class.getName(), logger, Level.WARN,
+                "log ring buffer 已滿, 丟棄 {} 筆", null, new Object[]{count});
+        event.addKeyValuePair(new KeyValuePair("dropped", count));
+        return event;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        this.includeCallerData = includeCallerData;
+    }
+
+    public boolean isIncludeCallerData() {
+        return includeCallerData;
+    }
+
+    public void setMaxFlushTimeMillis(int maxFlushTimeMillis) {
+        this.maxFlushTimeMillis = maxFlushTimeMillis;
+    }
+
+    public int getMaxFlushTimeMillis() {
+        return maxFlushTimeMillis;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -0,0 +1,18 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 管理端點的驗證設定 (sse.admin.*)
+ * 連接管理、drain、監控統計、訂單匯出與負載產生器的請求需在 header 帶上 token
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.admin")
+public class SseAdminProperties {
+
+    // 未設定時管理端點一律回應 403
+    private String token;
+
+    private String tokenHeader = "X-Admin-Token";
+}
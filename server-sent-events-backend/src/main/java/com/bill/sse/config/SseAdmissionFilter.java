@@ -0,0 +1,110 @@
+package com.bill.sse.config;
+
+import com.bill.sse.service.AdmissionControl;
+import com.bill.sse.service.DrainCoordinator;
+import com.bill.sse.service.LoadShedder;
+import com.bill.sse.service.TenantRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 在 SSE 端點前做准入控制，拒絕時回傳 429 與 Retry-After；drain 或降載期間回傳 503
+ * drain、降載與商家的連接數上限不受 sse.admission.enabled 影響，商家代碼無效時回傳 400
+ * 許可在整個串流結束後 (完成、錯誤或客戶端斷線) 才釋放
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SseAdmissionFilter implements WebFilter, Ordered {
+
+    static final String SSE_PATH = "/api/sse/payment-events";
+
+    private final AdmissionControl admissionControl;
+    private final DrainCoordinator drainCoordinator;
+    private final LoadShedder loadShedder;
+    private final TenantRegistry tenantRegistry;
+    private final SseAdmissionProperties properties;
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 10;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getMethod() != HttpMethod.GET || !SSE_PATH.equals(request.getPath().value())) {
+            return chain.filter(exchange);
+        }
+
+        String clientIp = request.getRemoteAddress() != null ? request.getRemoteAddress().getHostString() : "unknown";
+        TenantRegistry.Tenant tenant = tenantRegistry.resolve(request);
+        if (tenant == null) {
+            log.warn("無效的商家, 拒絕 SSE 連接, 客戶端: {}", clientIp);
+            exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
+            return exchange.getResponse().setComplete();
+        }
+        // drain 與降載不受 sse.admission.enabled 影響
+        if (drainCoordinator.isDraining()) {
+            log.info("drain 中, 拒絕 SSE 連接, 客戶端: {}", clientIp);
+            return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, drainCoordinator.nextReconnectDelay());
+        }
+
+        if (loadShedder.shouldRejectConnections()) {
+            loadShedder.record(LoadShedder.Action.CONNECTION_REJECTED);
+            log.warn("降載中, 拒絕 SSE 連接, 客戶端: {}, 等級: {}", clientIp, loadShedder.level());
+            return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, loadShedder.retryAfter());
+        }
+
+        if (!properties.isEnabled()) {
+            return acquireTenant(exchange, chain, tenant, clientIp, null);
+        }
+
+        AdmissionControl.Decision decision = admissionControl.tryAcquire(clientIp);
+        if (!decision.admitted()) {
+            log.warn("SSE 連接被拒絕, 客戶端: {}, 原因: {}, Retry-After: {}", clientIp, decision.rejection(), decision.retryAfter());
+            return reject(exchange, HttpStatus.TOO_MANY_REQUESTS, decision.retryAfter());
+        }
+
+        return acquireTenant(exchange, chain, tenant, clientIp, decision.permit());
+    }
+
+    // 最後檢查商家的連接數，拒絕時一併釋放已取得的許可
+    private Mono<Void> acquireTenant(ServerWebExchange exchange, WebFilterChain chain, TenantRegistry.Tenant tenant,
+                                     String clientIp, AdmissionControl.Permit permit) {
+        if (!tenant.tryAcquireConnection()) {
+            if (permit != null) {
+                permit.release();
+            }
+            log.warn("SSE 連接被拒絕, 客戶端: {}, 商家: {}, 原因: 超過商家連接數上限", clientIp, tenant.key());
+            return reject(exchange, HttpStatus.TOO_MANY_REQUESTS, tenantRegistry.retryAfter());
+        }
+        return chain.filter(exchange).doFinally(signalType -> {
+            tenant.releaseConnection();
+            if (permit != null) {
+                permit.release();
+            }
+        });
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, Duration retryAfter) {
+        long retryAfterSeconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return response.setComplete();
+    }
+}
@@ -0,0 +1,34 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * SSE 連接准入控制設定 (sse.admission.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.admission")
+public class SseAdmissionProperties {
+
+    private boolean enabled = true;
+
+    // 每個 IP 每秒可建立的新連接數 (token bucket 補充速率)
+    private double perIpRate = 2.0;
+
+    // 每個 IP 可瞬間建立的連接數 (token bucket 容量)
+    private int perIpBurst = 10;
+
+    // 每個 IP 同時存在的連接上限
+    private int maxConcurrentPerIp = 20;
+
+    // 全域連接上限
+    private int maxConnections = 10000;
+
+    // 超過併發上限時建議客戶端等待的時間
+    private Duration rejectRetryAfter = Duration.ofSeconds(5);
+
+    // IP 沒有連接且閒置超過此時間後移除其狀態
+    private Duration idleEviction = Duration.ofMinutes(2);
+}
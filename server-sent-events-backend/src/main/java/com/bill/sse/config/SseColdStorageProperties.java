@@ -0,0 +1,38 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 已結束訂單的冷儲存設定 (sse.cold-storage.*)
+ * 保留期限 (sse.orders.retention) 到期的訂單從記憶體移到依訂單代碼排序的 segment 檔，之後的狀態查詢從 segment 回答
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.cold-storage")
+public class SseColdStorageProperties {
+
+    // 關閉時保留期限到期的訂單直接移除 (舊行為)
+    private boolean enabled = false;
+
+    // segment 檔所在的目錄，同一時間只能有一個 process 使用
+    private Path directory = Path.of("data", "cold");
+
+    // 移出記憶體的訂單先暫存，累積到此數量或每 flush-interval 寫成一個 segment
+    private int segmentSize = 100_000;
+    private Duration flushInterval = Duration.ofMinutes(1);
+
+    // 小於 segment-size 的 segment 累積到此數量時合併成一個，避免查詢時檢查過多 segment
+    private int mergeFactor = 8;
+
+    // 每隔幾筆訂單在記憶體中保留一個索引，查詢時最多掃描這麼多筆
+    private int indexInterval = 64;
+
+    // bloom filter 每筆訂單使用的 bit 數，10 約為 1% 的誤判率
+    private int bloomBitsPerKey = 10;
+
+    // segment 中最後更新的訂單超過此時間後刪除整個 segment
+    private Duration retention = Duration.ofDays(7);
+}
@@ -0,0 +1,28 @@
+package com.bill.sse.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties({
+        SseConnectionProperties.class,
+        SseAdmissionProperties.class,
+        SseDrainProperties.class,
+        SseSheddingProperties.class,
+        SseReadinessProperties.class,
+        SseWarmUpProperties.class,
+        SseStaticAssetProperties.class,
+        SseOrderProperties.class,
+        SseIngestProperties.class,
+        SseNettyProperties.class,
+        SseReaperProperties.class,
+        SseTenantProperties.class,
+        SsePersistenceProperties.class,
+        SseColdStorageProperties.class,
+        SseExportProperties.class,
+        SseTracingProperties.class,
+        SseLoadGeneratorProperties.class,
+        SseAdminProperties.class
+})
+public class SseConfig {
+}
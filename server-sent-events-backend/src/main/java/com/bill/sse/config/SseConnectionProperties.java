@@ -0,0 +1,39 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * SSE 連接相關設定 (sse.connection.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.connection")
+public class SseConnectionProperties {
+
+    // registry 分段數量，0 代表依 CPU 核心數自動決定
+    private int registryStripes = 0;
+
+    // 每條連接最多暫存的待發送事件數，超過時丟棄最舊的事件
+    private int maxQueueSize = 1024;
+
+    // 待發送事件超過此數量視為落後連接
+    private int lagQueueDepth = 256;
+
+    // 有待發送事件但超過此時間沒有寫出，視為落後連接
+    private Duration lagWriteIdle = Duration.ofSeconds(60);
+
+    // heartbeat 間隔
+    private Duration heartbeatInterval = Duration.ofSeconds(30);
+
+    // 指定訂單的連接建立時先送出訂單目前的狀態，callback 早於連接建立也不會錯過
+    private boolean snapshotOnSubscribe = true;
+
+    // channel 無法寫入 (超過 sse.netty.write-buffer-high-water-mark) 時暫停發送事件與 heartbeat，
+    // 事件留在連接自己的佇列中 (max-queue-size，滿了丟最舊的)，不會在 Netty 的 outbound buffer 中累積
+    private boolean pauseWhenUnwritable = true;
+
+    // 每條連接最多可訂閱的訂單數 (商家後台的多訂單連接)
+    private int maxSubscriptions = 5000;
+}
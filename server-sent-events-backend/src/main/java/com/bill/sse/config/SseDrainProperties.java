@@ -0,0 +1,29 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 關機 / 部署時 drain SSE 連接的設定 (sse.drain.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.drain")
+public class SseDrainProperties {
+
+    // 每批關閉的連接數
+    private int batchSize = 200;
+
+    // 每批之間的間隔
+    private Duration batchInterval = Duration.ofMillis(100);
+
+    // 客戶端最少等待多久再重連
+    private Duration reconnectBase = Duration.ofSeconds(1);
+
+    // 在 reconnectBase 之上再加的隨機等待上限，把重連分散開
+    private Duration reconnectJitter = Duration.ofSeconds(10);
+
+    // drain 最長等待時間，需小於 spring.lifecycle.timeout-per-shutdown-phase
+    private Duration timeout = Duration.ofSeconds(25);
+}
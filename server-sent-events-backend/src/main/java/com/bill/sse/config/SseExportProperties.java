@@ -0,0 +1,26 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 訂單匯出設定 (sse.export.*)
+ * 匯出在獨立的單一 thread 逐批產生，降載期間暫停，不與 SSE 投遞搶 event loop
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.export")
+public class SseExportProperties {
+
+    // 同時進行的匯出上限，超過時回應 429
+    private int maxConcurrent = 2;
+
+    // 每批 (一個 DataBuffer) 的訂單數，下游要求下一批時才產生
+    private int chunkSize = 500;
+
+    // LoadShedder 不在 NORMAL 時，每批送出前等待的時間
+    private Duration pauseWhileShedding = Duration.ofMillis(100);
+
+    private Duration retryAfter = Duration.ofSeconds(30);
+}
@@ -0,0 +1,26 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 付款 callback 受理佇列設定 (sse.ingest.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.ingest")
+public class SseIngestProperties {
+
+    // 關閉時 callback 在請求 thread 直接更新訂單並發布事件 (舊行為)
+    private boolean enabled = true;
+
+    // 等待處理的 callback 上限，滿了回傳 429
+    private int capacity = 10000;
+
+    // 佇列滿或關機中時建議第三方多久後重送
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    // 關機時等待佇列處理完的時間
+    private Duration drainTimeout = Duration.ofSeconds(5);
+}
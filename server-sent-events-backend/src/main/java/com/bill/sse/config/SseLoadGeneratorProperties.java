@@ -0,0 +1,43 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 內建負載產生器設定 (sse.load-generator.*)
+ * 只給管理者在 staging 使用: 預設關閉，開啟時每個請求需帶 admin token (sse.admin.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.load-generator")
+public class SseLoadGeneratorProperties {
+
+    // 關閉時端點回應 404；開啟時請求仍需帶 admin token (sse.admin.token)
+    private boolean enabled = false;
+
+    // 產生的訂單與虛擬訂閱者屬於此商家，不會收到或影響其他商家的事件
+    private String tenant = "load-generator";
+
+    // 單次執行的預設值，請求未指定 (0) 時使用
+    private double defaultRate = 50;
+    private int defaultSubscribers = 10;
+    private Duration defaultDuration = Duration.ofMinutes(1);
+
+    // 請求可指定的上限
+    private double maxRate = 5000;
+    private int maxSubscribers = 1000;
+    private Duration maxDuration = Duration.ofMinutes(30);
+
+    // 同時進行中的訂單 (初始化到 callback 回應) 上限，達到時該筆略過並計入 skipped
+    private int maxInFlight = 512;
+
+    // 統計推送的間隔，百分位數以每個間隔內的樣本計算
+    private Duration reportInterval = Duration.ofSeconds(1);
+
+    // 每個間隔每種延遲最多保留的樣本數，超過時以 reservoir sampling 取樣
+    private int samplesPerInterval = 10_000;
+
+    // callback 後超過此時間仍未收到的事件計為 lost
+    private Duration deliveryTimeout = Duration.ofSeconds(10);
+}
@@ -0,0 +1,30 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Netty 傳輸層設定 (sse.netty.*)，由 NettyServerConfig 套用到內嵌的 HttpServer
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.netty")
+public class SseNettyProperties {
+
+    // event loop thread 數，0 代表使用 Reactor Netty 預設 (CPU 核心數，至少 4)
+    private int eventLoopThreads = 0;
+
+    // 可用時使用原生 epoll (Linux)，否則退回 NIO
+    private boolean nativeTransport = true;
+
+    // SSE frame 都很小，關閉 Nagle 避免事件被延遲合併
+    private boolean tcpNoDelay = true;
+
+    // socket 送出 / 接收 buffer，未設定時使用 OS 預設 (自動調整)
+    private DataSize sendBufferSize;
+    private DataSize receiveBufferSize;
+
+    // 每條連接在 Netty 中待寫出的資料超過 high 時 channel 變成無法寫入，降到 low 以下才恢復
+    private DataSize writeBufferLowWaterMark = DataSize.ofKilobytes(32);
+    private DataSize writeBufferHighWaterMark = DataSize.ofKilobytes(64);
+}
@@ -0,0 +1,27 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 訂單逾時與清除設定 (sse.orders.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.orders")
+public class SseOrderProperties {
+
+    // PENDING 超過此時間沒有 callback 就視為逾時，狀態改為 EXPIRED 並發布失敗事件
+    private Duration pendingTimeout = Duration.ofMinutes(15);
+
+    // 進入最終狀態後保留多久供查詢，之後從記憶體移除
+    private Duration retention = Duration.ofMinutes(10);
+
+    // timing wheel 的刻度，也就是逾時的最大誤差
+    private Duration tick = Duration.ofMillis(100);
+
+    // 每層 bucket 數 (2 的次方) 與層數，可涵蓋 tick * wheelSize^levels 的範圍
+    private int wheelSize = 64;
+    private int levels = 4;
+}
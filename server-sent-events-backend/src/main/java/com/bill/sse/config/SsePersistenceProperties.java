@@ -0,0 +1,43 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 訂單狀態的持久化設定 (sse.persistence.*)
+ * 記憶體中的 OrderStore 仍是讀取的來源，資料檔只用來在重啟後恢復訂單
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.persistence")
+public class SsePersistenceProperties {
+
+    public enum Mode {
+        // 只在記憶體中 (舊行為)
+        OFF,
+        // 每次狀態轉換都在呼叫端 thread 寫入並 fsync (在訂單的鎖外)；HTTP 請求改在 boundedElastic 上處理，不佔用 event loop
+        SYNC,
+        // 同一訂單的多次更新合併成最新的一筆，累積到 batch-size 或每 flush-interval 批次寫入
+        WRITE_BEHIND
+    }
+
+    private Mode mode = Mode.OFF;
+
+    // 資料檔，同一時間只能有一個 process 開啟
+    private Path path = Path.of("data", "orders.db");
+
+    // 累積到此數量的訂單就提前寫入，也是每批寫入的上限
+    private int batchSize = 500;
+
+    // 最長多久寫入一次，也就是重啟時最多遺失的時間範圍
+    private Duration flushInterval = Duration.ofMillis(50);
+
+    // 每批寫入後 fsync；關閉時只保證寫進 OS 的 page cache
+    private boolean fsync = true;
+
+    // 資料檔超過此大小且一半以上是舊紀錄時重寫
+    private DataSize compactThreshold = DataSize.ofMegabytes(64);
+}
@@ -0,0 +1,20 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 啟動時的 readiness 檢查設定 (sse.readiness.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.readiness")
+public class SseReadinessProperties {
+
+    // 啟動完成前先以 loopback 開一條 SSE 連接，確認能收到 connected 後才回報 ready
+    private boolean selfCheck = true;
+
+    // self-check 等待 connected 的時間 (含被降載拒絕後的重試)，逾時則啟動失敗
+    private Duration selfCheckTimeout = Duration.ofSeconds(30);
+}
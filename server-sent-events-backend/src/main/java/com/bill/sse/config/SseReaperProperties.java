@@ -0,0 +1,32 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 失聯連接的回收設定 (sse.reaper.*)
+ * 行動網路的客戶端常常沒有送出 FIN 就消失，socket 要等 TCP 逾時 (十幾分鐘) 才會關閉
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.reaper")
+public class SseReaperProperties {
+
+    private boolean enabled = true;
+
+    // 檢查所有連接的間隔
+    private Duration interval = Duration.ofSeconds(5);
+
+    // 有資料等待寫出卻持續沒有進展 (socket buffer 已滿)
+    private Duration writeStallTimeout = Duration.ofSeconds(60);
+
+    // 已送出的資料一直沒有被 ACK 且 kernel 已開始重送 (只在 epoll 可判斷)
+    private Duration ackTimeout = Duration.ofSeconds(30);
+
+    // 沒有任何讀取也沒有完成任何寫入，0 代表不檢查；需大於 heartbeat 間隔 (降載時 heartbeat 會暫停)
+    private Duration idleTimeout = Duration.ZERO;
+
+    // /api/sse/reaper 保留最近回收的連接筆數
+    private int recentSize = 100;
+}
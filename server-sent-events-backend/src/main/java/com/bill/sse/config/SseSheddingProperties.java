@@ -0,0 +1,44 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 依 event loop 延遲逐級降載的設定 (sse.shedding.*)
+ * 各門檻需遞增，延遲超過門檻時啟用該級以及以下所有降載措施
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.shedding")
+public class SseSheddingProperties {
+
+    private boolean enabled = true;
+
+    // 探測 event loop 的間隔
+    private Duration probeInterval = Duration.ofMillis(100);
+
+    // 連續幾次探測超過門檻才升級
+    private int escalationSamples = 3;
+
+    // 延遲低於門檻持續此時間後才降回較低的等級，避免來回切換
+    private Duration recoveryDelay = Duration.ofSeconds(5);
+
+    // 第 1 級: 拉長 heartbeat 間隔
+    private Duration stretchHeartbeatLag = Duration.ofMillis(20);
+
+    // heartbeat 拉長倍數 (每 N 次只送 1 次)
+    private int heartbeatStretchFactor = 4;
+
+    // 第 2 級: 停送 heartbeat，同一訂單只送最新的事件
+    private Duration conflateLag = Duration.ofMillis(50);
+
+    // 第 3 級: 拒絕新的 SSE 連接
+    private Duration rejectConnectionsLag = Duration.ofMillis(100);
+
+    // 第 4 級: /api/payment/initialize 回傳 503，/callback 不受影響
+    private Duration rejectInitializeLag = Duration.ofMillis(200);
+
+    // 被拒絕時建議客戶端等待的時間
+    private Duration retryAfter = Duration.ofSeconds(5);
+}
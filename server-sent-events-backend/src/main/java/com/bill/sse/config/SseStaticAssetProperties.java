@@ -0,0 +1,28 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 靜態資源快取設定 (sse.static-assets.*)
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.static-assets")
+public class SseStaticAssetProperties {
+
+    // 關閉時改由預設的 resource handler 從 classpath 讀取
+    private boolean enabled = true;
+
+    private String location = "classpath:/static/";
+
+    // 一般資源的快取時間；html 一律 no-cache，每次以 ETag 驗證
+    private Duration maxAge = Duration.ofHours(1);
+
+    // 檔名含 hash 的建置產物 (Vite 輸出到 /assets/)，內容不會變，可永久快取
+    private String immutablePrefix = "/assets/";
+
+    // 小於此大小不壓縮，壓縮後沒有變小也不保留
+    private int minCompressSize = 256;
+}
@@ -0,0 +1,51 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多商家 (tenant) 隔離設定 (sse.tenants.*)
+ * 每個商家有自己的事件 sink、callback 佇列、連接數與事件速率上限；未指定商家的請求屬於 default
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.tenants")
+public class SseTenantProperties {
+
+    // 關閉時所有請求都屬於 default，共用同一個事件 sink 與 callback 佇列 (舊行為)
+    private boolean enabled = true;
+
+    // 商家代碼的來源: 先看 header，沒有時看 query 參數
+    private String header = "X-Merchant-Id";
+    private String param = "merchant";
+
+    // 允許的商家代碼 (使用 defaults 的上限)；default 與 overrides 列出的商家也允許，其他代碼回應 400
+    // 商家代碼來自未驗證的 header/參數，只有列出的商家會建立 (每個商家各有一組 metric 與 sink)
+    private List<String> merchants = new ArrayList<>();
+
+    // 每個商家的預設上限；overrides 針對個別商家整組取代，未列出的欄位為 Quota 的預設值
+    private Quota defaults = new Quota();
+
+    private Map<String, Quota> overrides = new LinkedHashMap<>();
+
+    // 超過連接數或事件速率上限時建議客戶端等待的時間
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    @Data
+    public static class Quota {
+
+        // 同時存在的 SSE 連接上限，0 代表不限制
+        private int maxConnections;
+
+        // 每秒可受理的 callback (即發布的事件) 數，0 代表不限制
+        private double eventRate;
+
+        // 可瞬間受理的 callback 數
+        private int eventBurst = 100;
+    }
+}
@@ -0,0 +1,32 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 追蹤設定 (sse.tracing.*)
+ * traceId 一律傳遞到事件，只有取樣到的 trace 才輸出各階段的 span
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.tracing")
+public class SseTracingProperties {
+
+    public enum Exporter {
+        // 每個 span 一筆結構化 log (com.bill.sse.trace)，限流
+        LOG,
+        // 保留最近的 span 在記憶體，可由 GET /api/payment/traces/{traceId} 查詢
+        MEMORY,
+        NONE
+    }
+
+    // 關閉時不產生 trace，事件也不帶 traceId
+    private boolean enabled = true;
+
+    // 入口產生 trace 時的取樣比例；上游 traceparent 已標記取樣時一律取樣
+    private double sampleRate = 0.01;
+
+    private Exporter exporter = Exporter.LOG;
+
+    // MEMORY 保留的 span 數，超過時丟棄最舊的
+    private int memoryCapacity = 10_000;
+}
@@ -0,0 +1,26 @@
+package com.bill.sse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 啟動時 JIT 預熱的設定 (sse.warmup.*)
+ * 達到 iterations 或 maxDuration 任一條件即結束
+ */
+@Data
+@ConfigurationProperties(prefix = "sse.warmup")
+public class SseWarmUpProperties {
+
+    private boolean enabled = false;
+
+    // 合成事件數
+    private int iterations = 20_000;
+
+    // 預熱最長時間，超過即停止，不會無限延後 readiness
+    private Duration maxDuration = Duration.ofSeconds(30);
+
+    // 已發布但 loopback 連接尚未收到的事件上限，避免塞滿 sink
+    private int maxInFlight = 64;
+}
@@ -0,0 +1,211 @@
+package com.bill.sse.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 靜態資源快取: 啟動時把 static/ 下的檔案讀進 direct buffer，並先算好 gzip 與 brotli 版本
+ * 請求時依 Accept-Encoding 選擇版本，以強 ETag 回應 304，內容直接包裝同一個 buffer 寫出，不再複製
+ *
+ * gzip 在啟動時壓縮；JDK 沒有 brotli 編碼器，brotli 版本需在建置時產生同名的 .br 檔 (例如 app.js.br)，
+ * 同名的 .gz 檔也會優先於啟動時的壓縮結果
+ */
+@Component
+@Slf4j
+public class StaticAssetCache {
+
+    private static final String GZIP = "gzip";
+    private static final String BROTLI = "br";
+    private static final String INDEX = "/index.html";
+
+    private final SseStaticAssetProperties properties;
+    private final Map<String, Asset> assets;
+
+    public StaticAssetCache(SseStaticAssetProperties properties) throws IOException {
+        this.properties = properties;
+        this.assets = properties.isEnabled() ? load() : Map.of();
+    }
+
+    public boolean contains(String path) {
+        return assets.containsKey(path) || (path.equals("/") && assets.containsKey(INDEX));
+    }
+
+    public int size() {
+        return assets.size();
+    }
+
+    public Mono<ServerResponse> serve(ServerRequest request) {
+        String path = request.path();
+        Asset asset = assets.get(path.equals("/") ? INDEX : path);
+        Variant variant = asset.select(request.headers().header(HttpHeaders.ACCEPT_ENCODING));
+
+        if (isNotModified(request.headers().header(HttpHeaders.IF_NONE_MATCH), variant.etag())) {
+            return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(variant.etag())
+                    .cacheControl(asset.cacheControl())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        ServerResponse.BodyBuilder builder = ServerResponse.ok()
+                .contentType(asset.contentType())
+                .contentLength(variant.content().remaining())
+                .eTag(variant.etag())
+                .cacheControl(asset.cacheControl())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (variant.encoding() != null) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, variant.encoding());
+        }
+        if (request.method() == HttpMethod.HEAD) {
+            return builder.build();
+        }
+        // duplicate 只複製位置資訊，Netty 直接寫出同一塊 direct memory
+        return builder.body((response, context) -> response.writeWith(
+                Mono.fromSupplier(() -> response.bufferFactory().wrap(variant.content().duplicate()))));
+    }
+
+    private Map<String, Asset> load() throws IOException {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        String base = resolver.getResource(properties.getLocation()).getURL().toString();
+        Map<String, byte[]> files = new HashMap<>();
+        for (Resource resource : resolver.getResources(properties.getLocation() + "**/*")) {
+            String url = resource.getURL().toString();
+            if (!resource.isReadable() || url.endsWith("/") || !url.startsWith(base)) {
+                continue;
+            }
+            try (InputStream input = resource.getInputStream()) {
+                files.put("/" + url.substring(base.length()), input.readAllBytes());
+            }
+        }
+
+        Map<String, Asset> loaded = new HashMap<>();
+        long identityBytes = 0;
+        long gzipBytes = 0;
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            String path = file.getKey();
+            if (isPrecompressed(path) && files.containsKey(path.substring(0, path.lastIndexOf('.')))) {
+                continue;
+            }
+            byte[] content = file.getValue();
+            String etag = DigestUtils.md5DigestAsHex(content);
+            byte[] gzip = files.containsKey(path + ".gz") ? files.get(path + ".gz") : gzip(content);
+            byte[] brotli = files.get(path + ".br");
+
+            Asset asset = new Asset(
+                    MediaTypeFactory.getMediaType(path).orElse(MediaType.APPLICATION_OCTET_STREAM),
+                    cacheControl(path),
+                    new Variant(null, direct(content), quote(etag)),
+                    gzip != null ? new Variant(GZIP, direct(gzip), quote(etag + "-gz")) : null,
+                    brotli != null ? new Variant(BROTLI, direct(brotli), quote(etag + "-br")) : null);
+            loaded.put(path, asset);
+            identityBytes += content.length;
+            gzipBytes += asset.gzip() != null ? gzip.length : content.length;
+        }
+        log.info("靜態資源已載入快取, 檔案: {}, 原始大小: {} bytes, gzip 後: {} bytes", loaded.size(), identityBytes, gzipBytes);
+        return Map.copyOf(loaded);
+    }
+
+    private CacheControl cacheControl(String path) {
+        if (path.endsWith(".html")) {
+            return CacheControl.noCache();
+        }
+        if (path.startsWith(properties.getImmutablePrefix())) {
+            return CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+        }
+        return CacheControl.maxAge(properties.getMaxAge()).cachePublic();
+    }
+
+    // 太小或壓縮後沒有變小就不保留 gzip 版本
+    private byte[] gzip(byte[] content) throws IOException {
+        if (content.length < properties.getMinCompressSize()) {
+            return null;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(content.length);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return output.size() < content.length ? output.toByteArray() : null;
+    }
+
+    private static boolean isPrecompressed(String path) {
+        return path.endsWith(".gz") || path.endsWith(".br");
+    }
+
+    private static ByteBuffer direct(byte[] content) {
+        return ByteBuffer.allocateDirect(content.length).put(content).flip().asReadOnlyBuffer();
+    }
+
+    private static String quote(String etag) {
+        return "\"" + etag + "\"";
+    }
+
+    // If-None-Match 使用弱比較，忽略 W/ 前綴
+    private static boolean isNotModified(List<String> ifNoneMatch, String etag) {
+        for (String header : ifNoneMatch) {
+            for (String candidate : header.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || tag.equals(etag) || (tag.startsWith("W/") && tag.substring(2).equals(etag))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private record Variant(String encoding, ByteBuffer content, String etag) {
+    }
+
+    private record Asset(MediaType contentType, CacheControl cacheControl, Variant identity, Variant gzip, Variant brotli) {
+
+        // 依 Accept-Encoding 選擇: br > gzip > 原始內容，q=0 視為不接受
+        Variant select(List<String> acceptEncoding) {
+            boolean acceptsBrotli = false;
+            boolean acceptsGzip = false;
+            for (String header : acceptEncoding) {
+                for (String token : header.split(",")) {
+                    String[] parts = token.trim().split(";");
+                    String coding = parts[0].trim();
+                    if (parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?")) {
+                        continue;
+                    }
+                    acceptsBrotli |= coding.equalsIgnoreCase(BROTLI) || coding.equals("*");
+                    acceptsGzip |= coding.equalsIgnoreCase(GZIP) || coding.equals("*");
+                }
+            }
+            if (acceptsBrotli && brotli != null) {
+                return brotli;
+            }
+            if (acceptsGzip && gzip != null) {
+                return gzip;
+            }
+            return identity;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.bill.sse.config;
+
+import com.bill.sse.service.Tracer;
+import com.bill.sse.vo.TraceContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * /api/payment/** 的追蹤入口: 接收 traceparent header 或產生新的 trace，放進 Reactor Context 與 exchange attribute，
+ * 並以 traceparent 回應 header 帶回，第三方可用來對照 callback 與之後推送的事件
+ * SSE 串流是長連接，不在此建立 trace；事件的 trace 來自觸發它的 callback
+ */
+@Component
+@RequiredArgsConstructor
+public class TracingFilter implements WebFilter, Ordered {
+
+    public static final String TRACEPARENT = "traceparent";
+    public static final String TRACE_ATTRIBUTE = TraceContext.class.getName();
+
+    private static final String PAYMENT_PATH = "/api/payment/";
+
+    private final Tracer tracer;
+
+    @Override
+    public int getOrder() {
+        // 在降載與准入之前，被拒絕的請求也帶有 traceparent
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().value();
+        if (!path.startsWith(PAYMENT_PATH)) {
+            return chain.filter(exchange);
+        }
+        TraceContext trace = tracer.ingress(request.getHeaders().getFirst(TRACEPARENT));
+        if (trace == null) {
+            return chain.filter(exchange);
+        }
+        exchange.getAttributes().put(TRACE_ATTRIBUTE, trace);
+        exchange.getResponse().getHeaders().set(TRACEPARENT, trace.traceparent());
+
+        Mono<Void> traced = chain.filter(exchange).contextWrite(context -> context.put(TraceContext.class, trace));
+        if (!trace.sampled()) {
+            return traced;
+        }
+        long start = System.nanoTime();
+        String name = "http " + request.getMethod().name() + " " + path;
+        return traced.doFinally(signal -> tracer.span(trace, name, null, null, start, System.nanoTime()));
+    }
+}
@@ -1,6 +1,7 @@
 package com.bill.sse.config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.web.reactive.config.CorsRegistry;
 import org.springframework.web.reactive.config.EnableWebFlux;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
@@ -17,4 +18,10 @@ public class WebConfig implements WebFluxConfigurer {
                 .allowedHeaders("*")
                 .maxAge(3600);
     }
+
+    // 付款請求使用專用的解碼器，排在 Jackson 之前
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().register(new PaymentRequestDecoder());
+    }
 }
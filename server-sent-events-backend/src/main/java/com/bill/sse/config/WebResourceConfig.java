@@ -2,7 +2,7 @@ package com.bill.sse.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpMethod;
 import org.springframework.web.reactive.config.ResourceHandlerRegistry;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
 import org.springframework.web.reactive.function.server.RouterFunction;
@@ -12,14 +12,17 @@ import org.springframework.web.reactive.function.server.ServerResponse;
 @Configuration
 public class WebResourceConfig implements WebFluxConfigurer {
 
+    // 快取未命中 (或 sse.static-assets.enabled=false) 時由這裡從 classpath 讀取
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         registry.addResourceHandler("/**")
                 .addResourceLocations("classpath:/static/");
     }
-    
+
+    // 只攔截已載入快取的路徑，其他請求照常交給 controller
     @Bean
-    public RouterFunction<ServerResponse> htmlRouter() {
-        return RouterFunctions.resources("/third-party-payment.html", new ClassPathResource("static/"));
+    public RouterFunction<ServerResponse> staticAssetRouter(StaticAssetCache cache) {
+        return RouterFunctions.route(request -> (request.method() == HttpMethod.GET || request.method() == HttpMethod.HEAD)
+                && cache.contains(request.path()), cache::serve);
     }
 }
@@ -0,0 +1,79 @@
+package com.bill.sse.controller;
+
+import com.bill.sse.config.AdminAuthorization;
+import com.bill.sse.config.SseLoadGeneratorProperties;
+import com.bill.sse.service.LoadGenerator;
+import com.bill.sse.vo.LoadGeneratorRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 內建負載產生器 (staging 容量測試用)，只限管理者: sse.load-generator.enabled 關閉時回應 404，
+ * admin token (sse.admin.token) 未設定或不符時回應 403
+ */
+@RestController
+@RequestMapping("/api/admin/load-generator")
+@RequiredArgsConstructor
+public class LoadGeneratorController {
+
+    private final LoadGenerator loadGenerator;
+    private final SseLoadGeneratorProperties properties;
+    private final AdminAuthorization adminAuthorization;
+
+    // 開始一次執行，參數未指定時使用預設值；執行中回應 409，超過上限回應 400
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> start(@RequestBody(required = false) LoadGeneratorRequest request,
+                                                     ServerWebExchange exchange) {
+        authorize(exchange);
+        LoadGenerator.Settings settings;
+        try {
+            settings = loadGenerator.start(request != null ? request : new LoadGeneratorRequest(0, 0, 0, 0));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("rate", settings.rate());
+        response.put("subscribers", settings.subscribers());
+        response.put("durationSeconds", settings.duration().toSeconds());
+        response.put("failureRatio", settings.failureRatio());
+        response.put("tenant", properties.getTenant());
+        return ResponseEntity.accepted().body(response);
+    }
+
+    // 提前停止；沒有執行中時回應 404
+    @DeleteMapping
+    public ResponseEntity<Void> stop(ServerWebExchange exchange) {
+        authorize(exchange);
+        return loadGenerator.stop() ? ResponseEntity.accepted().build() : ResponseEntity.notFound().build();
+    }
+
+    // 每個統計間隔推送一筆: 速率、錯誤與延遲百分位數 (毫秒)，連上時先收到最近一筆
+    @GetMapping(value = "/stats", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> stats(ServerWebExchange exchange) {
+        authorize(exchange);
+        return loadGenerator.stats()
+                .map(snapshot -> ServerSentEvent.<Map<String, Object>>builder()
+                        .event("stats")
+                        .data(snapshot)
+                        .build());
+    }
+
+    private void authorize(ServerWebExchange exchange) {
+        if (!properties.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        adminAuthorization.authorize(exchange);
+    }
+}
@@ -1,18 +1,45 @@
 package com.bill.sse.controller;
 
-import com.bill.sse.service.PaymentService;
+import com.bill.sse.config.AdminAuthorization;
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.service.CallbackIngest;
+import com.bill.sse.service.ColdOrderStore;
+import com.bill.sse.service.OrderExporter;
+import com.bill.sse.service.OrderPersistence;
+import com.bill.sse.service.OrderStore;
+import com.bill.sse.service.TenantRegistry;
+import com.bill.sse.service.Tracer;
+import com.bill.sse.vo.InitializePaymentRequest;
+import com.bill.sse.vo.OrderRecord;
+import com.bill.sse.vo.PaymentCallbackRequest;
+import com.bill.sse.vo.TraceContext;
+import com.bill.sse.vo.TraceSpan;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/payment")
@@ -21,84 +48,180 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class PaymentController {
 
-    private final PaymentService paymentService;
+    // 高流量的端點: 每個呼叫點各自限流
+    private static final LogLimiter INITIALIZE_LOG = LogLimiter.perSecond(20, 50, 100);
+    private static final LogLimiter INVALID_CALLBACK_LOG = LogLimiter.perSecond(5, 20);
 
-    // 儲存訂單狀態（實際系統應該用資料庫）
-    private final Map<String, String> orderStatus = new ConcurrentHashMap<>();
+    // 儲存訂單狀態，PENDING 逾時後由 OrderStore 改為 EXPIRED
+    private final OrderStore orderStore;
+
+    // callback 先放進有界佇列再回應，更新訂單與發布事件在背景處理
+    private final CallbackIngest callbackIngest;
+
+    // 商家以 X-Merchant-Id header 或 merchant 參數指定，未指定時為 default
+    private final TenantRegistry tenantRegistry;
+
+    // 訂單狀態寫入資料檔 (sse.persistence.mode)；SYNC 時會呼叫 OrderStore 的端點改在 boundedElastic 上處理
+    private final OrderPersistence orderPersistence;
+
+    // 保留期限到期的訂單 (sse.cold-storage)，只提供統計；查詢經由 OrderStore
+    private final ColdOrderStore coldOrderStore;
+
+    // 對帳用的訂單匯出，在獨立的 thread 逐批產生
+    private final OrderExporter orderExporter;
+
+    // 訂單匯出、trace 查詢與監控統計只限管理者
+    private final AdminAuthorization adminAuthorization;
+
+    // trace 由 TracingFilter 放進 Reactor Context，隨 callback 帶到發布的事件
+    private final Tracer tracer;
 
     // init 付款
     @PostMapping("/initialize")
-    public ResponseEntity<Map<String, Object>> initializePayment(@RequestBody Map<String, Object> paymentRequest, ServerWebExchange exchange) {
+    public Mono<ResponseEntity<Map<String, Object>>> initializePayment(@RequestBody InitializePaymentRequest paymentRequest, ServerWebExchange exchange) {
+        return withOrderStore(() -> initializePayment(paymentRequest.amountDecimal(), exchange));
+    }
 
-        String clientIp = exchange.getRequest().getRemoteAddress() != null ? exchange.getRequest().getRemoteAddress().getHostString() : "unknown";
-        String userAgent = exchange.getRequest().getHeaders().getFirst("User-Agent");
+    private ResponseEntity<Map<String, Object>> initializePayment(BigDecimal amount, ServerWebExchange exchange) {
 
-        log.info("收到初始化付款請求, 客戶端: {}, User-Agent: {}, 請求內容: {}", clientIp, userAgent, paymentRequest);
+        TenantRegistry.Tenant tenant = tenantRegistry.resolve(exchange.getRequest());
+        if (tenant == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "無效的商家"));
+        }
 
         // 模擬建立訂單
         String orderId = UUID.randomUUID().toString();
 
-        BigDecimal amount;
-        Object amountObj = paymentRequest.getOrDefault("amount", new BigDecimal("100.00"));
-
-        if (amountObj instanceof Number) {
-            amount = new BigDecimal(amountObj.toString());
-        } else if (amountObj instanceof String) {
-            try {
-                amount = new BigDecimal((String) amountObj);
-            } catch (NumberFormatException e) {
-                log.error("金額格式無效: {}, 使用預設值 100.00", amountObj);
-                amount = new BigDecimal("100.00");
-            }
-        } else {
-            amount = new BigDecimal("100.00");
-        }
+        // 金額已由 PaymentRequestDecoder 解析，未提供時為預設值 100.00，格式無效的請求已回應 400
+
+        INITIALIZE_LOG.atInfo(log)
+                .addKeyValue("orderId", orderId)
+                .addKeyValue("tenant", tenant.key())
+                .addKeyValue("amount", amount)
+                .addKeyValue("client", clientIp(exchange))
+                .addKeyValue("userAgent", exchange.getRequest().getHeaders().getFirst("User-Agent"))
+                .log("初始化付款");
 
-        // 儲存訂單狀態
-        orderStatus.put(orderId, "PENDING");
+        // 儲存訂單狀態，事件發布到商家自己的 partition
+        orderStore.create(orderId, tenant.key());
 
-        // 生成付款頁面網址
+        // 生成付款頁面網址，付款頁面的 callback 帶上同一個商家
         String paymentUrl = "/third-party-payment.html?orderId=" + orderId + "&amount=" + amount;
+        if (!TenantRegistry.DEFAULT.equals(tenant.key())) {
+            paymentUrl += "&merchant=" + tenant.key();
+        }
 
         Map<String, Object> responseData = new HashMap<>();
         responseData.put("orderId", orderId);
+        responseData.put("merchant", tenant.key());
         responseData.put("amount", amount);
-        responseData.put("status", "PENDING");
+        responseData.put("status", OrderStore.PENDING);
         responseData.put("paymentUrl", paymentUrl);
 
         return ResponseEntity.ok(responseData);
     }
 
     // 第三方付款 callback 介面（模擬）
+    // 放進佇列即回應 202；佇列滿或超過商家的速率上限時回應 429、關機中回應 503，都帶 Retry-After 讓第三方稍後重送
+    // 訂單需屬於 callback 指定的商家，其他商家的訂單視為無效的訂單
     @PostMapping("/callback")
-    public ResponseEntity<String> paymentCallback(@RequestBody Map<String, String> callbackData, ServerWebExchange exchange) {
+    public Mono<ResponseEntity<String>> paymentCallback(@RequestBody PaymentCallbackRequest callbackData, ServerWebExchange exchange) {
+        return Mono.deferContextual(context -> withOrderStore(() -> paymentCallback(callbackData, exchange, Tracer.current(context))));
+    }
 
-        String clientIp = exchange.getRequest().getRemoteAddress() != null ? exchange.getRequest().getRemoteAddress().getHostString() : "unknown";
-        log.info("收到第三方付款 callback, 客戶端: {}, 回調資料: {}", clientIp, callbackData);
+    private ResponseEntity<String> paymentCallback(PaymentCallbackRequest callbackData, ServerWebExchange exchange, TraceContext trace) {
 
-        String orderId = callbackData.get("orderId");
-        String status = callbackData.get("status");
+        String orderId = callbackData.orderId();
+        String status = callbackData.status();
+        TenantRegistry.Tenant tenant = tenantRegistry.resolve(exchange.getRequest());
 
-        if (orderId == null || !orderStatus.containsKey(orderId)) {
-            log.error("付款 callback 失敗, 無效的訂單ID: {}", orderId);
+        if (tenant == null || !tenant.key().equals(orderStore.tenant(orderId))) {
+            INVALID_CALLBACK_LOG.atError(log)
+                    .addKeyValue("orderId", orderId)
+                    .addKeyValue("tenant", tenant != null ? tenant.key() : null)
+                    .addKeyValue("client", clientIp(exchange))
+                    .log("付款 callback 失敗, 無效的訂單ID");
             return ResponseEntity.badRequest().body("無效的訂單");
         }
 
-        // 更新訂單狀態
-        String previousStatus = orderStatus.put(orderId, status);
-        log.info("訂單狀態更新, 訂單ID: {}, 舊狀態: {}, 新狀態: {}", orderId, previousStatus, status);
-
-        // 發布事件通知前端
-        if ("SUCCESS".equals(status)) {
-            paymentService.notifyPaymentSuccess(orderId);
-            log.info("付款成功事件已發送, 訂單ID: {}", orderId);
-        } else {
-            String reason = callbackData.getOrDefault("reason", "未知原因");
-            paymentService.notifyPaymentFailure(orderId, reason);
-            log.info("付款失敗事件已發送, 訂單ID: {}, 原因: {}", orderId, reason);
+        // 更新訂單狀態並發布事件通知前端
+        // 原因過長時截斷 (OrderRecord.MAX_REASON_LENGTH)，避免超過資料檔單筆紀錄的上限
+        String reason = "SUCCESS".equals(status) ? null : callbackData.reason() != null ? OrderRecord.capReason(callbackData.reason()) : "未知原因";
+        return switch (callbackIngest.submit(tenant, orderId, status, reason, clientIp(exchange), trace)) {
+            case PROCESSED -> ResponseEntity.ok("回調處理成功");
+            case QUEUED -> ResponseEntity.status(HttpStatus.ACCEPTED).body("回調已受理");
+            case FULL -> retryLater(HttpStatus.TOO_MANY_REQUESTS, "回調佇列已滿，請稍後重送", callbackIngest.retryAfter());
+            case RATE_LIMITED -> retryLater(HttpStatus.TOO_MANY_REQUESTS, "超過商家的回調速率上限，請稍後重送", tenantRegistry.retryAfter());
+            case STOPPED -> retryLater(HttpStatus.SERVICE_UNAVAILABLE, "服務關閉中，請稍後重送", callbackIngest.retryAfter());
+        };
+    }
+
+    private ResponseEntity<String> retryLater(HttpStatus status, String message, Duration retryAfter) {
+        long retryAfterSeconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(message);
+    }
+
+    // 匯出商家的所有訂單 (記憶體與冷儲存) 供對帳，以 NDJSON 串流輸出，不會先組出完整清單
+    // 商家代碼未經驗證，需帶 admin token 才能匯出
+    // status 可指定多個；from/to 為 ISO-8601 時間 (例如 2024-05-01T00:00:00Z)，比對訂單最後更新的時間，含 from 不含 to
+    @GetMapping(value = "/orders/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<DataBuffer>> exportOrders(@RequestParam(required = false) List<String> status,
+                                                         @RequestParam(required = false) String from,
+                                                         @RequestParam(required = false) String to,
+                                                         ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        TenantRegistry.Tenant tenant = tenantRegistry.resolve(exchange.getRequest());
+        Long fromMillis;
+        Long toMillis;
+        try {
+            fromMillis = from != null ? Instant.parse(from).toEpochMilli() : null;
+            toMillis = to != null ? Instant.parse(to).toEpochMilli() : null;
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (tenant == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        Set<String> statuses = status != null
+                ? status.stream().map(value -> value.trim().toUpperCase(Locale.ROOT)).collect(Collectors.toSet())
+                : null;
+
+        Flux<DataBuffer> body = orderExporter.export(new OrderExporter.Filter(tenant.key(), statuses, fromMillis, toMillis),
+                exchange.getResponse().bufferFactory());
+        if (body == null) {
+            long retryAfterSeconds = Math.max(1, orderExporter.retryAfter().toSeconds());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
         }
+        log.info("開始匯出訂單, 商家: {}, 狀態: {}, 時間範圍: {} ~ {}, 客戶端: {}", tenant.key(), statuses, from, to, clientIp(exchange));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
 
-        return ResponseEntity.ok("callback 成功");
+    // sse.tracing.exporter=memory 時保留的指定 trace 的 span，依開始時間排序
+    // span 帶有訂單與連接代碼，只限管理者
+    @GetMapping("/traces/{traceId}")
+    public List<TraceSpan> getTrace(@PathVariable String traceId, ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return tracer.spans(traceId).stream()
+                .sorted(Comparator.comparingLong(TraceSpan::startEpochMillis))
+                .toList();
+    }
+
+    // 訂單寫入資料檔的模式、批次大小與寫入時間（用於監控）
+    @GetMapping("/persistence")
+    public Map<String, Object> getPersistenceStats(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return orderPersistence.stats();
+    }
+
+    // 冷儲存的 segment 數、訂單數與查詢統計（用於監控）
+    @GetMapping("/cold-storage")
+    public Map<String, Object> getColdStorageStats(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return coldOrderStore.stats();
     }
 
     // 檢查訂單狀態
@@ -108,12 +231,12 @@ public class PaymentController {
         String clientIp = exchange.getRequest().getRemoteAddress() != null ? exchange.getRequest().getRemoteAddress().getHostString() : "unknown";
         log.info("檢查訂單狀態, 訂單ID: {}, 客戶端: {}", orderId, clientIp);
 
-        if (!orderStatus.containsKey(orderId)) {
+        String status = orderStore.status(orderId);
+        if (status == null) {
             log.warn("訂單不存在, 訂單ID: {}", orderId);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("status", "NOT_FOUND"));
         }
 
-        String status = orderStatus.get(orderId);
         log.info("訂單狀態查詢成功, 訂單ID: {}, 狀態: {}", orderId, status);
 
         return ResponseEntity.ok(Map.of("status", status));
@@ -121,20 +244,22 @@ public class PaymentController {
 
     // 模擬付款成功（測試用）
     @PostMapping("/{orderId}/simulate-success")
-    public ResponseEntity<String> simulateSuccess(@PathVariable String orderId, ServerWebExchange exchange) {
+    public Mono<ResponseEntity<String>> simulateSuccess(@PathVariable String orderId, ServerWebExchange exchange) {
+        return Mono.deferContextual(context -> withOrderStore(() -> simulateSuccess(orderId, exchange, Tracer.current(context))));
+    }
+
+    private ResponseEntity<String> simulateSuccess(String orderId, ServerWebExchange exchange, TraceContext trace) {
 
         String clientIp = exchange.getRequest().getRemoteAddress() != null ? exchange.getRequest().getRemoteAddress().getHostString() : "unknown";
         log.info("收到模擬付款成功請求, 訂單ID: {}, 客戶端: {}", orderId, clientIp);
 
-        if (!orderStatus.containsKey(orderId)) {
+        if (!orderStore.contains(orderId)) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("訂單不存在");
         }
 
         // 更新狀態並發送通知
-        String previousStatus = orderStatus.put(orderId, "SUCCESS");
+        String previousStatus = orderStore.transition(orderId, "SUCCESS", null, trace);
         log.info("訂單狀態更新, 訂單ID: {}, 舊狀態: {}, 新狀態: SUCCESS", orderId, previousStatus);
-
-        paymentService.notifyPaymentSuccess(orderId);
         log.info("模擬付款成功事件已發送, 訂單ID: {}", orderId);
 
         return ResponseEntity.ok("已模擬付款成功");
@@ -142,26 +267,39 @@ public class PaymentController {
 
     // 模擬付款失敗（測試用）
     @PostMapping("/{orderId}/simulate-failure")
-    public ResponseEntity<String> simulateFailure(@PathVariable String orderId, @RequestBody(required = false) Map<String, String> payload, ServerWebExchange exchange) {
+    public Mono<ResponseEntity<String>> simulateFailure(@PathVariable String orderId, @RequestBody(required = false) Map<String, String> payload, ServerWebExchange exchange) {
+        return Mono.deferContextual(context -> withOrderStore(() -> simulateFailure(orderId, payload, exchange, Tracer.current(context))));
+    }
+
+    private ResponseEntity<String> simulateFailure(String orderId, Map<String, String> payload, ServerWebExchange exchange, TraceContext trace) {
 
         String clientIp = exchange.getRequest().getRemoteAddress() != null ? exchange.getRequest().getRemoteAddress().getHostString() : "unknown";
         log.info("收到模擬付款失敗請求, 訂單ID: {}, 客戶端: {}, 請求內容: {}", orderId, clientIp, payload);
 
-        if (!orderStatus.containsKey(orderId)) {
+        if (!orderStore.contains(orderId)) {
             log.warn("模擬付款失敗, 訂單不存在, 訂單ID: {}", orderId);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("訂單不存在");
         }
 
         // 取得失敗原因或使用預設原因
-        String reason = (payload != null && payload.containsKey("reason")) ? payload.get("reason") : "使用者取消付款";
+        String reason = (payload != null && payload.containsKey("reason")) ? OrderRecord.capReason(payload.get("reason")) : "使用者取消付款";
 
         // 更新狀態並發送通知
-        String previousStatus = orderStatus.put(orderId, "FAILURE");
+        String previousStatus = orderStore.transition(orderId, "FAILURE", reason, trace);
         log.info("訂單狀態更新, 訂單ID: {}, 舊狀態: {}, 新狀態: FAILURE, 原因: {}", orderId, previousStatus, reason);
-
-        paymentService.notifyPaymentFailure(orderId, reason);
         log.info("模擬付款失敗事件已發送, 訂單ID: {}, 原因: {}", orderId, reason);
 
         return ResponseEntity.ok("已模擬付款失敗");
     }
+
+    // sse.persistence.mode=sync 時建立訂單與狀態轉換會等待寫檔與 fsync，不能在 event loop 上執行
+    // (callback 佇列關閉時 callback 也在請求 thread 處理)
+    private <T> Mono<T> withOrderStore(Supplier<T> call) {
+        Mono<T> result = Mono.fromSupplier(call);
+        return orderPersistence.isSync() ? result.subscribeOn(Schedulers.boundedElastic()) : result;
+    }
+
+    private static String clientIp(ServerWebExchange exchange) {
+        return exchange.getRequest().getRemoteAddress() != null ? exchange.getRequest().getRemoteAddress().getHostString() : "unknown";
+    }
 }
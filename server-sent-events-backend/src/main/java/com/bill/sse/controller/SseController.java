@@ -1,23 +1,56 @@
 package com.bill.sse.controller;
 
+import com.bill.sse.config.AdminAuthorization;
+import com.bill.sse.config.ChannelWritabilityHandler;
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.config.SseConnectionProperties;
+import com.bill.sse.service.AdmissionControl;
+import com.bill.sse.service.CompactEventCodec;
+import com.bill.sse.service.ConnectionReaper;
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.DrainCoordinator;
+import com.bill.sse.service.EncodedPaymentEvent;
+import com.bill.sse.service.EventFilter;
+import com.bill.sse.service.EventFilterRegistry;
+import com.bill.sse.service.FlightEvents;
+import com.bill.sse.service.LoadShedder;
+import com.bill.sse.service.OrderEventRouter;
+import com.bill.sse.service.OrderStore;
 import com.bill.sse.service.PaymentService;
+import com.bill.sse.service.SseConnection;
+import com.bill.sse.service.TenantRegistry;
+import com.bill.sse.service.Tracer;
+import com.bill.sse.vo.ConnectionSnapshot;
 import com.bill.sse.vo.PaymentEvent;
+import com.bill.sse.vo.SubscriptionRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.Channel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
-import org.springframework.web.bind.annotation.CrossOrigin;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
 
-import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 @RequestMapping("/api/sse")
@@ -26,75 +59,523 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Slf4j
 public class SseController {
 
+    // SSE frame 中 "id:", "event:", "data:" 以及換行所佔的固定位元組數
+    private static final int FRAME_OVERHEAD_BYTES = 3 + 1 + 6 + 1 + 5 + 2;
+
+    // 指定訂單的連接變更自己的訂閱時帶上建立連接時收到的 token
+    static final String SUBSCRIPTION_TOKEN_HEADER = "X-Subscription-Token";
+
+    // 連接數多時建立/終止的 log 會很頻繁，各自限流
+    private static final LogLimiter OPENED_LOG = LogLimiter.perSecond(20, 50, 100);
+    private static final LogLimiter CLOSED_LOG = LogLimiter.perSecond(20, 50, 100);
+    private static final LogLimiter ERROR_LOG = LogLimiter.perSecond(5, 20);
+
+    // 個別連接的除錯 log，不受限流
+    private static final Logger connectionLog = LoggerFactory.getLogger("com.bill.sse.connection");
+
     private final PaymentService paymentService;
-    private static final AtomicInteger activeConnections = new AtomicInteger(0);
+    private final AdminAuthorization adminAuthorization;
+    private final ConnectionRegistry connectionRegistry;
+    private final AdmissionControl admissionControl;
+    private final DrainCoordinator drainCoordinator;
+    private final LoadShedder loadShedder;
+    private final OrderStore orderStore;
+    private final OrderEventRouter orderEventRouter;
+    private final EventFilterRegistry eventFilterRegistry;
+    private final ConnectionReaper connectionReaper;
+    private final TenantRegistry tenantRegistry;
+    private final Tracer tracer;
+    private final SseConnectionProperties connectionProperties;
+    private final ObjectMapper objectMapper;
+
+    // 未指定 Accept (*/*) 時預設為 SSE；商家以 X-Merchant-Id header 或 merchant 參數指定，只會收到該商家的事件
+    // 未指定 orderId 時訂閱全部事件；scoped=true 時只接收之後以 POST /subscriptions/{connectionId} 加入的訂單
+    // filter 只送出符合條件的事件，例如 filter=status in (FAILURE) and eventType = PAYMENT_STATUS (語法見 EventFilter)
+    @GetMapping(value = "/payment-events", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.ALL_VALUE})
+    public Flux<ServerSentEvent<String>> streamEvents(@RequestParam(value = "orderId", required = false) List<String> orderIds,
+                                                      @RequestParam(defaultValue = "false") boolean scoped,
+                                                      @RequestParam(required = false) String filter,
+                                                      ServerWebExchange exchange) {
+        return openConnection(orderIds, scoped, filter, exchange, sseFormat);
+    }
 
-    @GetMapping(value = "/payment-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<PaymentEvent>> streamEvents(ServerWebExchange exchange) {
+    // 原生 App 以 Accept 指定精簡的二進位格式，生命週期與 SSE 相同
+    @GetMapping(value = "/payment-events", produces = CompactEventCodec.MEDIA_TYPE_VALUE)
+    public Mono<Void> streamCompactEvents(@RequestParam(value = "orderId", required = false) List<String> orderIds,
+                                          @RequestParam(defaultValue = "false") boolean scoped,
+                                          @RequestParam(required = false) String filter,
+                                          ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().setContentType(CompactEventCodec.MEDIA_TYPE);
+        DataBufferFactory bufferFactory = response.bufferFactory();
+        return response.writeAndFlushWith(openConnection(orderIds, scoped, filter, exchange, compactFormat)
+                .map(frame -> Mono.just(bufferFactory.wrap(frame))));
+    }
+
+    private <T> Flux<T> openConnection(List<String> orderIds, boolean scoped, String filter, ServerWebExchange exchange,
+                                       FrameFormat<T> format) {
         // 追蹤使用
-        String connectionId = UUID.randomUUID().toString().substring(0, 8);
         String clientIp = exchange.getRequest().getRemoteAddress() != null ? exchange.getRequest().getRemoteAddress().getHostString() : "unknown";
         String userAgent = exchange.getRequest().getHeaders().getFirst("User-Agent");
+        Set<String> subscribedOrders = orderIds != null ? Set.copyOf(orderIds) : Set.of();
+        TenantRegistry.Tenant tenant = tenantRegistry.resolve(exchange.getRequest());
+        // 以 Netty 執行時取得底層 channel，追蹤客戶端是否跟得上
+        Channel channel = channelOf(exchange.getRequest());
+
+        // Flux.using 保證連接無論完成、錯誤或取消都只會被移除一次
+        return Flux.using(
+                () -> {
+                    // 商家或條件錯誤時在送出 header 前結束，回應 400
+                    if (tenant == null) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "無效的商家");
+                    }
+                    EventFilter eventFilter;
+                    try {
+                        eventFilter = filter != null ? eventFilterRegistry.acquire(filter) : null;
+                    } catch (IllegalArgumentException e) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "過濾條件錯誤: " + e.getMessage());
+                    }
+                    SseConnection connection = connectionRegistry.register(tenant.key(), clientIp, userAgent, subscribedOrders,
+                            scoped || !subscribedOrders.isEmpty());
+                    connection.setFilter(eventFilter);
+                    if (channel != null) {
+                        ChannelWritabilityHandler.bind(channel, connection);
+                    }
+                    FlightEvents.ConnectionOpened opened = new FlightEvents.ConnectionOpened();
+                    if (opened.isEnabled()) {
+                        opened.connectionId = connection.getId();
+                        opened.tenant = tenant.key();
+                        opened.client = clientIp;
+                        opened.scoped = connection.isScoped();
+                        opened.orders = subscribedOrders.size();
+                        opened.commit();
+                    }
+                    OPENED_LOG.atInfo(log)
+                            .addKeyValue("connectionId", connection.getId())
+                            .addKeyValue("tenant", tenant.key())
+                            .addKeyValue("client", clientIp)
+                            .addKeyValue("userAgent", userAgent)
+                            .addKeyValue("orders", subscribedOrders)
+                            .addKeyValue("filter", eventFilter != null ? eventFilter.expression() : null)
+                            .addKeyValue("connections", connectionRegistry.size())
+                            .log("SSE 連接已建立");
+                    return connection;
+                },
+                connection -> connectionEvents(connection, format),
+                connection -> {
+                    connectionRegistry.unregister(connection);
+                    if (channel != null) {
+                        ChannelWritabilityHandler.unbind(channel, connection);
+                    }
+                    if (connection.getFilter() != null) {
+                        eventFilterRegistry.release(connection.getFilter());
+                    }
+                    FlightEvents.ConnectionClosed closedEvent = new FlightEvents.ConnectionClosed();
+                    if (closedEvent.isEnabled()) {
+                        closedEvent.connectionId = connection.getId();
+                        closedEvent.tenant = connection.getTenant();
+                        closedEvent.reason = connection.getCloseReason();
+                        closedEvent.eventsSent = connection.getEventsSent().get();
+                        closedEvent.bytesSent = connection.getBytesSent().get();
+                        closedEvent.lifetime = System.currentTimeMillis() - connection.getOpenedAt();
+                        closedEvent.commit();
+                    }
+                    LoggingEventBuilder closed = connection.isDebug() ? connectionLog.atInfo() : CLOSED_LOG.atInfo(log);
+                    closed.addKeyValue("connectionId", connection.getId())
+                            .addKeyValue("client", clientIp)
+                            .addKeyValue("reason", connection.getCloseReason())
+                            .addKeyValue("eventsSent", connection.getEventsSent().get())
+                            .addKeyValue("connections", connectionRegistry.size())
+                            .log("SSE 連接已終止");
+                });
+    }
+
+    // mock request (WebTestClient) 沒有底層的 native request
+    private static Channel channelOf(ServerHttpRequest request) {
+        try {
+            return ServerHttpRequestDecorator.getNativeRequest(request) instanceof Connection nettyConnection
+                    ? nettyConnection.channel() : null;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private <T> Flux<T> connectionEvents(SseConnection connection, FrameFormat<T> format) {
+        // 連線後立即送出，讓 response header 馬上送達客戶端
+        Flux<T> opened = Flux.just(format.opened(connection));
 
-        // 計算並 log
-        int currentConnections = activeConnections.incrementAndGet();
-
-        log.info("SSE 連接已建立, 連接ID: {}, 客戶端: {}, User-Agent: {}, current 連接數: {}", connectionId, clientIp, userAgent, currentConnections);
-
-        // 創建 heartbeat，每30秒發送一次保持連接
-        Flux<ServerSentEvent<PaymentEvent>> heartbeat = Flux.interval(Duration.ofSeconds(30))
-                .map(tick -> ServerSentEvent.<PaymentEvent>builder()
-                        .id(String.valueOf(tick))
-                        .event("heartbeat")
-                        .data(PaymentEvent.createHeartbeatEvent())
-                        .build()
-                );
-
-        // 轉換事件流為 ServerSentEvent 格式
-        Flux<ServerSentEvent<PaymentEvent>> paymentEvents = paymentService.getPaymentEvents()
-                .map(event -> ServerSentEvent.<PaymentEvent>builder()
-                        .id(event.orderId() != null ? event.orderId() : UUID.randomUUID().toString())
-                        .event(event.eventType())
-                        .data(event)
-                        .build()
-                );
-
-        // 合併 heartbeat 和 event 事件流
-        Flux<ServerSentEvent<PaymentEvent>> combinedFlux = Flux.merge(paymentEvents, heartbeat);
-
-        // 使用 doOnCancel 和 doFinally 來追蹤連接關閉情況
-        return combinedFlux
-                .doOnNext(event -> {
-                    log.debug("SSE 事件發送, 連接ID: {}, 事件類型: {}, 訂單ID: {}, 狀態: {}",
-                            connectionId,
-                            event.event(),
-                            event.data() != null ? event.data().orderId() : "null",
-                            event.data() != null ? event.data().status() : "null");
+        // 創建 heartbeat，保持連接；降載時拉長間隔或暫停，channel 無法寫入時略過
+        boolean pauseWhenUnwritable = connectionProperties.isPauseWhenUnwritable();
+        Flux<T> heartbeat = Flux.interval(connectionProperties.getHeartbeatInterval())
+                .filter(tick -> !pauseWhenUnwritable || connection.isWritable())
+                .filter(loadShedder::shouldSendHeartbeat)
+                .map(tick -> {
+                    if (connection.isDebug()) {
+                        connectionLog.atInfo()
+                                .addKeyValue("connectionId", connection.getId())
+                                .addKeyValue("tick", tick)
+                                .log("heartbeat");
+                    }
+                    return format.heartbeat(connection, tick);
+                });
+
+        // 指定訂單的連接由索引投遞 (註冊時已加入索引)，成本只與訂閱該訂單的連接數有關；訂閱全部的連接直接接所屬商家的 sink
+        String tenant = connection.getTenant();
+        Flux<EncodedPaymentEvent> liveEvents = connection.isScoped()
+                ? Flux.using(() -> orderEventRouter.attach(tenant), attached -> connection.inbox(), Disposable::dispose)
+                : paymentService.getEncodedEvents(tenant).filter(connection::accepts);
+        // 指定訂單時先開始接收即時事件再讀取快照，callback 早於連接建立或發生在兩者之間都不會漏掉；重疊的部分以版本略過
+        // 其他商家的訂單不送出快照
+        if (connectionProperties.isSnapshotOnSubscribe() && connection.isScoped()) {
+            liveEvents = Flux.merge(liveEvents, Flux.defer(() -> Flux.fromIterable(connection.getOrderIds())
+                    .mapNotNull(orderStore::snapshot)
+                    .filter(connection::accepts)));
+        }
+
+        // 每條連接有自己的有界佇列，慢的客戶端只會丟掉自己的舊事件，不會拖慢共用的 sink
+        // 降載時同一訂單在佇列中只保留最新的事件
+        // 過濾條件在進入佇列前套用，相同條件的連接共用同一次計算結果
+        Flux<EncodedPaymentEvent> queued = liveEvents
+                .filter(connection::isNewVersion)
+                .filter(encoded -> {
+                    EventFilter eventFilter = connection.getFilter();
+                    if (eventFilter == null || eventFilter.test(encoded)) {
+                        return true;
+                    }
+                    connection.onFiltered(format.frameSize(encoded));
+                    return false;
                 })
-                .doOnCancel(() -> {
-                    int remaining = activeConnections.decrementAndGet();
-                    log.info("SSE 連接被取消, 連接ID: {}, 客戶端: {}, 剩餘活躍連接數: {}",
-                            connectionId, clientIp, remaining);
+                .doOnNext(encoded -> {
+                    connection.onEnqueued();
+                    if (loadShedder.shouldConflate()) {
+                        connection.trackLatest(encoded.event());
+                    }
                 })
-                .doOnError(error -> {
-                    log.error("SSE 連接發生錯誤, 連接ID: {}, 客戶端: {}, 錯誤: {}",
-                            connectionId, clientIp, error.getMessage(), error);
+                .onBackpressureBuffer(connectionProperties.getMaxQueueSize(),
+                        dropped -> connection.onDropped(dropped.event()),
+                        BufferOverflowStrategy.DROP_OLDEST);
+        // channel 無法寫入時事件停在佇列中，不交給 writer；恢復可寫後才繼續，期間的合併與丟棄照常在佇列中進行
+        if (pauseWhenUnwritable) {
+            queued = queued.delayUntil(encoded -> connection.whenWritable());
+        }
+
+        Flux<T> paymentEvents = queued
+                .doOnNext(encoded -> connection.onDequeued())
+                .filter(encoded -> {
+                    if (connection.isSuperseded(encoded.event())) {
+                        loadShedder.record(LoadShedder.Action.EVENT_CONFLATED);
+                        return false;
+                    }
+                    return true;
                 })
-                // 記錄連接終止（無論是完成、錯誤還是取消）
-                .doFinally(signalType -> {
-                    if (signalType != SignalType.CANCEL) { // 只有在非取消場景下才減少計數（避免重複計算）
-                        int remaining = activeConnections.decrementAndGet();
-                        log.info("SSE 連接已終止, 連接ID: {}, 終止類型: {}, 客戶端: {}, 剩餘連接數: {}",
-                                connectionId, signalType, clientIp, remaining);
+                .map(encoded -> {
+                    PaymentEvent event = encoded.event();
+                    String eventId = event.orderId() != null ? event.orderId() : UUID.randomUUID().toString();
+                    connection.onEventId(eventId);
+                    // 個別連接的除錯 log，由 PUT /connections/{id}/debug 開關
+                    if (connection.isDebug()) {
+                        connectionLog.atInfo()
+                                .addKeyValue("connectionId", connection.getId())
+                                .addKeyValue("eventId", eventId)
+                                .addKeyValue("type", event.eventType())
+                                .addKeyValue("status", event.status())
+                                .addKeyValue("queueDepth", connection.getQueueDepth().get())
+                                .addKeyValue("dropped", connection.getEventsDropped().get())
+                                .log("SSE 事件發送");
+                    }
+                    FlightEvents.EventWritten written = new FlightEvents.EventWritten();
+                    written.begin();
+                    T frame = format.event(connection, eventId, encoded);
+                    if (written.shouldCommit()) {
+                        written.orderId = event.orderId();
+                        written.connectionId = connection.getId();
+                        written.format = format.name();
+                        written.bytes = format.frameSize(encoded);
+                        written.queueDepth = connection.getQueueDepth().get();
+                        written.snapshot = encoded.isSnapshot();
+                        // 快照帶的是原事件的發布時間，經過時間沒有意義
+                        written.sincePublished = !encoded.isSnapshot() && encoded.publishedAt() != 0
+                                ? System.nanoTime() - encoded.publishedAt() : 0;
+                        written.commit();
+                    }
+                    // 取樣到的 trace: 發布到交給這條連接 writer 的時間，快照不屬於發布的投遞路徑
+                    if (encoded.trace() != null && encoded.trace().sampled() && !encoded.isSnapshot()
+                            && encoded.publishedAt() != 0) {
+                        tracer.span(encoded.trace(), "sse.deliver", event.orderId(), connection.getId(),
+                                encoded.publishedAt(), System.nanoTime());
                     }
+                    return frame;
                 });
+
+        // 合併 heartbeat 和 event 事件流，收到關閉訊號時結束；drain 關閉時最後再送出重連指示
+        return opened.concatWith(Flux.merge(paymentEvents, heartbeat))
+                .takeUntilOther(connection.onClose())
+                .concatWith(Mono.defer(() -> connection.getReconnectDelay() != null
+                        ? Mono.just(format.drain(connection))
+                        : Mono.empty()))
+                .doOnError(error -> ERROR_LOG.atError(log)
+                        .addKeyValue("connectionId", connection.getId())
+                        .addKeyValue("client", connection.getClientIp())
+                        .setCause(error)
+                        .log("SSE 連接發生錯誤"));
+    }
+
+    // 連接中各種 frame 的輸出格式
+    private interface FrameFormat<T> {
+
+        // JFR 事件中的格式名稱
+        String name();
+
+        T opened(SseConnection connection);
+
+        T heartbeat(SseConnection connection, long tick);
+
+        T event(SseConnection connection, String id, EncodedPaymentEvent event);
+
+        // 事件 frame 的位元組數，用來統計被過濾的事件節省的頻寬
+        int frameSize(EncodedPaymentEvent event);
+
+        // drain 的最後一個 frame: 帶上隨機的 retry 以及最後的事件 id，客戶端重連時會帶回 Last-Event-ID
+        T drain(SseConnection connection);
     }
 
-    // 獲取當前 active 的 SSE 連接數量（用於監控）
+    // text/event-stream: data 為 JSON，每個事件只序列化一次
+    private final FrameFormat<ServerSentEvent<String>> sseFormat = new FrameFormat<>() {
+
+        @Override
+        public String name() {
+            return "sse";
+        }
+
+        // 指定訂單的連接在連接ID之後帶上變更訂閱用的 token: "connected <連接ID> <token>"
+        // 只用 comment，不會多出客戶端需要略過的事件
+        @Override
+        public ServerSentEvent<String> opened(SseConnection connection) {
+            String token = connection.getSubscriptionToken();
+            return ServerSentEvent.<String>builder()
+                    .comment("connected " + connection.getId() + (token != null ? " " + token : ""))
+                    .build();
+        }
+
+        @Override
+        public ServerSentEvent<String> heartbeat(SseConnection connection, long tick) {
+            return event(connection, String.valueOf(tick), new EncodedPaymentEvent(PaymentEvent.createHeartbeatEvent()));
+        }
+
+        @Override
+        public ServerSentEvent<String> event(SseConnection connection, String id, EncodedPaymentEvent event) {
+            String json = event.json(objectMapper);
+            connection.onWritten(frameSize(id, event));
+            return ServerSentEvent.<String>builder()
+                    .id(id)
+                    .event(event.event().eventType())
+                    .data(json)
+                    .build();
+        }
+
+        // 沒有 orderId 的事件以 UUID 作為 id
+        @Override
+        public int frameSize(EncodedPaymentEvent event) {
+            String orderId = event.event().orderId();
+            event.json(objectMapper);
+            return FRAME_OVERHEAD_BYTES + (orderId != null ? orderId.length() : 36) + event.event().eventType().length()
+                    + event.jsonLength();
+        }
+
+        private int frameSize(String id, EncodedPaymentEvent event) {
+            return FRAME_OVERHEAD_BYTES + id.length() + event.event().eventType().length() + event.jsonLength();
+        }
+
+        @Override
+        public ServerSentEvent<String> drain(SseConnection connection) {
+            ServerSentEvent.Builder<String> builder = ServerSentEvent.<String>builder()
+                    .retry(connection.getReconnectDelay())
+                    .comment("draining");
+            if (connection.getLastEventId() != null) {
+                builder.id(connection.getLastEventId());
+            }
+            return builder.build();
+        }
+    };
+
+    // application/x-payment-event-compact: 事件 frame 只編碼一次，所有連接寫出同一個 byte[]
+    private final FrameFormat<byte[]> compactFormat = new FrameFormat<>() {
+
+        @Override
+        public String name() {
+            return "compact";
+        }
+
+        @Override
+        public byte[] opened(SseConnection connection) {
+            return CompactEventCodec.openFrame(connection.getId(), connection.getSubscriptionToken());
+        }
+
+        @Override
+        public byte[] heartbeat(SseConnection connection, long tick) {
+            byte[] frame = CompactEventCodec.heartbeatFrame();
+            connection.onWritten(frame.length);
+            return frame;
+        }
+
+        @Override
+        public byte[] event(SseConnection connection, String id, EncodedPaymentEvent event) {
+            byte[] frame = event.compactFrame();
+            connection.onWritten(frame.length);
+            return frame;
+        }
+
+        @Override
+        public int frameSize(EncodedPaymentEvent event) {
+            return event.compactFrame().length;
+        }
+
+        @Override
+        public byte[] drain(SseConnection connection) {
+            return CompactEventCodec.reconnectFrame(connection.getReconnectDelay(), connection.getLastEventId());
+        }
+    };
+
+    // 獲取當前 active 的 SSE 連接數量（用於監控），只有數量，不需要 admin token
     @GetMapping("/connections")
     public Map<String, Integer> getActiveConnections() {
-        int count = activeConnections.get();
+        int count = connectionRegistry.size();
         log.info("current 連接數: {}", count);
         return Map.of("activeConnections", count);
     }
+
+    // 變更連接訂閱的訂單 (商家後台以一條連接監看多筆訂單)，新增的訂單會先送出目前狀態
+    // 帶上建立連接時收到的 token (X-Subscription-Token) 只能變更該連接；沒有或不符時需帶 admin token
+    @PostMapping("/subscriptions/{connectionId}")
+    public ResponseEntity<Map<String, Object>> updateSubscriptions(@PathVariable String connectionId,
+                                                                   @RequestBody SubscriptionRequest request,
+                                                                   ServerWebExchange exchange) {
+        SseConnection connection = connectionRegistry.get(connectionId);
+        if (connection == null
+                || !connection.matchesSubscriptionToken(exchange.getRequest().getHeaders().getFirst(SUBSCRIPTION_TOKEN_HEADER))) {
+            adminAuthorization.authorize(exchange);
+        }
+        if (connection == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("connectionId", connectionId, "error", "連接不存在"));
+        }
+        if (!connection.isScoped()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("connectionId", connectionId, "error", "連接已訂閱全部訂單，請以 scoped=true 建立連接"));
+        }
+        List<String> add = request.add() != null ? request.add() : List.of();
+        List<String> remove = request.remove() != null ? request.remove() : List.of();
+
+        int removed = connectionRegistry.unsubscribe(connection, remove);
+        long newOrders = add.stream().distinct().filter(orderId -> !connection.getOrderIds().contains(orderId)).count();
+        if (connection.getOrderIds().size() + newOrders > connectionProperties.getMaxSubscriptions()) {
+            return ResponseEntity.badRequest().body(Map.of("connectionId", connectionId, "removed", removed,
+                    "error", "訂閱數超過上限 " + connectionProperties.getMaxSubscriptions()));
+        }
+        List<String> added = connectionRegistry.subscribe(connection, add);
+        // 先加入索引再讀取快照，與建立連接時相同
+        if (connectionProperties.isSnapshotOnSubscribe()) {
+            for (String orderId : added) {
+                EncodedPaymentEvent snapshot = orderStore.snapshot(orderId);
+                if (snapshot != null && connection.accepts(snapshot)) {
+                    connection.deliver(snapshot);
+                }
+            }
+        }
+        return ResponseEntity.ok(Map.of("connectionId", connectionId, "added", added.size(), "removed", removed,
+                "subscribed", connection.getOrderIds().size()));
+    }
+
+    // 以下為管理端點，需帶 admin token (sse.admin.token)
+
+    // 分頁列出連接明細，以串流方式輸出，不會先組出完整清單
+    @GetMapping(value = "/connections/details", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<ConnectionSnapshot> getConnectionDetails(@RequestParam(defaultValue = "0") int page,
+                                                         @RequestParam(defaultValue = "100") int size,
+                                                         @RequestParam(defaultValue = "false") boolean laggingOnly,
+                                                         ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return connectionRegistry.snapshots(Math.max(page, 0), Math.clamp(size, 1, 1000), laggingOnly);
+    }
+
+    // 強制關閉指定連接
+    @DeleteMapping("/connections/{connectionId}")
+    public ResponseEntity<Map<String, Object>> closeConnection(@PathVariable String connectionId,
+                                                               @RequestParam(defaultValue = "admin") String reason,
+                                                               ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        if (!connectionRegistry.close(connectionId, reason)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("connectionId", connectionId, "closed", false));
+        }
+        return ResponseEntity.ok(Map.of("connectionId", connectionId, "closed", true));
+    }
+
+    // 開關單一連接的除錯 log
+    @PutMapping("/connections/{connectionId}/debug")
+    public ResponseEntity<Map<String, Object>> setConnectionDebug(@PathVariable String connectionId,
+                                                                  @RequestParam(defaultValue = "true") boolean enabled,
+                                                                  ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        if (!connectionRegistry.setDebug(connectionId, enabled)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("connectionId", connectionId, "debug", false));
+        }
+        return ResponseEntity.ok(Map.of("connectionId", connectionId, "debug", enabled));
+    }
+
+    // 關閉所有落後的連接
+    @PostMapping("/connections/close-lagging")
+    public Map<String, Integer> closeLaggingConnections(@RequestParam(defaultValue = "lagging") String reason,
+                                                        ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return Map.of("closed", connectionRegistry.closeLagging(reason));
+    }
+
+    // 失聯連接的回收統計: 各原因的累計數量與最近回收的連接
+    @GetMapping("/reaper")
+    public Map<String, Object> getReaperStats(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return connectionReaper.stats();
+    }
+
+    // 各商家的連接數、被拒絕的請求數與 callback 延遲（用於監控）
+    @GetMapping("/tenants")
+    public Map<String, Object> getTenantStats(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return tenantRegistry.stats();
+    }
+
+    // 准入控制統計（用於監控）
+    @GetMapping("/admission")
+    public Map<String, Object> getAdmissionStats(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return admissionControl.stats();
+    }
+
+    // 開始 drain: 停止接受新連接並分批關閉現有連接
+    @PostMapping("/drain")
+    public Map<String, Object> startDrain(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        drainCoordinator.drain("admin");
+        return drainCoordinator.status();
+    }
+
+    // 取消 drain
+    @DeleteMapping("/drain")
+    public Map<String, Object> cancelDrain(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        drainCoordinator.resume();
+        return drainCoordinator.status();
+    }
+
+    @GetMapping("/drain")
+    public Map<String, Object> getDrainStatus(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return drainCoordinator.status();
+    }
+
+    // 降載狀態（用於監控）
+    @GetMapping("/shedding")
+    public Map<String, Object> getSheddingStatus(ServerWebExchange exchange) {
+        adminAuthorization.authorize(exchange);
+        return loadShedder.status();
+    }
 }
@@ -0,0 +1,293 @@
+package com.bill.sse.repository;
+
+import com.bill.sse.vo.OrderRecord;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * 以單一檔案保存訂單狀態的嵌入式儲存: 檔案只會附加，每批寫入是一次 write 與一次 fsync
+ * 開啟時重播整個檔案得到每筆訂單的最新狀態；舊紀錄超過一半且檔案超過門檻時重寫 (compaction)
+ *
+ * 每筆紀錄為 [長度 int][CRC32 int][內容]，開啟時遇到不完整或 CRC 不符的紀錄 (寫到一半時當機) 就從該處截斷
+ * 開啟時取得檔案的排他鎖，同一時間只能有一個 process 使用同一個檔案
+ */
+@Slf4j
+public class FileOrderRepository implements OrderRepository {
+
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+    // 單筆紀錄的上限，讀取時超過代表長度欄位已損壞，寫入時同樣拒絕超過的紀錄
+    static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    private final Path path;
+    private final boolean fsync;
+    private final long compactThresholdBytes;
+
+    private FileChannel channel;
+    private FileLock lock;
+    // 目前存在的訂單與檔案中的紀錄數，用來判斷是否需要重寫
+    private final Set<String> live = new HashSet<>();
+    private long records;
+
+    public FileOrderRepository(Path path, boolean fsync, long compactThresholdBytes) {
+        this.path = path;
+        this.fsync = fsync;
+        this.compactThresholdBytes = compactThresholdBytes;
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            open();
+            Map<String, OrderRecord> latest = replay(true);
+            live.addAll(latest.keySet());
+            log.info("訂單資料檔已開啟: {}, 訂單數: {}, 紀錄數: {}, 大小: {}", path, live.size(), records, channel.size());
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("無法開啟訂單資料檔: " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized List<String> write(Collection<OrderRecord> saves, Collection<String> deletes) {
+        if (saves.isEmpty() && deletes.isEmpty()) {
+            return List.of();
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(saves.size() * 96 + deletes.size() * 48);
+        List<String> rejected = new ArrayList<>();
+        try {
+            for (OrderRecord record : saves) {
+                // 重播時會把超過上限的紀錄當成損壞並截斷之後的所有紀錄，寫入時就先拒絕
+                // 無法編碼的紀錄 (例如欄位為 null) 同樣只略過這一筆，不讓整批失敗
+                byte[] payload;
+                try {
+                    payload = encodeSave(record);
+                } catch (IOException | RuntimeException e) {
+                    log.error("訂單紀錄無法編碼, 不寫入資料檔: {}, 訂單ID: {}, 原因: {}", path, record.orderId(), e.toString());
+                    rejected.add(record.orderId());
+                    continue;
+                }
+                if (payload.length > MAX_RECORD_BYTES) {
+                    log.error("訂單紀錄超過大小上限, 不寫入資料檔: {}, 訂單ID: {}", path, record.orderId());
+                    rejected.add(record.orderId());
+                    continue;
+                }
+                appendRecord(batch, payload);
+            }
+            for (String orderId : deletes) {
+                appendRecord(batch, encodeDelete(orderId));
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            long position = channel.size();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("寫入訂單資料檔失敗: " + path, e);
+        }
+        // 被拒絕的更新不影響資料檔中該訂單較舊的狀態
+        for (OrderRecord record : saves) {
+            if (!rejected.contains(record.orderId())) {
+                live.add(record.orderId());
+            }
+        }
+        live.removeAll(deletes);
+        records += saves.size() - rejected.size() + deletes.size();
+        compactIfNeeded();
+        return rejected;
+    }
+
+    @Override
+    public synchronized List<OrderRecord> findAll() {
+        try {
+            return new ArrayList<>(replay(false).values());
+        } catch (IOException e) {
+            throw new UncheckedIOException("讀取訂單資料檔失敗: " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized int count() {
+        return live.size();
+    }
+
+    public synchronized long sizeBytes() {
+        try {
+            return channel != null ? channel.size() : 0;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (lock != null && lock.isValid()) {
+                lock.release();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("關閉訂單資料檔失敗: {}", e.getMessage());
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // 同一個 process 內已開啟
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("訂單資料檔已被其他 process 使用: " + path);
+        }
+    }
+
+    // 依序套用所有紀錄；truncate 為 true 時截掉結尾不完整的紀錄
+    private Map<String, OrderRecord> replay(boolean truncate) throws IOException {
+        Map<String, OrderRecord> latest = new LinkedHashMap<>();
+        long size = channel.size();
+        long position = 0;
+        long count = 0;
+        // 不關閉 stream，否則會一起關閉 channel
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 64 * 1024));
+        CRC32 crc = new CRC32();
+        while (position < size) {
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(latest, payload);
+                position += 8 + length;
+                count++;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        if (position < size && truncate) {
+            log.warn("訂單資料檔結尾有不完整的紀錄, 已截斷: {}, 位置: {}, 原大小: {}", path, position, size);
+            channel.truncate(position);
+        }
+        records = count;
+        return latest;
+    }
+
+    private static void apply(Map<String, OrderRecord> latest, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        String orderId = in.readUTF();
+        if (type == DELETE) {
+            latest.remove(orderId);
+            return;
+        }
+        String tenant = in.readUTF();
+        String status = in.readUTF();
+        String reason = in.readBoolean() ? in.readUTF() : null;
+        latest.put(orderId, new OrderRecord(orderId, tenant, status, reason, in.readLong(), in.readLong(), in.readLong()));
+    }
+
+    private static byte[] encodeSave(OrderRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(SAVE);
+        out.writeUTF(record.orderId());
+        out.writeUTF(record.tenant());
+        out.writeUTF(record.status());
+        out.writeBoolean(record.reason() != null);
+        if (record.reason() != null) {
+            out.writeUTF(record.reason());
+        }
+        out.writeLong(record.version());
+        out.writeLong(record.createdAt());
+        out.writeLong(record.updatedAt());
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeDelete(String orderId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(DELETE);
+        out.writeUTF(orderId);
+        return bytes.toByteArray();
+    }
+
+    private static void appendRecord(ByteArrayOutputStream batch, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream out = new DataOutputStream(batch);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    // 先寫到暫存檔並 fsync，再以 rename 取代原檔，重寫途中當機時原檔不受影響
+    private void compactIfNeeded() {
+        try {
+            if (records <= live.size() * 2L || channel.size() < compactThresholdBytes) {
+                return;
+            }
+            long before = channel.size();
+            Collection<OrderRecord> current = replay(false).values();
+            Path temp = path.resolveSibling(path.getFileName() + ".compact");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (OrderRecord record : current) {
+                appendRecord(bytes, encodeSave(record));
+            }
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            close();
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            open();
+            records = current.size();
+            log.info("訂單資料檔已重寫: {}, 訂單數: {}, 大小: {} -> {}", path, current.size(), before, channel.size());
+        } catch (IOException e) {
+            log.warn("重寫訂單資料檔失敗, 下次寫入後再試: {}", e.getMessage());
+        }
+    }
+}
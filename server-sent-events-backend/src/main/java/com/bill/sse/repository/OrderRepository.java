@@ -0,0 +1,25 @@
+package com.bill.sse.repository;
+
+import com.bill.sse.vo.OrderRecord;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 訂單狀態的儲存，寫入以批次為單位: 一次呼叫中的新增、更新與刪除一起寫入
+ */
+public interface OrderRepository extends AutoCloseable {
+
+    // 寫入一批訂單的最新狀態並刪除已移除的訂單，回傳時已寫入 (依實作決定是否 fsync)
+    // 無法儲存的單筆紀錄 (例如超過大小上限) 不寫入也不影響同批的其他紀錄，回傳其訂單代碼
+    List<String> write(Collection<OrderRecord> saves, Collection<String> deletes);
+
+    // 所有訂單的最新狀態，重啟時用來恢復
+    List<OrderRecord> findAll();
+
+    // 目前保存的訂單數
+    int count();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,354 @@
+package com.bill.sse.repository;
+
+import com.bill.sse.vo.OrderRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 不可變的訂單 segment 檔: 依訂單代碼 (UTF-8 bytes) 排序的紀錄，寫入後以 mmap 唯讀開啟
+ *
+ * 檔案結構: [紀錄...][bloom filter][稀疏索引][footer]
+ * 紀錄為 [key 長度 u16][key][內容長度 u16][內容]，查詢時只比對 key，找到後才解析該筆內容；
+ * 記憶體中只保留每 index-interval 筆一個的稀疏索引，bloom filter 直接在 mmap 上檢查
+ *
+ * 查詢只使用絕對位置的讀取，可以多個 thread 同時查詢
+ */
+public final class OrderSegment {
+
+    private static final int MAGIC = 0x4F534547;
+    private static final int FOOTER_BYTES = 48;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int entriesEnd;
+    private final int bloomOffset;
+    private final int bloomBits;
+    private final int hashes;
+    private final long maxUpdatedAt;
+    // 稀疏索引: 每 index-interval 筆的 key 與其在檔案中的位置
+    private final byte[][] indexKeys;
+    private final int[] indexOffsets;
+
+    private OrderSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        int footer = buffer.capacity() - FOOTER_BYTES;
+        if (footer < 0 || buffer.getInt(footer + FOOTER_BYTES - 4) != MAGIC) {
+            throw new IllegalStateException("不是有效的 segment 檔: " + path);
+        }
+        this.count = buffer.getInt(footer);
+        this.bloomOffset = (int) buffer.getLong(footer + 4);
+        int bloomWords = buffer.getInt(footer + 12);
+        this.hashes = buffer.getInt(footer + 16);
+        int indexOffset = (int) buffer.getLong(footer + 20);
+        int indexCount = buffer.getInt(footer + 28);
+        this.maxUpdatedAt = buffer.getLong(footer + 32);
+        this.entriesEnd = bloomOffset;
+        this.bloomBits = bloomWords * Long.SIZE;
+
+        this.indexKeys = new byte[indexCount][];
+        this.indexOffsets = new int[indexCount];
+        int position = indexOffset;
+        for (int i = 0; i < indexCount; i++) {
+            int keyLength = Short.toUnsignedInt(buffer.getShort(position));
+            indexKeys[i] = new byte[keyLength];
+            buffer.get(position + 2, indexKeys[i]);
+            indexOffsets[i] = buffer.getInt(position + 2 + keyLength);
+            position += 6 + keyLength;
+        }
+    }
+
+    public static OrderSegment open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // mapping 在 channel 關閉後仍然有效，直到 buffer 被回收
+            return new OrderSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("無法開啟 segment 檔: " + path, e);
+        }
+    }
+
+    // 排序後寫入暫存檔並 fsync，再以 rename 產生 segment 檔；同一訂單只能出現一次
+    public static OrderSegment write(Path path, Collection<OrderRecord> records, int indexInterval, int bloomBitsPerKey) {
+        List<Entry> entries = new ArrayList<>(records.size());
+        for (OrderRecord record : records) {
+            entries.add(new Entry(record.orderId().getBytes(StandardCharsets.UTF_8), encode(record)));
+        }
+        entries.sort((a, b) -> Arrays.compareUnsigned(a.key, b.key));
+
+        int bloomWords = Math.max(1, (int) (((long) entries.size() * bloomBitsPerKey + Long.SIZE - 1) / Long.SIZE));
+        long[] bloom = new long[bloomWords];
+        int hashes = Math.max(1, (int) Math.round(bloomBitsPerKey * Math.log(2)));
+        long maxUpdatedAt = 0;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 128 + 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        int indexCount = 0;
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                if (i % indexInterval == 0) {
+                    indexOut.writeShort(entry.key.length);
+                    indexOut.write(entry.key);
+                    indexOut.writeInt(out.size());
+                    indexCount++;
+                }
+                out.writeShort(entry.key.length);
+                out.write(entry.key);
+                out.writeShort(entry.value.length);
+                out.write(entry.value);
+                addToBloom(bloom, hashes, entry.key);
+            }
+            for (OrderRecord record : records) {
+                maxUpdatedAt = Math.max(maxUpdatedAt, record.updatedAt());
+            }
+            long bloomOffset = out.size();
+            for (long word : bloom) {
+                out.writeLong(word);
+            }
+            long indexOffset = out.size();
+            index.writeTo(out);
+            out.writeInt(entries.size());
+            out.writeLong(bloomOffset);
+            out.writeInt(bloomWords);
+            out.writeInt(hashes);
+            out.writeLong(indexOffset);
+            out.writeInt(indexCount);
+            out.writeLong(maxUpdatedAt);
+            out.writeInt(0);
+            out.writeInt(MAGIC);
+
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("寫入 segment 檔失敗: " + path, e);
+        }
+        return open(path);
+    }
+
+    // 訂單不在此 segment 時回傳 null
+    public OrderRecord find(String orderId) {
+        byte[] key = orderId.getBytes(StandardCharsets.UTF_8);
+        if (!mightContain(key)) {
+            return null;
+        }
+        int slot = floorIndex(key);
+        if (slot < 0) {
+            return null;
+        }
+        int position = indexOffsets[slot];
+        int end = slot + 1 < indexOffsets.length ? indexOffsets[slot + 1] : entriesEnd;
+        while (position < end) {
+            int keyLength = Short.toUnsignedInt(buffer.getShort(position));
+            int valueLength = Short.toUnsignedInt(buffer.getShort(position + 2 + keyLength));
+            int compare = compareKey(position + 2, keyLength, key);
+            if (compare == 0) {
+                byte[] value = new byte[valueLength];
+                buffer.get(position + 4 + keyLength, value);
+                return decode(orderId, value);
+            }
+            if (compare > 0) {
+                return null;
+            }
+            position += 4 + keyLength + valueLength;
+        }
+        return null;
+    }
+
+    public boolean mightContain(String orderId) {
+        return mightContain(orderId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 依序解析所有紀錄，合併 segment 時使用
+    public List<OrderRecord> readAll() {
+        List<OrderRecord> records = new ArrayList<>(count);
+        iterator().forEachRemaining(records::add);
+        return records;
+    }
+
+    // 依訂單代碼順序逐筆解析，匯出時使用，不會一次解析整個 segment
+    public Iterator<OrderRecord> iterator() {
+        return new Iterator<>() {
+
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < entriesEnd;
+            }
+
+            @Override
+            public OrderRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int keyLength = Short.toUnsignedInt(buffer.getShort(position));
+                byte[] key = new byte[keyLength];
+                buffer.get(position + 2, key);
+                int valueLength = Short.toUnsignedInt(buffer.getShort(position + 2 + keyLength));
+                byte[] value = new byte[valueLength];
+                buffer.get(position + 4 + keyLength, value);
+                position += 4 + keyLength + valueLength;
+                return decode(new String(key, StandardCharsets.UTF_8), value);
+            }
+        };
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long maxUpdatedAt() {
+        return maxUpdatedAt;
+    }
+
+    public long sizeBytes() {
+        return buffer.capacity();
+    }
+
+    // 記憶體中的稀疏索引大小 (估計)
+    public long indexBytes() {
+        long bytes = 16L + indexOffsets.length * 4L;
+        for (byte[] key : indexKeys) {
+            bytes += 16 + key.length;
+        }
+        return bytes;
+    }
+
+    private boolean mightContain(byte[] key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bloomBits);
+            long word = buffer.getLong(bloomOffset + (bit >>> 6) * Long.BYTES);
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addToBloom(long[] bloom, int hashes, byte[] key) {
+        int bits = bloom.length * Long.SIZE;
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits);
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    // FNV-1a 再經 murmur3 的 finalizer 打散，高低 32 bit 作為 double hashing 的兩個 hash
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // 索引中小於等於 key 的最後一個位置，key 比第一筆還小時回傳 -1
+    private int floorIndex(byte[] key) {
+        int low = 0;
+        int high = indexKeys.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(indexKeys[mid], key) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // 直接在 mmap 上比對，不複製 key
+    private int compareKey(int position, int length, byte[] key) {
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int compare = Integer.compare(Byte.toUnsignedInt(buffer.get(position + i)), Byte.toUnsignedInt(key[i]));
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static byte[] encode(OrderRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeUTF(record.tenant());
+            out.writeUTF(record.status());
+            out.writeBoolean(record.reason() != null);
+            if (record.reason() != null) {
+                // 入口已截斷；資料檔恢復的舊紀錄也不能讓整個 segment 寫入失敗
+                out.writeUTF(OrderRecord.capReason(record.reason()));
+            }
+            out.writeLong(record.version());
+            out.writeLong(record.createdAt());
+            out.writeLong(record.updatedAt());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static OrderRecord decode(String orderId, byte[] value) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        try {
+            String tenant = in.readUTF();
+            String status = in.readUTF();
+            String reason = in.readBoolean() ? in.readUTF() : null;
+            return new OrderRecord(orderId, tenant, status, reason, in.readLong(), in.readLong(), in.readLong());
+        } catch (IOException e) {
+            throw new IllegalStateException("segment 檔內容損壞: " + orderId, e);
+        }
+    }
+
+    private record Entry(byte[] key, byte[] value) {
+    }
+}
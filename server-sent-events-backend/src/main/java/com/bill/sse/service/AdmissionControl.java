@@ -0,0 +1,238 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseAdmissionProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * SSE 連接准入控制: 每個 IP 的建立速率、每個 IP 的併發數、全域連接上限
+ * 所有檢查都是 CAS，不使用鎖；每個有連接的 IP 只佔一個固定大小的 IpState
+ */
+@Service
+@Slf4j
+public class AdmissionControl {
+
+    public enum Rejection {
+        GLOBAL_LIMIT,
+        IP_CONCURRENCY,
+        IP_RATE
+    }
+
+    public record Decision(Permit permit, Rejection rejection, Duration retryAfter) {
+
+        public boolean admitted() {
+            return permit != null;
+        }
+    }
+
+    private final SseAdmissionProperties properties;
+    private final LongSupplier nanoClock;
+
+    private final Map<String, IpState> ipStates = new ConcurrentHashMap<>();
+    private final AtomicInteger globalActive = new AtomicInteger();
+    private final Map<Rejection, LongAdder> rejections = new ConcurrentHashMap<>();
+    private final LongAdder evictions = new LongAdder();
+
+    // token bucket 以 GCRA 實作: 每個 token 的間隔與可累積的容忍時間
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+
+    private Disposable evictionTask;
+
+    @Autowired
+    public AdmissionControl(SseAdmissionProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    AdmissionControl(SseAdmissionProperties properties, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.nanoClock = nanoClock;
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / properties.getPerIpRate());
+        this.burstToleranceNanos = emissionIntervalNanos * Math.max(0, properties.getPerIpBurst() - 1);
+        for (Rejection rejection : Rejection.values()) {
+            rejections.put(rejection, new LongAdder());
+        }
+    }
+
+    @PostConstruct
+    void startEviction() {
+        long periodMillis = Math.max(1000, properties.getIdleEviction().toMillis() / 2);
+        evictionTask = Schedulers.single().schedulePeriodically(this::evictIdle, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopEviction() {
+        if (evictionTask != null) {
+            evictionTask.dispose();
+        }
+    }
+
+    // 嘗試取得連接許可
+    public Decision tryAcquire(String clientIp) {
+        if (!tryIncrementBelow(globalActive, properties.getMaxConnections())) {
+            return reject(Rejection.GLOBAL_LIMIT, properties.getRejectRetryAfter());
+        }
+
+        long now = nanoClock.getAsLong();
+        IpState state;
+        while (true) {
+            state = ipStates.get(clientIp);
+            if (state == null) {
+                IpState created = new IpState(now);
+                state = ipStates.putIfAbsent(clientIp, created);
+                if (state == null) {
+                    state = created;
+                }
+            }
+            int active = state.active.get();
+            if (active < 0) {
+                // 剛好被回收，換新的 state 重試
+                ipStates.remove(clientIp, state);
+                continue;
+            }
+            if (active >= properties.getMaxConcurrentPerIp()) {
+                globalActive.decrementAndGet();
+                return reject(Rejection.IP_CONCURRENCY, properties.getRejectRetryAfter());
+            }
+            if (state.active.compareAndSet(active, active + 1)) {
+                break;
+            }
+        }
+
+        long waitNanos = state.takeToken(now, emissionIntervalNanos, burstToleranceNanos);
+        if (waitNanos > 0) {
+            state.release(now);
+            globalActive.decrementAndGet();
+            return reject(Rejection.IP_RATE, Duration.ofNanos(waitNanos));
+        }
+        return new Decision(new Permit(state), null, null);
+    }
+
+    public int activeConnections() {
+        return globalActive.get();
+    }
+
+    public int trackedIps() {
+        return ipStates.size();
+    }
+
+    public long rejections(Rejection rejection) {
+        return rejections.get(rejection).sum();
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "activeConnections", activeConnections(),
+                "trackedIps", trackedIps(),
+                "evictedIps", evictions.sum(),
+                "rejectedGlobalLimit", rejections(Rejection.GLOBAL_LIMIT),
+                "rejectedIpConcurrency", rejections(Rejection.IP_CONCURRENCY),
+                "rejectedIpRate", rejections(Rejection.IP_RATE)
+        );
+    }
+
+    // 移除沒有連接、token 已補滿且閒置過久的 IP
+    void evictIdle() {
+        long now = nanoClock.getAsLong();
+        long idleNanos = properties.getIdleEviction().toNanos();
+        ipStates.forEach((ip, state) -> {
+            if (state.isIdle(now, idleNanos) && state.active.compareAndSet(0, -1)) {
+                ipStates.remove(ip, state);
+                evictions.increment();
+            }
+        });
+    }
+
+    private Decision reject(Rejection rejection, Duration retryAfter) {
+        rejections.get(rejection).increment();
+        return new Decision(null, rejection, retryAfter);
+    }
+
+    private static boolean tryIncrementBelow(AtomicInteger counter, int limit) {
+        while (true) {
+            int current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 單一 IP 的狀態: active 為 -1 代表已被回收
+     */
+    private static final class IpState {
+
+        private final AtomicInteger active = new AtomicInteger();
+        // GCRA 的 theoretical arrival time
+        private final AtomicLong tat;
+        private volatile long lastSeen;
+
+        private IpState(long now) {
+            this.tat = new AtomicLong(now);
+            this.lastSeen = now;
+        }
+
+        // 取得一個 token，成功回傳 0，否則回傳需等待的 nanos
+        private long takeToken(long now, long emissionInterval, long burstTolerance) {
+            lastSeen = now;
+            while (true) {
+                long current = tat.get();
+                long base = Math.max(current, now);
+                long allowAt = base - burstTolerance;
+                if (allowAt > now) {
+                    return allowAt - now;
+                }
+                if (tat.compareAndSet(current, base + emissionInterval)) {
+                    return 0;
+                }
+            }
+        }
+
+        private void release(long now) {
+            lastSeen = now;
+            active.decrementAndGet();
+        }
+
+        private boolean isIdle(long now, long idleNanos) {
+            return active.get() == 0 && tat.get() <= now && now - lastSeen > idleNanos;
+        }
+    }
+
+    /**
+     * 連接許可，連接結束時釋放，重複釋放無效
+     */
+    public final class Permit {
+
+        private final IpState state;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(IpState state) {
+            this.state = state;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                state.release(nanoClock.getAsLong());
+                globalActive.decrementAndGet();
+            }
+        }
+    }
+}
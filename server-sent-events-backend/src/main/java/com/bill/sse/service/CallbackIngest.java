@@ -0,0 +1,276 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.config.SseIngestProperties;
+import com.bill.sse.vo.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * 付款 callback 的受理佇列: 請求 thread 只驗證訂單並放進有界佇列，放得進去就回應；
+ * 更新訂單與發布事件由單一背景 thread 依收到的順序處理，fan-out 變慢不會拖住 callback
+ * 佇列滿時拒絕並要求第三方稍後重送，而不是回應成功後在發布時遺失事件
+ *
+ * 每個商家有自己的佇列 (容量各為 sse.ingest.capacity) 與 callback 速率上限，worker 輪流從有 callback 的商家各取一筆處理，
+ * 一個商家累積的大量 callback 不會排在其他商家的前面；同一商家內仍依收到的順序處理
+ *
+ * 佇列只在記憶體中，沒有 journal；受理後到處理前程序結束的 callback 需依賴第三方重送
+ */
+@Service
+@Slf4j
+public class CallbackIngest {
+
+    public enum Result {
+        // 已在請求 thread 處理完成 (佇列關閉時)
+        PROCESSED,
+        // 已放進佇列
+        QUEUED,
+        // 佇列已滿
+        FULL,
+        // 超過商家的 callback 速率上限
+        RATE_LIMITED,
+        // 關機中，不再受理
+        STOPPED
+    }
+
+    // 一個 callback 只記一筆結構化 log
+    private static final LogLimiter CALLBACK_LOG = LogLimiter.perSecond(20, 50, 100);
+    private static final LogLimiter REJECTED_LOG = LogLimiter.perSecond(5, 20);
+    private static final LogLimiter FAILED_LOG = LogLimiter.perSecond(5, 20);
+
+    private final SseIngestProperties properties;
+    private final OrderStore orderStore;
+    private final TenantRegistry tenantRegistry;
+    private final Tracer tracer;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+    // 商家代碼 → 該商家的佇列；ready 為有 callback 等待處理的商家，每個商家最多出現一次
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final Queue<Partition> ready = new ConcurrentLinkedQueue<>();
+    // 排入佇列的次數減去已處理的批次，由 0 變 1 的那一次負責排程處理
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean accepting = true;
+
+    private final Timer timeInQueue;
+    private final Counter processed;
+    private final Counter rejectedFull;
+    private final Counter rejectedRate;
+    private final Counter rejectedStopped;
+
+    private Scheduler worker;
+
+    @Autowired
+    public CallbackIngest(SseIngestProperties properties, OrderStore orderStore, TenantRegistry tenantRegistry,
+                          Tracer tracer, MeterRegistry meterRegistry) {
+        this(properties, orderStore, tenantRegistry, tracer, meterRegistry, System::nanoTime);
+    }
+
+    CallbackIngest(SseIngestProperties properties, OrderStore orderStore, TenantRegistry tenantRegistry,
+                   Tracer tracer, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.properties = properties;
+        this.orderStore = orderStore;
+        this.tenantRegistry = tenantRegistry;
+        this.tracer = tracer;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+
+        Gauge.builder("sse.ingest.queue.depth", this, CallbackIngest::depth)
+                .description("等待處理的付款 callback 數")
+                .register(meterRegistry);
+        this.timeInQueue = Timer.builder("sse.ingest.queue.time")
+                .description("callback 受理到開始處理的時間")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.processed = Counter.builder("sse.ingest.processed")
+                .description("已處理的付款 callback 數")
+                .register(meterRegistry);
+        this.rejectedFull = Counter.builder("sse.ingest.rejected")
+                .tag("reason", "full")
+                .description("被拒絕的付款 callback 數")
+                .register(meterRegistry);
+        this.rejectedRate = Counter.builder("sse.ingest.rejected")
+                .tag("reason", "rate")
+                .description("被拒絕的付款 callback 數")
+                .register(meterRegistry);
+        this.rejectedStopped = Counter.builder("sse.ingest.rejected")
+                .tag("reason", "stopped")
+                .description("被拒絕的付款 callback 數")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        worker = Schedulers.newSingle("callback-ingest", true);
+    }
+
+    // 先停止受理，再等待已受理的 callback 處理完
+    @PreDestroy
+    void stop() throws InterruptedException {
+        accepting = false;
+        long deadline = clock.getAsLong() + properties.getDrainTimeout().toNanos();
+        while ((wip.get() > 0 || depth() > 0) && clock.getAsLong() < deadline) {
+            Thread.sleep(10);
+        }
+        if (depth() > 0) {
+            log.warn("關機時仍有未處理的付款 callback, 數量: {}", depth());
+        }
+        if (worker != null) {
+            worker.dispose();
+        }
+    }
+
+    public Result submit(String orderId, String status, String reason, String client) {
+        return submit(tenantRegistry.get(TenantRegistry.DEFAULT), orderId, status, reason, client);
+    }
+
+    public Result submit(TenantRegistry.Tenant tenant, String orderId, String status, String reason, String client) {
+        return submit(tenant, orderId, status, reason, client, null);
+    }
+
+    // trace 隨 callback 進入佇列，處理時帶到發布的事件
+    public Result submit(TenantRegistry.Tenant tenant, String orderId, String status, String reason, String client,
+                         TraceContext trace) {
+        Callback callback = new Callback(tenant, orderId, status, reason, client, trace, clock.getAsLong());
+        if (!accepting) {
+            rejectedStopped.increment();
+            return Result.STOPPED;
+        }
+        if (!tenant.tryAcquireEvent()) {
+            rejectedRate.increment();
+            REJECTED_LOG.atWarn(log)
+                    .addKeyValue("tenant", tenant.key())
+                    .addKeyValue("orderId", orderId)
+                    .addKeyValue("client", client)
+                    .log("超過商家的 callback 速率上限, 拒絕受理");
+            return Result.RATE_LIMITED;
+        }
+        if (!properties.isEnabled()) {
+            process(callback);
+            return Result.PROCESSED;
+        }
+        Partition partition = partitions.computeIfAbsent(tenant.key(), Partition::new);
+        if (!partition.queue.offer(callback)) {
+            rejectedFull.increment();
+            REJECTED_LOG.atWarn(log)
+                    .addKeyValue("tenant", tenant.key())
+                    .addKeyValue("orderId", orderId)
+                    .addKeyValue("client", client)
+                    .addKeyValue("capacity", properties.getCapacity())
+                    .log("付款 callback 佇列已滿, 拒絕受理");
+            return Result.FULL;
+        }
+        if (partition.scheduled.compareAndSet(false, true)) {
+            ready.offer(partition);
+        }
+        if (wip.getAndIncrement() == 0) {
+            worker.schedule(this::drain);
+        }
+        return Result.QUEUED;
+    }
+
+    // 所有商家等待處理的 callback 數
+    public int depth() {
+        int depth = 0;
+        for (Partition partition : partitions.values()) {
+            depth += partition.queue.size();
+        }
+        return depth;
+    }
+
+    public int depth(String tenant) {
+        Partition partition = partitions.get(tenant);
+        return partition != null ? partition.queue.size() : 0;
+    }
+
+    public Duration retryAfter() {
+        return properties.getRetryAfter();
+    }
+
+    // 在 worker thread 執行，直到沒有新的 callback 才結束
+    // 每次從 ready 取出一個商家只處理一筆，還有剩的商家排回 ready 的最後面
+    private void drain() {
+        int missed = 1;
+        do {
+            Partition partition;
+            while ((partition = ready.poll()) != null) {
+                Callback callback = partition.queue.poll();
+                if (callback != null) {
+                    long now = clock.getAsLong();
+                    timeInQueue.record(now - callback.receivedAt(), TimeUnit.NANOSECONDS);
+                    tracer.span(callback.trace(), "callback.queue", callback.orderId(), null, callback.receivedAt(), now);
+                    process(callback);
+                }
+                // 先清除標記再檢查，與 submit 同時發生時由其中一方排回 ready
+                partition.scheduled.set(false);
+                if (!partition.queue.isEmpty() && partition.scheduled.compareAndSet(false, true)) {
+                    ready.offer(partition);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void process(Callback callback) {
+        long start = clock.getAsLong();
+        try {
+            String previousStatus = orderStore.transition(callback.orderId(), callback.status(), callback.reason(), callback.trace());
+            tracer.span(callback.trace(), "callback.process", callback.orderId(), null, start, clock.getAsLong());
+            processed.increment();
+            callback.tenant().onCallbackProcessed(clock.getAsLong() - callback.receivedAt());
+            CALLBACK_LOG.atInfo(log)
+                    .addKeyValue("tenant", callback.tenant().key())
+                    .addKeyValue("orderId", callback.orderId())
+                    .addKeyValue("status", callback.status())
+                    .addKeyValue("previousStatus", previousStatus)
+                    .addKeyValue("reason", callback.reason())
+                    .addKeyValue("client", callback.client())
+                    .log("付款 callback 已處理");
+        } catch (Exception e) {
+            FAILED_LOG.atError(log)
+                    .addKeyValue("orderId", callback.orderId())
+                    .setCause(e)
+                    .log("付款 callback 處理失敗");
+        }
+    }
+
+    private record Callback(TenantRegistry.Tenant tenant, String orderId, String status, String reason, String client,
+                            TraceContext trace, long receivedAt) {
+    }
+
+    /**
+     * 單一商家的佇列，scheduled 為 true 代表已在 ready 中或正在處理
+     */
+    private final class Partition {
+
+        private final BlockingQueue<Callback> queue = new ArrayBlockingQueue<>(Math.max(1, properties.getCapacity()));
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Partition(String tenant) {
+            Gauge.builder("sse.tenant.ingest.depth", queue, BlockingQueue::size)
+                    .description("商家等待處理的付款 callback 數")
+                    .tag("tenant", tenant)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.config.SseColdStorageProperties;
+import com.bill.sse.repository.OrderSegment;
+import com.bill.sse.vo.OrderRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * 已結束訂單的冷儲存: 保留期限到期的訂單從 OrderStore 移到這裡，之後的狀態查詢在記憶體找不到時從這裡回答
+ *
+ * 移入的訂單先暫存在記憶體，累積到 segment-size 或每 flush-interval 由背景 thread 寫成一個排序好的 segment 檔 (OrderSegment)；
+ * 寫入完成後才從暫存移除，查詢不會有找不到的空窗。小 segment 累積到 merge-factor 個時合併，
+ * 最後更新超過 retention 的 segment 整個刪除
+ *
+ * 暫存的訂單在程序當機時會遺失 (正常關機時會先寫出)，這些訂單已超過保留期限，只影響舊訂單的查詢
+ */
+@Service
+@Slf4j
+public class ColdOrderStore {
+
+    private static final String SUFFIX = ".seg";
+    private static final LogLimiter FAILED_LOG = LogLimiter.perSecond(1, 5);
+
+    private final SseColdStorageProperties properties;
+    // 訂單代碼 → 等待寫入 segment 的訂單
+    private final Map<String, OrderRecord> pending = new ConcurrentHashMap<>();
+    // 新的 segment 在前，同一訂單以較新的為準
+    private final List<OrderSegment> segments = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private long sequence;
+
+    private final Timer hits;
+    private final Timer misses;
+    private final Counter falsePositives;
+
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private Scheduler worker;
+    private Disposable maintainTask;
+
+    public ColdOrderStore(SseColdStorageProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        if (properties.isEnabled()) {
+            open();
+        }
+
+        Gauge.builder("sse.cold.segments", segments, List::size)
+                .description("冷儲存的 segment 數")
+                .register(meterRegistry);
+        Gauge.builder("sse.cold.orders", this, ColdOrderStore::size)
+                .description("冷儲存中的訂單數 (含尚未寫入 segment 的)")
+                .register(meterRegistry);
+        Gauge.builder("sse.cold.pending", pending, Map::size)
+                .description("尚未寫入 segment 的訂單數")
+                .register(meterRegistry);
+        this.hits = Timer.builder("sse.cold.lookup")
+                .description("冷儲存的查詢時間")
+                .tag("result", "hit")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.misses = Timer.builder("sse.cold.lookup")
+                .description("冷儲存的查詢時間")
+                .tag("result", "miss")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder("sse.cold.bloom.false-positive")
+                .description("bloom filter 判斷可能存在但 segment 中沒有的查詢數")
+                .register(meterRegistry);
+    }
+
+    // 鎖定目錄、清除寫到一半的暫存檔並開啟現有的 segment
+    private void open() {
+        Path directory = properties.getDirectory();
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockChannel.close();
+                throw new IllegalStateException("冷儲存目錄已被其他 process 使用: " + directory);
+            }
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.sorted(Comparator.reverseOrder()).toList();
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    segments.add(OrderSegment.open(file));
+                    sequence = Math.max(sequence, Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - SUFFIX.length())));
+                }
+            }
+            log.info("冷儲存已開啟: {}, segment 數: {}, 訂單數: {}", directory, segments.size(), size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("無法開啟冷儲存目錄: " + directory, e);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long intervalMillis = Math.max(1, properties.getFlushInterval().toMillis());
+        worker = Schedulers.newSingle("cold-order-segments", true);
+        maintainTask = worker.schedulePeriodically(this::maintain, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // OrderStore 在此之前關閉 (依賴順序)，暫存的訂單寫成最後一個 segment
+    @PreDestroy
+    void stop() {
+        if (maintainTask != null) {
+            maintainTask.dispose();
+            worker.dispose();
+        }
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("關機時寫入 segment 失敗, 遺失的訂單數: {}, 錯誤: {}", pending.size(), e.getMessage());
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("釋放冷儲存目錄失敗: {}", e.getMessage());
+        }
+    }
+
+    public boolean enabled() {
+        return properties.isEnabled();
+    }
+
+    // OrderStore 移除已結束的訂單時呼叫 (tick thread)，只放進暫存
+    public void offer(OrderRecord record) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        pending.put(record.orderId(), record);
+        if (worker != null && pending.size() >= properties.getSegmentSize() && flushScheduled.compareAndSet(false, true)) {
+            worker.schedule(this::maintain);
+        }
+    }
+
+    // 依序查暫存與各 segment (新的在前)，找不到時回傳 null
+    public OrderRecord find(String orderId) {
+        if (!properties.isEnabled() || orderId == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        OrderRecord record = pending.get(orderId);
+        boolean maybe = false;
+        if (record == null) {
+            // 走訪的是 COW 清單的快照，期間合併或刪除的 segment 不影響這次查詢
+            for (OrderSegment segment : segments) {
+                if (segment.mightContain(orderId)) {
+                    maybe = true;
+                    record = segment.find(orderId);
+                    if (record != null) {
+                        break;
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (record != null) {
+            hits.record(elapsed, TimeUnit.NANOSECONDS);
+        } else {
+            misses.record(elapsed, TimeUnit.NANOSECONDS);
+            if (maybe) {
+                falsePositives.increment();
+            }
+        }
+        return record;
+    }
+
+    // 依序走訪暫存與各 segment 的訂單，匯出時使用；暫存走完後才取 segment 清單，
+    // 走訪期間寫出的 segment 也會包含在內 (同一訂單可能出現兩次)
+    public Iterator<OrderRecord> records() {
+        if (!properties.isEnabled()) {
+            return Collections.emptyIterator();
+        }
+        Iterator<OrderRecord> buffered = pending.values().iterator();
+        return new Iterator<>() {
+
+            private Iterator<OrderSegment> remaining;
+            private Iterator<OrderRecord> current = buffered;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (remaining == null) {
+                        remaining = List.copyOf(segments).iterator();
+                    }
+                    if (!remaining.hasNext()) {
+                        return false;
+                    }
+                    current = remaining.next().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public OrderRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    public int size() {
+        int size = pending.size();
+        for (OrderSegment segment : segments) {
+            size += segment.count();
+        }
+        return size;
+    }
+
+    void maintain() {
+        flushScheduled.set(false);
+        try {
+            flush();
+            merge();
+            expire(System.currentTimeMillis());
+        } catch (Exception e) {
+            FAILED_LOG.atWarn(log).log("冷儲存維護失敗, 下次再試: {}", e.getMessage());
+        }
+    }
+
+    // 把暫存的訂單寫成一個 segment，回傳寫入的訂單數
+    public synchronized int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<OrderRecord> records = new ArrayList<>(pending.values());
+        segments.add(0, OrderSegment.write(nextPath(), records, properties.getIndexInterval(), properties.getBloomBitsPerKey()));
+        // 寫入期間又被移入的同一訂單 (理論上不會發生) 保留在暫存
+        records.forEach(record -> pending.remove(record.orderId(), record));
+        return records.size();
+    }
+
+    // 小 segment 達 merge-factor 個時合併成一個，回傳合併的 segment 數
+    synchronized int merge() {
+        List<OrderSegment> small = segments.stream()
+                .filter(segment -> segment.count() < properties.getSegmentSize())
+                .toList();
+        if (small.size() < properties.getMergeFactor()) {
+            return 0;
+        }
+        // 由舊到新放入，同一訂單以新的為準
+        Map<String, OrderRecord> merged = new HashMap<>();
+        for (int i = small.size() - 1; i >= 0; i--) {
+            small.get(i).readAll().forEach(record -> merged.put(record.orderId(), record));
+        }
+        OrderSegment segment = OrderSegment.write(nextPath(), merged.values(), properties.getIndexInterval(),
+                properties.getBloomBitsPerKey());
+        segments.add(0, segment);
+        segments.removeAll(small);
+        small.forEach(this::delete);
+        log.info("冷儲存 segment 已合併, 合併數: {}, 訂單數: {}", small.size(), segment.count());
+        return small.size();
+    }
+
+    // 刪除最後更新超過 retention 的 segment，回傳刪除的 segment 數
+    synchronized int expire(long nowMillis) {
+        long cutoff = nowMillis - properties.getRetention().toMillis();
+        List<OrderSegment> expired = segments.stream()
+                .filter(segment -> segment.maxUpdatedAt() < cutoff)
+                .toList();
+        segments.removeAll(expired);
+        expired.forEach(this::delete);
+        return expired.size();
+    }
+
+    // 已開啟的 mapping 在回收前仍然有效，查詢中的 thread 不受影響
+    private void delete(OrderSegment segment) {
+        try {
+            Files.deleteIfExists(segment.path());
+        } catch (IOException e) {
+            log.warn("刪除 segment 檔失敗: {}, 錯誤: {}", segment.path(), e.getMessage());
+        }
+    }
+
+    private Path nextPath() {
+        return properties.getDirectory().resolve(String.format("segment-%016d%s", ++sequence, SUFFIX));
+    }
+
+    // segment 數、訂單數、檔案與記憶體中索引的大小（用於監控）
+    public Map<String, Object> stats() {
+        long fileBytes = 0;
+        long indexBytes = 0;
+        for (OrderSegment segment : segments) {
+            fileBytes += segment.sizeBytes();
+            indexBytes += segment.indexBytes();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("segments", segments.size());
+        stats.put("orders", size());
+        stats.put("pending", pending.size());
+        stats.put("fileBytes", fileBytes);
+        stats.put("indexBytes", indexBytes);
+        stats.put("hits", hits.count());
+        stats.put("misses", misses.count());
+        stats.put("bloomFalsePositives", (long) falsePositives.count());
+        return stats;
+    }
+}
@@ -0,0 +1,174 @@
+package com.bill.sse.service;
+
+import com.bill.sse.vo.PaymentEvent;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 給原生 App 使用的精簡二進位格式 (Accept: application/x-payment-event-compact)
+ *
+ * 串流由多個 frame 組成: varint(長度) + 1 byte 類型 + 內容，長度包含類型
+ *   OPEN      版本 + 連接ID + 變更訂閱用的 token (版本 2 起，訂閱全部事件的連接為 null)
+ *   EVENT     eventType、orderId、status、message、timestamp
+ *   HEARTBEAT 沒有內容
+ *   RECONNECT varint(重連毫秒) + 最後的事件ID
+ *
+ * 字串欄位以一個 varint 開頭: 0 = null，1..N = 字典中的值，大於 N 則減去 N + 1 為 UTF-8 長度
+ * eventType、status 與固定的訊息都在字典內，timestamp 以 varint(毫秒 + 1) 表示，0 = null
+ * 字典只能在尾端新增，新增或調整既有欄位時需提高 VERSION
+ */
+public final class CompactEventCodec {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-payment-event-compact";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+    public static final int VERSION = 2;
+
+    public static final byte OPEN = 0;
+    public static final byte EVENT = 1;
+    public static final byte HEARTBEAT = 2;
+    public static final byte RECONNECT = 3;
+
+    static final List<String> EVENT_TYPES = List.of("PAYMENT_STATUS", "HEARTBEAT");
+    static final List<String> STATUSES = List.of("PENDING", "SUCCESS", "FAILURE");
+    static final List<String> MESSAGES = List.of("付款已成功完成", "heartbeat");
+
+    private static final byte[] HEARTBEAT_FRAME = {1, HEARTBEAT};
+
+    private CompactEventCodec() {
+    }
+
+    // 事件內容 (不含 frame 標頭)
+    public static byte[] encode(PaymentEvent event) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeString(out, EVENT_TYPES, event.eventType());
+        writeString(out, List.of(), event.orderId());
+        writeString(out, STATUSES, event.status());
+        writeString(out, MESSAGES, event.message());
+        writeVarint(out, event.timestamp() != null ? event.timestamp() + 1 : 0);
+        return out.toByteArray();
+    }
+
+    public static PaymentEvent decode(byte[] payload) {
+        Reader reader = new Reader(payload, 0);
+        String eventType = reader.readString(EVENT_TYPES);
+        String orderId = reader.readString(List.of());
+        String status = reader.readString(STATUSES);
+        String message = reader.readString(MESSAGES);
+        long timestamp = reader.readVarint();
+        return new PaymentEvent(eventType, orderId, status, message, timestamp != 0 ? timestamp - 1 : null);
+    }
+
+    public static byte[] eventFrame(byte[] payload) {
+        return frame(EVENT, payload);
+    }
+
+    public static byte[] openFrame(String connectionId) {
+        return openFrame(connectionId, null);
+    }
+
+    public static byte[] openFrame(String connectionId, String subscriptionToken) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        body.write(VERSION);
+        writeString(body, List.of(), connectionId);
+        writeString(body, List.of(), subscriptionToken);
+        return frame(OPEN, body.toByteArray());
+    }
+
+    public static byte[] heartbeatFrame() {
+        return HEARTBEAT_FRAME;
+    }
+
+    public static byte[] reconnectFrame(Duration retry, String lastEventId) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(16);
+        writeVarint(body, retry.toMillis());
+        writeString(body, List.of(), lastEventId);
+        return frame(RECONNECT, body.toByteArray());
+    }
+
+    // 解析單一 frame 的類型與內容，供測試與客戶端參考
+    public static Frame readFrame(byte[] bytes, int offset) {
+        Reader reader = new Reader(bytes, offset);
+        int length = (int) reader.readVarint();
+        int start = reader.position;
+        byte type = bytes[start];
+        byte[] body = new byte[length - 1];
+        System.arraycopy(bytes, start + 1, body, 0, body.length);
+        return new Frame(type, body, start + length);
+    }
+
+    public record Frame(byte type, byte[] body, int nextOffset) {
+    }
+
+    private static byte[] frame(byte type, byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + 6);
+        writeVarint(out, body.length + 1);
+        out.write(type);
+        out.writeBytes(body);
+        return out.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, List<String> dictionary, String value) {
+        if (value == null) {
+            out.write(0);
+            return;
+        }
+        int index = dictionary.indexOf(value);
+        if (index >= 0) {
+            writeVarint(out, index + 1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, (long) dictionary.size() + 1 + utf8.length);
+        out.writeBytes(utf8);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("varint 過長");
+        }
+
+        private String readString(List<String> dictionary) {
+            long code = readVarint();
+            if (code == 0) {
+                return null;
+            }
+            if (code <= dictionary.size()) {
+                return dictionary.get((int) code - 1);
+            }
+            int length = (int) (code - dictionary.size() - 1);
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.ChannelActivity;
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.config.SseReaperProperties;
+import com.bill.sse.vo.ReapedConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定期檢查每條 SSE 連接的底層 channel，關閉客戶端已經不在的連接 (沒有送出 FIN 的 half-open 連接)
+ * 否則 heartbeat 會持續寫進失聯的 socket，直到 TCP 逾時才釋放，期間仍佔用記憶體並計入連接數
+ *
+ * 檢查在獨立的 thread 執行；沒有 Netty channel 的連接 (測試) 不檢查
+ */
+@Service
+@Slf4j
+public class ConnectionReaper {
+
+    public enum Reason {
+        // 有資料等待寫出卻持續沒有進展
+        WRITE_STALL,
+        // 已送出的資料一直沒有被 ACK，kernel 已在重送
+        HALF_OPEN,
+        // 沒有任何讀寫
+        IDLE;
+
+        public String tag() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private static final LogLimiter REAPED_LOG = LogLimiter.perSecond(5, 20);
+
+    private final ConnectionRegistry connectionRegistry;
+    private final SseReaperProperties properties;
+    private final Map<Reason, Counter> reaped = new EnumMap<>(Reason.class);
+    // 最近回收的連接，reaper thread 寫入，stats 讀取時複製
+    private final ArrayDeque<ReapedConnection> recent = new ArrayDeque<>();
+
+    private Scheduler scheduler;
+    private Disposable task;
+
+    public ConnectionReaper(ConnectionRegistry connectionRegistry, SseReaperProperties properties, MeterRegistry meterRegistry) {
+        this.connectionRegistry = connectionRegistry;
+        this.properties = properties;
+        for (Reason reason : Reason.values()) {
+            reaped.put(reason, Counter.builder("sse.connections.reaped")
+                    .description("回收的失聯連接數")
+                    .tag("reason", reason.tag())
+                    .register(meterRegistry));
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long periodMillis = properties.getInterval().toMillis();
+        scheduler = Schedulers.newSingle("connection-reaper", true);
+        task = scheduler.schedulePeriodically(this::tick, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (task != null) {
+            task.dispose();
+            scheduler.dispose();
+        }
+    }
+
+    void tick() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.warn("檢查失聯連接失敗: {}", e.getMessage());
+        }
+    }
+
+    // 檢查所有連接，回傳這次回收的數量
+    public int sweep() {
+        int[] count = {0};
+        connectionRegistry.forEach(connection -> {
+            ChannelActivity activity = connection.getChannelActivity();
+            if (activity == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            ChannelActivity.TcpState tcp = activity.tcpState();
+            Reason reason = classify(activity.writeStalledNanos(now), activity.idleNanos(now), tcp);
+            if (reason != null && reap(connection, activity, reason, now, tcp)) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    Reason classify(long writeStalledNanos, long idleNanos, ChannelActivity.TcpState tcp) {
+        if (tcp != null && tcp.unacked() > 0 && tcp.timeouts() > 0
+                && tcp.lastAckMillis() >= properties.getAckTimeout().toMillis()) {
+            return Reason.HALF_OPEN;
+        }
+        if (writeStalledNanos >= properties.getWriteStallTimeout().toNanos()) {
+            return Reason.WRITE_STALL;
+        }
+        if (!properties.getIdleTimeout().isZero() && idleNanos >= properties.getIdleTimeout().toNanos()) {
+            return Reason.IDLE;
+        }
+        return null;
+    }
+
+    // 先記下關閉原因再關閉 channel；寫不出去的 channel 不會等到最後一個 frame 送出
+    private boolean reap(SseConnection connection, ChannelActivity activity, Reason reason, long now, ChannelActivity.TcpState tcp) {
+        if (!connection.close(reason.tag())) {
+            return false;
+        }
+        // 關閉後未完成的寫入會失敗，先記下回收時的狀態
+        ReapedConnection record = new ReapedConnection(connection.getId(), connection.getClientIp(), reason.tag(),
+                System.currentTimeMillis(), connection.getOpenedAt(), connection.getEventsSent().get(),
+                activity.pendingWrites(), TimeUnit.NANOSECONDS.toMillis(activity.writeStalledNanos(now)),
+                tcp != null ? tcp.lastAckMillis() : -1);
+        activity.close();
+        reaped.get(reason).increment();
+        synchronized (recent) {
+            recent.addFirst(record);
+            while (recent.size() > properties.getRecentSize()) {
+                recent.removeLast();
+            }
+        }
+        REAPED_LOG.atWarn(log)
+                .addKeyValue("connectionId", record.connectionId())
+                .addKeyValue("client", record.clientIp())
+                .addKeyValue("reason", record.reason())
+                .addKeyValue("pendingWrites", record.pendingWrites())
+                .addKeyValue("writeStalledMillis", record.writeStalledMillis())
+                .addKeyValue("lastAckMillis", record.lastAckMillis())
+                .log("回收失聯的 SSE 連接");
+        return true;
+    }
+
+    // 各原因的累計回收數與最近回收的連接
+    public Map<String, Object> stats() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        reaped.forEach((reason, counter) -> counts.put(reason.tag(), (long) counter.count()));
+        List<ReapedConnection> snapshot;
+        synchronized (recent) {
+            snapshot = new ArrayList<>(recent);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("reaped", counts);
+        stats.put("recent", snapshot);
+        return stats;
+    }
+}
@@ -0,0 +1,239 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseConnectionProperties;
+import com.bill.sse.vo.ConnectionSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 追蹤所有存活中的 SSE 連接
+ * 以分段 (stripe) 的 ConcurrentHashMap 存放，register / unregister 只會碰到其中一段
+ *
+ * 指定訂單的連接另外建立 訂單ID → 連接 的反向索引，事件投遞只走訪訂閱該訂單的連接，與總連接數無關
+ */
+@Service
+@Slf4j
+public class ConnectionRegistry {
+
+    private final SseConnectionProperties properties;
+    private final ConcurrentHashMap<String, SseConnection>[] stripes;
+    private final int stripeMask;
+    private final LongAdder activeCount = new LongAdder();
+    private final ConcurrentHashMap<String, Set<SseConnection>> subscribers = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public ConnectionRegistry(SseConnectionProperties properties) {
+        this.properties = properties;
+        int requested = properties.getRegistryStripes() > 0
+                ? properties.getRegistryStripes()
+                : Runtime.getRuntime().availableProcessors() * 2;
+        // 取 2 的次方，方便用 mask 取代取餘數
+        int stripeCount = Integer.highestOneBit(Math.max(1, requested - 1)) << 1;
+        this.stripes = new ConcurrentHashMap[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+        this.stripeMask = stripeCount - 1;
+        log.info("ConnectionRegistry init done!, stripes: {}", stripeCount);
+    }
+
+    // 註冊新連接，有指定訂單時只接收這些訂單的事件
+    public SseConnection register(String clientIp, String userAgent, Set<String> orderIds) {
+        return register(clientIp, userAgent, orderIds, !orderIds.isEmpty());
+    }
+
+    // scoped 為 true 時即使目前沒有訂單也只接收之後訂閱的訂單 (商家後台)
+    public SseConnection register(String clientIp, String userAgent, Set<String> orderIds, boolean scoped) {
+        return register(TenantRegistry.DEFAULT, clientIp, userAgent, orderIds, scoped);
+    }
+
+    public SseConnection register(String tenant, String clientIp, String userAgent, Set<String> orderIds, boolean scoped) {
+        SseConnection connection;
+        do {
+            connection = new SseConnection(UUID.randomUUID().toString().substring(0, 8), tenant, clientIp, userAgent, orderIds, scoped);
+        } while (stripeFor(connection.getId()).putIfAbsent(connection.getId(), connection) != null);
+        activeCount.increment();
+        if (scoped) {
+            for (String orderId : orderIds) {
+                index(orderId, connection);
+            }
+        }
+        return connection;
+    }
+
+    // 移除連接，重複呼叫只會生效一次
+    public boolean unregister(SseConnection connection) {
+        if (stripeFor(connection.getId()).remove(connection.getId(), connection)) {
+            activeCount.decrement();
+            for (String orderId : connection.getOrderIds()) {
+                unindex(orderId, connection);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // 新增訂閱，回傳實際新增的訂單
+    public List<String> subscribe(SseConnection connection, Collection<String> orderIds) {
+        List<String> added = new ArrayList<>();
+        for (String orderId : orderIds) {
+            if (orderId != null && connection.addOrder(orderId)) {
+                index(orderId, connection);
+                added.add(orderId);
+            }
+        }
+        // 與 unregister 同時發生時，不讓已關閉的連接留在索引中
+        if (get(connection.getId()) != connection) {
+            for (String orderId : added) {
+                unindex(orderId, connection);
+            }
+        }
+        return added;
+    }
+
+    // 取消訂閱，回傳實際移除的數量
+    public int unsubscribe(SseConnection connection, Collection<String> orderIds) {
+        int removed = 0;
+        for (String orderId : orderIds) {
+            if (orderId != null && connection.removeOrder(orderId)) {
+                unindex(orderId, connection);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // 投遞事件給訂閱該訂單且屬於同一商家的連接，回傳投遞數量
+    public int route(EncodedPaymentEvent encoded) {
+        String orderId = encoded.event().orderId();
+        Set<SseConnection> connections = orderId != null ? subscribers.get(orderId) : null;
+        if (connections == null) {
+            return 0;
+        }
+        int delivered = 0;
+        for (SseConnection connection : connections) {
+            if (connection.getTenant().equals(encoded.tenant())) {
+                connection.deliver(encoded);
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    // 有連接訂閱的訂單數
+    public int indexedOrders() {
+        return subscribers.size();
+    }
+
+    public int subscriberCount(String orderId) {
+        Set<SseConnection> connections = subscribers.get(orderId);
+        return connections != null ? connections.size() : 0;
+    }
+
+    private void index(String orderId, SseConnection connection) {
+        subscribers.compute(orderId, (key, connections) -> {
+            Set<SseConnection> updated = connections != null ? connections : ConcurrentHashMap.newKeySet();
+            updated.add(connection);
+            return updated;
+        });
+    }
+
+    private void unindex(String orderId, SseConnection connection) {
+        subscribers.computeIfPresent(orderId, (key, connections) -> {
+            connections.remove(connection);
+            return connections.isEmpty() ? null : connections;
+        });
+    }
+
+    public SseConnection get(String connectionId) {
+        return stripeFor(connectionId).get(connectionId);
+    }
+
+    public int size() {
+        return activeCount.intValue();
+    }
+
+    // 逐段走訪所有連接，不會先複製成完整清單
+    public Flux<SseConnection> connections() {
+        return Flux.fromArray(stripes).flatMapIterable(ConcurrentHashMap::values);
+    }
+
+    // 在呼叫端的 thread 上直接走訪，給不能 block 的背景 thread 使用
+    public void forEach(Consumer<SseConnection> action) {
+        for (ConcurrentHashMap<String, SseConnection> stripe : stripes) {
+            stripe.values().forEach(action);
+        }
+    }
+
+    // 分頁取得連接快照
+    public Flux<ConnectionSnapshot> snapshots(int page, int size, boolean laggingOnly) {
+        return connections()
+                .filter(connection -> !laggingOnly || isLagging(connection))
+                .skip((long) page * size)
+                .take(size)
+                .map(connection -> connection.snapshot(properties.getLagQueueDepth(), properties.getLagWriteIdle()));
+    }
+
+    public boolean isLagging(SseConnection connection) {
+        return connection.isLagging(properties.getLagQueueDepth(), properties.getLagWriteIdle());
+    }
+
+    // 強制關閉指定連接
+    public boolean close(String connectionId, String reason) {
+        SseConnection connection = get(connectionId);
+        if (connection == null) {
+            return false;
+        }
+        boolean closed = connection.close(reason);
+        if (closed) {
+            log.warn("強制關閉 SSE 連接, 連接ID: {}, 客戶端: {}, 原因: {}", connectionId, connection.getClientIp(), reason);
+        }
+        return closed;
+    }
+
+    // 開關單一連接的除錯 log
+    public boolean setDebug(String connectionId, boolean enabled) {
+        SseConnection connection = get(connectionId);
+        if (connection == null) {
+            return false;
+        }
+        connection.setDebug(enabled);
+        log.info("SSE 連接除錯 log {}, 連接ID: {}", enabled ? "開啟" : "關閉", connectionId);
+        return true;
+    }
+
+    // 關閉所有落後的連接，回傳關閉數量
+    public int closeLagging(String reason) {
+        int closed = 0;
+        for (ConcurrentHashMap<String, SseConnection> stripe : stripes) {
+            for (SseConnection connection : stripe.values()) {
+                if (isLagging(connection) && connection.close(reason)) {
+                    closed++;
+                }
+            }
+        }
+        if (closed > 0) {
+            log.warn("已關閉落後的 SSE 連接, 數量: {}, 原因: {}", closed, reason);
+        }
+        return closed;
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    private ConcurrentHashMap<String, SseConnection> stripeFor(String connectionId) {
+        int h = connectionId.hashCode();
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+}
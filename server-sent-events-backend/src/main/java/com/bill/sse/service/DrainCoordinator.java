@@ -0,0 +1,149 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseDrainProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 關機或部署時分批關閉 SSE 連接
+ * 每條連接會收到帶隨機 retry 的最後一個 frame，客戶端重連時間因此被分散，不會同時湧向下一個 pod
+ * phase 高於 web server 的 graceful shutdown，所以會先 drain 完再讓 web server 等待剩餘請求
+ * drain 期間 readiness 為 REFUSING_TRAFFIC，load balancer 不會再把新連接導向這個 pod
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DrainCoordinator implements SmartLifecycle {
+
+    private final ConnectionRegistry connectionRegistry;
+    private final SseDrainProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicLong drainedConnections = new AtomicLong();
+    private volatile boolean running;
+    private volatile Mono<Void> drainCompletion;
+    private volatile String trigger;
+    private volatile long startedAt;
+
+    public boolean isDraining() {
+        return drainCompletion != null;
+    }
+
+    // 開始 drain，重複呼叫會取得同一個 drain 的結果
+    public synchronized Mono<Void> drain(String trigger) {
+        if (drainCompletion != null) {
+            return drainCompletion;
+        }
+        this.trigger = trigger;
+        this.startedAt = System.currentTimeMillis();
+        log.warn("開始 drain SSE 連接, 觸發來源: {}, 目前連接數: {}", trigger, connectionRegistry.size());
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+
+        Mono<Void> completion = Mono.defer(this::closeAllInBatches)
+                .then(Mono.defer(this::awaitEmpty))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, properties.getBatchInterval()))
+                .timeout(properties.getTimeout())
+                .doOnSuccess(v -> log.info("SSE 連接 drain 完成, 已關閉: {}, 耗時: {}ms",
+                        drainedConnections.get(), System.currentTimeMillis() - startedAt))
+                .doOnError(error -> log.error("SSE 連接 drain 逾時, 剩餘連接數: {}", connectionRegistry.size()))
+                .onErrorComplete()
+                .cache();
+        drainCompletion = completion;
+        completion.subscribe();
+        return completion;
+    }
+
+    // 取消 drain，重新接受新連接（部署中止時使用）
+    public synchronized void resume() {
+        if (drainCompletion != null) {
+            log.warn("取消 drain, 重新接受 SSE 連接");
+            drainCompletion = null;
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+
+    // 每條連接的重連等待時間: base + 隨機 jitter
+    public Duration nextReconnectDelay() {
+        long jitterMillis = properties.getReconnectJitter().toMillis();
+        long jitter = jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0;
+        return properties.getReconnectBase().plusMillis(jitter);
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("draining", isDraining());
+        status.put("trigger", trigger);
+        status.put("startedAt", startedAt);
+        status.put("drainedConnections", drainedConnections.get());
+        status.put("remainingConnections", connectionRegistry.size());
+        return status;
+    }
+
+    private Mono<Void> closeAllInBatches() {
+        return connectionRegistry.connections()
+                .filter(connection -> connection.getCloseReason() == null)
+                .buffer(properties.getBatchSize())
+                .concatMap(batch -> Mono.fromRunnable(() -> drainBatch(batch))
+                        .then(Mono.delay(properties.getBatchInterval())))
+                .then();
+    }
+
+    private void drainBatch(List<SseConnection> batch) {
+        for (SseConnection connection : batch) {
+            if (isDraining() && connection.drain(nextReconnectDelay())) {
+                drainedConnections.incrementAndGet();
+            }
+        }
+    }
+
+    // 還有連接就回傳錯誤，讓 retry 再跑一輪處理 drain 期間才建立完成的連接
+    private Mono<Void> awaitEmpty() {
+        if (!isDraining() || connectionRegistry.size() == 0) {
+            return Mono.empty();
+        }
+        return Mono.error(new IllegalStateException("仍有 SSE 連接未關閉: " + connectionRegistry.size()));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        drain("shutdown").block();
+        running = false;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        drain("shutdown").doFinally(signalType -> {
+            running = false;
+            callback.run();
+        }).subscribe();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE;
+    }
+}
@@ -0,0 +1,177 @@
+package com.bill.sse.service;
+
+import com.bill.sse.vo.PaymentEvent;
+import com.bill.sse.vo.TraceContext;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 發布到 sink 的事件，各種編碼在第一次使用時產生並快取，所有訂閱者共用同一份結果
+ */
+public final class EncodedPaymentEvent {
+
+    // 事件所屬的商家，決定發布到哪個 partition 以及哪些連接可以收到
+    private final String tenant;
+    private final PaymentEvent event;
+    // 訂單狀態的版本，由 OrderStore 在狀態轉換時遞增；0 代表沒有版本 (heartbeat 等)
+    private final long version;
+    // 啟動預熱用的合成事件，只送給明確訂閱該訂單的連接
+    private final boolean warmUp;
+    // 觸發事件的 callback 的 trace，沒有時為 null
+    private final TraceContext trace;
+    // 快照 (snapshot-on-subscribe) 為已發布事件的副本，編碼交給原事件，所有快照與即時投遞共用同一份結果
+    // 快照送出的時間與發布時間無關，不計入發布到寫出的時間
+    private final EncodedPaymentEvent snapshotOf;
+
+    // 讀取不加鎖，只有第一次編碼時才同步
+    private volatile String json;
+    private volatile int jsonLength;
+    private volatile byte[] compactFrame;
+    // 發布到 sink 的時間 (nanoTime)，供 JFR 與 trace 計算發布到寫出的時間；0 代表還沒發布
+    // 事件同時被 OrderStore 當作快照保留，其他執行緒可能在發布前後讀取，所以為 volatile
+    private volatile long publishedAt;
+
+    public EncodedPaymentEvent(PaymentEvent event) {
+        this(TenantRegistry.DEFAULT, event, 0, false);
+    }
+
+    public EncodedPaymentEvent(PaymentEvent event, long version) {
+        this(TenantRegistry.DEFAULT, event, version, false);
+    }
+
+    public EncodedPaymentEvent(String tenant, PaymentEvent event, long version) {
+        this(tenant, event, version, null, false);
+    }
+
+    public EncodedPaymentEvent(String tenant, PaymentEvent event, long version, TraceContext trace) {
+        this(tenant, event, version, trace, false);
+    }
+
+    private EncodedPaymentEvent(String tenant, PaymentEvent event, long version, boolean warmUp) {
+        this(tenant, event, version, null, warmUp);
+    }
+
+    private EncodedPaymentEvent(String tenant, PaymentEvent event, long version, TraceContext trace, boolean warmUp) {
+        this.tenant = tenant;
+        this.event = event;
+        this.version = version;
+        this.trace = trace;
+        this.warmUp = warmUp;
+        this.snapshotOf = null;
+    }
+
+    private EncodedPaymentEvent(EncodedPaymentEvent source) {
+        this.tenant = source.tenant;
+        this.event = source.event;
+        this.version = source.version;
+        this.trace = source.trace;
+        this.warmUp = source.warmUp;
+        this.snapshotOf = source;
+    }
+
+    public static EncodedPaymentEvent warmUp(PaymentEvent event) {
+        return new EncodedPaymentEvent(TenantRegistry.DEFAULT, event, 0, true);
+    }
+
+    // 以快照身分送出的副本，版本與內容和原事件相同
+    public EncodedPaymentEvent asSnapshot() {
+        return snapshotOf != null ? this : new EncodedPaymentEvent(this);
+    }
+
+    public String tenant() {
+        return tenant;
+    }
+
+    public PaymentEvent event() {
+        return event;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public TraceContext trace() {
+        return trace;
+    }
+
+    public boolean isSnapshot() {
+        return snapshotOf != null;
+    }
+
+    void markPublished() {
+        publishedAt = System.nanoTime();
+    }
+
+    public long publishedAt() {
+        return publishedAt;
+    }
+
+    public String json(ObjectMapper objectMapper) {
+        if (snapshotOf != null) {
+            return snapshotOf.json(objectMapper);
+        }
+        String cached = json;
+        if (cached == null) {
+            synchronized (this) {
+                cached = json;
+                if (cached == null) {
+                    FlightEvents.EventEncoded encoded = new FlightEvents.EventEncoded();
+                    encoded.begin();
+                    byte[] bytes = writeJson(objectMapper);
+                    jsonLength = bytes.length;
+                    json = cached = new String(bytes, StandardCharsets.UTF_8);
+                    commit(encoded, "json", bytes.length);
+                }
+            }
+        }
+        return cached;
+    }
+
+    // UTF-8 位元組數，需先呼叫 json()
+    public int jsonLength() {
+        return snapshotOf != null ? snapshotOf.jsonLength() : jsonLength;
+    }
+
+    // 完整的 EVENT frame，可直接寫出
+    public byte[] compactFrame() {
+        if (snapshotOf != null) {
+            return snapshotOf.compactFrame();
+        }
+        byte[] cached = compactFrame;
+        if (cached == null) {
+            synchronized (this) {
+                cached = compactFrame;
+                if (cached == null) {
+                    FlightEvents.EventEncoded encoded = new FlightEvents.EventEncoded();
+                    encoded.begin();
+                    compactFrame = cached = CompactEventCodec.eventFrame(CompactEventCodec.encode(event));
+                    commit(encoded, "compact", cached.length);
+                }
+            }
+        }
+        return cached;
+    }
+
+    private void commit(FlightEvents.EventEncoded encoded, String format, int bytes) {
+        if (encoded.shouldCommit()) {
+            encoded.orderId = event.orderId();
+            encoded.format = format;
+            encoded.bytes = bytes;
+            encoded.commit();
+        }
+    }
+
+    private byte[] writeJson(ObjectMapper objectMapper) {
+        try {
+            return objectMapper.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("事件序列化失敗: " + event, e);
+        }
+    }
+}
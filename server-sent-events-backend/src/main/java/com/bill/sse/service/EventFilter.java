@@ -0,0 +1,321 @@
+package com.bill.sse.service;
+
+import com.bill.sse.vo.PaymentEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 連接的事件過濾條件，建立連接時編譯一次成 predicate
+ * 語法: status in (FAILURE, EXPIRED) and eventType = PAYMENT_STATUS
+ * 欄位: status / eventType / orderId；運算子: = != in；可用 and / or / not 與括號組合，關鍵字不分大小寫
+ *
+ * 相同條件 (正規化後的 expression 相同) 的連接共用同一個實例，由 EventFilterRegistry 管理；
+ * 同一個事件依序經過各連接時只在第一次計算，其餘連接直接取用上次的結果
+ */
+public final class EventFilter {
+
+    public static final int MAX_LENGTH = 512;
+
+    private final String expression;
+    private final Predicate<PaymentEvent> predicate;
+    private final LongAdder evaluations = new LongAdder();
+
+    // 最後一次計算的事件與結果，以同一個物件發布，讀取不需要鎖
+    private volatile Evaluation last;
+
+    private EventFilter(String expression, Predicate<PaymentEvent> predicate) {
+        this.expression = expression;
+        this.predicate = predicate;
+    }
+
+    // 語法錯誤時拋出 IllegalArgumentException
+    public static EventFilter compile(String source) {
+        if (source == null || source.isBlank()) {
+            throw new IllegalArgumentException("過濾條件不可為空");
+        }
+        if (source.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("過濾條件超過 " + MAX_LENGTH + " 個字元");
+        }
+        Parser parser = new Parser(tokenize(source));
+        Node node = parser.parseOr();
+        parser.expectEnd();
+        return new EventFilter(node.canonical(), node.compile());
+    }
+
+    // 正規化後的條件，相同語意的寫法 (空白、大小寫、in 的順序) 得到相同的字串
+    public String expression() {
+        return expression;
+    }
+
+    public boolean test(EncodedPaymentEvent encoded) {
+        Evaluation cached = last;
+        if (cached != null && cached.event() == encoded) {
+            return cached.matches();
+        }
+        evaluations.increment();
+        boolean matches = predicate.test(encoded.event());
+        last = new Evaluation(encoded, matches);
+        return matches;
+    }
+
+    // 實際計算的次數
+    public long evaluations() {
+        return evaluations.sum();
+    }
+
+    private record Evaluation(EncodedPaymentEvent event, boolean matches) {
+    }
+
+    private enum Field {
+        STATUS("status", PaymentEvent::status),
+        EVENT_TYPE("eventType", PaymentEvent::eventType),
+        ORDER_ID("orderId", PaymentEvent::orderId);
+
+        private final String name;
+        private final Function<PaymentEvent, String> accessor;
+
+        Field(String name, Function<PaymentEvent, String> accessor) {
+            this.name = name;
+            this.accessor = accessor;
+        }
+
+        static Field of(String name) {
+            for (Field field : values()) {
+                if (field.name.equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("不支援的欄位: " + name + "，可用 status / eventType / orderId");
+        }
+    }
+
+    private sealed interface Node {
+
+        String canonical();
+
+        Predicate<PaymentEvent> compile();
+    }
+
+    private record And(Node left, Node right) implements Node {
+
+        public String canonical() {
+            return "(" + left.canonical() + " and " + right.canonical() + ")";
+        }
+
+        public Predicate<PaymentEvent> compile() {
+            return left.compile().and(right.compile());
+        }
+    }
+
+    private record Or(Node left, Node right) implements Node {
+
+        public String canonical() {
+            return "(" + left.canonical() + " or " + right.canonical() + ")";
+        }
+
+        public Predicate<PaymentEvent> compile() {
+            return left.compile().or(right.compile());
+        }
+    }
+
+    private record Not(Node operand) implements Node {
+
+        public String canonical() {
+            return "not " + operand.canonical();
+        }
+
+        public Predicate<PaymentEvent> compile() {
+            return operand.compile().negate();
+        }
+    }
+
+    // =、!= 與 in 都轉成集合比對；單一值時直接比較字串
+    private record Match(Field field, Set<String> values, boolean negated) implements Node {
+
+        public String canonical() {
+            List<String> literals = values.stream().map(EventFilter::literal).toList();
+            if (values.size() == 1) {
+                return field.name + (negated ? " != " : " = ") + literals.get(0);
+            }
+            return field.name + (negated ? " not in (" : " in (") + String.join(", ", literals) + ")";
+        }
+
+        public Predicate<PaymentEvent> compile() {
+            Function<PaymentEvent, String> accessor = field.accessor;
+            Predicate<PaymentEvent> matches;
+            if (values.size() == 1) {
+                String value = values.iterator().next();
+                matches = event -> value.equals(accessor.apply(event));
+            } else {
+                Set<String> set = Set.copyOf(values);
+                matches = event -> {
+                    String actual = accessor.apply(event);
+                    return actual != null && set.contains(actual);
+                };
+            }
+            return negated ? matches.negate() : matches;
+        }
+    }
+
+    private static List<String> tokenize(String source) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')' || c == ',' || c == '=') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '!' && i + 1 < source.length() && source.charAt(i + 1) == '=') {
+                tokens.add("!=");
+                i += 2;
+            } else if (c == '\'' || c == '"') {
+                int end = source.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("字串未結束, 位置: " + i);
+                }
+                // 保留引號，與關鍵字區分
+                tokens.add(source.substring(i, end + 1));
+                i = end + 1;
+            } else if (isWordChar(c)) {
+                int start = i;
+                while (i < source.length() && isWordChar(source.charAt(i))) {
+                    i++;
+                }
+                tokens.add(source.substring(start, i));
+            } else {
+                throw new IllegalArgumentException("無效的字元 '" + c + "', 位置: " + i);
+            }
+        }
+        return tokens;
+    }
+
+    // 含空白、符號或與關鍵字相同的值加上引號，正規化後的字串不會混淆
+    private static String literal(String value) {
+        boolean plain = !value.isEmpty() && value.chars().allMatch(c -> isWordChar((char) c))
+                && !Set.of("and", "or", "not", "in").contains(value.toLowerCase(Locale.ROOT));
+        if (plain) {
+            return value;
+        }
+        return value.contains("'") ? "\"" + value + "\"" : "'" + value + "'";
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':';
+    }
+
+    // 遞迴下降: or > and > not > 比較
+    private static final class Parser {
+
+        private final List<String> tokens;
+        private int position;
+
+        private Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        Node parseOr() {
+            Node node = parseAnd();
+            while (acceptKeyword("or")) {
+                node = new Or(node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node node = parseNot();
+            while (acceptKeyword("and")) {
+                node = new And(node, parseNot());
+            }
+            return node;
+        }
+
+        private Node parseNot() {
+            if (acceptKeyword("not")) {
+                return new Not(parseNot());
+            }
+            if (accept("(")) {
+                Node node = parseOr();
+                expect(")");
+                return node;
+            }
+            return parseMatch();
+        }
+
+        private Node parseMatch() {
+            Field field = Field.of(next("欄位"));
+            if (accept("=")) {
+                return new Match(field, new TreeSet<>(List.of(value())), false);
+            }
+            if (accept("!=")) {
+                return new Match(field, new TreeSet<>(List.of(value())), true);
+            }
+            boolean negated = acceptKeyword("not");
+            if (!acceptKeyword("in")) {
+                throw new IllegalArgumentException("欄位 " + field.name + " 之後預期 = / != / in");
+            }
+            expect("(");
+            Set<String> values = new TreeSet<>();
+            do {
+                values.add(value());
+            } while (accept(","));
+            expect(")");
+            return new Match(field, values, negated);
+        }
+
+        private String value() {
+            String token = next("值");
+            if (token.startsWith("'") || token.startsWith("\"")) {
+                return token.substring(1, token.length() - 1);
+            }
+            if (token.length() == 1 && "(),=".contains(token) || token.equals("!=")) {
+                throw new IllegalArgumentException("預期值, 實際為 '" + token + "'");
+            }
+            return token;
+        }
+
+        void expectEnd() {
+            if (position < tokens.size()) {
+                throw new IllegalArgumentException("多餘的內容: '" + tokens.get(position) + "'");
+            }
+        }
+
+        private String next(String expected) {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("條件未結束, 預期" + expected);
+            }
+            return tokens.get(position++);
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if (position < tokens.size() && tokens.get(position).toLowerCase(Locale.ROOT).equals(keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw new IllegalArgumentException("預期 '" + token + "'"
+                        + (position < tokens.size() ? ", 實際為 '" + tokens.get(position) + "'" : ", 條件已結束"));
+            }
+        }
+    }
+}
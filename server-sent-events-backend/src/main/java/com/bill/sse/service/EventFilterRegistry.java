@@ -0,0 +1,81 @@
+package com.bill.sse.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 連接的過濾條件依正規化後的 expression 共用: 一萬條連接用同一個條件時只有一個 EventFilter，
+ * 每個事件只計算一次；最後一條使用的連接關閉後移除
+ */
+@Service
+public class EventFilterRegistry {
+
+    private final Map<String, Entry> filters = new ConcurrentHashMap<>();
+    // 已移除的條件累計的計算次數，讓 counter 不會倒退
+    private final LongAdder retiredEvaluations = new LongAdder();
+
+    public EventFilterRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("sse.filters", filters, Map::size)
+                .description("使用中的不同過濾條件數")
+                .register(meterRegistry);
+        FunctionCounter.builder("sse.filter.evaluations", this, EventFilterRegistry::evaluations)
+                .description("過濾條件實際計算的次數 (相同條件的連接共用結果)")
+                .register(meterRegistry);
+    }
+
+    // 編譯並取得共用的過濾條件，語法錯誤時拋出 IllegalArgumentException；用完需呼叫 release
+    public EventFilter acquire(String source) {
+        EventFilter compiled = EventFilter.compile(source);
+        Entry entry = filters.compute(compiled.expression(), (expression, existing) -> {
+            Entry updated = existing != null ? existing : new Entry(compiled);
+            updated.references++;
+            return updated;
+        });
+        return entry.filter;
+    }
+
+    public void release(EventFilter filter) {
+        filters.computeIfPresent(filter.expression(), (expression, entry) -> {
+            if (entry.filter != filter || --entry.references > 0) {
+                return entry;
+            }
+            retiredEvaluations.add(filter.evaluations());
+            return null;
+        });
+    }
+
+    public int size() {
+        return filters.size();
+    }
+
+    // 指定條件目前的連接數
+    public int references(String expression) {
+        Entry entry = filters.get(expression);
+        return entry != null ? entry.references : 0;
+    }
+
+    private double evaluations() {
+        long total = retiredEvaluations.sum();
+        for (Entry entry : filters.values()) {
+            total += entry.filter.evaluations();
+        }
+        return total;
+    }
+
+    // references 只在 compute 內修改
+    private static final class Entry {
+
+        private final EventFilter filter;
+        private volatile int references;
+
+        private Entry(EventFilter filter) {
+            this.filter = filter;
+        }
+    }
+}
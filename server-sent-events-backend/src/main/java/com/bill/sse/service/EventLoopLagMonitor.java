@@ -0,0 +1,112 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseNettyProperties;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.stereotype.Service;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 量測 Netty event loop 的排隊延遲
+ * 每次 probe 對每個 event loop 送出一個空任務，從送出到開始執行的時間就是該 loop 的延遲
+ * 上一個探測任務還沒執行時，以已等待的時間計算，卡住的 loop 也能被看見
+ * 每個 loop 的第一個探測任務只用來啟動 loop thread，不計入延遲
+ */
+@Service
+@Slf4j
+public class EventLoopLagMonitor {
+
+    private final Supplier<Iterable<EventExecutor>> executorsSupplier;
+    private volatile List<Probe> probes;
+
+    @Autowired
+    public EventLoopLagMonitor(ObjectProvider<ReactorResourceFactory> resourceFactory, SseNettyProperties nettyProperties) {
+        this(() -> {
+            // server 與 ReactorResourceFactory 共用同一組 LoopResources (見 NettyServerConfig)
+            ReactorResourceFactory factory = resourceFactory.getIfAvailable();
+            LoopResources loopResources = factory != null ? factory.getLoopResources() : HttpResources.get();
+            return loopResources.onServer(nettyProperties.isNativeTransport());
+        });
+    }
+
+    EventLoopLagMonitor(Supplier<Iterable<EventExecutor>> executorsSupplier) {
+        this.executorsSupplier = executorsSupplier;
+    }
+
+    // 送出下一輪探測，回傳目前所有 event loop 中最大的延遲 (nanos)
+    public long probe() {
+        long now = System.nanoTime();
+        long max = 0;
+        for (Probe probe : probes()) {
+            max = Math.max(max, probe.probe(now));
+        }
+        return max;
+    }
+
+    // 各 event loop 最近一次的延遲 (nanos)
+    public long[] lags() {
+        List<Probe> current = probes();
+        long[] lags = new long[current.size()];
+        for (int i = 0; i < lags.length; i++) {
+            lags[i] = current.get(i).lastLag;
+        }
+        return lags;
+    }
+
+    public int loopCount() {
+        return probes().size();
+    }
+
+    private List<Probe> probes() {
+        List<Probe> current = probes;
+        if (current == null) {
+            List<Probe> created = new ArrayList<>();
+            for (EventExecutor executor : executorsSupplier.get()) {
+                created.add(new Probe(executor));
+            }
+            log.info("EventLoopLagMonitor init done!, event loops: {}", created.size());
+            probes = current = List.copyOf(created);
+        }
+        return current;
+    }
+
+    private static final class Probe {
+
+        private final EventExecutor executor;
+        // 探測任務送出的時間，0 代表沒有進行中的探測
+        private final AtomicLong submittedAt = new AtomicLong();
+        private volatile long lastLag;
+        // 第一個探測任務執行過後才開始計算延遲
+        private volatile boolean started;
+
+        private Probe(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        private long probe(long now) {
+            long pendingSince = submittedAt.get();
+            if (pendingSince != 0) {
+                return started ? Math.max(lastLag, now - pendingSince) : 0;
+            }
+            if (submittedAt.compareAndSet(0, now)) {
+                executor.execute(() -> {
+                    if (started) {
+                        lastLag = System.nanoTime() - now;
+                    }
+                    started = true;
+                    submittedAt.set(0);
+                });
+            }
+            return lastLag;
+        }
+    }
+}
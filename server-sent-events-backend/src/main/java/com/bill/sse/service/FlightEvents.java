@@ -0,0 +1,174 @@
+package com.bill.sse.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 付款事件生命週期的 JFR 事件: callback 解碼 → 發布 → 編碼 → 交給各連接寫出，以及連接的建立與終止
+ *
+ * 預設不啟用 (@Enabled(false))，即使有 recording 在跑也不會記錄；呼叫端先以 isEnabled/shouldCommit 判斷才填欄位，
+ * 未啟用時只剩一次判斷，事件物件由 JIT 消除。需要時在啟動或 jcmd JFR.start 加上設定，例如:
+ * -XX:StartFlightRecording:+com.bill.sse.EventWritten#enabled=true,+com.bill.sse.EventPublished#enabled=true,filename=sse.jfr
+ * 也可以用 jfr configure 產生包含全部事件的 .jfc 檔
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    @Name("com.bill.sse.CallbackDecoded")
+    @Label("Callback 解碼")
+    @Description("付款 callback 的請求內容解碼，duration 為解碼時間")
+    @Category({"SSE", "Payment"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class CallbackDecoded extends Event {
+
+        @Label("訂單ID")
+        public String orderId;
+
+        @Label("狀態")
+        public String status;
+
+        @Label("請求大小")
+        @DataAmount
+        public int bytes;
+    }
+
+    @Name("com.bill.sse.EventPublished")
+    @Label("事件發布")
+    @Description("訂單事件發布到商家的 sink，duration 為 emit 時間 (包含同步交給訂閱者的部分)")
+    @Category({"SSE", "Payment"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class EventPublished extends Event {
+
+        @Label("訂單ID")
+        public String orderId;
+
+        @Label("商家")
+        public String tenant;
+
+        @Label("狀態")
+        public String status;
+
+        @Label("版本")
+        public long version;
+
+        @Label("發布結果")
+        public String result;
+
+        @Label("訂閱數")
+        public int subscribers;
+    }
+
+    @Name("com.bill.sse.EventEncoded")
+    @Label("事件編碼")
+    @Description("事件第一次編碼，結果由所有連接共用，duration 為編碼時間")
+    @Category({"SSE", "Payment"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class EventEncoded extends Event {
+
+        @Label("訂單ID")
+        public String orderId;
+
+        @Label("格式")
+        public String format;
+
+        @Label("大小")
+        @DataAmount
+        public int bytes;
+    }
+
+    @Name("com.bill.sse.EventWritten")
+    @Label("事件寫出")
+    @Description("事件 frame 交給連接的 writer，duration 為產生 frame 的時間")
+    @Category({"SSE", "Payment"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class EventWritten extends Event {
+
+        @Label("訂單ID")
+        public String orderId;
+
+        @Label("連接ID")
+        public String connectionId;
+
+        @Label("格式")
+        public String format;
+
+        @Label("大小")
+        @DataAmount
+        public int bytes;
+
+        @Label("佇列深度")
+        public int queueDepth;
+
+        @Label("快照")
+        public boolean snapshot;
+
+        // 快照與沒有經過 sink 的事件為 0
+        @Label("發布後經過時間")
+        @Timespan(Timespan.NANOSECONDS)
+        public long sincePublished;
+    }
+
+    @Name("com.bill.sse.ConnectionOpened")
+    @Label("連接建立")
+    @Category({"SSE", "Connection"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ConnectionOpened extends Event {
+
+        @Label("連接ID")
+        public String connectionId;
+
+        @Label("商家")
+        public String tenant;
+
+        @Label("客戶端")
+        public String client;
+
+        @Label("指定訂單")
+        public boolean scoped;
+
+        @Label("訂單數")
+        public int orders;
+    }
+
+    @Name("com.bill.sse.ConnectionClosed")
+    @Label("連接終止")
+    @Category({"SSE", "Connection"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ConnectionClosed extends Event {
+
+        @Label("連接ID")
+        public String connectionId;
+
+        @Label("商家")
+        public String tenant;
+
+        @Label("原因")
+        public String reason;
+
+        @Label("已送出事件數")
+        public long eventsSent;
+
+        @Label("已送出位元組")
+        @DataAmount
+        public long bytesSent;
+
+        @Label("連接時間")
+        @Timespan(Timespan.MILLISECONDS)
+        public long lifetime;
+    }
+}
@@ -0,0 +1,45 @@
+package com.bill.sse.service;
+
+import com.bill.sse.vo.TraceSpan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 保留最近的 span 在記憶體，滿時丟棄最舊的；測試與臨時排查使用
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    private final BlockingQueue<TraceSpan> spans;
+
+    public InMemorySpanExporter(int capacity) {
+        this.spans = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    @Override
+    public void export(TraceSpan span) {
+        while (!spans.offer(span)) {
+            spans.poll();
+        }
+    }
+
+    public List<TraceSpan> spans() {
+        return List.copyOf(spans);
+    }
+
+    public List<TraceSpan> spans(String traceId) {
+        List<TraceSpan> matched = new ArrayList<>();
+        for (TraceSpan span : spans) {
+            if (span.traceId().equals(traceId)) {
+                matched.add(span);
+            }
+        }
+        return matched;
+    }
+
+    public void clear() {
+        spans.clear();
+    }
+}
@@ -0,0 +1,179 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.PaymentRequestDecoder;
+import com.bill.sse.config.SseWarmUpProperties;
+import com.bill.sse.vo.InitializePaymentRequest;
+import com.bill.sse.vo.PaymentCallbackRequest;
+import com.bill.sse.vo.PaymentEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.Ordered;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 啟動時的 JIT 預熱 (sse.warmup.enabled=true 時執行)
+ * 以合成的 PaymentEvent 走過請求解碼 → PaymentService → JSON / compact 編碼 → Netty 寫出 → loopback SSE 訂閱者，
+ * 讓熱路徑在第一個真實請求前就被編譯；排在 StreamReadinessCheck 之前，完成後才會回報 ready
+ *
+ * 預熱事件以專用的訂單ID發布並標記為 warm-up，只會送到這裡開的 loopback 連接，
+ * 不計入發布總數，也不會寫入訂單狀態
+ */
+@Service
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
+@RequiredArgsConstructor
+@Slf4j
+public class JitWarmUpRunner implements ApplicationRunner {
+
+    private static final String SSE_PATH = StreamReadinessCheck.SSE_PATH;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    // 一段時間沒有收到任何事件 (例如降載時被合併) 就不再等待，繼續發布
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final byte[] INITIALIZE_BODY = "{\"amount\": 299.99}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CALLBACK_BODY = "{\"orderId\": \"warmup\", \"status\": \"FAILURE\", \"reason\": \"warm-up\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final SseWarmUpProperties properties;
+    private final PaymentService paymentService;
+    private final Environment environment;
+
+    private final PaymentRequestDecoder decoder = new PaymentRequestDecoder();
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (!properties.isEnabled() || port == null) {
+            return;
+        }
+
+        String orderId = "warmup-" + UUID.randomUUID();
+        WebClient client = WebClient.create("http://127.0.0.1:" + port);
+        AtomicLong received = new AtomicLong();
+        CountDownLatch connected = new CountDownLatch(2);
+        AtomicBoolean compactOpened = new AtomicBoolean();
+
+        // 同時開 SSE 與 compact 兩種格式的連接，兩種編碼都會被預熱
+        Disposable sse = client.get()
+                .uri(SSE_PATH + "?orderId={orderId}", orderId)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                })
+                .retryWhen(rejectedRetry())
+                .subscribe(event -> {
+                    if (event.comment() != null) {
+                        connected.countDown();
+                    } else if (orderId.equals(event.id())) {
+                        received.incrementAndGet();
+                    }
+                }, error -> log.warn("JIT 預熱 SSE 連接失敗: {}", error.getMessage()));
+        Disposable compact = client.get()
+                .uri(SSE_PATH + "?orderId={orderId}", orderId)
+                .accept(CompactEventCodec.MEDIA_TYPE)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .retryWhen(rejectedRetry())
+                .subscribe(buffer -> {
+                    DataBufferUtils.release(buffer);
+                    if (compactOpened.compareAndSet(false, true)) {
+                        connected.countDown();
+                    }
+                }, error -> log.warn("JIT 預熱 compact 連接失敗: {}", error.getMessage()));
+
+        try {
+            if (!connected.await(CONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("JIT 預熱略過, loopback 連接未建立");
+                return;
+            }
+            long start = System.nanoTime();
+            long sent = warmUp(orderId, received, start + properties.getMaxDuration().toNanos());
+            log.info("JIT 預熱完成, 事件: {}, 已收到: {}, 耗時: {}ms",
+                    sent, received.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            sse.dispose();
+            compact.dispose();
+        }
+    }
+
+    private long warmUp(String orderId, AtomicLong received, long deadline) {
+        long sent = 0;
+        long lastReceived = 0;
+        long progressAt = System.nanoTime();
+        long skipped = 0;
+        while (sent < properties.getIterations()) {
+            long now = System.nanoTime();
+            if (now > deadline) {
+                break;
+            }
+            long delivered = received.get() + skipped;
+            if (delivered != lastReceived) {
+                lastReceived = delivered;
+                progressAt = now;
+            }
+            if (sent - delivered >= properties.getMaxInFlight()) {
+                if (now - progressAt > STALL_NANOS) {
+                    // 未送達的視為已處理，避免一直卡住
+                    skipped += sent - delivered;
+                    progressAt = now;
+                } else {
+                    LockSupport.parkNanos(50_000);
+                }
+                continue;
+            }
+
+            // 請求解碼
+            decode(INITIALIZE_BODY, InitializePaymentRequest.class);
+            PaymentCallbackRequest callback = decode(CALLBACK_BODY, PaymentCallbackRequest.class);
+
+            // 與真實 callback 相同的事件種類
+            PaymentEvent event = sent % 10 == 0
+                    ? PaymentEvent.createFailureEvent(orderId, callback.reason())
+                    : PaymentEvent.createSuccessEvent(orderId, null);
+            paymentService.publishWarmUpEvent(event);
+            sent++;
+        }
+
+        // 等待最後一批送達
+        long drainDeadline = Math.min(deadline, System.nanoTime() + STALL_NANOS);
+        while (received.get() + skipped < sent && System.nanoTime() < drainDeadline) {
+            LockSupport.parkNanos(1_000_000);
+        }
+        return sent;
+    }
+
+    private <T> T decode(byte[] body, Class<T> type) {
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(body);
+        return type.cast(decoder.decode(buffer, ResolvableType.forClass(type), MediaType.APPLICATION_JSON, Map.of()));
+    }
+
+    // 剛啟動時可能被降載拒絕，與 readiness 檢查相同的重試方式
+    private static Retry rejectedRetry() {
+        return Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(100))
+                .maxBackoff(Duration.ofSeconds(1))
+                .filter(StreamReadinessCheck::isRejected);
+    }
+}
@@ -0,0 +1,470 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseLoadGeneratorProperties;
+import com.bill.sse.config.SseTenantProperties;
+import com.bill.sse.vo.LoadGeneratorRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 內建負載產生器: 依目標速率建立訂單並送出 callback，虛擬訂閱者以 SSE 接收事件，
+ * 全部經由本機的 HTTP 端點 (PaymentController → CallbackIngest → PaymentService → SseController)，
+ * 與真實客戶端走同一條路徑，包含 filter、准入控制、降載與商家上限
+ *
+ * 開放迴路: 速率不因回應變慢而降低，進行中的訂單達到 maxInFlight 時該筆略過並計入 skipped；
+ * 產生器與服務共用同一台機器的 CPU，找到的上限是保守值
+ *
+ * 每個間隔推送一次統計: 各階段的速率、錯誤、以及初始化、callback 回應與事件送達 (callback 送出到訂閱者收到) 的延遲百分位數
+ */
+@Service
+@Slf4j
+public class LoadGenerator {
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE = new ParameterizedTypeReference<>() {
+    };
+
+    private final SseLoadGeneratorProperties properties;
+    private final SseTenantProperties tenantProperties;
+    private final TenantRegistry tenantRegistry;
+    private final LoadShedder loadShedder;
+    private final Environment environment;
+
+    // 最近一次的統計，新的訂閱者先收到它
+    private final Sinks.Many<Map<String, Object>> stats = Sinks.many().replay().latest();
+
+    private Scheduler scheduler;
+    private volatile Run run;
+
+    public LoadGenerator(SseLoadGeneratorProperties properties, SseTenantProperties tenantProperties,
+                         TenantRegistry tenantRegistry, LoadShedder loadShedder, Environment environment) {
+        this.properties = properties;
+        this.tenantProperties = tenantProperties;
+        this.tenantRegistry = tenantRegistry;
+        this.loadShedder = loadShedder;
+        this.environment = environment;
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler = Schedulers.newSingle("load-generator", true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        Run current = run;
+        if (current != null) {
+            current.complete("shutdown");
+        }
+        if (scheduler != null) {
+            scheduler.dispose();
+        }
+    }
+
+    /**
+     * 單次執行的參數，已套用預設值
+     */
+    public record Settings(double rate, int subscribers, Duration duration, double failureRatio) {
+    }
+
+    // 參數超過上限時拋出 IllegalArgumentException，已在執行時拋出 IllegalStateException
+    public synchronized Settings start(LoadGeneratorRequest request) {
+        Settings settings = new Settings(
+                request.rate() > 0 ? request.rate() : properties.getDefaultRate(),
+                request.subscribers() > 0 ? request.subscribers() : properties.getDefaultSubscribers(),
+                request.durationSeconds() > 0 ? Duration.ofSeconds(request.durationSeconds()) : properties.getDefaultDuration(),
+                request.failureRatio());
+        if (settings.rate() > properties.getMaxRate()) {
+            throw new IllegalArgumentException("rate 超過上限 " + properties.getMaxRate());
+        }
+        if (settings.subscribers() > properties.getMaxSubscribers()) {
+            throw new IllegalArgumentException("subscribers 超過上限 " + properties.getMaxSubscribers());
+        }
+        if (settings.duration().compareTo(properties.getMaxDuration()) > 0) {
+            throw new IllegalArgumentException("duration 超過上限 " + properties.getMaxDuration());
+        }
+        if (settings.failureRatio() < 0 || settings.failureRatio() > 1) {
+            throw new IllegalArgumentException("failureRatio 需介於 0 與 1");
+        }
+        if (tenantProperties.isEnabled() && tenantRegistry.get(properties.getTenant()) == null) {
+            throw new IllegalArgumentException("商家 " + properties.getTenant() + " 未列在 sse.tenants.merchants");
+        }
+        if (run != null) {
+            throw new IllegalStateException("負載產生器執行中");
+        }
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (port == null) {
+            throw new IllegalStateException("找不到本機的 HTTP port");
+        }
+        run = new Run(settings, port);
+        run.begin();
+        log.warn("負載產生器開始, 速率: {}/s, 訂閱者: {}, 時間: {}, 失敗比例: {}, 商家: {}",
+                settings.rate(), settings.subscribers(), settings.duration(), settings.failureRatio(), properties.getTenant());
+        return settings;
+    }
+
+    // 沒有執行中時回傳 false
+    public boolean stop() {
+        Run current = run;
+        if (current == null) {
+            return false;
+        }
+        current.finish("stopped");
+        return true;
+    }
+
+    public boolean isRunning() {
+        return run != null;
+    }
+
+    // 每個間隔一筆統計，訂閱時先收到最近一筆；執行結束後保留最後一筆
+    public Flux<Map<String, Object>> stats() {
+        return stats.asFlux();
+    }
+
+    private synchronized void finished(Run finished) {
+        if (run == finished) {
+            run = null;
+        }
+    }
+
+    // 一次執行: 自己的 HTTP client、虛擬訂閱者、計數與延遲樣本
+    private final class Run {
+
+        private final Settings settings;
+        private final ConnectionProvider connectionProvider;
+        private final WebClient client;
+        private final Disposable.Composite disposables = Disposables.composite();
+
+        // 已送出 callback、等待訂閱者收到事件的訂單
+        private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger subscribersConnected = new AtomicInteger();
+        private final AtomicLong subscribersFailed = new AtomicLong();
+
+        // 累計值
+        private final AtomicLong initialized = new AtomicLong();
+        private final AtomicLong callbacks = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong lost = new AtomicLong();
+        private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+        private final LatencyWindow initializeLatency = new LatencyWindow(properties.getSamplesPerInterval());
+        private final LatencyWindow callbackLatency = new LatencyWindow(properties.getSamplesPerInterval());
+        private final LatencyWindow deliveryLatency = new LatencyWindow(properties.getSamplesPerInterval());
+
+        private long startedAt;
+        private long issued;
+        private long lastReportAt;
+        private long lastInitialized;
+        private long lastCallbacks;
+        private long lastDelivered;
+        private volatile String state = "RUNNING";
+
+        private Run(Settings settings, int port) {
+            this.settings = settings;
+            // 訂閱者各佔一條連接，其餘給進行中的訂單
+            this.connectionProvider = ConnectionProvider.builder("load-generator")
+                    .maxConnections(settings.subscribers() + properties.getMaxInFlight())
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            this.client = WebClient.builder()
+                    .baseUrl("http://127.0.0.1:" + port)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                    .defaultHeader(tenantProperties.getHeader(), properties.getTenant())
+                    .defaultHeader("User-Agent", "sse-load-generator")
+                    .build();
+        }
+
+        private void begin() {
+            startedAt = System.nanoTime();
+            lastReportAt = startedAt;
+            for (int i = 0; i < settings.subscribers(); i++) {
+                disposables.add(subscribe());
+            }
+            // 每 10ms 補上到目前為止應送出的筆數
+            disposables.add(Flux.interval(Duration.ofMillis(10), scheduler).subscribe(tick -> pace()));
+            disposables.add(Flux.interval(properties.getReportInterval(), scheduler).subscribe(tick -> report()));
+            disposables.add(Mono.delay(settings.duration(), scheduler).subscribe(done -> finish("completed")));
+        }
+
+        private Disposable subscribe() {
+            boolean[] connected = new boolean[1];
+            return client.get()
+                    .uri("/api/sse/payment-events")
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .retrieve()
+                    .bodyToFlux(SSE_TYPE)
+                    .doFinally(signal -> {
+                        if (connected[0]) {
+                            subscribersConnected.decrementAndGet();
+                        }
+                    })
+                    .subscribe(event -> {
+                        if (!connected[0]) {
+                            connected[0] = true;
+                            subscribersConnected.incrementAndGet();
+                        }
+                        // 訂單事件的 id 為 orderId
+                        Pending order = event.id() != null ? pending.get(event.id()) : null;
+                        if (order != null) {
+                            deliveryLatency.record(System.nanoTime() - order.sentAt);
+                            delivered.incrementAndGet();
+                            if (order.remaining.decrementAndGet() <= 0) {
+                                pending.remove(event.id(), order);
+                            }
+                        }
+                    }, error -> {
+                        subscribersFailed.incrementAndGet();
+                        error("subscribe", error);
+                    });
+        }
+
+        private void pace() {
+            long due = (long) ((System.nanoTime() - startedAt) / 1e9 * settings.rate());
+            for (; issued < due; issued++) {
+                if (inFlight.get() >= properties.getMaxInFlight()) {
+                    skipped.incrementAndGet();
+                    continue;
+                }
+                inFlight.incrementAndGet();
+                // 結束時關閉 connection provider，進行中的請求隨之中止
+                order().doFinally(signal -> inFlight.decrementAndGet()).subscribe();
+            }
+        }
+
+        // 建立訂單後立即送出 callback
+        private Mono<Void> order() {
+            long start = System.nanoTime();
+            return client.post()
+                    .uri("/api/payment/initialize")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(Map.of("amount", 100.0))
+                    .exchangeToMono(response -> response.statusCode().is2xxSuccessful()
+                            ? response.bodyToMono(Map.class)
+                            : response.releaseBody().then(Mono.error(new StatusException("initialize", response.statusCode().value()))))
+                    .flatMap(body -> {
+                        initializeLatency.record(System.nanoTime() - start);
+                        initialized.incrementAndGet();
+                        return callback(body.get("orderId").toString());
+                    })
+                    .onErrorResume(error -> {
+                        error("initialize", error);
+                        return Mono.empty();
+                    });
+        }
+
+        private Mono<Void> callback(String orderId) {
+            boolean failure = settings.failureRatio() > 0 && ThreadLocalRandom.current().nextDouble() < settings.failureRatio();
+            Map<String, String> body = failure
+                    ? Map.of("orderId", orderId, "status", "FAILURE", "reason", "load-generator")
+                    : Map.of("orderId", orderId, "status", "SUCCESS");
+            int expected = subscribersConnected.get();
+            long sentAt = System.nanoTime();
+            if (expected > 0) {
+                pending.put(orderId, new Pending(sentAt, expected));
+            }
+            return client.post()
+                    .uri("/api/payment/callback")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(body)
+                    .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().value()))
+                    .flatMap(status -> {
+                        if (status >= 200 && status < 300) {
+                            callbackLatency.record(System.nanoTime() - sentAt);
+                            callbacks.incrementAndGet();
+                            return Mono.empty();
+                        }
+                        pending.remove(orderId);
+                        return Mono.error(new StatusException("callback", status));
+                    })
+                    .doOnError(error -> pending.remove(orderId))
+                    .onErrorResume(error -> {
+                        error("callback", error);
+                        return Mono.empty();
+                    })
+                    .then();
+        }
+
+        private void error(String stage, Throwable error) {
+            if (!"RUNNING".equals(state)) {
+                return;
+            }
+            String key = error instanceof StatusException status ? stage + "." + status.status : stage + "." + error.getClass().getSimpleName();
+            errors.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+        }
+
+        private void report() {
+            long now = System.nanoTime();
+            // 超過送達期限的事件計為 lost
+            long deadline = now - properties.getDeliveryTimeout().toNanos();
+            pending.forEach((orderId, order) -> {
+                if (order.sentAt < deadline && pending.remove(orderId, order)) {
+                    lost.addAndGet(Math.max(0, order.remaining.get()));
+                }
+            });
+
+            double seconds = Math.max(1e-9, (now - lastReportAt) / 1e9);
+            long initializedTotal = initialized.get();
+            long callbacksTotal = callbacks.get();
+            long deliveredTotal = delivered.get();
+
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("state", state);
+            snapshot.put("elapsedSeconds", (now - startedAt) / 1_000_000_000L);
+            snapshot.put("targetRate", settings.rate());
+            snapshot.put("initializeRate", round((initializedTotal - lastInitialized) / seconds));
+            snapshot.put("callbackRate", round((callbacksTotal - lastCallbacks) / seconds));
+            snapshot.put("deliveryRate", round((deliveredTotal - lastDelivered) / seconds));
+            snapshot.put("initialized", initializedTotal);
+            snapshot.put("callbacks", callbacksTotal);
+            snapshot.put("delivered", deliveredTotal);
+            snapshot.put("skipped", skipped.get());
+            snapshot.put("lost", lost.get());
+            snapshot.put("inFlight", inFlight.get());
+            snapshot.put("awaitingDelivery", pending.size());
+            snapshot.put("subscribers", subscribersConnected.get());
+            snapshot.put("subscribersFailed", subscribersFailed.get());
+            Map<String, Long> errorCounts = new LinkedHashMap<>();
+            errors.forEach((key, count) -> errorCounts.put(key, count.get()));
+            snapshot.put("errors", errorCounts);
+            snapshot.put("initializeLatencyMs", initializeLatency.drain());
+            snapshot.put("callbackLatencyMs", callbackLatency.drain());
+            snapshot.put("deliveryLatencyMs", deliveryLatency.drain());
+            snapshot.put("sheddingLevel", loadShedder.level().name());
+
+            lastReportAt = now;
+            lastInitialized = initializedTotal;
+            lastCallbacks = callbacksTotal;
+            lastDelivered = deliveredTotal;
+            stats.tryEmitNext(snapshot);
+        }
+
+        private void finish(String reason) {
+            scheduler.schedule(() -> complete(reason));
+        }
+
+        private synchronized void complete(String reason) {
+            if (!"RUNNING".equals(state)) {
+                return;
+            }
+            state = reason.toUpperCase(Locale.ROOT);
+            report();
+            disposables.dispose();
+            pending.clear();
+            connectionProvider.disposeLater().subscribe();
+            finished(this);
+            log.warn("負載產生器結束, 原因: {}, 初始化: {}, callback: {}, 送達: {}, 略過: {}, 遺失: {}, 錯誤: {}",
+                    reason, initialized.get(), callbacks.get(), delivered.get(), skipped.get(), lost.get(), errors);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 10) / 10.0;
+        }
+    }
+
+    private record Pending(long sentAt, AtomicInteger remaining) {
+
+        Pending(long sentAt, int expected) {
+            this(sentAt, new AtomicInteger(expected));
+        }
+    }
+
+    private static final class StatusException extends RuntimeException {
+
+        private final int status;
+
+        StatusException(String stage, int status) {
+            super(stage + " 回應 " + status, null, false, false);
+            this.status = status;
+        }
+    }
+
+    /**
+     * 一個統計間隔內的延遲樣本，超過容量時以 reservoir sampling 保留均勻的子集；最大值與筆數不受取樣影響
+     */
+    static final class LatencyWindow {
+
+        private final long[] samples;
+        private long count;
+        private long max;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[Math.max(1, capacity)];
+        }
+
+        synchronized void record(long nanos) {
+            count++;
+            max = Math.max(max, nanos);
+            if (count <= samples.length) {
+                samples[(int) (count - 1)] = nanos;
+            } else {
+                long index = ThreadLocalRandom.current().nextLong(count);
+                if (index < samples.length) {
+                    samples[(int) index] = nanos;
+                }
+            }
+        }
+
+        // 取出本間隔的百分位數 (毫秒) 並清空；沒有樣本時各值為 0
+        Map<String, Object> drain() {
+            long[] sorted;
+            long total;
+            long maxNanos;
+            synchronized (this) {
+                sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+                total = count;
+                maxNanos = max;
+                count = 0;
+                max = 0;
+            }
+            Arrays.sort(sorted);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", total);
+            result.put("p50", millis(percentile(sorted, 0.50)));
+            result.put("p95", millis(percentile(sorted, 0.95)));
+            result.put("p99", millis(percentile(sorted, 0.99)));
+            result.put("max", millis(maxNanos));
+            return result;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+        private static double millis(long nanos) {
+            return Math.round(nanos / 10_000.0) / 100.0;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseSheddingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 依 event loop 延遲逐級降載
+ * 延遲需連續 escalationSamples 次超過門檻才升級 (避免 GC 或 JIT 的瞬間停頓觸發)，回落後需持續 recoveryDelay 才降級
+ * 探測在獨立的 thread 執行，不佔用 event loop
+ */
+@Service
+@Slf4j
+public class LoadShedder {
+
+    public enum Level {
+        NORMAL,
+        STRETCH_HEARTBEAT,
+        CONFLATE,
+        REJECT_CONNECTIONS,
+        REJECT_INITIALIZE
+    }
+
+    public enum Action {
+        HEARTBEAT_SKIPPED,
+        EVENT_CONFLATED,
+        CONNECTION_REJECTED,
+        INITIALIZE_REJECTED
+    }
+
+    private final EventLoopLagMonitor lagMonitor;
+    private final SseSheddingProperties properties;
+    private final Map<Action, Counter> decisions = new EnumMap<>(Action.class);
+
+    private volatile Level level = Level.NORMAL;
+    private volatile long maxLagNanos;
+    private long belowSince;
+    private int aboveSamples;
+    private Level aboveLevel = Level.NORMAL;
+
+    private Scheduler probeScheduler;
+    private Disposable probeTask;
+
+    public LoadShedder(EventLoopLagMonitor lagMonitor, SseSheddingProperties properties, MeterRegistry meterRegistry) {
+        this.lagMonitor = lagMonitor;
+        this.properties = properties;
+
+        TimeGauge.builder("sse.eventloop.lag", this, TimeUnit.NANOSECONDS, shedder -> shedder.maxLagNanos)
+                .description("Netty event loop 中最大的排隊延遲")
+                .register(meterRegistry);
+        Gauge.builder("sse.shedding.level", this, shedder -> shedder.level.ordinal())
+                .description("目前的降載等級 (0 = 正常)")
+                .register(meterRegistry);
+        for (Action action : Action.values()) {
+            decisions.put(action, Counter.builder("sse.shedding.decisions")
+                    .description("降載措施的執行次數")
+                    .tag("action", action.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    @PostConstruct
+    void startProbing() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long periodMillis = properties.getProbeInterval().toMillis();
+        probeScheduler = Schedulers.newSingle("event-loop-lag-probe", true);
+        probeTask = probeScheduler.schedulePeriodically(this::tick, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopProbing() {
+        if (probeTask != null) {
+            probeTask.dispose();
+            probeScheduler.dispose();
+        }
+    }
+
+    void tick() {
+        try {
+            update(lagMonitor.probe(), System.nanoTime());
+        } catch (Exception e) {
+            log.warn("event loop 延遲探測失敗: {}", e.getMessage());
+        }
+    }
+
+    // 依最新的延遲更新降載等級
+    void update(long lagNanos, long now) {
+        maxLagNanos = lagNanos;
+        Level target = levelFor(lagNanos);
+        Level current = level;
+        if (target.compareTo(current) > 0) {
+            belowSince = 0;
+            // 連續多次超過門檻才升級，升到這段期間內最低的等級
+            aboveLevel = aboveSamples == 0 || target.compareTo(aboveLevel) < 0 ? target : aboveLevel;
+            if (++aboveSamples >= properties.getEscalationSamples()) {
+                log.warn("event loop 延遲 {}ms, 降載等級提升: {} -> {}", TimeUnit.NANOSECONDS.toMillis(lagNanos), current, aboveLevel);
+                level = aboveLevel;
+                aboveSamples = 0;
+            }
+            return;
+        }
+        aboveSamples = 0;
+        if (target.compareTo(current) < 0) {
+            if (belowSince == 0) {
+                belowSince = now;
+            } else if (now - belowSince >= properties.getRecoveryDelay().toNanos()) {
+                log.info("event loop 延遲 {}ms, 降載等級恢復: {} -> {}", TimeUnit.NANOSECONDS.toMillis(lagNanos), current, target);
+                level = target;
+                belowSince = 0;
+            }
+        } else {
+            belowSince = 0;
+        }
+    }
+
+    public Level level() {
+        return level;
+    }
+
+    // heartbeat 是否要送出: 第 1 級每 N 次送 1 次，第 2 級以上不送
+    public boolean shouldSendHeartbeat(long tick) {
+        Level current = level;
+        boolean send = current == Level.NORMAL
+                || (current == Level.STRETCH_HEARTBEAT && tick % Math.max(1, properties.getHeartbeatStretchFactor()) == 0);
+        if (!send) {
+            record(Action.HEARTBEAT_SKIPPED);
+        }
+        return send;
+    }
+
+    public boolean shouldConflate() {
+        return level.compareTo(Level.CONFLATE) >= 0;
+    }
+
+    public boolean shouldRejectConnections() {
+        return level.compareTo(Level.REJECT_CONNECTIONS) >= 0;
+    }
+
+    public boolean shouldRejectInitialize() {
+        return level.compareTo(Level.REJECT_INITIALIZE) >= 0;
+    }
+
+    public Duration retryAfter() {
+        return properties.getRetryAfter();
+    }
+
+    public void record(Action action) {
+        decisions.get(action).increment();
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("level", level);
+        status.put("maxLagMillis", TimeUnit.NANOSECONDS.toMillis(maxLagNanos));
+        status.put("eventLoops", lagMonitor.loopCount());
+        for (Action action : Action.values()) {
+            status.put(action.name().toLowerCase(), (long) decisions.get(action).count());
+        }
+        return status;
+    }
+
+    private Level levelFor(long lagNanos) {
+        if (lagNanos >= properties.getRejectInitializeLag().toNanos()) {
+            return Level.REJECT_INITIALIZE;
+        }
+        if (lagNanos >= properties.getRejectConnectionsLag().toNanos()) {
+            return Level.REJECT_CONNECTIONS;
+        }
+        if (lagNanos >= properties.getConflateLag().toNanos()) {
+            return Level.CONFLATE;
+        }
+        if (lagNanos >= properties.getStretchHeartbeatLag().toNanos()) {
+            return Level.STRETCH_HEARTBEAT;
+        }
+        return Level.NORMAL;
+    }
+}
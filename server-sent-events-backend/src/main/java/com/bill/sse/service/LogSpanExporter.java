@@ -0,0 +1,29 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.vo.TraceSpan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 每個 span 一筆結構化 log，寫到 com.bill.sse.trace，經過 RingBufferAppender 不會阻塞
+ * 一個 trace 推送給大量連接時 span 很多，超過時取樣
+ */
+public class LogSpanExporter implements SpanExporter {
+
+    private static final Logger log = LoggerFactory.getLogger("com.bill.sse.trace");
+    private static final LogLimiter SPAN_LOG = LogLimiter.perSecond(200, 500, 100);
+
+    @Override
+    public void export(TraceSpan span) {
+        SPAN_LOG.atInfo(log)
+                .addKeyValue("traceId", span.traceId())
+                .addKeyValue("spanId", span.spanId())
+                .addKeyValue("parentSpanId", span.parentSpanId())
+                .addKeyValue("orderId", span.orderId())
+                .addKeyValue("connectionId", span.connectionId())
+                .addKeyValue("start", span.startEpochMillis())
+                .addKeyValue("durationMicros", span.durationNanos() / 1000)
+                .log(span.name());
+    }
+}
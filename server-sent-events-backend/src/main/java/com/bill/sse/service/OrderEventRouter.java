@@ -0,0 +1,69 @@
+package com.bill.sse.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 指定訂單連接的事件投遞: 每個商家只有一個訂閱者接收該商家 partition 的事件，再經由 ConnectionRegistry 的索引投遞到各連接的 inbox
+ * 商家有指定訂單的連接存在時才訂閱其 partition，最後一條連接關閉後取消
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderEventRouter {
+
+    private final PaymentService paymentService;
+    private final ConnectionRegistry connectionRegistry;
+
+    // 商家代碼 → 該商家的訂閱與連接數
+    private final Map<String, Attachment> attachments = new HashMap<>();
+
+    public Disposable attach() {
+        return attach(TenantRegistry.DEFAULT);
+    }
+
+    // 連接建立時呼叫，回傳的 Disposable 在連接結束時釋放
+    public synchronized Disposable attach(String tenant) {
+        Attachment attachment = attachments.computeIfAbsent(tenant, key -> new Attachment());
+        attachment.count++;
+        if (attachment.subscription == null || attachment.subscription.isDisposed()) {
+            attachment.subscription = paymentService.getEncodedEvents(tenant)
+                    .subscribe(connectionRegistry::route,
+                            error -> log.error("訂單事件投遞中斷, 商家: {}, 錯誤: {}", tenant, error.getMessage(), error));
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                detach(tenant);
+            }
+        };
+    }
+
+    public synchronized int attachedCount() {
+        int count = 0;
+        for (Attachment attachment : attachments.values()) {
+            count += attachment.count;
+        }
+        return count;
+    }
+
+    private synchronized void detach(String tenant) {
+        Attachment attachment = attachments.get(tenant);
+        if (attachment != null && --attachment.count == 0) {
+            attachment.subscription.dispose();
+            attachments.remove(tenant);
+        }
+    }
+
+    private static final class Attachment {
+
+        private int count;
+        private Disposable subscription;
+    }
+}
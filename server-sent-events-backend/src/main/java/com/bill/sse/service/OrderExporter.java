@@ -0,0 +1,197 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseExportProperties;
+import com.bill.sse.vo.OrderRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 訂單匯出 (對帳用): 依序走訪記憶體與冷儲存的訂單，符合條件的以 NDJSON 逐批寫出
+ *
+ * 每批在下游要求時才在獨立的單一 thread 產生，記憶體中最多只有幾批，與訂單數無關；
+ * LoadShedder 不在 NORMAL 時每批送出前先等待，讓 event loop 先處理 SSE 投遞
+ *
+ * 走訪不會先複製訂單，期間的狀態轉換可能反映也可能不反映；訂單在匯出途中從記憶體移到冷儲存時可能出現兩次，
+ * 對帳時以 orderId 與 version 去重
+ */
+@Service
+@Slf4j
+public class OrderExporter {
+
+    private final SseExportProperties properties;
+    private final OrderStore orderStore;
+    private final ColdOrderStore coldOrderStore;
+    private final LoadShedder loadShedder;
+    private final ObjectWriter writer;
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Counter exported;
+    private final Counter paused;
+    private final Counter rejected;
+
+    private Scheduler scheduler;
+
+    public OrderExporter(SseExportProperties properties, OrderStore orderStore, ColdOrderStore coldOrderStore,
+                         LoadShedder loadShedder, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.orderStore = orderStore;
+        this.coldOrderStore = coldOrderStore;
+        this.loadShedder = loadShedder;
+        this.writer = objectMapper.writerFor(OrderRecord.class);
+
+        Gauge.builder("sse.export.active", active, AtomicInteger::get)
+                .description("進行中的訂單匯出數")
+                .register(meterRegistry);
+        this.exported = Counter.builder("sse.export.records")
+                .description("已匯出的訂單數")
+                .register(meterRegistry);
+        this.paused = Counter.builder("sse.export.paused")
+                .description("降載期間延後送出的批數")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("sse.export.rejected")
+                .description("超過同時匯出上限而被拒絕的請求數")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler = Schedulers.newSingle("order-export", true);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.dispose();
+        }
+    }
+
+    /**
+     * 匯出條件，null 代表不限制；時間範圍比對訂單最後更新的時間 (epoch millis，含 from 不含 to)
+     */
+    public record Filter(String tenant, Set<String> statuses, Long from, Long to) {
+
+        boolean matches(OrderRecord record) {
+            return (tenant == null || tenant.equals(record.tenant()))
+                    && (statuses == null || statuses.isEmpty() || statuses.contains(record.status()))
+                    && (from == null || record.updatedAt() >= from)
+                    && (to == null || record.updatedAt() < to);
+        }
+    }
+
+    // 已達同時匯出上限時回傳 null；回傳的 Flux 結束或取消時釋放名額
+    public Flux<DataBuffer> export(Filter filter, DataBufferFactory bufferFactory) {
+        if (active.incrementAndGet() > properties.getMaxConcurrent()) {
+            active.decrementAndGet();
+            rejected.increment();
+            return null;
+        }
+        long start = System.nanoTime();
+        int[] count = new int[1];
+        // 在完成訊號送到下游前釋放名額，客戶端收完後立即再次匯出不會被拒絕；完成與取消只釋放一次
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                active.decrementAndGet();
+            }
+        };
+        Duration pause = properties.getPauseWhileShedding();
+        return Flux.<DataBuffer, Iterator<OrderRecord>>generate(this::source, (source, sink) -> {
+                    ByteArrayOutputStream chunk = new ByteArrayOutputStream(properties.getChunkSize() * 160);
+                    int records = 0;
+                    // 不符合條件的訂單不計入，少量符合時一批可能走訪很多筆
+                    while (records < properties.getChunkSize() && source.hasNext()) {
+                        OrderRecord record = source.next();
+                        if (filter.matches(record)) {
+                            write(chunk, record);
+                            records++;
+                        }
+                    }
+                    if (records > 0) {
+                        exported.increment(records);
+                        count[0] += records;
+                        sink.next(bufferFactory.wrap(chunk.toByteArray()));
+                    }
+                    if (!source.hasNext()) {
+                        sink.complete();
+                    }
+                    return source;
+                })
+                .subscribeOn(scheduler)
+                .concatMap(buffer -> {
+                    if (loadShedder.level() == LoadShedder.Level.NORMAL) {
+                        return Mono.just(buffer);
+                    }
+                    paused.increment();
+                    return Mono.just(buffer).delayElement(pause, scheduler);
+                }, 1)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .doOnTerminate(release)
+                .doOnCancel(release)
+                .doFinally(signal -> {
+                    log.info("訂單匯出結束, 結果: {}, 筆數: {}, 耗時: {}ms", signal, count[0], (System.nanoTime() - start) / 1_000_000);
+                });
+    }
+
+    // 先走訪記憶體中的訂單，再走訪冷儲存
+    private Iterator<OrderRecord> source() {
+        Iterator<OrderRecord> hot = orderStore.records();
+        return new Iterator<>() {
+
+            private Iterator<OrderRecord> current = hot;
+
+            @Override
+            public boolean hasNext() {
+                if (!current.hasNext() && current == hot) {
+                    current = coldOrderStore.records();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public OrderRecord next() {
+                hasNext();
+                return current.next();
+            }
+        };
+    }
+
+    private void write(ByteArrayOutputStream chunk, OrderRecord record) {
+        try {
+            chunk.write(writer.writeValueAsBytes(record));
+        } catch (IOException e) {
+            throw new UncheckedIOException("訂單序列化失敗: " + record.orderId(), e);
+        }
+        chunk.write('\n');
+    }
+
+    public int active() {
+        return active.get();
+    }
+
+    public Duration retryAfter() {
+        return properties.getRetryAfter();
+    }
+}
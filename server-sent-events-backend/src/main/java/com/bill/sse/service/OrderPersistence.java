@@ -0,0 +1,261 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.config.SsePersistenceProperties;
+import com.bill.sse.repository.FileOrderRepository;
+import com.bill.sse.repository.OrderRepository;
+import com.bill.sse.vo.OrderRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 訂單狀態寫入資料檔: OrderStore 在狀態轉換時呼叫，讀取仍然只看記憶體
+ *
+ * WRITE_BEHIND 時只把訂單的最新狀態放進 dirty map (同一訂單的多次更新合併成一筆)，
+ * 由背景 thread 每 flush-interval 或累積到 batch-size 時整批寫入，callback 的處理不等待磁碟；
+ * 代價是程序當機時最多遺失最近 flush-interval 內的更新，正常關機時會先寫完
+ *
+ * SYNC 時同樣先放進 dirty map，由 OrderStore 在釋放訂單的鎖之後呼叫 flushIfSync 在呼叫端 thread 寫入，
+ * 寫檔與 fsync 不會佔住訂單的鎖；呼叫端不應是 event loop (PaymentController 改在 boundedElastic 上呼叫)
+ */
+@Service
+@Slf4j
+public class OrderPersistence {
+
+    // dirty map 中代表訂單已移除
+    private static final Object DELETED = new Object();
+
+    private static final LogLimiter FAILED_LOG = LogLimiter.perSecond(1, 5);
+
+    private final SsePersistenceProperties properties;
+    private final OrderRepository repository;
+    private final SsePersistenceProperties.Mode mode;
+    // 訂單代碼 → 尚未寫入的最新狀態 (OrderRecord 或 DELETED)
+    private final Map<String, Object> dirty = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final DistributionSummary batchSize;
+    private final Timer writeTime;
+    private final Counter coalesced;
+    private final Counter failures;
+    private final Counter rejected;
+
+    private Scheduler writer;
+    private Disposable flushTask;
+
+    @Autowired
+    public OrderPersistence(SsePersistenceProperties properties, MeterRegistry meterRegistry) {
+        this(properties, properties.getMode() == SsePersistenceProperties.Mode.OFF ? null
+                : new FileOrderRepository(properties.getPath(), properties.isFsync(),
+                properties.getCompactThreshold().toBytes()), meterRegistry);
+    }
+
+    OrderPersistence(SsePersistenceProperties properties, OrderRepository repository, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.repository = repository;
+        this.mode = repository != null ? properties.getMode() : SsePersistenceProperties.Mode.OFF;
+
+        Gauge.builder("sse.persistence.pending", dirty, Map::size)
+                .description("尚未寫入資料檔的訂單數")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("sse.persistence.batch.size")
+                .description("每次寫入資料檔的訂單數")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.writeTime = Timer.builder("sse.persistence.write.time")
+                .description("每次寫入資料檔 (含 fsync) 的時間")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("sse.persistence.coalesced")
+                .description("寫入前被同一訂單較新的狀態取代的更新數")
+                .register(meterRegistry);
+        this.failures = Counter.builder("sse.persistence.failures")
+                .description("寫入資料檔失敗的次數")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("sse.persistence.rejected")
+                .description("無法寫入資料檔而略過的訂單紀錄數 (例如超過單筆大小上限)")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (mode != SsePersistenceProperties.Mode.WRITE_BEHIND) {
+            return;
+        }
+        long intervalMillis = Math.max(1, properties.getFlushInterval().toMillis());
+        writer = Schedulers.newSingle("order-write-behind", true);
+        flushTask = writer.schedulePeriodically(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // OrderStore 在此之前關閉 (依賴順序)，之後不會再有更新
+    @PreDestroy
+    void stop() {
+        if (flushTask != null) {
+            flushTask.dispose();
+            writer.dispose();
+        }
+        if (repository != null) {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.warn("關機時寫入資料檔失敗: {}", e.getMessage());
+            }
+            if (!dirty.isEmpty()) {
+                log.warn("關機時仍有未寫入資料檔的訂單, 數量: {}", dirty.size());
+            }
+            repository.close();
+        }
+    }
+
+    public boolean enabled() {
+        return mode != SsePersistenceProperties.Mode.OFF;
+    }
+
+    // 訂單的建立與狀態轉換是否會等待寫入資料檔
+    public boolean isSync() {
+        return mode == SsePersistenceProperties.Mode.SYNC;
+    }
+
+    // 重啟時恢復的訂單，關閉持久化時為空
+    public List<OrderRecord> load() {
+        return repository != null ? repository.findAll() : List.of();
+    }
+
+    // 在訂單的鎖內呼叫，同一訂單的更新依順序進入
+    // 缺少必要欄位的紀錄寫入時一定失敗，不放進 dirty map，以免擋住同一批的其他訂單
+    public void save(OrderRecord record) {
+        if (mode == SsePersistenceProperties.Mode.OFF) {
+            return;
+        }
+        if (record.orderId() == null || record.tenant() == null || record.status() == null) {
+            rejected.increment();
+            FAILED_LOG.atWarn(log).log("訂單紀錄缺少必要欄位, 不寫入資料檔: {}", record);
+            return;
+        }
+        enqueue(record.orderId(), record);
+    }
+
+    public void delete(String orderId) {
+        enqueue(orderId, DELETED);
+    }
+
+    private void enqueue(String orderId, Object value) {
+        if (mode == SsePersistenceProperties.Mode.OFF) {
+            return;
+        }
+        if (dirty.put(orderId, value) != null) {
+            coalesced.increment();
+        }
+        // 不等下一次定時寫入，flag 避免同一批排程多次
+        if (writer != null && dirty.size() >= properties.getBatchSize() && flushScheduled.compareAndSet(false, true)) {
+            writer.schedule(this::flushQuietly);
+        }
+    }
+
+    // SYNC 時在訂單的鎖外呼叫: 回傳時此 thread 放進 dirty map 的更新已寫入 (flush 互斥，其他 thread 先取走的也已寫完)
+    // 狀態已在記憶體中更新並發布事件，寫入失敗不拋給呼叫端，更新留在 dirty map 由下一次寫入重試
+    public void flushIfSync() {
+        if (mode == SsePersistenceProperties.Mode.SYNC) {
+            flushQuietly();
+        }
+    }
+
+    private void flushQuietly() {
+        flushScheduled.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            FAILED_LOG.atWarn(log).log("訂單寫入資料檔失敗, 下次再試: {}", e.getMessage());
+        }
+    }
+
+    // 把 dirty map 中的訂單以 batch-size 為單位寫入，回傳寫入的訂單數；失敗的一批放回 dirty map
+    synchronized int flush() {
+        int written = 0;
+        Iterator<String> keys = dirty.keySet().iterator();
+        while (keys.hasNext()) {
+            List<OrderRecord> saves = new ArrayList<>();
+            List<String> deletes = new ArrayList<>();
+            while (keys.hasNext() && saves.size() + deletes.size() < properties.getBatchSize()) {
+                String orderId = keys.next();
+                Object value = dirty.remove(orderId);
+                if (value == DELETED) {
+                    deletes.add(orderId);
+                } else if (value != null) {
+                    saves.add((OrderRecord) value);
+                }
+            }
+            try {
+                write(saves, deletes);
+            } catch (RuntimeException e) {
+                // 期間又有更新的訂單保留較新的狀態
+                saves.forEach(record -> dirty.putIfAbsent(record.orderId(), record));
+                deletes.forEach(orderId -> dirty.putIfAbsent(orderId, DELETED));
+                throw e;
+            }
+            written += saves.size() + deletes.size();
+        }
+        return written;
+    }
+
+    private void write(List<OrderRecord> saves, List<String> deletes) {
+        if (saves.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<String> skipped;
+        try {
+            skipped = repository.write(saves, deletes);
+        } catch (RuntimeException e) {
+            failures.increment();
+            throw e;
+        }
+        // 單筆紀錄本身無法寫入時重試也不會成功，不放回 dirty map，以免擋住之後的每一批
+        if (!skipped.isEmpty()) {
+            rejected.increment(skipped.size());
+            FAILED_LOG.atWarn(log).log("訂單紀錄無法寫入資料檔, 已略過: {}", skipped);
+        }
+        writeTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(saves.size() + deletes.size());
+    }
+
+    public int pending() {
+        return dirty.size();
+    }
+
+    // 寫入模式、批次大小與寫入時間（用於監控）
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("stored", repository != null ? repository.count() : 0);
+        stats.put("pending", dirty.size());
+        stats.put("batches", batchSize.count());
+        stats.put("batchSizeMean", batchSize.mean());
+        stats.put("batchSizeMax", batchSize.max());
+        stats.put("writeTimeMaxMillis", writeTime.max(TimeUnit.MILLISECONDS));
+        stats.put("coalesced", (long) coalesced.count());
+        stats.put("failures", (long) failures.count());
+        stats.put("rejected", (long) rejected.count());
+        return stats;
+    }
+}
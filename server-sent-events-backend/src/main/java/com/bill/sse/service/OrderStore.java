@@ -0,0 +1,334 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.config.SseOrderProperties;
+import com.bill.sse.vo.OrderRecord;
+import com.bill.sse.vo.PaymentEvent;
+import com.bill.sse.vo.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 訂單狀態（實際系統應該用資料庫）
+ * 每筆訂單在 timing wheel 上只有一個到期時間: PENDING 時是付款逾時，進入最終狀態後改為保留期限
+ * 逾時的訂單走同一個狀態轉換改為 EXPIRED 並發布失敗事件，保留期限到了就從記憶體移除
+ *
+ * 每次狀態轉換遞增訂單的版本，並在同一個鎖內發布帶版本的事件，同一訂單的事件依版本順序進入 sink；
+ * 最後一個事件保留作為快照，連接建立時先送出快照，再以版本略過重複的即時事件
+ *
+ * 開啟 sse.persistence 時，建立、狀態轉換與移除在同一個鎖內交給 OrderPersistence (依版本順序)，
+ * SYNC 模式的寫檔在釋放鎖之後才進行；啟動時從資料檔恢復訂單、快照與到期時間；讀取只看記憶體
+ *
+ * 開啟 sse.cold-storage 時，保留期限到期的訂單移到 ColdOrderStore，記憶體找不到的狀態查詢再從冷儲存回答
+ */
+@Service
+@Slf4j
+public class OrderStore {
+
+    public static final String PENDING = "PENDING";
+    public static final String EXPIRED = "EXPIRED";
+    public static final String EXPIRED_REASON = "訂單逾時未付款";
+
+    // 同一時間建立的大量訂單會一起逾時
+    private static final LogLimiter EXPIRED_LOG = LogLimiter.perSecond(20, 50, 100);
+
+    private final SseOrderProperties properties;
+    private final PaymentService paymentService;
+    private final OrderPersistence persistence;
+    private final ColdOrderStore coldOrderStore;
+    private final LongSupplier clock;
+    private final Map<String, Order> orders = new ConcurrentHashMap<>();
+    private final TimingWheel<Order> wheel;
+
+    private final Timer lateness;
+    private final Counter expired;
+    private final Counter evicted;
+    private final Counter recovered;
+
+    private Scheduler tickScheduler;
+    private Disposable tickTask;
+
+    @Autowired
+    public OrderStore(SseOrderProperties properties, PaymentService paymentService, OrderPersistence persistence,
+                      ColdOrderStore coldOrderStore, MeterRegistry meterRegistry) {
+        this(properties, paymentService, persistence, coldOrderStore, meterRegistry, System::nanoTime);
+    }
+
+    OrderStore(SseOrderProperties properties, PaymentService paymentService, OrderPersistence persistence,
+               ColdOrderStore coldOrderStore, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.properties = properties;
+        this.paymentService = paymentService;
+        this.persistence = persistence;
+        this.coldOrderStore = coldOrderStore;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(properties.getTick().toNanos(), properties.getWheelSize(), properties.getLevels(),
+                clock.getAsLong(), this::onDeadline);
+
+        Gauge.builder("sse.orders", orders, Map::size)
+                .description("記憶體中的訂單數")
+                .register(meterRegistry);
+        Gauge.builder("sse.orders.deadlines", wheel, TimingWheel::size)
+                .description("timing wheel 上等待中的到期時間 (逾時與保留期限)")
+                .register(meterRegistry);
+        Gauge.builder("sse.orders.deadlines.pending", wheel, TimingWheel::pendingCount)
+                .description("尚未放進 timing wheel bucket 的新增數")
+                .register(meterRegistry);
+        this.lateness = Timer.builder("sse.orders.deadline.lateness")
+                .description("到期時間實際觸發的延遲")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.expired = Counter.builder("sse.orders.expired")
+                .description("付款逾時的訂單數")
+                .register(meterRegistry);
+        this.evicted = Counter.builder("sse.orders.evicted")
+                .description("保留期限到期而移除的訂單數")
+                .register(meterRegistry);
+        this.recovered = Counter.builder("sse.orders.recovered")
+                .description("啟動時從資料檔恢復的訂單數")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startTicking() {
+        recover();
+        long tickMillis = Math.max(1, properties.getTick().toMillis());
+        tickScheduler = Schedulers.newSingle("order-expiry", true);
+        tickTask = tickScheduler.schedulePeriodically(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopTicking() {
+        if (tickTask != null) {
+            tickTask.dispose();
+            tickScheduler.dispose();
+        }
+    }
+
+    void tick() {
+        try {
+            advance(clock.getAsLong());
+        } catch (Exception e) {
+            log.warn("訂單逾時檢查失敗: {}", e.getMessage());
+        }
+    }
+
+    // 推進 timing wheel，回傳觸發的到期數
+    int advance(long now) {
+        return wheel.advance(now);
+    }
+
+    // 以資料檔中的最新狀態重建訂單，到期時間依建立或最後更新的時間換算，停機期間已到期的在下一個 tick 處理
+    int recover() {
+        List<OrderRecord> records = persistence.load();
+        long now = clock.getAsLong();
+        long nowMillis = System.currentTimeMillis();
+        for (OrderRecord record : records) {
+            Order order = new Order(record.orderId(), record.tenant(), record.createdAt());
+            synchronized (order) {
+                order.status = record.status();
+                order.reason = record.reason();
+                order.version = record.version();
+                order.updatedAt = record.updatedAt();
+                long deadlineMillis;
+                if (PENDING.equals(order.status)) {
+                    deadlineMillis = order.createdAt + properties.getPendingTimeout().toMillis();
+                } else {
+                    order.lastEvent = eventFor(order);
+                    deadlineMillis = order.updatedAt + properties.getRetention().toMillis();
+                }
+                orders.put(order.orderId, order);
+                long remaining = TimeUnit.MILLISECONDS.toNanos(Math.max(0, deadlineMillis - nowMillis));
+                order.deadline = wheel.schedule(order, now + remaining);
+            }
+        }
+        if (!records.isEmpty()) {
+            recovered.increment(records.size());
+            log.info("已從資料檔恢復訂單, 數量: {}", records.size());
+        }
+        return records.size();
+    }
+
+    // 建立 PENDING 訂單並排入付款逾時
+    public void create(String orderId) {
+        create(orderId, TenantRegistry.DEFAULT);
+    }
+
+    // 訂單的事件發布到所屬商家的 partition
+    public void create(String orderId, String tenant) {
+        Order order = new Order(orderId, tenant, System.currentTimeMillis());
+        synchronized (order) {
+            orders.put(orderId, order);
+            order.deadline = wheel.schedule(order, clock.getAsLong() + properties.getPendingTimeout().toNanos());
+            persistence.save(order.toRecord());
+        }
+        persistence.flushIfSync();
+    }
+
+    public boolean contains(String orderId) {
+        return orderId != null && orders.containsKey(orderId);
+    }
+
+    // 訂單所屬的商家，訂單不存在時回傳 null
+    public String tenant(String orderId) {
+        Order order = orderId != null ? orders.get(orderId) : null;
+        return order != null ? order.tenant : null;
+    }
+
+    // 走訪記憶體中的訂單 (weakly consistent，不會先複製)，匯出時使用
+    public Iterator<OrderRecord> records() {
+        Iterator<Order> iterator = orders.values().iterator();
+        return new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public OrderRecord next() {
+                Order order = iterator.next();
+                synchronized (order) {
+                    return order.toRecord();
+                }
+            }
+        };
+    }
+
+    // 記憶體中沒有時查冷儲存，都不存在時回傳 null
+    public String status(String orderId) {
+        Order order = orderId != null ? orders.get(orderId) : null;
+        if (order != null) {
+            return order.status;
+        }
+        OrderRecord record = coldOrderStore.find(orderId);
+        return record != null ? record.status() : null;
+    }
+
+    // 訂單最後一個狀態事件的快照副本 (isSnapshot)，還在 PENDING 或訂單不存在時回傳 null
+    public EncodedPaymentEvent snapshot(String orderId) {
+        Order order = orderId != null ? orders.get(orderId) : null;
+        EncodedPaymentEvent last = order != null ? order.lastEvent : null;
+        return last != null ? last.asSnapshot() : null;
+    }
+
+    // 更新訂單狀態並發布事件 (SUCCESS 以外皆為失敗事件)，回傳原本的狀態；訂單不存在時回傳 null
+    public String transition(String orderId, String status, String reason) {
+        return transition(orderId, status, reason, null);
+    }
+
+    // trace 為觸發轉換的 callback 的 trace，帶到發布的事件
+    public String transition(String orderId, String status, String reason, TraceContext trace) {
+        Order order = orderId != null ? orders.get(orderId) : null;
+        if (order == null) {
+            return null;
+        }
+        String previous = transition(order, status, reason, trace);
+        persistence.flushIfSync();
+        return previous;
+    }
+
+    // 離開 PENDING 時改排保留期限，之後再轉換 (例如逾時後才收到 callback) 沿用同一個期限
+    // 只把紀錄交給 OrderPersistence，SYNC 模式的寫檔由呼叫端在鎖外進行
+    private String transition(Order order, String status, String reason, TraceContext trace) {
+        synchronized (order) {
+            String previous = order.status;
+            order.status = status;
+            order.reason = "SUCCESS".equals(status) ? null : reason;
+            order.updatedAt = System.currentTimeMillis();
+            order.version++;
+            order.lastEvent = eventFor(order, trace);
+            paymentService.publish(order.lastEvent);
+            if (PENDING.equals(previous) && !PENDING.equals(status)) {
+                order.deadline.cancel();
+                order.deadline = wheel.schedule(order, clock.getAsLong() + properties.getRetention().toNanos());
+            }
+            persistence.save(order.toRecord());
+            return previous;
+        }
+    }
+
+    // 在 tick thread 執行
+    private void onDeadline(TimingWheel.Timeout<Order> deadline) {
+        lateness.record(Math.max(0, clock.getAsLong() - deadline.deadlineNanos()), TimeUnit.NANOSECONDS);
+        Order order = deadline.payload();
+        boolean expire;
+        synchronized (order) {
+            if (order.deadline != deadline) {
+                return;
+            }
+            expire = PENDING.equals(order.status);
+            if (expire) {
+                transition(order, EXPIRED, EXPIRED_REASON, null);
+            } else {
+                orders.remove(order.orderId, order);
+                coldOrderStore.offer(order.toRecord());
+                persistence.delete(order.orderId);
+                evicted.increment();
+            }
+        }
+        persistence.flushIfSync();
+        if (expire) {
+            expired.increment();
+            EXPIRED_LOG.atInfo(log)
+                    .addKeyValue("orderId", order.orderId)
+                    .log("訂單付款逾時");
+        }
+    }
+
+    // SUCCESS 以外皆為失敗事件
+    private static EncodedPaymentEvent eventFor(Order order) {
+        return eventFor(order, null);
+    }
+
+    private static EncodedPaymentEvent eventFor(Order order, TraceContext trace) {
+        PaymentEvent event = "SUCCESS".equals(order.status)
+                ? PaymentEvent.createSuccessEvent(order.orderId, null)
+                : PaymentEvent.createFailureEvent(order.orderId, order.reason);
+        if (trace != null) {
+            event = event.withTraceId(trace.traceId());
+        }
+        return new EncodedPaymentEvent(order.tenant, event, order.version, trace);
+    }
+
+    private static final class Order {
+
+        private final String orderId;
+        private final String tenant;
+        // epoch millis，重啟後用來換算到期時間
+        private final long createdAt;
+        private volatile String status = PENDING;
+        private volatile EncodedPaymentEvent lastEvent;
+        private String reason;
+        private long version;
+        private long updatedAt;
+        private TimingWheel.Timeout<Order> deadline;
+
+        private Order(String orderId, String tenant, long createdAt) {
+            this.orderId = orderId;
+            this.tenant = tenant;
+            this.createdAt = createdAt;
+            this.updatedAt = createdAt;
+        }
+
+        private OrderRecord toRecord() {
+            return new OrderRecord(orderId, tenant, status, reason, version, createdAt, updatedAt);
+        }
+    }
+}
@@ -1,50 +1,118 @@
 package com.bill.sse.service;
 
+import com.bill.sse.config.LogLimiter;
 import com.bill.sse.vo.PaymentEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Sinks;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 付款事件的發布: 每個商家一個 partition (各自的 multicast sink)，事件依 EncodedPaymentEvent.tenant() 發布到對應的 partition
+ * 一個商家的大量事件只會塞滿自己的 sink，訂閱其他商家的連接不受影響
+ * sink 不暫存事件: 沒有訂閱者時事件直接略過，之後連上的客戶端由訂單快照 (snapshot-on-subscribe) 取得目前狀態
+ */
 @Service
 @Slf4j
 public class PaymentService {
 
-    // 使用 Sinks.Many 事件發布
-    private final Sinks.Many<PaymentEvent> paymentEventSink;
+    // 發布事件的 log: 每秒 20 筆，超過時每 100 筆取樣 1 筆
+    private static final LogLimiter PUBLISHED_LOG = LogLimiter.perSecond(20, 50, 100);
+    private static final LogLimiter EMIT_FAILED_LOG = LogLimiter.perSecond(5, 20);
+
+    // 使用 Sinks.Many 事件發布，事件包裝成 EncodedPaymentEvent，編碼結果由所有訂閱者共用
+    // 商家數由 TenantRegistry 限制，partition 建立後不移除
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
     private final Flux<PaymentEvent> paymentEventFlux;
 
     // 計數器用於追蹤已發布的事件總數
     private final AtomicLong totalEventsPublished = new AtomicLong(0);
 
+    // 重試時間內仍無法發布 (其他 thread 持續佔用 sink) 而遺失的事件數
+    private final AtomicLong emitFailures = new AtomicLong(0);
+
     public PaymentService() {
-        // 創建多播 sink
-        this.paymentEventSink = Sinks.many().multicast().onBackpressureBuffer();
-        this.paymentEventFlux = paymentEventSink.asFlux();
+        this.paymentEventFlux = partition(TenantRegistry.DEFAULT).flux().map(EncodedPaymentEvent::event);
         log.info("PaymentService init done!, create multicast");
     }
 
-    // 取得事件流
+    // 取得 default 商家的事件流
     public Flux<PaymentEvent> getPaymentEvents() {
         return paymentEventFlux;
     }
 
+    // 取得 default 商家的事件流 (含共用的編碼結果)
+    public Flux<EncodedPaymentEvent> getEncodedEvents() {
+        return getEncodedEvents(TenantRegistry.DEFAULT);
+    }
+
+    // 取得指定商家的事件流
+    public Flux<EncodedPaymentEvent> getEncodedEvents(String tenant) {
+        return partition(tenant).flux();
+    }
+
     // 發布付款事件
     public void publishPaymentEvent(PaymentEvent event) {
+        publish(new EncodedPaymentEvent(event));
+    }
+
+    // 發布已包裝的事件 (OrderStore 發布帶版本的訂單事件)
+    public void publish(EncodedPaymentEvent encoded) {
+        PaymentEvent event = encoded.event();
         long eventCount = totalEventsPublished.incrementAndGet();
-        log.info("發布付款事件 #{} | 類型: {} | 訂單ID: {} | 狀態: {}", eventCount, event.eventType(), event.orderId(), event.status());
 
-        Sinks.EmitResult result = paymentEventSink.tryEmitNext(event);
+        FlightEvents.EventPublished published = new FlightEvents.EventPublished();
+        published.begin();
+        encoded.markPublished();
+        Sinks.EmitResult result = emit(encoded);
+        if (published.shouldCommit()) {
+            published.orderId = event.orderId();
+            published.tenant = encoded.tenant();
+            published.status = event.status();
+            published.version = encoded.version();
+            published.result = result.name();
+            published.subscribers = partition(encoded.tenant()).sink().currentSubscriberCount();
+            published.commit();
+        }
 
-        if (result.isSuccess()) {
-            log.info("付款成功 push event #{} | 訂單ID: {}", eventCount, event.orderId());
+        // 每個事件一筆結構化 log，大量發布時限流；沒有訂閱者是正常情況
+        if (result.isSuccess() || result == Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            PUBLISHED_LOG.atInfo(log)
+                    .addKeyValue("event", eventCount)
+                    .addKeyValue("tenant", encoded.tenant())
+                    .addKeyValue("type", event.eventType())
+                    .addKeyValue("orderId", event.orderId())
+                    .addKeyValue("status", event.status())
+                    .addKeyValue("version", encoded.version())
+                    .addKeyValue("delivered", result.isSuccess())
+                    .log("發布付款事件");
         } else {
-            log.error("付款失敗  push event #{} | 訂單ID: {} | 結果: {}", eventCount, event.orderId(), result);
+            EMIT_FAILED_LOG.atError(log)
+                    .addKeyValue("event", eventCount)
+                    .addKeyValue("orderId", event.orderId())
+                    .addKeyValue("result", result)
+                    .log("付款事件發布失敗");
         }
     }
 
+    // 發布啟動預熱用的合成事件: 走同一個 sink 與編碼路徑，但不計入發布總數也不記 log
+    public Sinks.EmitResult publishWarmUpEvent(PaymentEvent event) {
+        return emit(EncodedPaymentEvent.warmUp(event));
+    }
+
+    // 多個 callback 同時發布時 sink 會回傳 FAIL_NON_SERIALIZED，短暫重試 (見 SinkEmitter)；仍失敗時計入 emitFailures
+    private Sinks.EmitResult emit(EncodedPaymentEvent encoded) {
+        Sinks.EmitResult result = SinkEmitter.tryEmitNext(partition(encoded.tenant()).sink(), encoded);
+        if (result == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            emitFailures.incrementAndGet();
+        }
+        return result;
+    }
+
     // 通知付款成功
     public void notifyPaymentSuccess(String orderId) {
         PaymentEvent event = PaymentEvent.createSuccessEvent(orderId, null);
@@ -57,8 +125,37 @@ public class PaymentService {
         publishPaymentEvent(event);
     }
 
+    // 目前訂閱所有 partition 的數量 (訂閱全部事件的連接，加上每個商家有指定訂單連接時的 OrderEventRouter)
+    public int subscriberCount() {
+        int count = 0;
+        for (Partition partition : partitions.values()) {
+            count += partition.sink().currentSubscriberCount();
+        }
+        return count;
+    }
+
+    public int partitionCount() {
+        return partitions.size();
+    }
+
     // 獲取已發布事件總數（用於監控與調試）
     public long getTotalEventsPublished() {
         return totalEventsPublished.get();
     }
+
+    public long getEmitFailures() {
+        return emitFailures.get();
+    }
+
+    private Partition partition(String tenant) {
+        return partitions.computeIfAbsent(tenant, key -> {
+            // 多播 sink 直接交給目前的訂閱者，不在沒有訂閱者時暫存舊事件，最後一個訂閱者離開後仍可繼續使用
+            // 每條連接下游有自己的有界佇列 (會先 request 全部)，沒有需求的訂閱者只會錯過自己的事件
+            Sinks.Many<EncodedPaymentEvent> sink = Sinks.many().multicast().directBestEffort();
+            return new Partition(sink, sink.asFlux());
+        });
+    }
+
+    private record Partition(Sinks.Many<EncodedPaymentEvent> sink, Flux<EncodedPaymentEvent> flux) {
+    }
 }
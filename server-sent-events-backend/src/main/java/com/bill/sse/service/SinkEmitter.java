@@ -0,0 +1,33 @@
+package com.bill.sse.service;
+
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多個 thread 同時發布到同一個 sink 時 tryEmitNext 回傳 FAIL_NON_SERIALIZED，在有限的時間內重試
+ * 發布可能在 Netty event loop 上執行 (例如 simulate 端點)，不能無限等待另一個 thread；逾時仍回傳 FAIL_NON_SERIALIZED 交給呼叫端計數
+ *
+ * 不使用 emitNext + EmitFailureHandler.busyLooping: emitNext 遇到 FAIL_OVERFLOW 會以錯誤終止整個 sink
+ * 每條連接的 inbox 不使用這裡的重試 (逾時會丟掉事件)，由 SseConnection.deliver 加鎖序列化
+ */
+final class SinkEmitter {
+
+    // 另一個 thread 發布一個事件通常只需數微秒
+    static final long RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private SinkEmitter() {
+    }
+
+    static <T> Sinks.EmitResult tryEmitNext(Sinks.Many<T> sink, T value) {
+        Sinks.EmitResult result = sink.tryEmitNext(value);
+        if (result != Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            return result;
+        }
+        long deadline = System.nanoTime() + RETRY_NANOS;
+        while ((result = sink.tryEmitNext(value)) == Sinks.EmitResult.FAIL_NON_SERIALIZED && System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+        }
+        return result;
+    }
+}
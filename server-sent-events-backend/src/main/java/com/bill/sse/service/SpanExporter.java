@@ -0,0 +1,14 @@
+package com.bill.sse.service;
+
+import com.bill.sse.vo.TraceSpan;
+
+/**
+ * 輸出取樣到的 span，在產生 span 的 thread 呼叫 (event loop、callback worker)，實作不可阻塞
+ */
+public interface SpanExporter {
+
+    SpanExporter NONE = span -> {
+    };
+
+    void export(TraceSpan span);
+}
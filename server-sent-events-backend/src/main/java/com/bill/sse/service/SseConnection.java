@@ -0,0 +1,347 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.ChannelActivity;
+import com.bill.sse.vo.ConnectionSnapshot;
+import com.bill.sse.vo.PaymentEvent;
+import lombok.AccessLevel;
+import lombok.Getter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 單一 SSE 連接的狀態與發送統計
+ * 計數器只由該連接自己的事件流更新，讀取端 (admin endpoint) 只取快照
+ */
+@Getter
+public class SseConnection {
+
+    private final String id;
+    // 所屬商家，只會收到該商家的事件
+    private final String tenant;
+    private final String clientIp;
+    private final String userAgent;
+    private final long openedAt;
+
+    // 只接收訂閱訂單的事件，由 ConnectionRegistry 的索引投遞到 inbox；false 代表訂閱全部事件
+    private final boolean scoped;
+
+    // 訂閱的訂單，只能透過 ConnectionRegistry 變更，索引才會一致
+    private final Set<String> orderIds;
+
+    // 指定訂單的連接變更自己的訂閱用的 token，建立連接時送給客戶端；訂閱全部事件的連接為 null
+    private final String subscriptionToken;
+
+    @Getter(AccessLevel.NONE)
+    private final Sinks.Many<EncodedPaymentEvent> inbox;
+
+    private final AtomicLong eventsSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong eventsConflated = new AtomicLong();
+    // 被過濾條件略過的事件數，以及這些事件原本要寫出的位元組數 (節省的頻寬)
+    private final AtomicLong eventsFiltered = new AtomicLong();
+    private final AtomicLong bytesFiltered = new AtomicLong();
+    // 建立連接時指定的過濾條件，null 代表不過濾
+    private volatile EventFilter filter;
+    private volatile long lastWriteTime;
+    private volatile String lastEventId;
+    // 個別開啟的除錯 log
+    private volatile boolean debug;
+
+    // channel 超過 write buffer high watermark 時為 false，暫停發送直到降回 low watermark 以下
+    private volatile boolean writable = true;
+    private volatile long unwritableSince;
+    // 變成無法寫入的次數
+    private final AtomicLong unwritableCount = new AtomicLong();
+    // 底層 channel 的讀寫活動，沒有 Netty channel (測試) 時為 null
+    private volatile ChannelActivity channelActivity;
+    // 無法寫入期間等待恢復的訊號
+    @Getter(AccessLevel.NONE)
+    private volatile Sinks.Empty<Void> writableSignal;
+
+    // 降載時記錄佇列中每筆訂單最新的事件，較舊的事件出佇列時略過
+    @Getter(AccessLevel.NONE)
+    private final Map<String, PaymentEvent> latestQueued = new ConcurrentHashMap<>();
+
+    // 指定訂單的連接: 每筆訂單已送出的最大版本，快照與即時事件重疊時略過舊的或重複的事件
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Long> deliveredVersions = new ConcurrentHashMap<>();
+
+    // 強制關閉用的訊號，值為關閉原因
+    @Getter(AccessLevel.NONE)
+    private final Sinks.One<String> closeSignal = Sinks.one();
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<String> closeReason = new AtomicReference<>();
+    // drain 時要求客戶端等待多久再重連，null 代表不是 drain 關閉
+    private volatile Duration reconnectDelay;
+
+    SseConnection(String id, String tenant, String clientIp, String userAgent, Set<String> orderIds, boolean scoped) {
+        this.id = id;
+        this.tenant = tenant;
+        this.clientIp = clientIp;
+        this.userAgent = userAgent;
+        this.scoped = scoped;
+        this.orderIds = ConcurrentHashMap.newKeySet();
+        this.orderIds.addAll(orderIds);
+        this.subscriptionToken = scoped ? UUID.randomUUID().toString() : null;
+        this.inbox = scoped ? Sinks.many().unicast().onBackpressureBuffer() : null;
+        this.openedAt = System.currentTimeMillis();
+        this.lastWriteTime = openedAt;
+    }
+
+    // 是否需要收到指定訂單的事件
+    public boolean isSubscribed(String orderId) {
+        return !scoped || (orderId != null && orderIds.contains(orderId));
+    }
+
+    // 預熱事件只送給明確訂閱該訂單的連接 (啟動時的 loopback 連接)，訂閱全部訂單的連接不會收到
+    // 其他商家的事件一律不收，即使訂閱了該商家的訂單ID
+    public boolean accepts(EncodedPaymentEvent encoded) {
+        if (!tenant.equals(encoded.tenant())) {
+            return false;
+        }
+        String orderId = encoded.event().orderId();
+        return encoded.isWarmUp() ? scoped && orderId != null && orderIds.contains(orderId) : isSubscribed(orderId);
+    }
+
+    // 固定時間比對，避免由回應時間猜出 token
+    public boolean matchesSubscriptionToken(String token) {
+        return subscriptionToken != null && token != null
+                && MessageDigest.isEqual(subscriptionToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 指定訂單的連接: 由索引投遞的事件
+    public Flux<EncodedPaymentEvent> inbox() {
+        return inbox != null ? inbox.asFlux() : Flux.empty();
+    }
+
+    // 投遞事件到 inbox；router 與訂閱變更時的快照 (在 event loop 上) 可能同時投遞
+    // unicast sink 不接受並行的 tryEmitNext (FAIL_NON_SERIALIZED)，以 inbox 為鎖序列化投遞，競爭時等待而不是丟掉狀態事件
+    // 持鎖期間只執行到連接的有界佇列為止，不會等待網路寫出
+    // 連接已結束 (取消或終止) 時直接略過，其他失敗計入此連接丟棄的事件數
+    public void deliver(EncodedPaymentEvent encoded) {
+        if (inbox == null) {
+            return;
+        }
+        Sinks.EmitResult result;
+        synchronized (inbox) {
+            result = inbox.tryEmitNext(encoded);
+        }
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_CANCELLED && result != Sinks.EmitResult.FAIL_TERMINATED) {
+            eventsDropped.incrementAndGet();
+        }
+    }
+
+    boolean addOrder(String orderId) {
+        return orderIds.add(orderId);
+    }
+
+    boolean removeOrder(String orderId) {
+        deliveredVersions.remove(orderId);
+        return orderIds.remove(orderId);
+    }
+
+    // 事件的版本是否比此連接已送出的新；沒有版本的事件與訂閱全部訂單的連接不檢查
+    public boolean isNewVersion(EncodedPaymentEvent encoded) {
+        long version = encoded.version();
+        String orderId = encoded.event().orderId();
+        if (version == 0 || orderId == null || !scoped) {
+            return true;
+        }
+        Long previous = deliveredVersions.get(orderId);
+        while (previous == null || version > previous) {
+            if (previous == null ? deliveredVersions.putIfAbsent(orderId, version) == null
+                    : deliveredVersions.replace(orderId, previous, version)) {
+                return true;
+            }
+            previous = deliveredVersions.get(orderId);
+        }
+        return false;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public void setChannelActivity(ChannelActivity channelActivity) {
+        this.channelActivity = channelActivity;
+    }
+
+    public void setFilter(EventFilter filter) {
+        this.filter = filter;
+    }
+
+    // channel 可寫狀態改變 (event loop thread)，回傳狀態是否有變化
+    public boolean onWritabilityChanged(boolean writable) {
+        if (writable == this.writable) {
+            return false;
+        }
+        if (writable) {
+            this.writable = true;
+            Sinks.Empty<Void> signal = writableSignal;
+            writableSignal = null;
+            if (signal != null) {
+                signal.tryEmitEmpty();
+            }
+        } else {
+            // 先準備好訊號再標記為無法寫入，whenWritable 看到 false 時一定取得到訊號
+            writableSignal = Sinks.empty();
+            unwritableSince = System.currentTimeMillis();
+            unwritableCount.incrementAndGet();
+            this.writable = false;
+        }
+        return true;
+    }
+
+    // 可寫入時立即完成，否則等到 channel 恢復可寫
+    public Mono<Void> whenWritable() {
+        Sinks.Empty<Void> signal = writableSignal;
+        return writable || signal == null ? Mono.empty() : signal.asMono();
+    }
+
+    // 事件不符合過濾條件，沒有進入佇列
+    public void onFiltered(int bytes) {
+        eventsFiltered.incrementAndGet();
+        bytesFiltered.addAndGet(bytes);
+    }
+
+    // 事件進入此連接的待發送佇列
+    public void onEnqueued() {
+        queueDepth.incrementAndGet();
+    }
+
+    // 佇列已滿，最舊的事件被丟棄
+    public void onDropped(PaymentEvent event) {
+        queueDepth.decrementAndGet();
+        eventsDropped.incrementAndGet();
+        if (event.orderId() != null) {
+            latestQueued.remove(event.orderId(), event);
+        }
+    }
+
+    // 記錄此事件為該訂單在佇列中最新的事件
+    public void trackLatest(PaymentEvent event) {
+        if (event.orderId() != null) {
+            latestQueued.put(event.orderId(), event);
+        }
+    }
+
+    // 佇列中已有同一訂單較新的事件，此事件可略過
+    public boolean isSuperseded(PaymentEvent event) {
+        if (event.orderId() == null || latestQueued.isEmpty()) {
+            return false;
+        }
+        PaymentEvent latest = latestQueued.get(event.orderId());
+        if (latest == null) {
+            return false;
+        }
+        if (latest == event) {
+            latestQueued.remove(event.orderId(), event);
+            return false;
+        }
+        eventsConflated.incrementAndGet();
+        return true;
+    }
+
+    // 事件離開佇列並交給 writer
+    public void onDequeued() {
+        queueDepth.decrementAndGet();
+    }
+
+    // 一個 SSE frame 已交給 writer
+    public void onWritten(int bytes) {
+        eventsSent.incrementAndGet();
+        bytesSent.addAndGet(bytes);
+        lastWriteTime = System.currentTimeMillis();
+    }
+
+    // 記錄最後一個付款事件的 id，drain 時回傳給客戶端作為 Last-Event-ID
+    public void onEventId(String eventId) {
+        lastEventId = eventId;
+    }
+
+    // channel 無法寫入、佇列過深，或有待發送事件卻太久沒有寫出
+    public boolean isLagging(int lagQueueDepth, Duration lagWriteIdle) {
+        if (!writable) {
+            return true;
+        }
+        int depth = queueDepth.get();
+        if (depth >= lagQueueDepth) {
+            return true;
+        }
+        return depth > 0 && System.currentTimeMillis() - lastWriteTime > lagWriteIdle.toMillis();
+    }
+
+    // 要求關閉連接，只有第一次呼叫有效
+    public boolean close(String reason) {
+        if (!closeReason.compareAndSet(null, reason)) {
+            return false;
+        }
+        closeSignal.tryEmitValue(reason);
+        return true;
+    }
+
+    public String getCloseReason() {
+        return closeReason.get();
+    }
+
+    // drain 關閉: 告訴客戶端在指定時間後重連
+    public boolean drain(Duration reconnectDelay) {
+        if (closeReason.get() != null) {
+            return false;
+        }
+        this.reconnectDelay = reconnectDelay;
+        return close("drain");
+    }
+
+    public Mono<String> onClose() {
+        return closeSignal.asMono();
+    }
+
+    public ConnectionSnapshot snapshot(int lagQueueDepth, Duration lagWriteIdle) {
+        ChannelActivity activity = channelActivity;
+        ChannelActivity.TcpState tcp = activity != null ? activity.tcpState() : null;
+        long now = System.nanoTime();
+        return new ConnectionSnapshot(
+                id,
+                tenant,
+                clientIp,
+                userAgent,
+                List.copyOf(orderIds),
+                openedAt,
+                eventsSent.get(),
+                bytesSent.get(),
+                eventsDropped.get(),
+                eventsConflated.get(),
+                filter != null ? filter.expression() : null,
+                eventsFiltered.get(),
+                bytesFiltered.get(),
+                queueDepth.get(),
+                lastWriteTime,
+                writable,
+                writable ? 0 : unwritableSince,
+                unwritableCount.get(),
+                activity != null ? activity.pendingWrites() : 0,
+                activity != null ? TimeUnit.NANOSECONDS.toMillis(activity.writeStalledNanos(now)) : 0,
+                activity != null ? TimeUnit.NANOSECONDS.toMicros(activity.lastWriteLatencyNanos()) : 0,
+                tcp != null ? tcp.lastAckMillis() : -1,
+                isLagging(lagQueueDepth, lagWriteIdle),
+                debug
+        );
+    }
+}
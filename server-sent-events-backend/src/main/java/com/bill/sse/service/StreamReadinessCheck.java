@@ -0,0 +1,82 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseReadinessProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+/**
+ * 啟動時的 SSE 自我檢查
+ * Spring Boot 在所有 ApplicationRunner 完成後才把 readiness 設為 ACCEPTING_TRAFFIC，
+ * 這裡以 loopback 實際開一條 SSE 連接並等到 connected，確認 web server、filter 與事件流都能運作後才放行
+ * 被降載或准入控制拒絕時重試，逾時仍失敗則讓啟動失敗，避免無法串流的 pod 被加入 load balancer
+ */
+@Service
+@Order(Ordered.LOWEST_PRECEDENCE)
+@RequiredArgsConstructor
+@Slf4j
+public class StreamReadinessCheck implements ApplicationRunner {
+
+    static final String SSE_PATH = "/api/sse/payment-events";
+
+    private static final Duration RETRY_BACKOFF = Duration.ofMillis(100);
+    private static final Duration RETRY_MAX_BACKOFF = Duration.ofSeconds(1);
+
+    private final SseReadinessProperties properties;
+    private final Environment environment;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 沒有啟動 web server 時 (例如 MOCK 環境的測試) 不檢查
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (!properties.isSelfCheck() || port == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        ServerSentEvent<String> connected;
+        try {
+            connected = WebClient.create("http://127.0.0.1:" + port)
+                    .get()
+                    .uri(SSE_PATH)
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .retrieve()
+                    .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                    })
+                    .filter(event -> event.comment() != null && event.comment().startsWith("connected"))
+                    // 收到後取消訂閱，連接隨即關閉
+                    .next()
+                    // 剛啟動時 JIT 編譯會讓 event loop 延遲升高而被降載拒絕 (503)，視為尚未就緒並重試
+                    .retryWhen(Retry.backoff(Long.MAX_VALUE, RETRY_BACKOFF)
+                            .maxBackoff(RETRY_MAX_BACKOFF)
+                            .filter(StreamReadinessCheck::isRejected))
+                    .block(properties.getSelfCheckTimeout());
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("SSE 自我檢查失敗: " + e.getMessage(), e);
+        }
+        if (connected == null) {
+            throw new IllegalStateException("SSE 自我檢查失敗, 未收到 connected");
+        }
+        log.info("SSE 自我檢查通過, 耗時: {}ms, {}", (System.nanoTime() - start) / 1_000_000, connected.comment());
+    }
+
+    // 被降載 (503) 或准入控制 (429) 拒絕
+    static boolean isRejected(Throwable error) {
+        return error instanceof WebClientResponseException response
+                && (response.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE || response.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS);
+    }
+}
@@ -0,0 +1,229 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.LogLimiter;
+import com.bill.sse.config.SseTenantProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * 商家 (tenant): 由請求的 X-Merchant-Id header 或 merchant 參數決定，未指定時為 default
+ * 每個商家各自計算連接數與 callback 速率上限，並有自己的一組 metric (tag tenant)
+ * 事件 sink、callback 佇列與訂單事件投遞以商家代碼分區，見 PaymentService、CallbackIngest、OrderEventRouter
+ *
+ * 只有 default、sse.tenants.merchants 與 sse.tenants.overrides 列出的商家有效，在第一次出現時建立，之後不會移除；
+ * 其他代碼不配置任何東西，避免任意的 header 值讓 metric 的 tag 與 sink 無限增加
+ */
+@Service
+@Slf4j
+public class TenantRegistry {
+
+    public static final String DEFAULT = "default";
+
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private static final LogLimiter UNKNOWN_LOG = LogLimiter.perSecond(1, 10);
+
+    private final SseTenantProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TenantRegistry(SseTenantProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    TenantRegistry(SseTenantProperties properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    // 請求所屬的商家，代碼格式錯誤或未列在設定中時回傳 null；關閉隔離時都是 default
+    public Tenant resolve(ServerHttpRequest request) {
+        if (!properties.isEnabled()) {
+            return get(DEFAULT);
+        }
+        String key = request.getHeaders().getFirst(properties.getHeader());
+        if (key == null || key.isEmpty()) {
+            key = request.getQueryParams().getFirst(properties.getParam());
+        }
+        return get(key == null || key.isEmpty() ? DEFAULT : key);
+    }
+
+    // 未列在設定中的商家回傳 null
+    public Tenant get(String key) {
+        Tenant tenant = key != null ? tenants.get(key) : null;
+        if (tenant != null || key == null || !KEY.matcher(key).matches()) {
+            return tenant;
+        }
+        if (!isAllowed(key)) {
+            UNKNOWN_LOG.atWarn(log)
+                    .addKeyValue("tenant", key)
+                    .log("未設定的商家代碼");
+            return null;
+        }
+        synchronized (tenants) {
+            tenant = tenants.get(key);
+            if (tenant == null) {
+                SseTenantProperties.Quota quota = properties.getOverrides().getOrDefault(key, properties.getDefaults());
+                tenant = new Tenant(key, quota);
+                tenants.put(key, tenant);
+                log.info("商家已建立: {}, 連接上限: {}, 事件速率: {}/s", key, quota.getMaxConnections(), quota.getEventRate());
+            }
+            return tenant;
+        }
+    }
+
+    private boolean isAllowed(String key) {
+        return DEFAULT.equals(key) || properties.getOverrides().containsKey(key) || properties.getMerchants().contains(key);
+    }
+
+    public int size() {
+        return tenants.size();
+    }
+
+    public Duration retryAfter() {
+        return properties.getRetryAfter();
+    }
+
+    // 各商家的連接數、拒絕數與 callback 延遲
+    public Map<String, Object> stats() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        tenants.values().forEach(tenant -> list.add(tenant.stats()));
+        list.sort((a, b) -> ((String) a.get("tenant")).compareTo((String) b.get("tenant")));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("tenants", list);
+        return stats;
+    }
+
+    /**
+     * 單一商家的上限與統計，所有檢查都是 CAS
+     */
+    public final class Tenant {
+
+        private final String key;
+        private final SseTenantProperties.Quota quota;
+        private final AtomicInteger connections = new AtomicInteger();
+        // callback 速率以 GCRA 計算，與 AdmissionControl 相同
+        private final AtomicLong tat;
+        private final long emissionIntervalNanos;
+        private final long burstToleranceNanos;
+
+        private final Counter rejectedConnections;
+        private final Counter rejectedEvents;
+        private final Timer callbackLatency;
+
+        private Tenant(String key, SseTenantProperties.Quota quota) {
+            this.key = key;
+            this.quota = quota;
+            this.tat = new AtomicLong(nanoClock.getAsLong());
+            this.emissionIntervalNanos = quota.getEventRate() > 0
+                    ? (long) (TimeUnit.SECONDS.toNanos(1) / quota.getEventRate()) : 0;
+            this.burstToleranceNanos = emissionIntervalNanos * Math.max(0, quota.getEventBurst() - 1);
+
+            Gauge.builder("sse.tenant.connections", connections, AtomicInteger::get)
+                    .description("商家目前的 SSE 連接數")
+                    .tag("tenant", key)
+                    .register(meterRegistry);
+            this.rejectedConnections = Counter.builder("sse.tenant.rejected")
+                    .description("超過商家上限而被拒絕的請求數")
+                    .tag("tenant", key)
+                    .tag("reason", "connections")
+                    .register(meterRegistry);
+            this.rejectedEvents = Counter.builder("sse.tenant.rejected")
+                    .description("超過商家上限而被拒絕的請求數")
+                    .tag("tenant", key)
+                    .tag("reason", "event-rate")
+                    .register(meterRegistry);
+            this.callbackLatency = Timer.builder("sse.tenant.callback.latency")
+                    .description("callback 受理到事件發布的時間")
+                    .tag("tenant", key)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+        }
+
+        public String key() {
+            return key;
+        }
+
+        // 取得一條 SSE 連接的名額，連接結束時呼叫 releaseConnection
+        public boolean tryAcquireConnection() {
+            int limit = quota.getMaxConnections();
+            while (true) {
+                int current = connections.get();
+                if (limit > 0 && current >= limit) {
+                    rejectedConnections.increment();
+                    return false;
+                }
+                if (connections.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public void releaseConnection() {
+            connections.decrementAndGet();
+        }
+
+        public int connections() {
+            return connections.get();
+        }
+
+        // 取得一個 callback 的 token，沒有設定速率時一律成功
+        public boolean tryAcquireEvent() {
+            if (emissionIntervalNanos == 0) {
+                return true;
+            }
+            long now = nanoClock.getAsLong();
+            while (true) {
+                long current = tat.get();
+                long base = Math.max(current, now);
+                if (base - burstToleranceNanos > now) {
+                    rejectedEvents.increment();
+                    return false;
+                }
+                if (tat.compareAndSet(current, base + emissionIntervalNanos)) {
+                    return true;
+                }
+            }
+        }
+
+        // CallbackIngest 處理完一個 callback 後呼叫
+        public void onCallbackProcessed(long latencyNanos) {
+            callbackLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("tenant", key);
+            stats.put("connections", connections.get());
+            stats.put("maxConnections", quota.getMaxConnections());
+            stats.put("eventRate", quota.getEventRate());
+            stats.put("rejectedConnections", (long) rejectedConnections.count());
+            stats.put("rejectedEvents", (long) rejectedEvents.count());
+            stats.put("callbacks", callbackLatency.count());
+            stats.put("callbackLatencyMaxMillis", callbackLatency.max(TimeUnit.MILLISECONDS));
+            return stats;
+        }
+    }
+}
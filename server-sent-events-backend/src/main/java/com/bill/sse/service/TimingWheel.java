@@ -0,0 +1,270 @@
+package com.bill.sse.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 階層式 timing wheel: 新增與取消都是 O(1)，可容納大量到期時間
+ * 每層 wheelSize 個 bucket，第 n 層的一個 bucket 涵蓋 wheelSize^n 個 tick；
+ * 低層轉完一圈時把上一層對應的 bucket 取出重新放置 (cascade)，到期時間愈近的 timeout 會一路降到第 0 層
+ *
+ * schedule / cancel 可在任何 thread 呼叫，只寫入佇列；bucket 只由呼叫 advance 的單一 thread 操作，不需要鎖
+ * 超過最上層範圍的 timeout 先放在最上層最遠的 bucket，cascade 時再重新計算
+ */
+public class TimingWheel<T> {
+
+    private static final int WAITING = 0;
+    private static final int EXPIRED = 1;
+    private static final int CANCELLED = 2;
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final int bits;
+    private final int mask;
+    private final Bucket<T>[][] levels;
+    private final long maxSpan;
+    private final Consumer<Timeout<T>> onExpire;
+
+    private final Queue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout<T>> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong size = new AtomicLong();
+
+    // 下一個要處理的 tick，只由 advance 的 thread 讀寫
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickNanos, int wheelSize, int levelCount, long startNanos, Consumer<Timeout<T>> onExpire) {
+        if (tickNanos <= 0 || wheelSize < 2 || Integer.bitCount(wheelSize) != 1 || levelCount < 1) {
+            throw new IllegalArgumentException("tick 需大於 0，wheelSize 需為 2 的次方，levels 至少 1 層");
+        }
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.onExpire = onExpire;
+        this.levels = new Bucket[levelCount][wheelSize];
+        for (Bucket<T>[] level : levels) {
+            for (int i = 0; i < wheelSize; i++) {
+                level[i] = new Bucket<>();
+            }
+        }
+        this.maxSpan = bits * levelCount >= 62 ? Long.MAX_VALUE : 1L << (bits * levelCount);
+    }
+
+    // 排入一個到期時間 (System.nanoTime 基準)
+    public Timeout<T> schedule(T payload, long deadlineNanos) {
+        long deadlineTick = Math.max(0, ceilDiv(deadlineNanos - startNanos, tickNanos));
+        Timeout<T> timeout = new Timeout<>(this, payload, deadlineNanos, deadlineTick);
+        size.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    // 推進到 nowNanos，觸發所有已到期的 timeout，回傳觸發數量；只能由單一 thread 呼叫
+    public int advance(long nowNanos) {
+        long targetTick = Math.floorDiv(nowNanos - startNanos, tickNanos);
+        int expired = 0;
+        drainCancelled();
+        drainPending();
+        while (currentTick <= targetTick) {
+            long tick = currentTick;
+            cascade(tick);
+            expired += expireBucket(levels[0][(int) (tick & mask)], tick);
+            currentTick = tick + 1;
+            // 觸發回呼期間新增的 timeout 可能落在接下來的 tick
+            drainCancelled();
+            drainPending();
+        }
+        return expired;
+    }
+
+    // 尚未觸發也未取消的數量
+    public long size() {
+        return size.get();
+    }
+
+    // 尚未放進 bucket 的新增數量
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long tickNanos() {
+        return tickNanos;
+    }
+
+    private void cascade(long tick) {
+        // 由上往下: 上層取出的 timeout 可能落到下層同一時間要 cascade 的 bucket
+        // 低 n 層都轉完一圈 (tick 的低 bits * n 位元皆為 0) 時，第 n 層輪到下一個 bucket
+        int top = 0;
+        while (top + 1 < levels.length && (tick & ((1L << (bits * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            Bucket<T> bucket = levels[level][(int) (tick >>> (bits * level) & mask)];
+            Timeout<T> node = bucket.clear();
+            while (node != null) {
+                Timeout<T> next = node.next;
+                node.next = null;
+                node.prev = null;
+                place(node, tick);
+                node = next;
+            }
+        }
+    }
+
+    private int expireBucket(Bucket<T> bucket, long tick) {
+        int expired = 0;
+        Timeout<T> node = bucket.clear();
+        while (node != null) {
+            Timeout<T> next = node.next;
+            node.next = null;
+            node.prev = null;
+            if (node.deadlineTick > tick) {
+                // 超過範圍而暫放的 timeout
+                place(node, tick);
+            } else if (node.state.compareAndSet(WAITING, EXPIRED)) {
+                size.decrementAndGet();
+                expired++;
+                onExpire.accept(node);
+            }
+            node = next;
+        }
+        return expired;
+    }
+
+    private void drainPending() {
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.state.get() == WAITING) {
+                place(timeout, currentTick);
+            }
+        }
+    }
+
+    private void drainCancelled() {
+        Timeout<T> timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void place(Timeout<T> timeout, long tick) {
+        long delta = Math.max(0, timeout.deadlineTick - tick);
+        long effectiveTick = delta >= maxSpan ? tick + maxSpan - 1 : tick + delta;
+        delta = effectiveTick - tick;
+        int level = 0;
+        while (level < levels.length - 1 && delta >= 1L << (bits * (level + 1))) {
+            level++;
+        }
+        levels[level][(int) (effectiveTick >>> (bits * level) & mask)].add(timeout);
+    }
+
+    private void cancelled(Timeout<T> timeout) {
+        size.decrementAndGet();
+        cancelled.add(timeout);
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    public static final class Timeout<T> {
+
+        private final TimingWheel<T> wheel;
+        private final T payload;
+        private final long deadlineNanos;
+        private final long deadlineTick;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        // 只由 advance 的 thread 操作
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(TimingWheel<T> wheel, T payload, long deadlineNanos, long deadlineTick) {
+            this.wheel = wheel;
+            this.payload = payload;
+            this.deadlineNanos = deadlineNanos;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T payload() {
+            return payload;
+        }
+
+        public long deadlineNanos() {
+            return deadlineNanos;
+        }
+
+        // 取消成功回傳 true；已觸發或已取消時回傳 false
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            wheel.cancelled(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    // 雙向串列，移除為 O(1)
+    private static final class Bucket<T> {
+
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        // 取出整串並清空 bucket
+        Timeout<T> clear() {
+            Timeout<T> first = head;
+            for (Timeout<T> node = first; node != null; node = node.next) {
+                node.bucket = null;
+            }
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+}
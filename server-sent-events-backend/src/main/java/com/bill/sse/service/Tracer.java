@@ -0,0 +1,96 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseTracingProperties;
+import com.bill.sse.vo.TraceContext;
+import com.bill.sse.vo.TraceSpan;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.util.context.ContextView;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 付款事件的追蹤: 入口 (TracingFilter) 產生或接收 TraceContext 放進 Reactor Context，
+ * 經 callback 佇列、訂單狀態轉換帶到發布的事件，最後由各連接寫出
+ *
+ * 未取樣的 trace 只傳遞 traceId，不計時也不產生 span；取樣到的 trace 每個階段一個 span 交給 SpanExporter
+ * 階段: http (入口請求)、callback.queue (佇列等待)、callback.process (狀態轉換與發布)、sse.deliver (發布到交給連接 writer)
+ */
+@Service
+@Slf4j
+public class Tracer {
+
+    private final SseTracingProperties properties;
+    private final SpanExporter exporter;
+    private final Counter spans;
+
+    @Autowired
+    public Tracer(SseTracingProperties properties, MeterRegistry meterRegistry) {
+        this(properties, switch (properties.getExporter()) {
+            case LOG -> new LogSpanExporter();
+            case MEMORY -> new InMemorySpanExporter(properties.getMemoryCapacity());
+            case NONE -> SpanExporter.NONE;
+        }, meterRegistry);
+    }
+
+    Tracer(SseTracingProperties properties, SpanExporter exporter, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.exporter = exporter;
+        this.spans = Counter.builder("sse.tracing.spans")
+                .description("已輸出的 span 數")
+                .register(meterRegistry);
+        log.info("Tracer init done!, enabled: {}, sampleRate: {}, exporter: {}",
+                properties.isEnabled(), properties.getSampleRate(), properties.getExporter());
+    }
+
+    // 從 Reactor Context 取得目前的 trace，沒有時回傳 null
+    public static TraceContext current(ContextView context) {
+        return context.getOrDefault(TraceContext.class, null);
+    }
+
+    // 入口: traceparent 有效時沿用其 traceId 與取樣決定 (上游未取樣時仍依比例取樣)，否則產生新的；關閉時回傳 null
+    public TraceContext ingress(String traceparent) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        TraceContext upstream = traceparent != null ? TraceContext.parse(traceparent) : null;
+        if (upstream != null) {
+            return upstream.sampled() || !sample() ? upstream : new TraceContext(upstream.traceId(), upstream.spanId(), true);
+        }
+        return TraceContext.generate(sample());
+    }
+
+    private boolean sample() {
+        double rate = properties.getSampleRate();
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    // startNanos/endNanos 為 System.nanoTime()；trace 為 null 或未取樣時不做任何事
+    public void span(TraceContext trace, String name, String orderId, String connectionId, long startNanos, long endNanos) {
+        if (trace == null || !trace.sampled()) {
+            return;
+        }
+        long durationNanos = Math.max(0, endNanos - startNanos);
+        long startEpochMillis = System.currentTimeMillis() - (System.nanoTime() - startNanos) / 1_000_000;
+        try {
+            exporter.export(new TraceSpan(trace.traceId(), TraceContext.newSpanId(), trace.spanId(), name, orderId,
+                    connectionId, startEpochMillis, durationNanos));
+            spans.increment();
+        } catch (RuntimeException e) {
+            log.warn("span 輸出失敗: {}", e.toString());
+        }
+    }
+
+    // MEMORY 模式保留的指定 trace 的 span，其他模式回傳空清單
+    public List<TraceSpan> spans(String traceId) {
+        return exporter instanceof InMemorySpanExporter memory ? memory.spans(traceId) : List.of();
+    }
+
+    public SpanExporter exporter() {
+        return exporter;
+    }
+}
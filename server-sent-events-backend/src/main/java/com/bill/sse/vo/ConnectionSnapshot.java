@@ -0,0 +1,31 @@
+package com.bill.sse.vo;
+
+import java.util.List;
+
+public record ConnectionSnapshot(
+        String connectionId,
+        String tenant,
+        String clientIp,
+        String userAgent,
+        List<String> orderIds,
+        long openedAt,
+        long eventsSent,
+        long bytesSent,
+        long eventsDropped,
+        long eventsConflated,
+        String filter,
+        long eventsFiltered,
+        long bytesFiltered,
+        int queueDepth,
+        long lastWriteTime,
+        boolean writable,
+        long unwritableSince,
+        long unwritableCount,
+        int pendingWrites,
+        long writeStalledMillis,
+        long writeLatencyMicros,
+        long lastAckMillis,
+        boolean lagging,
+        boolean debug
+) {
+}
@@ -0,0 +1,19 @@
+package com.bill.sse.vo;
+
+import java.math.BigDecimal;
+
+/**
+ * 初始化付款請求，amount 以 1/100 為單位 (299.99 -> 29999)
+ */
+public record InitializePaymentRequest(
+        long amount
+) {
+
+    public static final int AMOUNT_SCALE = 2;
+    public static final long DEFAULT_AMOUNT = 100_00;
+
+    // 回應與付款網址使用，只在輸出時才轉成 BigDecimal
+    public BigDecimal amountDecimal() {
+        return BigDecimal.valueOf(amount, AMOUNT_SCALE);
+    }
+}
@@ -0,0 +1,10 @@
+package com.bill.sse.vo;
+
+// 啟動負載產生器: 0 代表使用 sse.load-generator 的預設值；failureRatio 為送出 FAILURE callback 的比例
+public record LoadGeneratorRequest(
+        double rate,
+        int subscribers,
+        long durationSeconds,
+        double failureRatio
+) {
+}
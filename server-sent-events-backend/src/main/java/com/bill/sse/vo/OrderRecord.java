@@ -0,0 +1,20 @@
+package com.bill.sse.vo;
+
+// 持久化的訂單狀態，reason 只有失敗時才有值；時間為 epoch millis
+public record OrderRecord(
+        String orderId,
+        String tenant,
+        String status,
+        String reason,
+        long version,
+        long createdAt,
+        long updatedAt
+) {
+
+    // 失敗原因的上限 (字元)，入口處截斷；UTF-8 最多 3 KB，遠低於資料檔單筆紀錄與 writeUTF 的上限
+    public static final int MAX_REASON_LENGTH = 1024;
+
+    public static String capReason(String reason) {
+        return reason != null && reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+    }
+}
@@ -0,0 +1,8 @@
+package com.bill.sse.vo;
+
+public record PaymentCallbackRequest(
+        String orderId,
+        String status,
+        String reason
+) {
+}
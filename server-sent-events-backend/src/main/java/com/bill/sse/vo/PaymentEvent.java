@@ -1,13 +1,25 @@
 package com.bill.sse.vo;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// traceId 為觸發事件的 callback 的 trace，沒有時不輸出
 public record PaymentEvent(
         String eventType,
         String orderId,
         String status,
         String message,
-        Long timestamp
+        Long timestamp,
+        @JsonInclude(JsonInclude.Include.NON_NULL) String traceId
 ) {
 
+    public PaymentEvent(String eventType, String orderId, String status, String message, Long timestamp) {
+        this(eventType, orderId, status, message, timestamp, null);
+    }
+
+    public PaymentEvent withTraceId(String traceId) {
+        return new PaymentEvent(eventType, orderId, status, message, timestamp, traceId);
+    }
+
     public static PaymentEvent createSuccessEvent(String orderId, String message) {
         return new PaymentEvent(
                 "PAYMENT_STATUS",
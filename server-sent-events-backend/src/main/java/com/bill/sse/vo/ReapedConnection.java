@@ -0,0 +1,14 @@
+package com.bill.sse.vo;
+
+public record ReapedConnection(
+        String connectionId,
+        String clientIp,
+        String reason,
+        long reapedAt,
+        long openedAt,
+        long eventsSent,
+        int pendingWrites,
+        long writeStalledMillis,
+        long lastAckMillis
+) {
+}
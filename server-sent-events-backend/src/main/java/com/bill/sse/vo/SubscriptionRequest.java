@@ -0,0 +1,10 @@
+package com.bill.sse.vo;
+
+import java.util.List;
+
+// 變更連接訂閱的訂單: 先移除再新增
+public record SubscriptionRequest(
+        List<String> add,
+        List<String> remove
+) {
+}
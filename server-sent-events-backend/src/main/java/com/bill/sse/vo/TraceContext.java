@@ -0,0 +1,74 @@
+package com.bill.sse.vo;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 追蹤內容，格式與 W3C traceparent 相容: traceId 32 個 hex、spanId 16 個 hex
+ * 在入口產生或從 traceparent header 接收，經 Reactor Context 傳到 callback 處理與發布的事件
+ * sampled 為 false 時仍會傳遞 traceId (寫進事件)，只是不輸出 span
+ */
+public record TraceContext(String traceId, String spanId, boolean sampled) {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public static TraceContext generate(boolean sampled) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new TraceContext(hex(random.nextLong(), random.nextLong()), hex(random.nextLong()), sampled);
+    }
+
+    // 格式: 00-<traceId>-<parentId>-<flags>，格式錯誤或全為 0 時回傳 null
+    public static TraceContext parse(String traceparent) {
+        if (traceparent == null || traceparent.length() != 55
+                || traceparent.charAt(2) != '-' || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-'
+                || !isHex(traceparent, 0, 2) || !isHex(traceparent, 3, 35) || !isHex(traceparent, 36, 52)
+                || !isHex(traceparent, 53, 55) || traceparent.startsWith("ff")) {
+            return null;
+        }
+        String traceId = traceparent.substring(3, 35);
+        String spanId = traceparent.substring(36, 52);
+        if (isZero(traceId) || isZero(spanId)) {
+            return null;
+        }
+        boolean sampled = (Character.digit(traceparent.charAt(54), 16) & 1) == 1;
+        return new TraceContext(traceId, spanId, sampled);
+    }
+
+    public String traceparent() {
+        return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+    }
+
+    // 同一個 trace 下的新 span id
+    public static String newSpanId() {
+        return hex(ThreadLocalRandom.current().nextLong());
+    }
+
+    private static String hex(long... values) {
+        char[] chars = new char[values.length * 16];
+        int position = 0;
+        for (long value : values) {
+            for (int shift = 60; shift >= 0; shift -= 4) {
+                chars[position++] = HEX[(int) (value >>> shift) & 0xF];
+            }
+        }
+        return new String(chars);
+    }
+
+    private static boolean isHex(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package com.bill.sse.vo;
+
+/**
+ * 一個處理階段的 span，parentSpanId 為入口的 span；orderId、connectionId 依階段可能為 null
+ */
+public record TraceSpan(
+        String traceId,
+        String spanId,
+        String parentSpanId,
+        String name,
+        String orderId,
+        String connectionId,
+        long startEpochMillis,
+        long durationNanos
+) {
+}
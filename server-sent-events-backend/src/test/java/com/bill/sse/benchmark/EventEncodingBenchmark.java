@@ -0,0 +1,108 @@
+package com.bill.sse.benchmark;
+
+import com.bill.sse.service.CompactEventCodec;
+import com.bill.sse.service.EncodedPaymentEvent;
+import com.bill.sse.vo.PaymentEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 比較 JSON 與精簡二進位格式的大小與編碼時間，以及每個事件只編碼一次對大量訂閱者的影響
+ *
+ * 執行: ./gradlew benchmark -Dbenchmark.iterations=500000 -Dbenchmark.subscribers=1000
+ */
+@Tag("benchmark")
+class EventEncodingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<PaymentEvent> events = List.of(
+            PaymentEvent.createSuccessEvent("ORDER_1700000000000_ab12cd34", null),
+            PaymentEvent.createFailureEvent("ORDER_1700000000000_ab12cd34", "餘額不足"),
+            PaymentEvent.createHeartbeatEvent());
+
+    @Test
+    void testSizeAndEncodeTime() throws Exception {
+        int iterations = Integer.getInteger("benchmark.iterations", 200_000);
+
+        System.out.printf("%n=== 事件大小 (bytes) ===%n%-16s %8s %8s %8s%n", "eventType/status", "json", "compact", "ratio");
+        for (PaymentEvent event : events) {
+            int json = objectMapper.writeValueAsBytes(event).length;
+            int compact = CompactEventCodec.encode(event).length;
+            System.out.printf("%-16s %8d %8d %7.1f%%%n", event.eventType() + "/" + event.status(), json, compact, 100.0 * compact / json);
+            assertTrue(compact < json);
+        }
+
+        double jsonNanos = nanosPerOp(iterations, event -> {
+            try {
+                return objectMapper.writeValueAsBytes(event).length;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        double compactNanos = nanosPerOp(iterations, event -> CompactEventCodec.encode(event).length);
+        System.out.printf("%n=== 編碼時間 (%d 次) ===%njson    %8.1f ns/op%ncompact %8.1f ns/op%n", iterations, jsonNanos, compactNanos);
+    }
+
+    @Test
+    void testEncodeOncePerEvent() {
+        int subscribers = Integer.getInteger("benchmark.subscribers", 1000);
+        int rounds = Integer.getInteger("benchmark.rounds", 200);
+        PaymentEvent event = events.get(0);
+
+        // 每個訂閱者各自編碼 vs 所有訂閱者共用 EncodedPaymentEvent
+        long perSubscriber = measure(rounds, () -> {
+            long bytes = 0;
+            for (int i = 0; i < subscribers; i++) {
+                bytes += CompactEventCodec.eventFrame(CompactEventCodec.encode(event)).length;
+            }
+            return bytes;
+        });
+        long shared = measure(rounds, () -> {
+            EncodedPaymentEvent encoded = new EncodedPaymentEvent(event);
+            long bytes = 0;
+            for (int i = 0; i < subscribers; i++) {
+                bytes += encoded.compactFrame().length;
+            }
+            return bytes;
+        });
+        System.out.printf("%n=== 單一事件推送給 %d 個訂閱者 ===%n各自編碼 %8.1f us%n共用編碼 %8.1f us%n",
+                subscribers, perSubscriber / 1000.0 / rounds, shared / 1000.0 / rounds);
+    }
+
+    private double nanosPerOp(int iterations, ToIntFunction<PaymentEvent> encoder) {
+        // 預熱讓 JIT 編譯完成
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += encoder.applyAsInt(events.get(i % events.size()));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += encoder.applyAsInt(events.get(i % events.size()));
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink > 0);
+        return (double) elapsed / iterations;
+    }
+
+    private long measure(int rounds, LongSupplier round) {
+        long sink = 0;
+        for (int i = 0; i < rounds; i++) {
+            sink += round.getAsLong();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += round.getAsLong();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink > 0);
+        return elapsed;
+    }
+}
@@ -0,0 +1,86 @@
+package com.bill.sse.benchmark;
+
+import com.bill.sse.config.SseConnectionProperties;
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.EncodedPaymentEvent;
+import com.bill.sse.service.SseConnection;
+import com.bill.sse.vo.PaymentEvent;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 指定訂單連接的事件投遞: 以 訂單ID → 連接 索引投遞，與對每個事件走訪所有連接再過濾比較
+ * 每條後台連接訂閱 benchmark.ordersPerConnection 筆訂單，事件平均分布在所有訂單上
+ *
+ * 執行: ./gradlew benchmark --tests '*OrderRouting*' -Dbenchmark.connections=20000
+ */
+@Tag("benchmark")
+class OrderRoutingBenchmark {
+
+    @Test
+    void testIndexedRoutingAgainstScan() {
+        int connections = Integer.getInteger("benchmark.connections", 10_000);
+        int ordersPerConnection = Integer.getInteger("benchmark.ordersPerConnection", 20);
+        int events = Integer.getInteger("benchmark.events", 20_000);
+
+        ConnectionRegistry registry = new ConnectionRegistry(new SseConnectionProperties());
+        Random random = new Random(7);
+        int orders = connections * ordersPerConnection / 4;
+        LongAdder received = new LongAdder();
+        List<SseConnection> all = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            Set<String> orderIds = new HashSet<>();
+            while (orderIds.size() < ordersPerConnection) {
+                orderIds.add("order-" + random.nextInt(orders));
+            }
+            SseConnection connection = registry.register("10.0.0.1", "benchmark", orderIds);
+            connection.inbox().subscribe(encoded -> received.increment());
+            all.add(connection);
+        }
+        EncodedPaymentEvent[] stream = new EncodedPaymentEvent[events];
+        for (int i = 0; i < events; i++) {
+            stream[i] = new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-" + random.nextInt(orders), null), 1);
+        }
+
+        // 兩種方式各跑兩輪，取第二輪
+        long scanNanos = 0;
+        long scanMatches = 0;
+        long indexNanos = 0;
+        long indexMatches = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            scanMatches = 0;
+            for (EncodedPaymentEvent encoded : stream) {
+                for (SseConnection connection : all) {
+                    if (connection.accepts(encoded)) {
+                        scanMatches++;
+                    }
+                }
+            }
+            scanNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            indexMatches = 0;
+            for (EncodedPaymentEvent encoded : stream) {
+                indexMatches += registry.route(encoded);
+            }
+            indexNanos = System.nanoTime() - start;
+        }
+
+        assertEquals(scanMatches, indexMatches);
+        assertEquals(indexMatches * 2, received.sum());
+        System.out.printf("%n=== 事件投遞 (%d 條連接, 每條 %d 筆訂單, %d 個事件, 平均 %.1f 條相符) ===%n",
+                connections, ordersPerConnection, events, (double) indexMatches / events);
+        System.out.printf("%-24s %12.1f ns/event%n", "scan + accepts", (double) scanNanos / events);
+        System.out.printf("%-24s %12.1f ns/event (含寫入 inbox)%n", "orderId index", (double) indexNanos / events);
+    }
+}
@@ -0,0 +1,105 @@
+package com.bill.sse.benchmark;
+
+import com.bill.sse.config.PaymentRequestDecoder;
+import com.bill.sse.vo.InitializePaymentRequest;
+import com.bill.sse.vo.PaymentCallbackRequest;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 比較 /initialize 與 /callback 的請求解碼: Jackson Map + BigDecimal vs PaymentRequestDecoder
+ * 輸出每個請求配置的記憶體與每秒可解碼的請求數
+ *
+ * 執行: ./gradlew benchmark -Dbenchmark.iterations=500000
+ */
+@Tag("benchmark")
+class RequestDecodingBenchmark {
+
+    private static final byte[] INITIALIZE = """
+            {"amount": 299.99, "currency": "TWD", "items": [{"sku": "A-1", "qty": 2}], "note": "生日禮物"}
+            """.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CALLBACK = """
+            {"orderId": "2f1c3b9e-8d4a-4f7e-9c61-0a5b7d3e2f10", "status": "FAILURE", "reason": "信用卡被拒",
+             "provider": "mock-pay", "traceId": "7b1e0c", "signature": "c2lnbmF0dXJl"}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PaymentRequestDecoder decoder = new PaymentRequestDecoder();
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void testDecodeAllocationsAndThroughput() {
+        int iterations = Integer.getInteger("benchmark.iterations", 200_000);
+
+        System.out.printf("%n=== 請求解碼 (%d 次) ===%n%-22s %12s %14s%n", iterations, "", "bytes/request", "requests/s");
+        report("initialize jackson", iterations, body -> {
+            Map<String, Object> request = objectMapper.readValue(body, new TypeReference<>() {
+            });
+            // 與原本的 controller 相同: 經過 toString() 轉成 BigDecimal
+            return new BigDecimal(request.get("amount").toString()).unscaledValue().longValue();
+        }, INITIALIZE);
+        report("initialize decoder", iterations, body -> decode(body, InitializePaymentRequest.class).amount(), INITIALIZE);
+        report("callback jackson", iterations, body -> {
+            Map<String, String> request = objectMapper.readValue(body, new TypeReference<>() {
+            });
+            return request.get("orderId").length() + request.get("reason").length();
+        }, CALLBACK);
+        report("callback decoder", iterations, body -> {
+            PaymentCallbackRequest request = decode(body, PaymentCallbackRequest.class);
+            return request.orderId().length() + request.reason().length();
+        }, CALLBACK);
+    }
+
+    private <T> T decode(byte[] body, Class<T> type) {
+        DataBuffer buffer = bufferFactory.wrap(body);
+        return type.cast(decoder.decode(buffer, ResolvableType.forClass(type), MediaType.APPLICATION_JSON, Map.of()));
+    }
+
+    private void report(String name, int iterations, Decoding decoding, byte[] body) {
+        ToLongFunction<byte[]> run = bytes -> {
+            try {
+                return decoding.decode(bytes);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        // 預熱讓 JIT 編譯完成
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += run.applyAsLong(body);
+        }
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += run.applyAsLong(body);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertTrue(sink != 0);
+        System.out.printf("%-22s %12s %14d %14.0f%n", name, "", allocated / iterations, iterations * 1e9 / elapsed);
+    }
+
+    @FunctionalInterface
+    private interface Decoding {
+        long decode(byte[] body) throws Exception;
+    }
+}
@@ -0,0 +1,68 @@
+package com.bill.sse.benchmark;
+
+import com.bill.sse.service.TimingWheel;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 訂單逾時用的 timing wheel: 大量新增、取消一半、推進到全部到期的耗時，以及觸發的延遲
+ * 到期時間分布在 15 分鐘內 (與預設的付款逾時相同)，tick 100ms
+ *
+ * 執行: ./gradlew benchmark --tests '*TimingWheel*' -Dbenchmark.deadlines=2000000
+ */
+@Tag("benchmark")
+class TimingWheelBenchmark {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SPAN = TimeUnit.MINUTES.toNanos(15);
+
+    @Test
+    void testMillionsOfDeadlines() {
+        int deadlines = Integer.getInteger("benchmark.deadlines", 1_000_000);
+        AtomicLong now = new AtomicLong();
+        AtomicLong maxLateness = new AtomicLong();
+        AtomicLong fired = new AtomicLong();
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 64, 4, 0, timeout -> {
+            fired.incrementAndGet();
+            maxLateness.accumulateAndGet(now.get() - timeout.deadlineNanos(), Math::max);
+        });
+
+        Random random = new Random(7);
+        @SuppressWarnings("unchecked")
+        TimingWheel.Timeout<Long>[] timeouts = new TimingWheel.Timeout[deadlines];
+        long start = System.nanoTime();
+        for (int i = 0; i < deadlines; i++) {
+            long deadline = (long) (random.nextDouble() * SPAN);
+            timeouts[i] = wheel.schedule(deadline, deadline);
+        }
+        long scheduled = System.nanoTime();
+        // 先放進 bucket，再取消一半 (模擬大部分訂單在逾時前付款)
+        wheel.advance(0);
+        long placed = System.nanoTime();
+        for (int i = 0; i < deadlines; i += 2) {
+            timeouts[i].cancel();
+        }
+        long cancelled = System.nanoTime();
+        for (long t = 0; t <= SPAN + TICK; t += TICK) {
+            now.set(t);
+            wheel.advance(t);
+        }
+        long done = System.nanoTime();
+
+        assertEquals(deadlines / 2, fired.get());
+        assertEquals(0, wheel.size());
+        System.out.printf("%n=== timing wheel (%d 個到期時間, tick 100ms, 64 x 4 層) ===%n", deadlines);
+        System.out.printf("%-24s %10.1f ns/op%n", "schedule", (double) (scheduled - start) / deadlines);
+        System.out.printf("%-24s %10.1f ns/op%n", "place into bucket", (double) (placed - scheduled) / deadlines);
+        System.out.printf("%-24s %10.1f ns/op%n", "cancel", (double) (cancelled - placed) * 2 / deadlines);
+        System.out.printf("%-24s %10.1f ns/op (%d ticks)%n", "expire incl. cascade", (double) (done - cancelled) / fired.get(),
+                (SPAN + TICK) / TICK);
+        System.out.printf("%-24s %10.1f ms%n", "max lateness", maxLateness.get() / 1e6);
+    }
+}
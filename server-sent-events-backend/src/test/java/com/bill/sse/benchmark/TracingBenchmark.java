@@ -0,0 +1,105 @@
+package com.bill.sse.benchmark;
+
+import com.bill.sse.config.SseTracingProperties;
+import com.bill.sse.service.EncodedPaymentEvent;
+import com.bill.sse.service.Tracer;
+import com.bill.sse.vo.PaymentEvent;
+import com.bill.sse.vo.TraceContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.function.LongUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 追蹤對每個 callback 的額外成本: 入口產生/解析 traceparent、經 Reactor Context 傳遞、事件 JSON 多出的 traceId，
+ * 以及未取樣與取樣時每個 span 的成本。未取樣的路徑 (預設 99%) 需在 benchmark.budgetNanos 以內
+ *
+ * 執行: ./gradlew benchmark --tests '*Tracing*' -Dbenchmark.iterations=1000000
+ */
+@Tag("benchmark")
+class TracingBenchmark {
+
+    private static final String TRACEPARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testOverheadPerCallback() throws Exception {
+        int iterations = Integer.getInteger("benchmark.iterations", 500_000);
+        long budgetNanos = Long.getLong("benchmark.budgetNanos", 1_000);
+
+        Tracer unsampled = tracer(0);
+        Tracer sampled = tracer(1);
+
+        double generate = nanosPerOp(iterations, i -> unsampled.ingress(null).traceId().length());
+        double parse = nanosPerOp(iterations, i -> unsampled.ingress(TRACEPARENT).traceId().length());
+        double header = nanosPerOp(iterations, i -> TraceContext.generate(false).traceparent().length());
+        TraceContext trace = TraceContext.generate(false);
+        double context = nanosPerOp(iterations, i -> Mono.deferContextual(ctx -> Mono.just(Tracer.current(ctx)))
+                .contextWrite(ctx -> ctx.put(TraceContext.class, trace))
+                .block().traceId().length());
+        double baseline = nanosPerOp(iterations, i -> Mono.deferContextual(ctx -> Mono.just(ctx.size()))
+                .block() + 1);
+        // 每個 callback 有 callback.queue、callback.process 兩個 span，加上每條連接一個 sse.deliver
+        double spanUnsampled = nanosPerOp(iterations, i -> {
+            unsampled.span(trace, "callback.process", "order-1", null, i, i + 10);
+            return 1;
+        });
+        TraceContext sampledTrace = sampled.ingress(null);
+        double spanSampled = nanosPerOp(iterations, i -> {
+            sampled.span(sampledTrace, "callback.process", "order-1", null, i, i + 10);
+            return 1;
+        });
+
+        PaymentEvent event = PaymentEvent.createSuccessEvent("ORDER_1700000000000_ab12cd34", null);
+        int plainBytes = objectMapper.writeValueAsBytes(event).length;
+        int tracedBytes = objectMapper.writeValueAsBytes(event.withTraceId(trace.traceId())).length;
+        double plainEncode = nanosPerOp(iterations / 10, i -> new EncodedPaymentEvent(event).json(objectMapper).length());
+        PaymentEvent traced = event.withTraceId(trace.traceId());
+        double tracedEncode = nanosPerOp(iterations / 10, i -> new EncodedPaymentEvent(traced).json(objectMapper).length());
+
+        // 未取樣的 callback: 入口產生 + 回應 header + Context 傳遞 + 兩個 span 呼叫 + 編碼多出的部分 (每個事件一次)
+        double perCallback = generate + header + Math.max(0, context - baseline) + 2 * spanUnsampled
+                + Math.max(0, tracedEncode - plainEncode);
+        System.out.printf("%n=== 追蹤成本 (%d 次) ===%n"
+                        + "%-28s %9.1f ns/op%n%-28s %9.1f ns/op%n%-28s %9.1f ns/op%n%-28s %9.1f ns/op%n"
+                        + "%-28s %9.1f ns/op%n%-28s %9.1f ns/op%n%-28s %9.1f ns/op%n"
+                        + "事件 JSON: %d → %d bytes (+%d), 編碼 %.1f → %.1f ns%n"
+                        + "未取樣 callback 合計: %.1f ns (預算 %d ns)%n",
+                iterations,
+                "ingress (產生)", generate, "ingress (解析 traceparent)", parse, "traceparent header", header,
+                "Reactor Context 傳遞", Math.max(0, context - baseline),
+                "span (未取樣)", spanUnsampled, "span (取樣, memory)", spanSampled, "deferContextual 基準", baseline,
+                plainBytes, tracedBytes, tracedBytes - plainBytes, plainEncode, tracedEncode,
+                perCallback, budgetNanos);
+        assertTrue(perCallback < budgetNanos, "未取樣的追蹤成本超過預算: " + perCallback + "ns");
+    }
+
+    private static Tracer tracer(double sampleRate) {
+        SseTracingProperties properties = new SseTracingProperties();
+        properties.setSampleRate(sampleRate);
+        properties.setExporter(SseTracingProperties.Exporter.MEMORY);
+        properties.setMemoryCapacity(1024);
+        return new Tracer(properties, new SimpleMeterRegistry());
+    }
+
+    private static double nanosPerOp(int iterations, LongUnaryOperator op) {
+        // 預熱讓 JIT 編譯完成
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += op.applyAsLong(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += op.applyAsLong(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink > 0);
+        return (double) elapsed / iterations;
+    }
+}
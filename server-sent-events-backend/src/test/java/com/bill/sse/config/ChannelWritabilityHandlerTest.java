@@ -0,0 +1,83 @@
+package com.bill.sse.config;
+
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.SseConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelWritabilityHandlerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private EmbeddedChannel channel;
+    private SseConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        channel = new EmbeddedChannel(new ChannelWritabilityHandler(meterRegistry));
+        channel.config().setOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(8, 16));
+        connection = new ConnectionRegistry(new SseConnectionProperties()).register("127.0.0.1", "test", Set.of());
+        ChannelWritabilityHandler.bind(channel, connection);
+    }
+
+    @Test
+    void testPausesUntilBelowLowWaterMark() {
+        // 還沒 flush 的資料超過 high watermark，channel 變成無法寫入
+        channel.write(Unpooled.wrappedBuffer(new byte[32]));
+        assertFalse(channel.isWritable());
+        assertFalse(connection.isWritable());
+        assertEquals(1, connection.getUnwritableCount().get());
+        assertTrue(connection.isLagging(Integer.MAX_VALUE, Duration.ofHours(1)));
+        assertEquals(1.0, meterRegistry.get("sse.netty.unwritable.channels").gauge().value());
+
+        StepVerifier.create(connection.whenWritable())
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(channel::flush)
+                .verifyComplete();
+        assertTrue(connection.isWritable());
+        assertFalse(connection.isLagging(Integer.MAX_VALUE, Duration.ofHours(1)));
+        assertEquals(0.0, meterRegistry.get("sse.netty.unwritable.channels").gauge().value());
+        assertEquals(1, meterRegistry.get("sse.netty.unwritable.time").timer().count());
+        StepVerifier.create(connection.whenWritable()).verifyComplete();
+    }
+
+    @Test
+    void testUnboundConnectionNotNotified() {
+        ChannelWritabilityHandler.unbind(channel, connection);
+        channel.write(Unpooled.wrappedBuffer(new byte[32]));
+
+        assertFalse(channel.isWritable());
+        assertTrue(connection.isWritable());
+        assertEquals(1.0, meterRegistry.get("sse.netty.unwritable").counter().count());
+
+        // 無法寫入時關閉的 channel 不會留在 gauge 中
+        channel.close();
+        assertEquals(0.0, meterRegistry.get("sse.netty.unwritable.channels").gauge().value());
+    }
+
+    @Test
+    void testChannelCloseClosesConnection() {
+        // 客戶端斷線 (例如 response header 送出前) 時綁定的連接隨即關閉，不必等寫入失敗
+        StepVerifier.create(connection.onClose())
+                .then(channel::close)
+                .expectNext(ChannelWritabilityHandler.CLOSED_REASON)
+                .verifyComplete();
+
+        // 綁定前 channel 已關閉
+        SseConnection late = new ConnectionRegistry(new SseConnectionProperties()).register("127.0.0.1", "test", Set.of());
+        ChannelWritabilityHandler.bind(channel, late);
+        assertEquals(ChannelWritabilityHandler.CLOSED_REASON, late.getCloseReason());
+    }
+}
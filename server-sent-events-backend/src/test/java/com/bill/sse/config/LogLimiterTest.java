@@ -0,0 +1,94 @@
+package com.bill.sse.config;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.KeyValuePair;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+    private final LoggerContext context = new LoggerContext();
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private Logger logger;
+
+    @BeforeEach
+    void setUp() {
+        appender.setContext(context);
+        appender.start();
+        logger = context.getLogger("test");
+        logger.addAppender(appender);
+    }
+
+    @Test
+    void testBurstThenLimited() {
+        LogLimiter limiter = new LogLimiter(10, 3, 0, clock::get);
+
+        // 容量 3，前三次放行
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.suppressed());
+
+        // 經過 100ms 補回 1 筆
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void testSamplingWhenLimited() {
+        LogLimiter limiter = new LogLimiter(1, 1, 5, clock::get);
+        assertTrue(limiter.tryAcquire());
+
+        // 超過限制後每 5 筆放行 1 筆
+        int passed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (limiter.tryAcquire()) {
+                passed++;
+            }
+        }
+        assertEquals(4, passed);
+    }
+
+    @Test
+    void testSuppressedCountAttachedToNextEvent() {
+        LogLimiter limiter = new LogLimiter(1, 1, 0, clock::get);
+
+        limiter.atInfo(logger).addKeyValue("orderId", "order1").log("發布付款事件");
+        limiter.atInfo(logger).addKeyValue("orderId", "order2").log("發布付款事件");
+        limiter.atInfo(logger).addKeyValue("orderId", "order3").log("發布付款事件");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.atInfo(logger).addKeyValue("orderId", "order4").log("發布付款事件");
+
+        List<ILoggingEvent> events = appender.list;
+        assertEquals(2, events.size());
+        assertEquals(List.of(new KeyValuePair("orderId", "order1")).toString(), events.get(0).getKeyValuePairs().toString());
+        // 略過的 2 筆附在下一筆
+        assertEquals(List.of(new KeyValuePair("suppressed", 2L), new KeyValuePair("orderId", "order4")).toString(),
+                events.get(1).getKeyValuePairs().toString());
+        assertEquals(0, limiter.suppressed());
+    }
+
+    @Test
+    void testDisabledLevelDoesNotConsumeQuota() {
+        logger.setLevel(ch.qos.logback.classic.Level.WARN);
+        LogLimiter limiter = new LogLimiter(1, 1, 0, clock::get);
+
+        limiter.atInfo(logger).log("不會輸出");
+        limiter.atWarn(logger).log("輸出");
+
+        assertEquals(1, appender.list.size());
+        assertEquals(0, limiter.suppressed());
+    }
+}
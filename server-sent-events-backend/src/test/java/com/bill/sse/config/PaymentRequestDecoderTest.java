@@ -0,0 +1,126 @@
+package com.bill.sse.config;
+
+import com.bill.sse.vo.InitializePaymentRequest;
+import com.bill.sse.vo.PaymentCallbackRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentRequestDecoderTest {
+
+    private final PaymentRequestDecoder decoder = new PaymentRequestDecoder();
+
+    private <T> T decode(String json, Class<T> type) {
+        Object value = decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(json.getBytes(StandardCharsets.UTF_8)),
+                ResolvableType.forClass(type), MediaType.APPLICATION_JSON, Map.of());
+        return type.cast(value);
+    }
+
+    private long amount(String json) {
+        return decode(json, InitializePaymentRequest.class).amount();
+    }
+
+    @Test
+    void testCanDecodeOnlyPaymentRequests() {
+        assertTrue(decoder.canDecode(ResolvableType.forClass(InitializePaymentRequest.class), MediaType.APPLICATION_JSON));
+        assertTrue(decoder.canDecode(ResolvableType.forClass(PaymentCallbackRequest.class), null));
+        assertFalse(decoder.canDecode(ResolvableType.forClass(Map.class), MediaType.APPLICATION_JSON));
+        assertFalse(decoder.canDecode(ResolvableType.forClass(InitializePaymentRequest.class), MediaType.TEXT_PLAIN));
+    }
+
+    @Test
+    void testAmountAsScaledLong() {
+        assertEquals(29999, amount("{\"amount\": 299.99}"));
+        assertEquals(1250, amount("{\"amount\":\"12.5\"}"));
+        assertEquals(10000, amount("{\"amount\":100}"));
+        assertEquals(-150, amount("{\"amount\":-1.5}"));
+    }
+
+    @Test
+    void testAmountRoundedToScale() {
+        // 超過兩位小數時四捨五入，指數寫法換算後同樣處理
+        assertEquals(1235, amount("{\"amount\":12.345}"));
+        assertEquals(1234, amount("{\"amount\":\"12.3449\"}"));
+        assertEquals(101, amount("{\"amount\":1.005}"));
+        assertEquals(-101, amount("{\"amount\":-1.005}"));
+        assertEquals(10000, amount("{\"amount\":1e2}"));
+        assertEquals(10000, amount("{\"amount\":1.0E2}"));
+        assertEquals(125, amount("{\"amount\":1.25e0}"));
+        assertEquals(1, amount("{\"amount\":5E-3}"));
+        assertEquals(0, amount("{\"amount\":1e-999999999}"));
+    }
+
+    @Test
+    void testMissingAmountUsesDefault() {
+        assertEquals(InitializePaymentRequest.DEFAULT_AMOUNT, amount("{}"));
+        assertEquals(InitializePaymentRequest.DEFAULT_AMOUNT, amount("{\"amount\":null}"));
+    }
+
+    @Test
+    void testInvalidAmountRejected() {
+        // 客戶端送出的金額格式無效或溢位時不以預設值代替
+        assertThrows(DecodingException.class, () -> amount("{\"amount\":\"abc\"}"));
+        assertThrows(DecodingException.class, () -> amount("{\"amount\":\"\"}"));
+        assertThrows(DecodingException.class, () -> amount("{\"amount\":99999999999999999999}"));
+        assertThrows(DecodingException.class, () -> amount("{\"amount\":1e999999999}"));
+        assertThrows(DecodingException.class, () -> amount("{\"amount\":true}"));
+    }
+
+    @Test
+    void testUnknownFieldsAreSkipped() {
+        String json = """
+                {"meta": {"tags": ["a", "}"], "nested": {"x": [1, {"y": "\\"q\\""}]}},
+                 "flag": true, "amount": 42.10, "note": null}
+                """;
+        assertEquals(4210, amount(json));
+    }
+
+    @Test
+    void testCallback() {
+        PaymentCallbackRequest request = decode("""
+                {"orderId": "order-1", "extra": [1, 2], "status": "FAILURE", "reason": "信用卡被拒 \\"CVV\\" \\u932f\\u8aa4"}
+                """, PaymentCallbackRequest.class);
+        assertEquals(new PaymentCallbackRequest("order-1", "FAILURE", "信用卡被拒 \"CVV\" 錯誤"), request);
+
+        assertEquals(new PaymentCallbackRequest("order-2", "SUCCESS", null),
+                decode("{\"status\":\"SUCCESS\",\"orderId\":\"order-2\"}", PaymentCallbackRequest.class));
+    }
+
+    @Test
+    void testCallbackRequiredFields() {
+        // 缺少或為 null 的 orderId、status 以及不認得的 status 都拒絕，不會以 null 狀態更新訂單
+        assertThrows(DecodingException.class, () -> decode("{\"orderId\":\"order-1\"}", PaymentCallbackRequest.class));
+        assertThrows(DecodingException.class, () -> decode("{\"orderId\":\"order-1\",\"status\":null}", PaymentCallbackRequest.class));
+        assertThrows(DecodingException.class, () -> decode("{\"status\":\"SUCCESS\"}", PaymentCallbackRequest.class));
+        assertThrows(DecodingException.class, () -> decode("{\"orderId\":null,\"status\":\"SUCCESS\"}", PaymentCallbackRequest.class));
+        assertThrows(DecodingException.class, () -> decode("{\"orderId\":\"order-1\",\"status\":\"PENDING\"}", PaymentCallbackRequest.class));
+        assertThrows(DecodingException.class, () -> decode("{\"orderId\":\"order-1\",\"status\":\"success\"}", PaymentCallbackRequest.class));
+    }
+
+    @Test
+    void testMalformedJson() {
+        assertThrows(DecodingException.class, () -> decode("{\"orderId\": \"order-1\"", PaymentCallbackRequest.class));
+        assertThrows(DecodingException.class, () -> decode("[1, 2]", PaymentCallbackRequest.class));
+        assertThrows(DecodingException.class, () -> decode("{\"amount\": 1} trailing", InitializePaymentRequest.class));
+    }
+
+    @Test
+    void testDecodeSplitBuffers() {
+        // 請求內容分成多個 DataBuffer 到達
+        Flux<DataBuffer> chunks = Flux.just("{\"amo", "unt\": 12", ".34}")
+                .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+        Object value = decoder.decodeToMono(chunks, ResolvableType.forClass(InitializePaymentRequest.class), MediaType.APPLICATION_JSON, Map.of())
+                .block(Duration.ofSeconds(1));
+        assertEquals(new InitializePaymentRequest(1234), value);
+    }
+}
@@ -0,0 +1,130 @@
+package com.bill.sse.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferAppenderTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private final RingBufferAppender ringBuffer = new RingBufferAppender();
+    private Logger logger;
+
+    @BeforeEach
+    void setUp() {
+        context.setMDCAdapter(new LogbackMDCAdapter());
+        ringBuffer.setContext(context);
+        ringBuffer.setName("test");
+        logger = context.getLogger("test");
+        logger.setAdditive(false);
+        logger.addAppender(ringBuffer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ringBuffer.stop();
+    }
+
+    @Test
+    void testDeliversEventsInOrderPerThread() throws Exception {
+        ListAppender<ILoggingEvent> target = new ListAppender<>();
+        target.setContext(context);
+        target.start();
+        ringBuffer.addAppender(target);
+        // 容量大於總筆數，不會丟棄
+        ringBuffer.setCapacity(16384);
+        ringBuffer.start();
+
+        int threads = 4;
+        int perThread = 2000;
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int producer = t;
+            producers.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    logger.atInfo().addKeyValue("producer", producer).addKeyValue("seq", i).log("event");
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        // stop 會把剩下的事件寫完
+        ringBuffer.stop();
+
+        assertEquals(0, ringBuffer.getDropped());
+        assertEquals(threads * perThread, target.list.size());
+        Map<Object, Integer> lastSeq = new HashMap<>();
+        for (ILoggingEvent event : target.list) {
+            Object producer = event.getKeyValuePairs().get(0).value;
+            int seq = (Integer) event.getKeyValuePairs().get(1).value;
+            assertEquals(lastSeq.getOrDefault(producer, -1) + 1, seq);
+            lastSeq.put(producer, seq);
+        }
+    }
+
+    @Test
+    void testDropsWhenFullAndReportsCount() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<ILoggingEvent> written = new ArrayList<>();
+        // 模擬卡住的下游 (例如 stdout 被阻塞)
+        AppenderBase<ILoggingEvent> blocked = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.add(event);
+            }
+        };
+        blocked.setContext(context);
+        blocked.start();
+        ringBuffer.addAppender(blocked);
+        ringBuffer.setCapacity(8);
+        ringBuffer.start();
+
+        // 呼叫端不會被阻塞
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            logger.info("event {}", i);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertTrue(ringBuffer.getDropped() >= 100 - 8 - 1);
+
+        release.countDown();
+        ringBuffer.stop();
+
+        // 最後一筆為丟棄數量的 WARN
+        ILoggingEvent last = written.get(written.size() - 1);
+        assertEquals(Level.WARN, last.getLevel());
+        assertEquals("dropped", last.getKeyValuePairs().get(0).key);
+        assertEquals(ringBuffer.getDropped(), last.getKeyValuePairs().get(0).value);
+        assertEquals(100 - ringBuffer.getDropped(), written.size() - 1);
+    }
+
+    @Test
+    void testRejectsCapacityNotPowerOfTwo() {
+        ringBuffer.setCapacity(1000);
+        ringBuffer.start();
+
+        assertFalse(ringBuffer.isStarted());
+    }
+}
@@ -0,0 +1,75 @@
+package com.bill.sse.config;
+
+import com.bill.sse.service.AdmissionControl;
+import com.bill.sse.service.DrainCoordinator;
+import com.bill.sse.service.LoadShedder;
+import com.bill.sse.service.TenantRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SseAdmissionFilterTest {
+
+    private final DrainCoordinator drainCoordinator = mock(DrainCoordinator.class);
+    private final LoadShedder loadShedder = mock(LoadShedder.class);
+    private final SseAdmissionProperties properties = new SseAdmissionProperties();
+    private final AtomicInteger passed = new AtomicInteger();
+    private final WebFilterChain chain = exchange -> Mono.fromRunnable(passed::incrementAndGet);
+    private SseAdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        // 關閉准入控制時 drain 與降載仍然要拒絕新連接
+        properties.setEnabled(false);
+        TenantRegistry tenantRegistry = new TenantRegistry(new SseTenantProperties(), new SimpleMeterRegistry());
+        filter = new SseAdmissionFilter(new AdmissionControl(properties), drainCoordinator, loadShedder, tenantRegistry, properties);
+        when(drainCoordinator.nextReconnectDelay()).thenReturn(Duration.ofSeconds(2));
+        when(loadShedder.retryAfter()).thenReturn(Duration.ofSeconds(5));
+        when(loadShedder.level()).thenReturn(LoadShedder.Level.REJECT_CONNECTIONS);
+    }
+
+    private MockServerWebExchange connect() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(SseAdmissionFilter.SSE_PATH));
+        filter.filter(exchange, chain).block();
+        return exchange;
+    }
+
+    @Test
+    void testAdmitsWhenAdmissionDisabled() {
+        assertNull(connect().getResponse().getStatusCode());
+        assertEquals(1, passed.get());
+    }
+
+    @Test
+    void testRejectsWhileDrainingWhenAdmissionDisabled() {
+        when(drainCoordinator.isDraining()).thenReturn(true);
+
+        MockServerWebExchange exchange = connect();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exchange.getResponse().getStatusCode());
+        assertEquals("2", exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(0, passed.get());
+    }
+
+    @Test
+    void testRejectsWhileSheddingWhenAdmissionDisabled() {
+        when(loadShedder.shouldRejectConnections()).thenReturn(true);
+
+        MockServerWebExchange exchange = connect();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exchange.getResponse().getStatusCode());
+        assertEquals("5", exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verify(loadShedder).record(LoadShedder.Action.CONNECTION_REJECTED);
+        assertEquals(0, passed.get());
+    }
+}
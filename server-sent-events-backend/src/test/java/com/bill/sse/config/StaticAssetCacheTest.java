@@ -0,0 +1,156 @@
+package com.bill.sse.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StaticAssetCacheTest {
+
+    private StaticAssetCache cache;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SseStaticAssetProperties properties = new SseStaticAssetProperties();
+        properties.setLocation("classpath:/static-test/");
+        cache = new StaticAssetCache(properties);
+        client = WebTestClient.bindToRouterFunction(new WebResourceConfig().staticAssetRouter(cache)).build();
+    }
+
+    @Test
+    void testLoadsFilesAndSkipsPrecompressedSiblings() {
+        assertEquals(3, cache.size());
+        assertTrue(cache.contains("/app.js"));
+        assertTrue(cache.contains("/assets/index-3f9a1c.js"));
+        assertFalse(cache.contains("/app.js.br"));
+        assertFalse(cache.contains("/"));
+    }
+
+    @Test
+    void testGzipNegotiation() throws IOException {
+        byte[] original = read("static-test/app.js");
+
+        EntityExchangeResult<byte[]> result = client.get().uri("/app.js")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .expectHeader().cacheControl(CacheControl.maxAge(Duration.ofHours(1)).cachePublic())
+                .expectBody().returnResult();
+
+        byte[] body = result.getResponseBody();
+        assertTrue(body.length < original.length);
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertArrayEquals(original, input.readAllBytes());
+        }
+        assertTrue(result.getResponseHeaders().getETag().endsWith("-gz\""));
+    }
+
+    @Test
+    void testBrotliPreferredWhenPrecompressed() {
+        client.get().uri("/app.js")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, br")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "br")
+                .expectBody(String.class).isEqualTo("precompressed-brotli");
+
+        // br;q=0 表示不接受
+        client.get().uri("/app.js")
+                .header(HttpHeaders.ACCEPT_ENCODING, "br;q=0, gzip")
+                .exchange()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+
+    @Test
+    void testIdentityForSmallFilesOrNoAcceptEncoding() throws IOException {
+        client.get().uri("/tiny.css")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING)
+                .expectHeader().contentType("text/css")
+                .expectBody(String.class).isEqualTo("body { margin: 0; }\n");
+
+        client.get().uri("/app.js")
+                .exchange()
+                .expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING)
+                .expectHeader().contentLength(read("static-test/app.js").length)
+                .expectBody(byte[].class).isEqualTo(read("static-test/app.js"));
+    }
+
+    @Test
+    void testNotModifiedWithMatchingETag() {
+        String etag = client.get().uri("/app.js")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectBody().returnResult()
+                .getResponseHeaders().getETag();
+
+        client.get().uri("/app.js")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag)
+                .expectBody().isEmpty();
+
+        // 不同編碼的 ETag 不同，不能互相驗證
+        client.get().uri("/app.js")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void testImmutableCacheControlForHashedAssets() {
+        client.get().uri("/assets/index-3f9a1c.js")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable");
+    }
+
+    @Test
+    void testHtmlRevalidatedAndIndexServedAtRoot() throws IOException {
+        SseStaticAssetProperties properties = new SseStaticAssetProperties();
+        StaticAssetCache pageCache = new StaticAssetCache(properties);
+        WebTestClient pageClient = WebTestClient.bindToRouterFunction(new WebResourceConfig().staticAssetRouter(pageCache)).build();
+
+        pageClient.head().uri("/third-party-payment.html")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_HTML)
+                .expectHeader().valueEquals(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .expectBody().isEmpty();
+
+        // 沒有 index.html 時 / 不由快取處理
+        assertFalse(pageCache.contains("/"));
+    }
+
+    @Test
+    void testDisabledLoadsNothing() throws IOException {
+        SseStaticAssetProperties properties = new SseStaticAssetProperties();
+        properties.setEnabled(false);
+        assertEquals(0, new StaticAssetCache(properties).size());
+    }
+
+    private static byte[] read(String path) throws IOException {
+        try (InputStream input = new ClassPathResource(path).getInputStream()) {
+            return input.readAllBytes();
+        }
+    }
+}
@@ -1,9 +1,29 @@
 package com.bill.sse.controller;
 
+import com.bill.sse.config.AdminAuthorization;
+import com.bill.sse.config.SseConfig;
+import com.bill.sse.config.StaticAssetCache;
+import com.bill.sse.service.AdmissionControl;
+import com.bill.sse.service.CallbackIngest;
+import com.bill.sse.service.ColdOrderStore;
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.DrainCoordinator;
+import com.bill.sse.service.EncodedPaymentEvent;
+import com.bill.sse.service.EventLoopLagMonitor;
+import com.bill.sse.service.LoadShedder;
+import com.bill.sse.service.OrderExporter;
+import com.bill.sse.service.OrderPersistence;
+import com.bill.sse.service.OrderStore;
 import com.bill.sse.service.PaymentService;
+import com.bill.sse.service.TenantRegistry;
+import com.bill.sse.service.Tracer;
+import com.bill.sse.vo.OrderRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -11,11 +31,18 @@ import org.springframework.web.reactive.function.BodyInserters;
 
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
-@WebFluxTest(PaymentController.class)
+@WebFluxTest(controllers = PaymentController.class, properties = "sse.admin.token=" + PaymentControllerTest.ADMIN_TOKEN)
+@Import({SseConfig.class, AdmissionControl.class, ConnectionRegistry.class, DrainCoordinator.class,
+        EventLoopLagMonitor.class, LoadShedder.class, StaticAssetCache.class, OrderStore.class, CallbackIngest.class,
+        OrderPersistence.class, ColdOrderStore.class, OrderExporter.class, TenantRegistry.class, Tracer.class,
+        AdminAuthorization.class, SimpleMeterRegistry.class})
 class PaymentControllerTest {
 
+    static final String ADMIN_TOKEN = "test-admin-token";
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -41,6 +68,17 @@ class PaymentControllerTest {
                 .jsonPath("$.paymentUrl").isNotEmpty();
     }
 
+    @Test
+    void testInitializePaymentRejectsInvalidAmount() {
+        // 無法解析的金額回應 400，不以預設值建立訂單
+        webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\":\"abc\"}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     void testPaymentCallbackSuccess() {
         // 先初始化付款以建立訂單
@@ -69,12 +107,12 @@ class PaymentControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .body(BodyInserters.fromValue(callbackData))
                 .exchange()
-                .expectStatus().isOk()
+                .expectStatus().isAccepted()
                 .expectBody(String.class)
-                .isEqualTo("回調處理成功");
+                .isEqualTo("回調已受理");
 
-        // 驗證 PaymentService 被調用
-        verify(paymentService, times(1)).notifyPaymentSuccess(orderId);
+        // 驗證 OrderStore 透過 PaymentService 發布了第一個版本的事件
+        verify(paymentService, timeout(1000).times(1)).publish(argThat(orderEvent(orderId, "SUCCESS", null)));
     }
 
     @Test
@@ -107,12 +145,80 @@ class PaymentControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .body(BodyInserters.fromValue(callbackData))
                 .exchange()
-                .expectStatus().isOk()
+                .expectStatus().isAccepted()
                 .expectBody(String.class)
-                .isEqualTo("回調處理成功");
+                .isEqualTo("回調已受理");
 
-        // 驗證 PaymentService 被調用
-        verify(paymentService, times(1)).notifyPaymentFailure(orderId, failureReason);
+        // 驗證 OrderStore 透過 PaymentService 發布了第一個版本的事件
+        verify(paymentService, timeout(1000).times(1)).publish(argThat(orderEvent(orderId, "FAILURE", failureReason)));
+    }
+
+    @Test
+    void testPaymentCallbackWithoutStatusRejected() {
+        String orderId = webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 100.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst()
+                .get("orderId").toString();
+
+        // 缺少 status 的 callback 回應 400，不會進入佇列
+        webTestClient.post()
+                .uri("/api/payment/callback")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"orderId\":\"" + orderId + "\"}")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.post()
+                .uri("/api/payment/callback")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"orderId\":\"" + orderId + "\",\"status\":null}")
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        // 訂單維持 PENDING，也沒有發布事件
+        webTestClient.get()
+                .uri("/api/payment/{orderId}/status", orderId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("PENDING");
+        verify(paymentService, after(200).never()).publish(argThat(encoded -> orderId.equals(encoded.event().orderId())));
+    }
+
+    @Test
+    void testPaymentCallbackPropagatesTrace() {
+        // 先初始化付款以建立訂單
+        String orderId = webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 100.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst()
+                .get("orderId").toString();
+
+        // 第三方帶上 traceparent，回應沿用同一個 traceId
+        String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+        webTestClient.post()
+                .uri("/api/payment/callback")
+                .header("traceparent", "00-" + traceId + "-00f067aa0ba902b7-01")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("orderId", orderId, "status", "SUCCESS")))
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().value("traceparent", value -> assertTrue(value.contains(traceId)));
+
+        // 經過 callback 佇列後，發布的事件帶有同一個 trace
+        verify(paymentService, timeout(1000).times(1)).publish(argThat(encoded -> orderId.equals(encoded.event().orderId())
+                && traceId.equals(encoded.event().traceId())
+                && encoded.trace() != null && encoded.trace().sampled()));
     }
 
     @Test
@@ -164,8 +270,8 @@ class PaymentControllerTest {
                 .expectBody(String.class)
                 .isEqualTo("已模擬付款成功");
 
-        // 驗證 PaymentService 被調用
-        verify(paymentService, times(1)).notifyPaymentSuccess(orderId);
+        // 驗證 OrderStore 透過 PaymentService 發布了第一個版本的事件
+        verify(paymentService, times(1)).publish(argThat(orderEvent(orderId, "SUCCESS", null)));
 
         // 檢查訂單狀態已更新
         webTestClient.get()
@@ -203,8 +309,8 @@ class PaymentControllerTest {
                 .expectBody(String.class)
                 .isEqualTo("已模擬付款失敗");
 
-        // 驗證 PaymentService 被調用
-        verify(paymentService, times(1)).notifyPaymentFailure(eq(orderId), eq(reason));
+        // 驗證 OrderStore 透過 PaymentService 發布了第一個版本的事件
+        verify(paymentService, times(1)).publish(argThat(orderEvent(orderId, "FAILURE", reason)));
 
         // 檢查訂單狀態已更新
         webTestClient.get()
@@ -214,4 +320,146 @@ class PaymentControllerTest {
                 .expectBody()
                 .jsonPath("$.status").isEqualTo("FAILURE");
     }
+
+    @Test
+    void testSimulateFailureCapsReason() {
+        String orderId = webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 100.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst()
+                .get("orderId").toString();
+
+        // 過長的原因在入口截斷，不會寫出超過資料檔上限的紀錄
+        webTestClient.post()
+                .uri("/api/payment/{orderId}/simulate-failure", orderId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("reason", "x".repeat(100_000))))
+                .exchange()
+                .expectStatus().isOk();
+
+        verify(paymentService, times(1)).publish(argThat(encoded -> orderId.equals(encoded.event().orderId())
+                && encoded.event().message().contains("x".repeat(OrderRecord.MAX_REASON_LENGTH))
+                && !encoded.event().message().contains("x".repeat(OrderRecord.MAX_REASON_LENGTH + 1))));
+    }
+
+    @Test
+    void testExportOrders() {
+        // 建立兩筆訂單，其中一筆模擬付款成功
+        String first = webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 100.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst()
+                .get("orderId").toString();
+        String second = webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 100.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst()
+                .get("orderId").toString();
+        webTestClient.post()
+                .uri("/api/payment/{orderId}/simulate-success", first)
+                .exchange()
+                .expectStatus().isOk();
+
+        // 只匯出成功的訂單，每行一筆 JSON
+        String body = webTestClient.get()
+                .uri("/api/payment/orders/export?status=success")
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+        assertNotNull(body);
+        assertTrue(body.contains("\"orderId\":\"" + first + "\""));
+        assertFalse(body.contains(second));
+        assertTrue(body.lines().allMatch(line -> line.contains("\"status\":\"SUCCESS\"")));
+    }
+
+    @Test
+    void testExportOrdersRequiresAdminToken() {
+        // 只憑商家代碼不能匯出該商家的訂單
+        webTestClient.get()
+                .uri("/api/payment/orders/export?merchant=default")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.get()
+                .uri("/api/payment/orders/export")
+                .header("X-Admin-Token", "wrong")
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+
+    @Test
+    void testExportOrdersRejectsInvalidTime() {
+        webTestClient.get()
+                .uri("/api/payment/orders/export?from=yesterday")
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testGetTraceRequiresAdminToken() {
+        // span 帶有訂單與連接代碼，不能公開查詢
+        webTestClient.get()
+                .uri("/api/payment/traces/{traceId}", "4bf92f3577b34da6a3ce929d0e0e4736")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.get()
+                .uri("/api/payment/traces/{traceId}", "4bf92f3577b34da6a3ce929d0e0e4736")
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void testPersistenceStatsRequireAdminToken() {
+        webTestClient.get()
+                .uri("/api/payment/persistence")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.get()
+                .uri("/api/payment/persistence")
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.mode").isEqualTo("OFF");
+    }
+
+    @Test
+    void testColdStorageStatsRequireAdminToken() {
+        webTestClient.get()
+                .uri("/api/payment/cold-storage")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.get()
+                .uri("/api/payment/cold-storage")
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    private static ArgumentMatcher<EncodedPaymentEvent> orderEvent(String orderId, String status, String reason) {
+        return encoded -> orderId.equals(encoded.event().orderId())
+                && status.equals(encoded.event().status())
+                && (reason == null || encoded.event().message().contains(reason))
+                && encoded.version() == 1;
+    }
 }
@@ -1,29 +1,87 @@
 package com.bill.sse.controller;
 
+import com.bill.sse.config.AdminAuthorization;
+import com.bill.sse.config.SseConfig;
+import com.bill.sse.config.StaticAssetCache;
+import com.bill.sse.service.AdmissionControl;
+import com.bill.sse.service.CompactEventCodec;
+import com.bill.sse.service.ConnectionReaper;
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.DrainCoordinator;
+import com.bill.sse.service.EncodedPaymentEvent;
+import com.bill.sse.service.EventFilterRegistry;
+import com.bill.sse.service.EventLoopLagMonitor;
+import com.bill.sse.service.LoadShedder;
+import com.bill.sse.service.OrderEventRouter;
+import com.bill.sse.service.OrderStore;
 import com.bill.sse.service.PaymentService;
+import com.bill.sse.service.SseConnection;
+import com.bill.sse.service.TenantRegistry;
+import com.bill.sse.service.Tracer;
+import com.bill.sse.vo.ConnectionSnapshot;
 import com.bill.sse.vo.PaymentEvent;
+import com.bill.sse.vo.SubscriptionRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import java.io.ByteArrayOutputStream;
 import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
-@WebFluxTest(SseController.class)
+@WebFluxTest(controllers = SseController.class, properties = "sse.admin.token=" + SseControllerTest.ADMIN_TOKEN)
+@Import({SseConfig.class, ConnectionRegistry.class, ConnectionReaper.class, AdmissionControl.class, DrainCoordinator.class,
+        EventFilterRegistry.class, EventLoopLagMonitor.class, LoadShedder.class, OrderEventRouter.class,
+        StaticAssetCache.class, TenantRegistry.class, Tracer.class, AdminAuthorization.class, SimpleMeterRegistry.class})
 class SseControllerTest {
 
+    static final String ADMIN_TOKEN = "test-admin-token";
+
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private ConnectionRegistry connectionRegistry;
+
+    @Autowired
+    private DrainCoordinator drainCoordinator;
+
+    @Autowired
+    private EventFilterRegistry eventFilterRegistry;
+
     @MockitoBean
     private PaymentService paymentService;
 
+    @MockitoBean
+    private OrderStore orderStore;
+
+    private static Flux<EncodedPaymentEvent> encoded(Flux<PaymentEvent> events) {
+        return events.map(EncodedPaymentEvent::new);
+    }
+
     @Test
     void testStreamEvents() {
         // 建立測試事件
@@ -31,8 +89,8 @@ class SseControllerTest {
         PaymentEvent event2 = new PaymentEvent("TEST", "order2", "SUCCESS", "測試事件2", 2000L);
 
         // 模擬 PaymentService 回傳的 Flux
-        when(paymentService.getPaymentEvents())
-                .thenReturn(Flux.just(event1, event2).delayElements(Duration.ofMillis(100)));
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT))
+                .thenReturn(encoded(Flux.just(event1, event2).delayElements(Duration.ofMillis(100))));
 
         // 測試 SSE 端點
         Flux<PaymentEvent> responseBody = webTestClient.get()
@@ -52,10 +110,240 @@ class SseControllerTest {
                 .verify(Duration.ofSeconds(3));
     }
 
+    @Test
+    void testSnapshotBeforeLiveEventsWithoutDuplicates() {
+        // callback 早於連接建立: 快照為版本 1，即時事件重送版本 1 後接著版本 2
+        PaymentEvent failed = PaymentEvent.createFailureEvent("order-snap", "信用卡被拒");
+        PaymentEvent succeeded = PaymentEvent.createSuccessEvent("order-snap", null);
+        when(orderStore.snapshot("order-snap")).thenReturn(new EncodedPaymentEvent(failed, 1));
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(Flux.just(
+                        new EncodedPaymentEvent(failed, 1),
+                        new EncodedPaymentEvent(succeeded, 2),
+                        new EncodedPaymentEvent(failed, 1))
+                .delayElements(Duration.ofMillis(100)));
+
+        Flux<PaymentEvent> responseBody = webTestClient.get()
+                .uri("/api/sse/payment-events?orderId=order-snap")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(PaymentEvent.class)
+                .getResponseBody()
+                .filter(event -> event.orderId() != null);
+
+        StepVerifier.create(responseBody.take(Duration.ofMillis(800)))
+                .expectNext(failed)
+                .expectNext(succeeded)
+                .expectComplete()
+                .verify(Duration.ofSeconds(3));
+    }
+
+    @Test
+    void testDashboardSubscriptions() {
+        // 後台連接建立時沒有訂單，之後加入的訂單先收到目前狀態，再收到即時事件；移除的訂單不再收到
+        Sinks.Many<EncodedPaymentEvent> events = Sinks.many().multicast().directBestEffort();
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(events.asFlux());
+        PaymentEvent failed = PaymentEvent.createFailureEvent("order-a", "信用卡被拒");
+        PaymentEvent succeeded = PaymentEvent.createSuccessEvent("order-a", null);
+        PaymentEvent other = PaymentEvent.createSuccessEvent("order-b", null);
+        when(orderStore.snapshot("order-a")).thenReturn(new EncodedPaymentEvent(failed, 1));
+
+        Set<String> existing = connectionIds();
+        Flux<PaymentEvent> responseBody = webTestClient.get()
+                .uri("/api/sse/payment-events?scoped=true")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(PaymentEvent.class)
+                .getResponseBody()
+                .filter(event -> event.orderId() != null);
+        SseConnection connection = awaitNewConnection(existing);
+        String connectionId = connection.getId();
+        // 後台以建立連接時收到的 token 變更自己的訂閱，不需要 admin token
+        String token = connection.getSubscriptionToken();
+
+        StepVerifier.create(responseBody)
+                .then(() -> webTestClient.post()
+                        .uri("/api/sse/subscriptions/{connectionId}", connectionId)
+                        .header("X-Subscription-Token", token)
+                        .bodyValue(new SubscriptionRequest(List.of("order-a", "order-b"), null))
+                        .exchange()
+                        .expectStatus().isOk()
+                        .expectBody()
+                        .jsonPath("$.added").isEqualTo(2)
+                        .jsonPath("$.subscribed").isEqualTo(2))
+                .expectNext(failed)
+                .then(() -> {
+                    events.tryEmitNext(new EncodedPaymentEvent(failed, 1));
+                    events.tryEmitNext(new EncodedPaymentEvent(succeeded, 2));
+                    webTestClient.post()
+                            .uri("/api/sse/subscriptions/{connectionId}", connectionId)
+                            .header("X-Subscription-Token", token)
+                            .bodyValue(new SubscriptionRequest(null, List.of("order-b")))
+                            .exchange()
+                            .expectStatus().isOk()
+                            .expectBody()
+                            .jsonPath("$.removed").isEqualTo(1);
+                    events.tryEmitNext(new EncodedPaymentEvent(other, 1));
+                })
+                .expectNext(succeeded)
+                .expectNoEvent(Duration.ofMillis(300))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testSubscriptionTokenOnlyAuthorizesItsConnection() throws Exception {
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(Flux.never());
+
+        // 第一條連接保持開啟，只取出第一個 frame
+        CompletableFuture<ServerSentEvent<String>> opened = new CompletableFuture<>();
+        Disposable first = webTestClient.get()
+                .uri("/api/sse/payment-events?scoped=true")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                })
+                .getResponseBody()
+                .subscribe(opened::complete);
+        // 第一個 frame 為 "connected <連接ID> <token>"
+        String[] connected = opened.get(3, TimeUnit.SECONDS).comment().split(" ");
+        assertEquals(3, connected.length);
+        assertEquals("connected", connected[0]);
+        SseConnection connection = connectionRegistry.get(connected[1]);
+        assertNotNull(connection);
+        assertEquals(connection.getSubscriptionToken(), connected[2]);
+
+        Set<String> existing = connectionIds();
+        Flux<String> second = webTestClient.get()
+                .uri("/api/sse/payment-events?scoped=true")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody();
+        StepVerifier.create(second)
+                .then(() -> {
+                    String otherToken = awaitNewConnection(existing).getSubscriptionToken();
+                    // 沒有 token 或是其他連接的 token 都不能變更
+                    webTestClient.post()
+                            .uri("/api/sse/subscriptions/{connectionId}", connection.getId())
+                            .bodyValue(new SubscriptionRequest(List.of("order-a"), null))
+                            .exchange()
+                            .expectStatus().isForbidden();
+                    webTestClient.post()
+                            .uri("/api/sse/subscriptions/{connectionId}", connection.getId())
+                            .header("X-Subscription-Token", otherToken)
+                            .bodyValue(new SubscriptionRequest(List.of("order-a"), null))
+                            .exchange()
+                            .expectStatus().isForbidden();
+                    // 不存在的連接同樣回應 403，不透露連接是否存在
+                    webTestClient.post()
+                            .uri("/api/sse/subscriptions/{connectionId}", "missing")
+                            .header("X-Subscription-Token", otherToken)
+                            .bodyValue(new SubscriptionRequest(List.of("order-a"), null))
+                            .exchange()
+                            .expectStatus().isForbidden();
+                    assertTrue(connection.getOrderIds().isEmpty());
+
+                    webTestClient.post()
+                            .uri("/api/sse/subscriptions/{connectionId}", connection.getId())
+                            .header("X-Subscription-Token", connection.getSubscriptionToken())
+                            .bodyValue(new SubscriptionRequest(List.of("order-a"), null))
+                            .exchange()
+                            .expectStatus().isOk();
+                    assertEquals(Set.of("order-a"), connection.getOrderIds());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        first.dispose();
+    }
+
+    @Test
+    void testSubscriptionsRequireScopedConnection() {
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(Flux.never());
+
+        webTestClient.post()
+                .uri("/api/sse/subscriptions/{connectionId}", "missing")
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .bodyValue(new SubscriptionRequest(List.of("order-a"), null))
+                .exchange()
+                .expectStatus().isNotFound();
+
+        Set<String> existing = connectionIds();
+        Flux<String> responseBody = webTestClient.get()
+                .uri("/api/sse/payment-events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody();
+        String connectionId = awaitNewConnection(existing).getId();
+
+        // 訂閱全部訂單的連接不能變更訂閱
+        StepVerifier.create(responseBody)
+                .then(() -> webTestClient.post()
+                        .uri("/api/sse/subscriptions/{connectionId}", connectionId)
+                        .header("X-Admin-Token", ADMIN_TOKEN)
+                        .bodyValue(new SubscriptionRequest(List.of("order-a"), null))
+                        .exchange()
+                        .expectStatus().isEqualTo(HttpStatus.CONFLICT))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testFilteredEventsReportSavedBytes() {
+        PaymentEvent succeeded = PaymentEvent.createSuccessEvent("order-f1", null);
+        PaymentEvent failed = PaymentEvent.createFailureEvent("order-f2", "信用卡被拒");
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(encoded(Flux.concat(
+                Flux.just(succeeded, failed).delayElements(Duration.ofMillis(100)), Flux.never())));
+
+        Set<String> existing = connectionIds();
+        Flux<PaymentEvent> responseBody = webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/api/sse/payment-events")
+                        .queryParam("filter", "{filter}")
+                        .build("status in (FAILURE) and eventType = PAYMENT_STATUS"))
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(PaymentEvent.class)
+                .getResponseBody()
+                .filter(event -> event.orderId() != null);
+        SseConnection connection = awaitNewConnection(existing);
+
+        // 只收到失敗事件，被略過的成功事件計入連接的節省量
+        StepVerifier.create(responseBody)
+                .expectNext(failed)
+                .then(() -> {
+                    ConnectionSnapshot snapshot = connection.snapshot(Integer.MAX_VALUE, Duration.ofMinutes(1));
+                    assertEquals("(status = FAILURE and eventType = PAYMENT_STATUS)", snapshot.filter());
+                    assertEquals(1, snapshot.eventsFiltered());
+                    assertTrue(snapshot.bytesFiltered() > 0);
+                    assertEquals(1, eventFilterRegistry.size());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testInvalidFilterRejected() {
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(Flux.never());
+        int connections = connectionRegistry.size();
+
+        webTestClient.get()
+                .uri("/api/sse/payment-events?filter={filter}", "amount > 100")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isBadRequest();
+        assertEquals(connections, connectionRegistry.size());
+    }
+
     @Test
     void testStreamEventsContentType() {
         // 模擬空的事件流
-        when(paymentService.getPaymentEvents()).thenReturn(Flux.empty());
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(Flux.empty());
 
         // 測試 SSE 端點確認返回的 Content-Type 是否正確
         webTestClient.get()
@@ -64,4 +352,178 @@ class SseControllerTest {
                 .expectStatus().isOk()
                 .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM);
     }
+
+    @Test
+    void testStreamCompactEvents() {
+        PaymentEvent event = new PaymentEvent("PAYMENT_STATUS", "order-compact", "SUCCESS", "付款已成功完成", 1000L);
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(encoded(Flux.just(event)));
+
+        // Accept 指定精簡格式時，回傳 OPEN frame 後接著 EVENT frame
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        webTestClient.get()
+                .uri("/api/sse/payment-events")
+                .accept(CompactEventCodec.MEDIA_TYPE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(CompactEventCodec.MEDIA_TYPE)
+                .returnResult(byte[].class)
+                .getResponseBody()
+                .doOnNext(received::writeBytes)
+                .takeUntil(chunk -> received.size() > CompactEventCodec.openFrame("00000000").length)
+                .blockLast(Duration.ofSeconds(3));
+
+        byte[] body = received.toByteArray();
+        CompactEventCodec.Frame opened = CompactEventCodec.readFrame(body, 0);
+        assertEquals(CompactEventCodec.OPEN, opened.type());
+        CompactEventCodec.Frame frame = CompactEventCodec.readFrame(body, opened.nextOffset());
+        assertEquals(CompactEventCodec.EVENT, frame.type());
+        assertEquals(event, CompactEventCodec.decode(frame.body()));
+    }
+
+    @Test
+    void testForceCloseConnection() {
+        // 模擬不會結束的事件流
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(Flux.never());
+
+        Flux<String> responseBody = webTestClient.get()
+                .uri("/api/sse/payment-events?orderId=order1")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody();
+
+        // 連線建立後可在明細中看到，並可被強制關閉
+        StepVerifier.create(responseBody)
+                .then(() -> {
+                    ConnectionSnapshot snapshot = webTestClient.get()
+                            .uri("/api/sse/connections/details")
+                            .header("X-Admin-Token", ADMIN_TOKEN)
+                            .accept(MediaType.APPLICATION_NDJSON)
+                            .exchange()
+                            .expectStatus().isOk()
+                            .returnResult(ConnectionSnapshot.class)
+                            .getResponseBody()
+                            .blockFirst(Duration.ofSeconds(3));
+                    assertNotNull(snapshot);
+                    assertEquals(List.of("order1"), snapshot.orderIds());
+                    assertFalse(snapshot.debug());
+
+                    // 可在執行期間開啟單一連接的除錯 log
+                    webTestClient.put()
+                            .uri("/api/sse/connections/{connectionId}/debug?enabled=true", snapshot.connectionId())
+                            .header("X-Admin-Token", ADMIN_TOKEN)
+                            .exchange()
+                            .expectStatus().isOk();
+                    assertTrue(connectionRegistry.get(snapshot.connectionId()).isDebug());
+
+                    webTestClient.delete()
+                            .uri("/api/sse/connections/{connectionId}", snapshot.connectionId())
+                            .header("X-Admin-Token", ADMIN_TOKEN)
+                            .exchange()
+                            .expectStatus().isOk();
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(0, connectionRegistry.size());
+    }
+
+    @Test
+    void testDebugUnknownConnection() {
+        webTestClient.put()
+                .uri("/api/sse/connections/{connectionId}/debug?enabled=true", "missing")
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testAdminEndpointsRequireToken() {
+        webTestClient.post()
+                .uri("/api/sse/drain")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.delete()
+                .uri("/api/sse/connections/{connectionId}", "any")
+                .header("X-Admin-Token", "wrong")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.get()
+                .uri("/api/sse/connections/details")
+                .exchange()
+                .expectStatus().isForbidden();
+        assertFalse(drainCoordinator.isDraining());
+
+        // 連接數與原本相同，不需要 token
+        webTestClient.get()
+                .uri("/api/sse/connections")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.activeConnections").isNumber();
+
+        webTestClient.get()
+                .uri("/api/sse/shedding")
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void testDrainSendsRetryDirective() {
+        PaymentEvent event = new PaymentEvent("PAYMENT_STATUS", "order-drain", "SUCCESS", "測試事件", 1000L);
+        when(paymentService.getEncodedEvents(TenantRegistry.DEFAULT)).thenReturn(encoded(Flux.concat(Flux.just(event), Flux.never())));
+
+        Flux<ServerSentEvent<String>> responseBody = webTestClient.get()
+                .uri("/api/sse/payment-events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                })
+                .getResponseBody()
+                .filter(sse -> sse.data() != null || sse.retry() != null);
+
+        try {
+            // 收到事件後開始 drain，最後一個 frame 帶有 retry 與最後的事件 id
+            StepVerifier.create(responseBody)
+                    .assertNext(sse -> assertEquals("order-drain", sse.id()))
+                    .then(() -> drainCoordinator.drain("test"))
+                    .assertNext(sse -> {
+                        assertNotNull(sse.retry());
+                        assertEquals("order-drain", sse.id());
+                    })
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+
+            // drain 期間拒絕新連接
+            webTestClient.get()
+                    .uri("/api/sse/payment-events")
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                    .expectHeader().exists(HttpHeaders.RETRY_AFTER);
+        } finally {
+            drainCoordinator.resume();
+        }
+    }
+
+    private Set<String> connectionIds() {
+        return connectionRegistry.connections().map(SseConnection::getId).collect(Collectors.toSet()).block();
+    }
+
+    // 其他測試留下的連接可能還沒移除，只找這次新建立的連接
+    private SseConnection awaitNewConnection(Set<String> existing) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(3).toNanos();
+        while (System.nanoTime() < deadline) {
+            SseConnection connection = connectionRegistry.connections()
+                    .filter(candidate -> !existing.contains(candidate.getId()))
+                    .blockFirst();
+            if (connection != null) {
+                return connection;
+            }
+            Thread.onSpinWait();
+        }
+        throw new AssertionError("連接未建立");
+    }
 }
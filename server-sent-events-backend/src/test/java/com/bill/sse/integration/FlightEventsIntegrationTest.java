@@ -0,0 +1,172 @@
+package com.bill.sse.integration;
+
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.vo.PaymentEvent;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 付款事件生命週期的 JFR 事件: 完整走一次 callback → SSE 推送，讀取 recording 檢查各階段的事件
+ * 關閉降載，避免啟動時的 event loop 延遲讓初始化付款被拒絕
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "sse.shedding.enabled=false")
+class FlightEventsIntegrationTest {
+
+    private static final List<String> EVENT_NAMES = List.of(
+            "com.bill.sse.CallbackDecoded", "com.bill.sse.EventPublished", "com.bill.sse.EventEncoded",
+            "com.bill.sse.EventWritten", "com.bill.sse.ConnectionOpened", "com.bill.sse.ConnectionClosed");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ConnectionRegistry connectionRegistry;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRecordsPaymentEventLifecycle() throws Exception {
+        List<RecordedEvent> events;
+        String orderId;
+        try (Recording recording = new Recording()) {
+            EVENT_NAMES.forEach(recording::enable);
+            recording.start();
+
+            orderId = initialize();
+            CountDownLatch received = new CountDownLatch(1);
+            Disposable subscription = subscribe(orderId, received);
+            awaitConnections(1);
+
+            // 以 callback 觸發，經過解碼器
+            webTestClient.post()
+                    .uri("/api/payment/callback")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(BodyInserters.fromValue(Map.of("orderId", orderId, "status", "SUCCESS")))
+                    .exchange()
+                    .expectStatus().isAccepted();
+            assertTrue(received.await(5, TimeUnit.SECONDS), "未在期望的時間內收到付款事件");
+
+            subscription.dispose();
+            awaitConnections(0);
+            recording.stop();
+            Path file = dir.resolve("sse.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        RecordedEvent decoded = single(events, "com.bill.sse.CallbackDecoded", orderId);
+        assertEquals("SUCCESS", decoded.getString("status"));
+        assertTrue(decoded.getInt("bytes") > 0);
+
+        RecordedEvent published = single(events, "com.bill.sse.EventPublished", orderId);
+        assertEquals("OK", published.getString("result"));
+        assertEquals("default", published.getString("tenant"));
+        assertEquals(1, published.getLong("version"));
+
+        RecordedEvent encoded = single(events, "com.bill.sse.EventEncoded", orderId);
+        assertEquals("json", encoded.getString("format"));
+
+        RecordedEvent written = single(events, "com.bill.sse.EventWritten", orderId);
+        String connectionId = written.getString("connectionId");
+        assertEquals("sse", written.getString("format"));
+        assertTrue(written.getLong("sincePublished") > 0);
+        assertFalse(written.getStartTime().isBefore(published.getStartTime()));
+
+        RecordedEvent opened = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.bill.sse.ConnectionOpened"))
+                .filter(event -> connectionId.equals(event.getString("connectionId")))
+                .findFirst().orElseThrow();
+        assertTrue(opened.getBoolean("scoped"));
+        assertEquals(1, opened.getInt("orders"));
+        RecordedEvent closed = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.bill.sse.ConnectionClosed"))
+                .filter(event -> connectionId.equals(event.getString("connectionId")))
+                .findFirst().orElseThrow();
+        assertTrue(closed.getLong("eventsSent") >= 1);
+    }
+
+    @Test
+    void testDisabledInDefaultRecording() throws Exception {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording(Configuration.getConfiguration("default"))) {
+            recording.start();
+            String orderId = initialize();
+            webTestClient.post()
+                    .uri("/api/payment/{orderId}/simulate-success", orderId)
+                    .exchange()
+                    .expectStatus().isOk();
+            recording.stop();
+            Path file = dir.resolve("default.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        assertFalse(events.isEmpty());
+        assertTrue(events.stream().noneMatch(event -> event.getEventType().getName().startsWith("com.bill.sse.")));
+    }
+
+    private String initialize() {
+        Map<?, ?> response = webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 100.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst();
+        assertNotNull(response);
+        return response.get("orderId").toString();
+    }
+
+    private Disposable subscribe(String orderId, CountDownLatch received) {
+        return WebClient.create("http://localhost:" + port).get()
+                .uri("/api/sse/payment-events?orderId={orderId}", orderId)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(PaymentEvent.class)
+                .filter(event -> orderId.equals(event.orderId()) && "SUCCESS".equals(event.status()))
+                .subscribe(event -> received.countDown());
+    }
+
+    private void awaitConnections(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connectionRegistry.size() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, connectionRegistry.size());
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name, String orderId) {
+        List<RecordedEvent> matched = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .filter(event -> orderId.equals(event.getString("orderId")))
+                .toList();
+        assertEquals(1, matched.size(), name + ": " + matched);
+        return matched.get(0);
+    }
+}
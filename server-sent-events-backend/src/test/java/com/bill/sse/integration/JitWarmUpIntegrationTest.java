@@ -0,0 +1,49 @@
+package com.bill.sse.integration;
+
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.PaymentService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "sse.warmup.enabled=true",
+        "sse.warmup.iterations=500"
+})
+class JitWarmUpIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private ConnectionRegistry connectionRegistry;
+
+    /**
+     * 預熱在 ready 之前完成，且不留下任何狀態
+     */
+    @Test
+    void testWarmUpLeavesNoState() throws InterruptedException {
+        webTestClient.get()
+                .uri("/actuator/health/readiness")
+                .exchange()
+                .expectStatus().isOk();
+
+        // 預熱事件不計入發布總數
+        assertEquals(0, paymentService.getTotalEventsPublished());
+
+        // loopback 連接在預熱後關閉
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (connectionRegistry.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, connectionRegistry.size());
+    }
+}
@@ -0,0 +1,122 @@
+package com.bill.sse.integration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 負載產生器經由本機 HTTP 端點建立訂單、送出 callback，虛擬訂閱者以 SSE 收到事件，統計以 SSE 推送
+ * 關閉降載，避免啟動時的 event loop 延遲讓初始化付款被拒絕
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "sse.shedding.enabled=false",
+        "sse.load-generator.enabled=true",
+        "sse.admin.token=secret",
+        "sse.tenants.merchants=load-generator",
+        "sse.load-generator.max-rate=100",
+        "sse.load-generator.report-interval=500ms"})
+class LoadGeneratorIntegrationTest {
+
+    private static final ParameterizedTypeReference<ServerSentEvent<Map<String, Object>>> STATS_TYPE =
+            new ParameterizedTypeReference<>() {
+            };
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void testRequiresAdminToken() {
+        webTestClient.post()
+                .uri("/api/admin/load-generator")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.post()
+                .uri("/api/admin/load-generator")
+                .header("X-Admin-Token", "wrong")
+                .exchange()
+                .expectStatus().isForbidden();
+        webTestClient.get()
+                .uri("/api/admin/load-generator/stats")
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+
+    @Test
+    void testRejectsRateOverLimit() {
+        webTestClient.post()
+                .uri("/api/admin/load-generator")
+                .header("X-Admin-Token", "secret")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("rate", 1000)))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testRunStreamsStats() {
+        webTestClient.post()
+                .uri("/api/admin/load-generator")
+                .header("X-Admin-Token", "secret")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("rate", 40, "subscribers", 2, "durationSeconds", 3, "failureRatio", 0.5)))
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody()
+                .jsonPath("$.rate").isEqualTo(40.0)
+                .jsonPath("$.tenant").isEqualTo("load-generator");
+
+        // 執行中不能再開始
+        webTestClient.post()
+                .uri("/api/admin/load-generator")
+                .header("X-Admin-Token", "secret")
+                .exchange()
+                .expectStatus().isEqualTo(409);
+
+        // 收到結束的統計為止
+        List<Map<String, Object>> snapshots = WebClient.create("http://localhost:" + port).get()
+                .uri("/api/admin/load-generator/stats")
+                .header("X-Admin-Token", "secret")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(STATS_TYPE)
+                .map(ServerSentEvent::data)
+                .takeUntil(snapshot -> !"RUNNING".equals(snapshot.get("state")))
+                .collectList()
+                .block(Duration.ofSeconds(15));
+
+        assertNotNull(snapshots);
+        Map<String, Object> last = snapshots.get(snapshots.size() - 1);
+        assertEquals("COMPLETED", last.get("state"));
+        // 測試剛啟動時 JIT 未完成，結束時仍有進行中的訂單，只檢查有完整走完的
+        assertTrue(((Number) last.get("initialized")).longValue() > 60, last.toString());
+        assertTrue(((Number) last.get("callbacks")).longValue() > 20, last.toString());
+        assertTrue(((Number) last.get("delivered")).longValue() > 20, last.toString());
+        assertEquals(Map.of(), last.get("errors"));
+        assertEquals(2, ((Number) last.get("subscribers")).intValue());
+        assertTrue(snapshots.stream().anyMatch(snapshot -> ((Number) ((Map<?, ?>) snapshot.get("deliveryLatencyMs")).get("count")).longValue() > 0
+                && ((Number) ((Map<?, ?>) snapshot.get("deliveryLatencyMs")).get("p99")).doubleValue() > 0), snapshots.toString());
+
+        // 已結束時停止回應 404
+        webTestClient.delete()
+                .uri("/api/admin/load-generator")
+                .header("X-Admin-Token", "secret")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
@@ -67,7 +67,7 @@ class PaymentFlowIntegrationTest {
         
         // 開始監聽 SSE 事件
         Flux<PaymentEvent> eventFlux = client.get()
-                .uri("/api/sse/payment-events")
+                .uri("/api/sse/payment-events?orderId={orderId}", orderId)
                 .accept(MediaType.TEXT_EVENT_STREAM)
                 .retrieve()
                 .bodyToFlux(PaymentEvent.class)
@@ -82,7 +82,7 @@ class PaymentFlowIntegrationTest {
         // 訂閱事件流但不阻塞測試執行緒
         eventFlux.subscribe();
         
-        // 等待片刻確保 SSE 連接已建立
+        // 等待片刻確保 SSE 連接已建立 (指定訂單的連接在建立前發生的轉換由快照補上)
         Thread.sleep(500);
         
         // 步驟 3: 模擬付款成功
@@ -131,7 +131,7 @@ class PaymentFlowIntegrationTest {
         
         // 使用 StepVerifier 測試事件流
         Flux<PaymentEvent> eventFlux = client.get()
-                .uri("/api/sse/payment-events")
+                .uri("/api/sse/payment-events?orderId={orderId}", orderId)
                 .accept(MediaType.TEXT_EVENT_STREAM)
                 .retrieve()
                 .bodyToFlux(PaymentEvent.class)
@@ -196,7 +196,7 @@ class PaymentFlowIntegrationTest {
         
         // 開始監聽 SSE 事件
         Flux<PaymentEvent> eventFlux = client.get()
-                .uri("/api/sse/payment-events")
+                .uri("/api/sse/payment-events?orderId={orderId}", orderId)
                 .accept(MediaType.TEXT_EVENT_STREAM)
                 .retrieve()
                 .bodyToFlux(PaymentEvent.class)
@@ -225,7 +225,7 @@ class PaymentFlowIntegrationTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .body(BodyInserters.fromValue(callbackData))
                 .exchange()
-                .expectStatus().isOk();
+                .expectStatus().isAccepted();
         
         // 等待並驗證是否收到付款事件
         boolean received = latch.await(5, TimeUnit.SECONDS);
@@ -274,7 +274,7 @@ class PaymentFlowIntegrationTest {
         
         // 客戶端 1
         Flux<PaymentEvent> eventFlux1 = client.get()
-                .uri("/api/sse/payment-events")
+                .uri("/api/sse/payment-events?orderId={orderId}", orderId)
                 .accept(MediaType.TEXT_EVENT_STREAM)
                 .retrieve()
                 .bodyToFlux(PaymentEvent.class)
@@ -287,7 +287,7 @@ class PaymentFlowIntegrationTest {
         
         // 客戶端 2
         Flux<PaymentEvent> eventFlux2 = client.get()
-                .uri("/api/sse/payment-events")
+                .uri("/api/sse/payment-events?orderId={orderId}", orderId)
                 .accept(MediaType.TEXT_EVENT_STREAM)
                 .retrieve()
                 .bodyToFlux(PaymentEvent.class)
@@ -328,4 +328,53 @@ class PaymentFlowIntegrationTest {
         assertEquals(event1.status(), event2.status());
         assertEquals(event1.message(), event2.message());
     }
+
+    /**
+     * 啟動時的 SSE 自我檢查通過後 readiness 才為 UP
+     */
+    @Test
+    void testReadinessAfterStreamSelfCheck() {
+        webTestClient.get()
+                .uri("/actuator/health/readiness")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("UP");
+    }
+
+    /**
+     * callback 早於 SSE 連接建立: 指定訂單的連接先收到目前狀態的快照，不需要再查詢狀態
+     */
+    @Test
+    void testCallbackBeforeSubscribeDeliveredAsSnapshot() {
+        String orderId = (String) webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 120.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst()
+                .get("orderId");
+
+        webTestClient.post()
+                .uri("/api/payment/callback")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("orderId", orderId, "status", "SUCCESS")))
+                .exchange()
+                .expectStatus().isAccepted();
+
+        Flux<PaymentEvent> events = WebClient.create("http://localhost:" + port).get()
+                .uri("/api/sse/payment-events?orderId={orderId}", orderId)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(PaymentEvent.class)
+                .filter(event -> orderId.equals(event.orderId()));
+
+        StepVerifier.create(events.take(1))
+                .assertNext(event -> assertEquals("SUCCESS", event.status()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
 }
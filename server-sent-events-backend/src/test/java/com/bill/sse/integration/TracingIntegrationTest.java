@@ -0,0 +1,150 @@
+package com.bill.sse.integration;
+
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.vo.PaymentEvent;
+import com.bill.sse.vo.TraceSpan;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * traceparent 從 callback 請求經過佇列、發布，到 SSE 推送的事件，span 輸出到記憶體
+ * 關閉降載，避免啟動時的 event loop 延遲讓初始化付款被拒絕
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "sse.shedding.enabled=false",
+        "sse.admin.token=" + TracingIntegrationTest.ADMIN_TOKEN,
+        "sse.tracing.exporter=memory",
+        "sse.tracing.sample-rate=0"})
+class TracingIntegrationTest {
+
+    static final String ADMIN_TOKEN = "test-admin-token";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ConnectionRegistry connectionRegistry;
+
+    @Test
+    void testTraceFromCallbackToSseFrame() throws Exception {
+        String orderId = webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 100.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst()
+                .get("orderId").toString();
+
+        CompletableFuture<PaymentEvent> received = new CompletableFuture<>();
+        Disposable subscription = WebClient.create("http://localhost:" + port).get()
+                .uri("/api/sse/payment-events?orderId={orderId}", orderId)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(PaymentEvent.class)
+                .filter(event -> orderId.equals(event.orderId()) && "SUCCESS".equals(event.status()))
+                .subscribe(received::complete);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connectionRegistry.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        // 上游已取樣，本地比例為 0 也會輸出 span
+        String traceId = "0af7651916cd43dd8448eb211c80319c";
+        webTestClient.post()
+                .uri("/api/payment/callback")
+                .header("traceparent", "00-" + traceId + "-b7ad6b7169203331-01")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("orderId", orderId, "status", "SUCCESS")))
+                .exchange()
+                .expectStatus().isAccepted();
+
+        PaymentEvent event = received.get(5, TimeUnit.SECONDS);
+        subscription.dispose();
+        assertEquals(traceId, event.traceId());
+
+        // callback.process 在發布之後才記錄，可能比 SSE 事件晚一點到
+        Set<String> expected = Set.of("http POST /api/payment/callback", "callback.queue", "callback.process", "sse.deliver");
+        List<TraceSpan> spans = traces(traceId);
+        deadline = System.currentTimeMillis() + 5000;
+        while (!names(spans).containsAll(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            spans = traces(traceId);
+        }
+        assertTrue(names(spans).containsAll(expected), names(spans).toString());
+        assertTrue(spans.stream().allMatch(span -> "b7ad6b7169203331".equals(span.parentSpanId())));
+        TraceSpan deliver = spans.stream().filter(span -> span.name().equals("sse.deliver")).findFirst().orElseThrow();
+        assertEquals(orderId, deliver.orderId());
+        assertNotNull(deliver.connectionId());
+    }
+
+    @Test
+    void testUnsampledTraceExportsNoSpans() {
+        String orderId = webTestClient.post()
+                .uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(Map.of("amount", 100.0)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("traceparent")
+                .returnResult(Map.class)
+                .getResponseBody()
+                .blockFirst()
+                .get("orderId").toString();
+
+        // 未取樣的 trace 不輸出 span，但 traceId 仍回應給呼叫端
+        String traceparent = webTestClient.post()
+                .uri("/api/payment/{orderId}/simulate-success", orderId)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseHeaders()
+                .getFirst("traceparent");
+        assertNotNull(traceparent);
+        assertTrue(traceparent.endsWith("-00"));
+        webTestClient.get()
+                .uri("/api/payment/traces/{traceId}", traceparent.substring(3, 35))
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json("[]");
+    }
+
+    private List<TraceSpan> traces(String traceId) {
+        List<TraceSpan> spans = webTestClient.get()
+                .uri("/api/payment/traces/{traceId}", traceId)
+                .header("X-Admin-Token", ADMIN_TOKEN)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(TraceSpan.class)
+                .returnResult()
+                .getResponseBody();
+        assertNotNull(spans);
+        return spans;
+    }
+
+    private static Set<String> names(List<TraceSpan> spans) {
+        return spans.stream().map(TraceSpan::name).collect(Collectors.toSet());
+    }
+}
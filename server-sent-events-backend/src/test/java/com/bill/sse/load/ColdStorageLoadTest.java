@@ -0,0 +1,141 @@
+package com.bill.sse.load;
+
+import com.bill.sse.config.SseColdStorageProperties;
+import com.bill.sse.config.SseOrderProperties;
+import com.bill.sse.config.SsePersistenceProperties;
+import com.bill.sse.service.ColdOrderStore;
+import com.bill.sse.service.OrderPersistence;
+import com.bill.sse.service.OrderStore;
+import com.bill.sse.service.PaymentService;
+import com.bill.sse.vo.OrderRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.Disposable;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 已結束訂單放在記憶體 (OrderStore) 與冷儲存 (segment 檔) 的 heap 用量，以及冷儲存的查詢延遲
+ * 訂單代碼與正式環境相同為 UUID，事先建立，兩者都不計入；冷儲存以 load.segmentSize 筆為一個 segment
+ * 先量冷儲存再量記憶體，避免量測冷儲存時記憶體的訂單還沒回收
+ *
+ * 執行: ./gradlew loadTest --tests '*ColdStorage*' -Dload.orders=1000000
+ */
+@Tag("load")
+class ColdStorageLoadTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testHeapPerMillionOrdersAndColdLookup() throws Exception {
+        int orders = Integer.getInteger("load.orders", 1_000_000);
+        int segmentSize = Integer.getInteger("load.segmentSize", 100_000);
+        int lookups = Integer.getInteger("load.lookups", 200_000);
+
+        String[] orderIds = new String[orders];
+        for (int i = 0; i < orders; i++) {
+            orderIds[i] = UUID.randomUUID().toString();
+        }
+        long now = System.currentTimeMillis();
+
+        // 冷儲存: 每 segmentSize 筆寫成一個 segment
+        SseColdStorageProperties properties = new SseColdStorageProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(dir);
+        properties.setSegmentSize(segmentSize);
+        long base = usedHeap();
+        ColdOrderStore cold = new ColdOrderStore(properties, new SimpleMeterRegistry());
+        long writeStart = System.nanoTime();
+        for (int i = 0; i < orders; i++) {
+            cold.offer(new OrderRecord(orderIds[i], "default", "SUCCESS", null, 1, now, now));
+            if ((i + 1) % segmentSize == 0) {
+                cold.flush();
+            }
+        }
+        cold.flush();
+        long writeMillis = (System.nanoTime() - writeStart) / 1_000_000;
+        long coldBytes = usedHeap() - base;
+        Map<String, Object> stats = cold.stats();
+
+        // 記憶體: 建立後轉為 SUCCESS，與保留期限內的訂單相同
+        base = usedHeap();
+        PaymentService paymentService = new PaymentService();
+        Disposable subscription = paymentService.getEncodedEvents().subscribe(event -> {
+        });
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ColdOrderStore disabled = new ColdOrderStore(new SseColdStorageProperties(), meterRegistry);
+        OrderStore hot = new OrderStore(new SseOrderProperties(), paymentService,
+                new OrderPersistence(new SsePersistenceProperties(), meterRegistry), disabled, meterRegistry);
+        for (String orderId : orderIds) {
+            hot.create(orderId);
+            hot.transition(orderId, "SUCCESS", null);
+        }
+        long hotBytes = usedHeap() - base;
+        assertNotNull(hot.status(orderIds[0]));
+        subscription.dispose();
+
+        // 查詢: 先暖身再量測，命中與不存在各 lookups 次
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < lookups; i++) {
+            cold.find(orderIds[random.nextInt(orders)]);
+        }
+        long[] hits = new long[lookups];
+        long[] misses = new long[lookups];
+        for (int i = 0; i < lookups; i++) {
+            String orderId = orderIds[random.nextInt(orders)];
+            long start = System.nanoTime();
+            OrderRecord record = cold.find(orderId);
+            hits[i] = System.nanoTime() - start;
+            assertNotNull(record);
+        }
+        for (int i = 0; i < lookups; i++) {
+            String orderId = UUID.randomUUID().toString();
+            long start = System.nanoTime();
+            OrderRecord record = cold.find(orderId);
+            misses[i] = System.nanoTime() - start;
+            assertNull(record);
+        }
+        Arrays.sort(hits);
+        Arrays.sort(misses);
+
+        double perMillion = 1_000_000.0 / orders;
+        System.out.printf("%n=== 已結束訂單的儲存 (%d 筆, 每個 segment %d 筆) ===%n"
+                        + "%-6s %14s %12s%n%-6s %14.1f %12s%n%-6s %14.1f %12.1f%n"
+                        + "segments: %s, 寫入: %dms, 稀疏索引: %.1f MB, bloom 誤判: %s%n"
+                        + "%-6s %10s %10s %10s%n%-6s %10.1f %10.1f %10.1f%n%-6s %10.1f %10.1f %10.1f%n",
+                orders, segmentSize, "tier", "heap MB/百萬筆", "檔案 MB",
+                "hot", hotBytes * perMillion / 1e6, "-",
+                "cold", coldBytes * perMillion / 1e6, ((Number) stats.get("fileBytes")).longValue() / 1e6,
+                stats.get("segments"), writeMillis, ((Number) stats.get("indexBytes")).longValue() / 1e6,
+                stats.get("bloomFalsePositives"),
+                "lookup", "p50(µs)", "p99(µs)", "max(µs)",
+                "hit", percentile(hits, 0.5), percentile(hits, 0.99), hits[lookups - 1] / 1e3,
+                "miss", percentile(misses, 0.5), percentile(misses, 0.99), misses[lookups - 1] / 1e3);
+        assertTrue(coldBytes * 10 < hotBytes, "冷儲存的 heap 用量應遠低於記憶體: " + coldBytes + " / " + hotBytes);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e3;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
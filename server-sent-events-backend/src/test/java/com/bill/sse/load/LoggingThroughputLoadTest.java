@@ -0,0 +1,119 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 比較同步 console log 與 async-log profile (ring buffer + JSON) 在事件熱路徑上的吞吐量
+ * 每個情境啟動一個 pod，開啟固定數量的 SSE 連接後送出 initialize + callback，統計 callback/s 與事件送達/s
+ *
+ * 執行: ./gradlew loadTest --tests '*LoggingThroughput*' -Dload.connections=200 -Dload.orders=5000
+ */
+@Tag("load")
+class LoggingThroughputLoadTest {
+
+    private static final String SSE_PATH = "/api/sse/payment-events";
+
+    private ConfigurableApplicationContext pod;
+
+    @AfterEach
+    void tearDown() {
+        if (pod != null) {
+            pod.close();
+        }
+    }
+
+    @Test
+    void testLoggingModesThroughput() throws Exception {
+        int connections = Integer.getInteger("load.connections", 200);
+        int orders = Integer.getInteger("load.orders", 3000);
+        int concurrency = Integer.getInteger("load.concurrency", 64);
+
+        List<String> rows = new ArrayList<>();
+        for (String profile : List.of("default", "async-log")) {
+            // 先跑一輪預熱，再量測
+            pod = startPod(profile);
+            String url = "http://localhost:" + pod.getEnvironment().getProperty("local.server.port");
+            run(url, connections, orders / 5, concurrency);
+            Result result = run(url, connections, orders, concurrency);
+            pod.close();
+            pod = null;
+
+            rows.add(String.format("%-10s %14.0f %16.0f %12d", profile, result.callbacksPerSecond(),
+                    result.deliveriesPerSecond(), result.missing()));
+            assertTrue(result.missing() == 0, profile + " 有事件未送達: " + result.missing());
+        }
+
+        System.out.printf("%n=== log 模式吞吐量 (%d 條連接, %d 筆訂單, 並行 %d) ===%n%-10s %14s %16s %12s%n%s%n",
+                connections, orders, concurrency, "profile", "callbacks/s", "deliveries/s", "missing",
+                String.join("\n", rows));
+    }
+
+    private Result run(String url, int connections, int orders, int concurrency) throws InterruptedException {
+        WebClient client = WebClient.create(url);
+        try (SseLoadHarness harness = new SseLoadHarness()) {
+            harness.open(connections, List.of(url), SSE_PATH);
+            assertTrue(harness.awaitConnects(url, connections, Duration.ofSeconds(30)), "連線未全部建立");
+            long baseline = harness.events();
+            long expected = (long) connections * orders;
+
+            long start = System.nanoTime();
+            Flux.range(0, orders)
+                    .flatMap(i -> payOrder(client, i), concurrency)
+                    .blockLast(Duration.ofMinutes(5));
+            long callbacksDone = System.nanoTime();
+
+            long deadline = callbacksDone + Duration.ofSeconds(30).toNanos();
+            while (harness.events() - baseline < expected && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            long delivered = Math.min(expected, harness.events() - baseline);
+            long deliveredAt = System.nanoTime();
+
+            return new Result(orders * 1e9 / (callbacksDone - start),
+                    delivered * 1e9 / (deliveredAt - start),
+                    expected - delivered);
+        }
+    }
+
+    private Mono<String> payOrder(WebClient client, int index) {
+        return client.post().uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("amount", "100.00"))
+                .retrieve()
+                .bodyToMono(Map.class)
+                .flatMap(order -> client.post().uri("/api/payment/callback")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(Map.of("orderId", order.get("orderId"),
+                                "status", index % 10 == 0 ? "FAILURE" : "SUCCESS"))
+                        .retrieve()
+                        .bodyToMono(String.class));
+    }
+
+    private ConfigurableApplicationContext startPod(String profile) {
+        // 兩種模式都使用預設的 log 等級，只切換 appender
+        return new SpringApplicationBuilder(ServerSentEventsBackendApplication.class).run(
+                "--server.port=0",
+                "--spring.profiles.active=" + profile,
+                "--sse.admission.enabled=false",
+                "--sse.shedding.enabled=false");
+    }
+
+    private record Result(double callbacksPerSecond, double deliveriesPerSecond, long missing) {
+    }
+}
@@ -0,0 +1,152 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import com.bill.sse.service.OrderStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 訂單匯出對 callback 的影響: load.orders 筆訂單在記憶體中，以 load.concurrency 個併發持續送出 callback，
+ * 比較沒有匯出與同時進行一個全量匯出時 callback 的往返延遲，並記錄匯出速度與匯出期間 heap 的最高增量
+ *
+ * 執行: ./gradlew loadTest --tests '*OrderExport*' -Dload.orders=1000000
+ */
+@Tag("load")
+class OrderExportLoadTest {
+
+    private ConfigurableApplicationContext pod;
+
+    @AfterEach
+    void tearDown() {
+        if (pod != null) {
+            pod.close();
+        }
+    }
+
+    @Test
+    void testExportKeepsCallbackLatency() throws Exception {
+        int orders = Integer.getInteger("load.orders", 1_000_000);
+        int seconds = Integer.getInteger("load.seconds", 10);
+        int concurrency = Integer.getInteger("load.concurrency", 16);
+
+        pod = new SpringApplicationBuilder(ServerSentEventsBackendApplication.class).run(
+                "--server.port=0",
+                "--sse.admission.enabled=false",
+                "--sse.admin.token=load-test",
+                "--logging.level.com.bill.sse=WARN");
+        int port = Integer.parseInt(pod.getEnvironment().getProperty("local.server.port"));
+        OrderStore orderStore = pod.getBean(OrderStore.class);
+        MeterRegistry meterRegistry = pod.getBean(MeterRegistry.class);
+        for (int i = 0; i < orders; i++) {
+            orderStore.create("order-" + i);
+        }
+        HttpClient client = HttpClient.create(ConnectionProvider.create("export-load", concurrency + 4))
+                .baseUrl("http://127.0.0.1:" + port);
+
+        // 建立訂單的垃圾先回收，暖身後量測沒有匯出時的延遲
+        System.gc();
+        callbacks(client, orders, concurrency, 5);
+        double[] baseline = callbacks(client, orders, concurrency, seconds);
+
+        // 同時進行一個全量匯出，客戶端只計算收到的位元組與行數
+        System.gc();
+        long baseHeap = usedHeap();
+        AtomicLong peakHeap = new AtomicLong(baseHeap);
+        AtomicLong lines = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        long exportStart = System.nanoTime();
+        AtomicLong exportNanos = new AtomicLong();
+        Mono<Void> export = client
+                .headers(headers -> headers.set("X-Admin-Token", "load-test"))
+                .get()
+                .uri("/api/payment/orders/export")
+                .responseContent()
+                .doOnNext(buffer -> {
+                    bytes.addAndGet(buffer.readableBytes());
+                    for (int i = buffer.readerIndex(); i < buffer.writerIndex(); i++) {
+                        if (buffer.getByte(i) == '\n') {
+                            lines.incrementAndGet();
+                        }
+                    }
+                    peakHeap.accumulateAndGet(usedHeap(), Math::max);
+                })
+                .then()
+                .doOnTerminate(() -> exportNanos.set(System.nanoTime() - exportStart));
+        var exporting = export.subscribe();
+        double[] during = callbacks(client, orders, concurrency, seconds);
+        while (exportNanos.get() == 0) {
+            Thread.sleep(50);
+        }
+        exporting.dispose();
+
+        double exportSeconds = exportNanos.get() / 1e9;
+        System.out.printf("%n=== 訂單匯出 (%d 筆訂單, %d 併發 callback, %ds) ===%n"
+                        + "%-10s %10s %9s %9s %9s%n%-10s %10.0f %9.2f %9.2f %9.2f%n%-10s %10.0f %9.2f %9.2f %9.2f%n"
+                        + "匯出: %d 筆, %.1f MB, %.1fs, %.0f 筆/s, heap 最高增量 (含未回收) %.1f MB, 降載暫停 %.0f 批%n",
+                orders, concurrency, seconds, "export", "callback/s", "p50(ms)", "p99(ms)", "max(ms)",
+                "none", baseline[0], baseline[1], baseline[2], baseline[3],
+                "running", during[0], during[1], during[2], during[3],
+                lines.get(), bytes.get() / 1e6, exportSeconds, lines.get() / exportSeconds,
+                (peakHeap.get() - baseHeap) / 1e6, meterRegistry.get("sse.export.paused").counter().count());
+
+        assertEquals(orders, lines.get());
+        assertTrue(during[2] < Math.max(baseline[2] * 3, 50), "匯出期間 callback 的 p99 延遲不應明顯上升: " + during[2] + " / " + baseline[2]);
+    }
+
+    // 回傳 {每秒次數, p50, p99, max}，延遲為客戶端量測的往返時間 (ms)
+    private static double[] callbacks(HttpClient client, int orders, int concurrency, int seconds) {
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicLong sequence = new AtomicLong();
+        Flux.<Long>generate(sink -> sink.next(sequence.getAndIncrement()))
+                .flatMap(n -> {
+                    long start = System.nanoTime();
+                    return callback(client, "order-" + n % orders, n % 2 == 0 ? "SUCCESS" : "FAILURE")
+                            .doOnNext(status -> latencies.add(System.nanoTime() - start));
+                }, concurrency)
+                .take(Duration.ofSeconds(seconds))
+                .blockLast(Duration.ofSeconds(seconds * 3L));
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        if (sorted.length == 0) {
+            return new double[4];
+        }
+        return new double[]{(double) sorted.length / seconds, percentile(sorted, 0.5), percentile(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6};
+    }
+
+    private static Mono<Integer> callback(HttpClient client, String orderId, String status) {
+        String body = "{\"orderId\":\"" + orderId + "\",\"status\":\"" + status + "\"}";
+        return client.headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, "application/json"))
+                .post()
+                .uri("/api/payment/callback")
+                .send(ByteBufFlux.fromString(Mono.just(body)))
+                .responseSingle((response, content) -> content.then(Mono.just(response.status().code())))
+                .onErrorReturn(0);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,125 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import com.bill.sse.service.OrderStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 訂單持久化對 callback 的影響: 以 load.concurrency 個併發持續對 load.orders 筆訂單送出 callback，
+ * 比較 off / sync / write-behind 的 callback 受理量、callback 受理到事件發布的延遲，以及 write-behind 的批次大小
+ *
+ * 執行: ./gradlew loadTest --tests '*OrderPersistence*' -Dload.seconds=10
+ */
+@Tag("load")
+class OrderPersistenceLoadTest {
+
+    @TempDir
+    Path dir;
+
+    private ConfigurableApplicationContext pod;
+
+    @AfterEach
+    void tearDown() {
+        if (pod != null) {
+            pod.close();
+        }
+    }
+
+    @Test
+    void testWriteBehindKeepsCallbackLatency() {
+        int seconds = Integer.getInteger("load.seconds", 10);
+        int orders = Integer.getInteger("load.orders", 1000);
+        int concurrency = Integer.getInteger("load.concurrency", 32);
+
+        List<String> rows = new ArrayList<>();
+        double[] p99 = new double[3];
+        String[] modes = {"off", "sync", "write-behind"};
+        for (int m = 0; m < modes.length; m++) {
+            String mode = modes[m];
+            pod = new SpringApplicationBuilder(ServerSentEventsBackendApplication.class).run(
+                    "--server.port=0",
+                    "--sse.persistence.mode=" + mode,
+                    "--sse.persistence.path=" + dir.resolve(mode + ".db"),
+                    "--sse.admission.enabled=false",
+                    "--sse.shedding.enabled=false",
+                    "--logging.level.com.bill.sse=WARN");
+            int port = Integer.parseInt(pod.getEnvironment().getProperty("local.server.port"));
+            OrderStore orderStore = pod.getBean(OrderStore.class);
+            MeterRegistry meterRegistry = pod.getBean(MeterRegistry.class);
+            for (int i = 0; i < orders; i++) {
+                orderStore.create("order-" + i);
+            }
+
+            HttpClient client = HttpClient.create(ConnectionProvider.create("persistence-load", concurrency + 4))
+                    .baseUrl("http://127.0.0.1:" + port);
+            AtomicLong accepted = new AtomicLong();
+            AtomicLong rejected = new AtomicLong();
+            AtomicLong sequence = new AtomicLong();
+            // 同一訂單交替成功與失敗，每個 callback 都是一次狀態轉換
+            Flux.<Long>generate(sink -> sink.next(sequence.getAndIncrement()))
+                    .flatMap(n -> callback(client, "order-" + n % orders, n / orders % 2 == 0 ? "SUCCESS" : "FAILURE"),
+                            concurrency)
+                    .take(Duration.ofSeconds(seconds))
+                    .doOnNext(status -> (status == 202 ? accepted : rejected).incrementAndGet())
+                    .blockLast(Duration.ofSeconds(seconds * 3L));
+
+            Timer latency = meterRegistry.get("sse.tenant.callback.latency").tag("tenant", "default").timer();
+            DistributionSummary batches = meterRegistry.get("sse.persistence.batch.size").summary();
+            p99[m] = percentile(latency, 0.99);
+            rows.add(String.format("%-13s %10d %9d %9.2f %9.2f %9d %10.1f %9.0f", mode, accepted.get() / seconds,
+                    rejected.get(), percentile(latency, 0.5), p99[m], batches.count(), batches.mean(), batches.max()));
+
+            pod.close();
+            pod = null;
+        }
+
+        System.out.printf("%n=== 訂單持久化 (%d 筆訂單, %d 併發 callback, %ds) ===%n%-13s %10s %9s %9s %9s %9s %10s %9s%n%s%n",
+                orders, concurrency, seconds, "mode", "accepted/s", "rejected", "p50(ms)", "p99(ms)",
+                "batches", "batch mean", "batch max", String.join("\n", rows));
+        assertTrue(p99[2] < p99[1], "write-behind 的 p99 延遲應低於 sync: " + p99[2] + " / " + p99[1]);
+    }
+
+    // 回傳 HTTP 狀態碼
+    private static Mono<Integer> callback(HttpClient client, String orderId, String status) {
+        String body = "{\"orderId\":\"" + orderId + "\",\"status\":\"" + status + "\"}";
+        return client.headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, "application/json"))
+                .post()
+                .uri("/api/payment/callback")
+                .send(ByteBufFlux.fromString(Mono.just(body)))
+                .responseSingle((response, content) -> content.then(Mono.just(response.status().code())))
+                .onErrorReturn(0);
+    }
+
+    private static double percentile(Timer timer, double percentile) {
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return 0;
+    }
+}
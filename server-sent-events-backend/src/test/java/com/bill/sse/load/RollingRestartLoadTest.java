@@ -0,0 +1,92 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 模擬 rolling restart: pod A drain 後，所有客戶端依照收到的 retry 重連到 pod B
+ * 輸出 pod B 的重連曲線，重連應分散在 jitter 區間內，而不是集中在同一瞬間
+ *
+ * 執行: ./gradlew loadTest -Dload.connections=2000
+ */
+@Tag("load")
+class RollingRestartLoadTest {
+
+    private static final String SSE_PATH = "/api/sse/payment-events";
+    private static final String ADMIN_TOKEN = "load-test";
+
+    private ConfigurableApplicationContext podA;
+    private ConfigurableApplicationContext podB;
+
+    @AfterEach
+    void tearDown() {
+        if (podA != null) {
+            podA.close();
+        }
+        if (podB != null) {
+            podB.close();
+        }
+    }
+
+    @Test
+    void testDrainSpreadsReconnects() throws Exception {
+        int connections = Integer.getInteger("load.connections", 1000);
+        Duration jitter = Duration.ofSeconds(Long.getLong("load.jitterSeconds", 5));
+
+        podA = startPod(jitter);
+        podB = startPod(jitter);
+        String urlA = "http://localhost:" + podA.getEnvironment().getProperty("local.server.port");
+        String urlB = "http://localhost:" + podB.getEnvironment().getProperty("local.server.port");
+
+        try (SseLoadHarness harness = new SseLoadHarness()) {
+            harness.open(connections, List.of(urlA, urlB), SSE_PATH);
+            assertTrue(harness.awaitConnects(urlA, connections, Duration.ofSeconds(60)), "連線未全部建立到 pod A");
+
+            // pod A 開始 drain
+            long drainStartedAt = System.nanoTime();
+            WebClient.create(urlA).post().uri("/api/sse/drain").header("X-Admin-Token", ADMIN_TOKEN).retrieve().toBodilessEntity().block(Duration.ofSeconds(5));
+
+            // 准入控制關閉時 drain 中的 pod 仍然拒絕新連接
+            HttpStatusCode rejected = WebClient.create(urlA).get().uri(SSE_PATH)
+                    .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                    .block(Duration.ofSeconds(5));
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected);
+
+            boolean reconnected = harness.awaitConnects(urlB, connections, jitter.plusSeconds(30));
+            TreeMap<Long, Integer> curve = harness.connectCurve(urlB, drainStartedAt, Duration.ofMillis(250));
+            System.out.printf("%n=== pod B 重連曲線 (%d 條連接, jitter %ds, 每 250ms) ===%n%s%n",
+                    connections, jitter.toSeconds(), SseLoadHarness.render(curve));
+
+            assertTrue(reconnected, "客戶端未全部重連到 pod B: " + harness.connects(urlB));
+
+            // 任一個 250ms 區間都不應超過全部重連的 20%
+            int peak = curve.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+            assertTrue(peak <= connections * 0.2, "重連過於集中, 高峰: " + peak);
+        }
+    }
+
+    private ConfigurableApplicationContext startPod(Duration jitter) {
+        // 以命令列參數傳入，才能蓋過 application.yml
+        return new SpringApplicationBuilder(ServerSentEventsBackendApplication.class).run(
+                "--server.port=0",
+                "--sse.admission.enabled=false",
+                "--sse.admin.token=" + ADMIN_TOKEN,
+                "--sse.drain.reconnect-base=500ms",
+                "--sse.drain.reconnect-jitter=" + jitter.toMillis() + "ms",
+                "--logging.level.com.bill.sse=WARN");
+    }
+}
@@ -0,0 +1,192 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.EncodedPaymentEvent;
+import com.bill.sse.service.PaymentService;
+import com.bill.sse.vo.ConnectionSnapshot;
+import com.bill.sse.vo.PaymentEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.Disposable;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 慢的客戶端對 server 的影響: load.slowClients 條連接送出請求後完全不讀取 (接收 buffer 很小)，
+ * 同時有 load.fastClients 條正常讀取的連接，發布 load.events 個約 1KB 的事件
+ * 比較 sse.connection.pause-when-unwritable 開關時 Netty 佔用的 direct memory 峰值、慢連接是否被回報為落後，以及正常連接的事件延遲
+ *
+ * 執行: ./gradlew loadTest --tests '*SlowClient*' -Dload.events=20000
+ */
+@Tag("load")
+class SlowClientLoadTest {
+
+    private static final String SSE_PATH = "/api/sse/payment-events";
+    private static final Pattern TIMESTAMP = Pattern.compile("\"eventType\":\"PAYMENT_STATUS\"[^}]*\"timestamp\":(\\d+)");
+
+    private final List<Socket> slowSockets = new ArrayList<>();
+    private ConfigurableApplicationContext pod;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket socket : slowSockets) {
+            socket.close();
+        }
+        if (pod != null) {
+            pod.close();
+        }
+    }
+
+    @Test
+    void testSlowClientsDoNotGrowOutboundBuffers() throws Exception {
+        int slowClients = Integer.getInteger("load.slowClients", 20);
+        int fastClients = Integer.getInteger("load.fastClients", 50);
+        int events = Integer.getInteger("load.events", 20_000);
+        int eventsPerMs = Integer.getInteger("load.eventsPerMs", 5);
+        String padding = "x".repeat(Integer.getInteger("load.eventBytes", 1024));
+
+        List<String> rows = new ArrayList<>();
+        long[] peaks = new long[2];
+        for (boolean pause : List.of(false, true)) {
+            pod = new SpringApplicationBuilder(ServerSentEventsBackendApplication.class).run(
+                    "--server.port=0",
+                    "--sse.connection.pause-when-unwritable=" + pause,
+                    "--sse.admission.enabled=false",
+                    "--sse.shedding.enabled=false",
+                    "--logging.level.com.bill.sse=WARN");
+            int port = Integer.parseInt(pod.getEnvironment().getProperty("local.server.port"));
+            ConnectionRegistry registry = pod.getBean(ConnectionRegistry.class);
+            PaymentService paymentService = pod.getBean(PaymentService.class);
+            MeterRegistry meterRegistry = pod.getBean(MeterRegistry.class);
+
+            for (int i = 0; i < slowClients; i++) {
+                slowSockets.add(openSlowClient(port));
+            }
+            ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+            AtomicLong received = new AtomicLong();
+            List<Disposable> fast = openFastClients(port, fastClients, latencies, received);
+            awaitConnections(registry, slowClients + fastClients);
+
+            long baseline = usedDirectMemory();
+            long peak = baseline;
+            long start = System.nanoTime();
+            for (int n = 1; n <= events; n++) {
+                paymentService.publish(new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("load-" + n % 100, padding), n));
+                if (n % eventsPerMs == 0) {
+                    Thread.sleep(1);
+                    if (n % (eventsPerMs * 20) == 0) {
+                        peak = Math.max(peak, usedDirectMemory());
+                    }
+                }
+            }
+            double publishSeconds = (System.nanoTime() - start) / 1e9;
+            long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (received.get() < (long) events * fastClients && System.nanoTime() < deadline) {
+                peak = Math.max(peak, usedDirectMemory());
+                Thread.sleep(20);
+            }
+            peak = Math.max(peak, usedDirectMemory());
+            Thread.sleep(500);
+
+            List<ConnectionSnapshot> lagging = registry.snapshots(0, 1000, true).collectList().block();
+            long slowDropped = lagging.stream().mapToLong(ConnectionSnapshot::eventsDropped).sum();
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            rows.add(String.format("%-6s %12.1f %12.1f %9d %9d %12d %10.0f %10d %10d", pause ? "on" : "off",
+                    baseline / 1048576.0, peak / 1048576.0, lagging.size(), (long) meterRegistry.get("sse.netty.unwritable").counter().count(),
+                    slowDropped, events / publishSeconds, percentile(sorted, 0.50), percentile(sorted, 0.99)));
+            peaks[pause ? 1 : 0] = peak - baseline;
+
+            fast.forEach(Disposable::dispose);
+            for (Socket socket : slowSockets) {
+                socket.close();
+            }
+            slowSockets.clear();
+            pod.close();
+            pod = null;
+        }
+
+        System.out.printf("%n=== 慢的客戶端 (%d 條不讀取 + %d 條正常, %d 個約 %dB 的事件) ===%n"
+                        + "%-6s %12s %12s %9s %9s %12s %10s %10s %10s%n%s%n",
+                slowClients, fastClients, events, padding.length(), "pause", "pinned(MB)", "peak(MB)", "lagging",
+                "unwritable", "slow dropped", "events/s", "p50(ms)", "p99(ms)", String.join("\n", rows));
+        assertTrue(peaks[1] <= peaks[0], "暫停發送時 direct memory 的成長不應高於未暫停: " + Arrays.toString(peaks));
+    }
+
+    // 送出請求後不再讀取，接收 buffer 縮小讓 TCP window 很快塞滿
+    private static Socket openSlowClient(int port) throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress("127.0.0.1", port));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + SSE_PATH + " HTTP/1.1\r\nHost: 127.0.0.1\r\nAccept: text/event-stream\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    // 正常讀取的連接，以事件中的 timestamp 計算發布到收到的延遲
+    private static List<Disposable> openFastClients(int port, int count, ConcurrentLinkedQueue<Long> latencies, AtomicLong received) {
+        HttpClient client = HttpClient.create(ConnectionProvider.newConnection()).baseUrl("http://127.0.0.1:" + port);
+        List<Disposable> disposables = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            disposables.add(client.headers(headers -> headers.set(HttpHeaderNames.ACCEPT, "text/event-stream"))
+                    .get()
+                    .uri(SSE_PATH)
+                    .responseContent()
+                    .asString()
+                    .subscribe(chunk -> {
+                        Matcher matcher = TIMESTAMP.matcher(chunk);
+                        long now = System.currentTimeMillis();
+                        // 跨 chunk 的事件不計入延遲
+                        while (matcher.find()) {
+                            latencies.add(now - Long.parseLong(matcher.group(1)));
+                            received.incrementAndGet();
+                        }
+                    }, error -> {
+                    }));
+        }
+        return disposables;
+    }
+
+    private static void awaitConnections(ConnectionRegistry registry, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (registry.size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static long usedDirectMemory() {
+        return PooledByteBufAllocator.DEFAULT.pinnedDirectMemory();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
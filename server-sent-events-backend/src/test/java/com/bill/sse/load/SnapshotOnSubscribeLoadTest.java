@@ -0,0 +1,147 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 模擬 callback 與瀏覽器 EventSource 連接的競爭: 每筆訂單送出 callback 的同時，瀏覽器在 0 ~ load.connectDelayMs 後才連上
+ * 瀏覽器以指定訂單的 SSE 等待最終狀態，load.pollIntervalMs 內沒收到就查詢 /status (前端的輪詢退路)
+ * 比較 snapshot-on-subscribe 開關的 time-to-final-status 與輪詢次數
+ *
+ * 執行: ./gradlew loadTest --tests '*SnapshotOnSubscribe*' -Dload.orders=1000
+ */
+@Tag("load")
+class SnapshotOnSubscribeLoadTest {
+
+    private static final String SSE_PATH = "/api/sse/payment-events";
+
+    private ConfigurableApplicationContext pod;
+
+    @AfterEach
+    void tearDown() {
+        if (pod != null) {
+            pod.close();
+        }
+    }
+
+    @Test
+    void testTimeToFinalStatus() {
+        int orders = Integer.getInteger("load.orders", 500);
+        int concurrency = Integer.getInteger("load.concurrency", 16);
+        int connectDelayMs = Integer.getInteger("load.connectDelayMs", 200);
+        Duration pollInterval = Duration.ofMillis(Integer.getInteger("load.pollIntervalMs", 1000));
+
+        List<String> rows = new ArrayList<>();
+        for (boolean snapshot : List.of(false, true)) {
+            pod = new SpringApplicationBuilder(ServerSentEventsBackendApplication.class).run(
+                    "--server.port=0",
+                    "--sse.connection.snapshot-on-subscribe=" + snapshot,
+                    "--sse.admission.enabled=false",
+                    "--sse.shedding.enabled=false",
+                    "--logging.level.com.bill.sse=WARN");
+            WebClient client = WebClient.create("http://127.0.0.1:" + pod.getEnvironment().getProperty("local.server.port"));
+
+            // 先跑一輪預熱再量測，同一組隨機連線延遲
+            run(client, orders / 5, concurrency, connectDelayMs, pollInterval);
+            Result result = run(client, orders, concurrency, connectDelayMs, pollInterval);
+            rows.add(String.format("%-9s %10.1f %10.1f %10.1f %12d %12d", snapshot ? "on" : "off",
+                    percentile(result.latencies(), 0.50), percentile(result.latencies(), 0.99),
+                    percentile(result.latencies(), 1.0), result.polls(), result.viaPoll()));
+
+            pod.close();
+            pod = null;
+        }
+
+        System.out.printf("%n=== callback 早於連接時的最終狀態 (%d 筆訂單, 連線延遲 0~%dms, 輪詢間隔 %dms) ===%n"
+                        + "%-9s %10s %10s %10s %12s %12s%n%s%n",
+                orders, connectDelayMs, pollInterval.toMillis(), "snapshot", "p50(ms)", "p99(ms)", "max(ms)",
+                "status 查詢", "靠輪詢取得", String.join("\n", rows));
+    }
+
+    private Result run(WebClient client, int orders, int concurrency, int connectDelayMs, Duration pollInterval) {
+        Random random = new Random(42);
+        AtomicLong polls = new AtomicLong();
+        AtomicLong viaPoll = new AtomicLong();
+        List<Long> latencies = Flux.range(0, orders)
+                .map(i -> random.nextInt(connectDelayMs + 1))
+                .flatMap(delay -> order(client, Duration.ofMillis(delay), pollInterval, polls, viaPoll), concurrency)
+                .collectList()
+                .block(Duration.ofMinutes(10));
+        assertEquals(orders, latencies.size());
+        return new Result(latencies.stream().mapToLong(Long::longValue).sorted().toArray(), polls.get(), viaPoll.get());
+    }
+
+    // 回傳送出 callback 到瀏覽器得知最終狀態的時間 (nanos)
+    private Mono<Long> order(WebClient client, Duration connectDelay, Duration pollInterval, AtomicLong polls, AtomicLong viaPoll) {
+        return client.post().uri("/api/payment/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("amount", "100.00"))
+                .retrieve()
+                .bodyToMono(Map.class)
+                .map(order -> (String) order.get("orderId"))
+                .flatMap(orderId -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    Mono<String> callback = client.post().uri("/api/payment/callback")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(Map.of("orderId", orderId, "status", "SUCCESS"))
+                            .retrieve()
+                            .bodyToMono(String.class);
+
+                    Mono<String> streamed = Mono.delay(connectDelay)
+                            .thenMany(client.get().uri(SSE_PATH + "?orderId={orderId}", orderId)
+                                    .accept(MediaType.TEXT_EVENT_STREAM)
+                                    .retrieve()
+                                    .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                                    }))
+                            .filter(event -> "PAYMENT_STATUS".equals(event.event()))
+                            .next()
+                            .map(event -> "stream");
+
+                    Mono<String> polled = Flux.interval(connectDelay.plus(pollInterval), pollInterval)
+                            .concatMap(tick -> {
+                                polls.incrementAndGet();
+                                return client.get().uri("/api/payment/{orderId}/status", orderId)
+                                        .retrieve()
+                                        .bodyToMono(Map.class);
+                            })
+                            .filter(status -> !"PENDING".equals(status.get("status")))
+                            .next()
+                            .map(status -> "poll");
+
+                    return Mono.zip(callback, Mono.firstWithValue(streamed, polled))
+                            .map(result -> {
+                                if ("poll".equals(result.getT2())) {
+                                    viaPoll.incrementAndGet();
+                                }
+                                return System.nanoTime() - start;
+                            });
+                }));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private record Result(long[] latencies, long polls, long viaPoll) {
+    }
+}
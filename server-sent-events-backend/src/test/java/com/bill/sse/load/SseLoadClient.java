@@ -0,0 +1,134 @@
+package com.bill.sse.load;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 模擬瀏覽器 EventSource 的 SSE 客戶端
+ * 遵守 retry 與 id 欄位，串流結束後等待 retry 時間再重連，並帶上 Last-Event-ID
+ * 重連時輪到下一個 target，模擬 load balancer 把重連導向其他 pod
+ */
+class SseLoadClient {
+
+    // 瀏覽器預設的重連等待時間
+    private static final long DEFAULT_RETRY_MILLIS = 3000;
+
+    private final HttpClient httpClient;
+    private final List<String> targets;
+    private final String path;
+    private final BiConsumer<String, Long> onConnected;
+    private final Runnable onEvent;
+
+    private volatile int targetIndex;
+    private volatile long retryMillis = DEFAULT_RETRY_MILLIS;
+    private volatile String lastEventId;
+    private volatile boolean stopped;
+    private volatile Disposable current;
+
+    SseLoadClient(HttpClient httpClient, List<String> targets, int initialTarget, String path,
+                 BiConsumer<String, Long> onConnected, Runnable onEvent) {
+        this.httpClient = httpClient;
+        this.targets = targets;
+        this.targetIndex = initialTarget;
+        this.path = path;
+        this.onConnected = onConnected;
+        this.onEvent = onEvent;
+    }
+
+    void start() {
+        connect();
+    }
+
+    void stop() {
+        stopped = true;
+        Disposable disposable = current;
+        if (disposable != null) {
+            disposable.dispose();
+        }
+    }
+
+    String lastEventId() {
+        return lastEventId;
+    }
+
+    private void connect() {
+        if (stopped) {
+            return;
+        }
+        String target = targets.get(targetIndex % targets.size());
+        StringBuilder pending = new StringBuilder();
+
+        current = httpClient
+                .headers(headers -> {
+                    headers.set(HttpHeaderNames.ACCEPT, "text/event-stream");
+                    if (lastEventId != null) {
+                        headers.set("Last-Event-ID", lastEventId);
+                    }
+                })
+                .get()
+                .uri(target + path)
+                .response((response, body) -> {
+                    if (response.status().code() != 200) {
+                        return body.then();
+                    }
+                    onConnected.accept(target, System.nanoTime());
+                    return body.asString().doOnNext(chunk -> parse(pending, chunk)).then();
+                })
+                .then()
+                .onErrorResume(error -> Mono.empty())
+                .subscribe(null, null, this::scheduleReconnect);
+    }
+
+    private void scheduleReconnect() {
+        if (stopped) {
+            return;
+        }
+        targetIndex++;
+        Mono.delay(Duration.ofMillis(retryMillis)).subscribe(tick -> connect());
+    }
+
+    // 逐行解析 SSE，只需要 retry 與 id 欄位，並計算收到的付款事件 (不含 heartbeat)
+    private void parse(StringBuilder pending, String chunk) {
+        pending.append(chunk);
+        int lineStart = 0;
+        int lineEnd;
+        while ((lineEnd = pending.indexOf("\n", lineStart)) >= 0) {
+            if (startsWith(pending, lineStart, "retry:")) {
+                retryMillis = Long.parseLong(pending.substring(lineStart + 6, lineEnd).trim());
+            } else if (startsWith(pending, lineStart, "id:")) {
+                lastEventId = pending.substring(lineStart + 3, lineEnd).trim();
+            } else if (startsWith(pending, lineStart, "event:") && !endsWith(pending, lineEnd, "HEARTBEAT")) {
+                onEvent.run();
+            }
+            lineStart = lineEnd + 1;
+        }
+        // 一次移除已解析的行，避免大量事件時逐行搬移
+        pending.delete(0, lineStart);
+    }
+
+    private static boolean startsWith(StringBuilder buffer, int offset, String prefix) {
+        return regionMatches(buffer, offset, prefix);
+    }
+
+    private static boolean endsWith(StringBuilder buffer, int end, String suffix) {
+        return end >= suffix.length() && regionMatches(buffer, end - suffix.length(), suffix);
+    }
+
+    private static boolean regionMatches(StringBuilder buffer, int offset, String text) {
+        if (buffer.length() - offset < text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.charAt(offset + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
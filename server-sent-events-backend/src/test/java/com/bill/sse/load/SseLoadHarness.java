@@ -0,0 +1,89 @@
+package com.bill.sse.load;
+
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE 負載測試工具: 開啟大量模擬 EventSource 的連接，並記錄每個 target 的連線時間點與收到的事件數
+ */
+public class SseLoadHarness implements AutoCloseable {
+
+    private final HttpClient httpClient = HttpClient.create(ConnectionProvider.newConnection())
+            .responseTimeout(Duration.ofMinutes(10));
+    private final List<SseLoadClient> clients = new ArrayList<>();
+    private final Map<String, ConcurrentLinkedQueue<Long>> connectTimes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> connectCounts = new ConcurrentHashMap<>();
+    private final LongAdder events = new LongAdder();
+
+    // 開啟 count 條連接，一開始都連到第一個 target
+    public void open(int count, List<String> targets, String path) {
+        for (int i = 0; i < count; i++) {
+            SseLoadClient client = new SseLoadClient(httpClient, targets, 0, path, this::recordConnect, events::increment);
+            clients.add(client);
+            client.start();
+        }
+    }
+
+    public long connects(String target) {
+        AtomicLong count = connectCounts.get(target);
+        return count != null ? count.get() : 0;
+    }
+
+    // 所有連接收到的付款事件總數 (不含 heartbeat)
+    public long events() {
+        return events.sum();
+    }
+
+    // 等到 target 累計連線數達到 expected
+    public boolean awaitConnects(String target, long expected, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (connects(target) >= expected) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return connects(target) >= expected;
+    }
+
+    // 把 target 的連線時間點依 bucket 分組，回傳 bucket 起點 (相對 since 的毫秒) 到連線數
+    public TreeMap<Long, Integer> connectCurve(String target, long sinceNanos, Duration bucket) {
+        TreeMap<Long, Integer> curve = new TreeMap<>();
+        long bucketNanos = bucket.toNanos();
+        for (long time : connectTimes.getOrDefault(target, new ConcurrentLinkedQueue<>())) {
+            if (time >= sinceNanos) {
+                long index = (time - sinceNanos) / bucketNanos;
+                curve.merge(index * bucket.toMillis(), 1, Integer::sum);
+            }
+        }
+        return curve;
+    }
+
+    public static String render(TreeMap<Long, Integer> curve) {
+        StringBuilder chart = new StringBuilder();
+        int max = curve.values().stream().mapToInt(Integer::intValue).max().orElse(1);
+        curve.forEach((bucketStart, count) -> chart.append(String.format("%6dms | %-50s %d%n",
+                bucketStart, "#".repeat(Math.max(1, count * 50 / max)), count)));
+        return chart.toString();
+    }
+
+    @Override
+    public void close() {
+        clients.forEach(SseLoadClient::stop);
+    }
+
+    private void recordConnect(String target, long nanos) {
+        connectTimes.computeIfAbsent(target, key -> new ConcurrentLinkedQueue<>()).add(nanos);
+        connectCounts.computeIfAbsent(target, key -> new AtomicLong()).incrementAndGet();
+    }
+}
@@ -0,0 +1,114 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 比較預設的 resource handler 與預壓縮快取 (sse.static-assets.enabled) 提供付款頁的 requests/s 與傳輸量
+ * client 帶 Accept-Encoding: gzip, br 且不自動解壓，統計的是實際傳輸的 body 大小；另外量測帶條件請求的重新驗證
+ *
+ * 執行: ./gradlew loadTest --tests '*StaticAsset*' -Dload.requests=20000
+ */
+@Tag("load")
+class StaticAssetLoadTest {
+
+    private static final String PAGE = "/third-party-payment.html";
+
+    private ConfigurableApplicationContext pod;
+
+    @AfterEach
+    void tearDown() {
+        if (pod != null) {
+            pod.close();
+        }
+    }
+
+    @Test
+    void testPaymentPageThroughput() {
+        int requests = Integer.getInteger("load.requests", 20_000);
+        int concurrency = Integer.getInteger("load.concurrency", 32);
+
+        List<String> rows = new ArrayList<>();
+        for (boolean cached : List.of(false, true)) {
+            pod = new SpringApplicationBuilder(ServerSentEventsBackendApplication.class).run(
+                    "--server.port=0",
+                    "--sse.static-assets.enabled=" + cached,
+                    "--sse.shedding.enabled=false",
+                    "--logging.level.com.bill.sse=WARN");
+            HttpClient client = HttpClient.create(ConnectionProvider.create("static-load", concurrency))
+                    .baseUrl("http://127.0.0.1:" + pod.getEnvironment().getProperty("local.server.port"))
+                    .headers(headers -> headers.set(HttpHeaderNames.ACCEPT_ENCODING, "gzip, br"));
+
+            // 先取得驗證用的 header；預設 handler 只有 Last-Modified，快取版本為 ETag
+            HttpHeaders first = client.get().uri(PAGE).response().block(Duration.ofSeconds(10)).responseHeaders();
+            Consumer<HttpHeaders> conditional = first.contains(HttpHeaderNames.ETAG)
+                    ? headers -> headers.set(HttpHeaderNames.IF_NONE_MATCH, first.get(HttpHeaderNames.ETAG))
+                    : headers -> headers.set(HttpHeaderNames.IF_MODIFIED_SINCE, first.get(HttpHeaderNames.LAST_MODIFIED));
+
+            String name = cached ? "cache" : "resource";
+            // 先跑一輪預熱再量測
+            run(client, requests / 5, concurrency, headers -> {
+            }, 200);
+            rows.add(row(name, "200", run(client, requests, concurrency, headers -> {
+            }, 200)));
+            rows.add(row(name, "304", run(client, requests, concurrency, conditional, 304)));
+
+            pod.close();
+            pod = null;
+        }
+
+        System.out.printf("%n=== 付款頁 (%d 次請求, 並行 %d) ===%n%-10s %6s %12s %14s %18s%n%s%n",
+                requests, concurrency, "handler", "status", "requests/s", "bytes/request", "content-encoding",
+                String.join("\n", rows));
+    }
+
+    private Result run(HttpClient client, int requests, int concurrency, Consumer<HttpHeaders> headers, int expectedStatus) {
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong unexpected = new AtomicLong();
+        String[] encoding = {"identity"};
+        long start = System.nanoTime();
+        Flux.range(0, requests)
+                .flatMap(i -> client.headers(headers).get().uri(PAGE)
+                        .responseSingle((response, body) -> {
+                            if (response.status().code() != expectedStatus) {
+                                unexpected.incrementAndGet();
+                            }
+                            String contentEncoding = response.responseHeaders().get(HttpHeaderNames.CONTENT_ENCODING);
+                            if (contentEncoding != null) {
+                                encoding[0] = contentEncoding;
+                            }
+                            return body.asByteArray()
+                                    .doOnNext(content -> bytes.addAndGet(content.length))
+                                    .then();
+                        }), concurrency)
+                .blockLast(Duration.ofMinutes(5));
+        long elapsed = System.nanoTime() - start;
+        assertEquals(0, unexpected.get(), "狀態碼不是 " + expectedStatus);
+        return new Result(requests * 1e9 / elapsed, (double) bytes.get() / requests, encoding[0]);
+    }
+
+    private static String row(String handler, String status, Result result) {
+        return String.format("%-10s %6s %12.0f %14.0f %18s", handler, status, result.requestsPerSecond(),
+                result.bytesPerRequest(), result.encoding());
+    }
+
+    private record Result(double requestsPerSecond, double bytesPerRequest, String encoding) {
+    }
+}
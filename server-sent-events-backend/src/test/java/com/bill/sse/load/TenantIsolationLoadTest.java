@@ -0,0 +1,198 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.OrderStore;
+import com.bill.sse.service.TenantRegistry;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 一個商家大量 callback (搶購) 對其他商家的影響: noisy 商家有 load.noisyClients 條 SSE 連接，
+ * 以 load.noisyConcurrency 個併發持續送出 callback；quiet 商家只有一條連接，每 load.quietIntervalMs 送出一個 callback，
+ * 量測 quiet 的 callback 送出到 SSE 收到事件的延遲
+ *
+ * 比較三種情況: 沒有 noisy 的基準、關閉隔離 (所有商家共用同一個 sink 與 callback 佇列)、
+ * 開啟隔離並限制 noisy 的 callback 速率 (load.noisyRate)
+ *
+ * 執行: ./gradlew loadTest --tests '*TenantIsolation*' -Dload.seconds=10
+ */
+@Tag("load")
+class TenantIsolationLoadTest {
+
+    private static final String SSE_PATH = "/api/sse/payment-events";
+    private static final Pattern QUIET_ORDER = Pattern.compile("\"orderId\":\"(quiet-\\d+)\"");
+
+    private ConfigurableApplicationContext pod;
+
+    @AfterEach
+    void tearDown() {
+        if (pod != null) {
+            pod.close();
+        }
+    }
+
+    @Test
+    void testNoisyTenantDoesNotDelayOthers() throws Exception {
+        int seconds = Integer.getInteger("load.seconds", 10);
+        int noisyClients = Integer.getInteger("load.noisyClients", 100);
+        int noisyConcurrency = Integer.getInteger("load.noisyConcurrency", 16);
+        int noisyRate = Integer.getInteger("load.noisyRate", 200);
+        int quietIntervalMs = Integer.getInteger("load.quietIntervalMs", 50);
+
+        List<String> rows = new ArrayList<>();
+        long[] p99 = new long[3];
+        String[] scenarios = {"baseline", "shared", "isolated"};
+        for (int s = 0; s < scenarios.length; s++) {
+            String scenario = scenarios[s];
+            boolean flood = s > 0;
+            boolean isolated = s != 1;
+            pod = new SpringApplicationBuilder(ServerSentEventsBackendApplication.class).run(
+                    "--server.port=0",
+                    "--sse.tenants.enabled=" + isolated,
+                    "--sse.tenants.overrides.noisy.event-rate=" + noisyRate,
+                    "--sse.tenants.overrides.noisy.event-burst=" + noisyRate,
+                    "--sse.tenants.merchants=quiet",
+                    "--sse.admission.enabled=false",
+                    "--sse.shedding.enabled=false",
+                    "--logging.level.com.bill.sse=WARN");
+            int port = Integer.parseInt(pod.getEnvironment().getProperty("local.server.port"));
+            ConnectionRegistry registry = pod.getBean(ConnectionRegistry.class);
+            OrderStore orderStore = pod.getBean(OrderStore.class);
+            // 關閉隔離時所有訂單都屬於 default
+            String noisyTenant = isolated ? "noisy" : TenantRegistry.DEFAULT;
+            String quietTenant = isolated ? "quiet" : TenantRegistry.DEFAULT;
+
+            int quietCallbacks = seconds * 1000 / quietIntervalMs;
+            for (int i = 0; i < quietCallbacks; i++) {
+                orderStore.create("quiet-" + i, quietTenant);
+            }
+            for (int i = 0; i < 100; i++) {
+                orderStore.create("noisy-" + i, noisyTenant);
+            }
+
+            Map<String, Long> sentAt = new ConcurrentHashMap<>();
+            ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+            HttpClient sseClient = HttpClient.create(ConnectionProvider.newConnection()).baseUrl("http://127.0.0.1:" + port);
+            List<Disposable> streams = new ArrayList<>();
+            streams.add(openStream(sseClient, "quiet", chunk -> {
+                Matcher matcher = QUIET_ORDER.matcher(chunk);
+                long now = System.nanoTime();
+                while (matcher.find()) {
+                    Long sent = sentAt.remove(matcher.group(1));
+                    if (sent != null) {
+                        latencies.add((now - sent) / 1_000_000);
+                    }
+                }
+            }));
+            for (int i = 0; i < noisyClients; i++) {
+                streams.add(openStream(sseClient, "noisy", chunk -> {
+                }));
+            }
+            awaitConnections(registry, 1 + noisyClients);
+
+            HttpClient callbackClient = HttpClient.create(ConnectionProvider.create("tenant-load", noisyConcurrency + 4))
+                    .baseUrl("http://127.0.0.1:" + port);
+            AtomicLong noisyAccepted = new AtomicLong();
+            AtomicLong noisyRejected = new AtomicLong();
+            AtomicLong sequence = new AtomicLong();
+            Disposable noisy = flood
+                    ? Flux.<Long>generate(sink -> sink.next(sequence.getAndIncrement()))
+                    .flatMap(n -> callback(callbackClient, "noisy", "noisy-" + n % 100), noisyConcurrency)
+                    .subscribe(status -> (status == 202 ? noisyAccepted : noisyRejected).incrementAndGet(), error -> {
+                    })
+                    : null;
+
+            // 依固定的間隔送出，不等前一個 callback 回應
+            Flux.interval(Duration.ofMillis(quietIntervalMs))
+                    .take(quietCallbacks)
+                    .flatMap(n -> {
+                        String orderId = "quiet-" + n;
+                        sentAt.put(orderId, System.nanoTime());
+                        return callback(callbackClient, "quiet", orderId);
+                    })
+                    .blockLast(Duration.ofSeconds(seconds * 3L));
+            if (noisy != null) {
+                noisy.dispose();
+            }
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!sentAt.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            rows.add(String.format("%-9s %10d %10d %12d %9d %9d %9d", scenario, latencies.size(), sentAt.size(),
+                    noisyAccepted.get() / seconds, noisyRejected.get(), percentile(sorted, 0.50), percentile(sorted, 0.99)));
+            p99[s] = percentile(sorted, 0.99);
+
+            streams.forEach(Disposable::dispose);
+            pod.close();
+            pod = null;
+        }
+
+        System.out.printf("%n=== 商家隔離 (noisy: %d 條連接 / %d 併發 callback, quiet: 每 %dms 一個 callback, %ds) ===%n"
+                        + "%-9s %10s %10s %12s %9s %9s %9s%n%s%n",
+                noisyClients, noisyConcurrency, quietIntervalMs, seconds, "scenario", "quiet recv", "quiet lost",
+                "noisy acc/s", "noisy 429", "p50(ms)", "p99(ms)", String.join("\n", rows));
+        assertTrue(p99[2] < p99[1], "開啟隔離時 quiet 的 p99 延遲應低於共用: " + p99[2] + " / " + p99[1]);
+    }
+
+    private static Disposable openStream(HttpClient client, String merchant, Consumer<String> onChunk) {
+        return client.headers(headers -> headers.set(HttpHeaderNames.ACCEPT, "text/event-stream").set("X-Merchant-Id", merchant))
+                .get()
+                .uri(SSE_PATH)
+                .responseContent()
+                .asString()
+                .subscribe(onChunk, error -> {
+                });
+    }
+
+    // 回傳 HTTP 狀態碼
+    private static Mono<Integer> callback(HttpClient client, String merchant, String orderId) {
+        String body = "{\"orderId\":\"" + orderId + "\",\"status\":\"SUCCESS\"}";
+        return client.headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, "application/json").set("X-Merchant-Id", merchant))
+                .post()
+                .uri("/api/payment/callback")
+                .send(ByteBufFlux.fromString(Mono.just(body)))
+                .responseSingle((response, content) -> content.then(Mono.just(response.status().code())))
+                .onErrorReturn(0);
+    }
+
+    private static void awaitConnections(ConnectionRegistry registry, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (registry.size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
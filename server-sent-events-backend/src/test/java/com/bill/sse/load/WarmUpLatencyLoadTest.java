@@ -0,0 +1,172 @@
+package com.bill.sse.load;
+
+import com.bill.sse.ServerSentEventsBackendApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 比較有無 JIT 預熱時，部署後前 N 筆真實事件的延遲 (送出 callback 到 SSE 收到事件)
+ * 每個情境各自啟動一個新的 JVM，JIT 狀態不會互相影響
+ * 兩種情境交錯各跑 load.rounds 輪 (預設 2)，第一輪測試端的 client 仍是冷的，以後面的輪次比較為準
+ *
+ * 執行: ./gradlew loadTest --tests '*WarmUpLatency*' -Dload.events=10000
+ */
+@Tag("load")
+class WarmUpLatencyLoadTest {
+
+    private static final String SSE_PATH = "/api/sse/payment-events";
+
+    @Test
+    void testFirstEventsLatencyWithAndWithoutWarmUp() throws Exception {
+        int events = Integer.getInteger("load.events", 10_000);
+        int concurrency = Integer.getInteger("load.concurrency", 1);
+        int rounds = Integer.getInteger("load.rounds", 2);
+
+        List<String> rows = new ArrayList<>();
+        for (int round = 1; round <= rounds; round++) {
+            for (boolean warmUp : List.of(true, false)) {
+                rows.add(round + "  " + runScenario(warmUp, events, concurrency));
+            }
+        }
+
+        System.out.printf("%n=== 前 %d 筆事件延遲 (ms, 並行 %d) ===%n%-11s %10s %12s %10s %10s %10s %10s%n%s%n",
+                events, concurrency, "   warm-up", "ready(ms)", "p99(前1k)", "p50", "p99", "p99.9", "max",
+                String.join("\n", rows));
+    }
+
+    private String runScenario(boolean warmUp, int events, int concurrency) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        File logFile = File.createTempFile("warmup-" + warmUp + "-", ".log");
+        Process pod = new ProcessBuilder(javaCommand(),
+                "-cp", System.getProperty("java.class.path"),
+                ServerSentEventsBackendApplication.class.getName(),
+                "--server.port=" + port,
+                "--sse.warmup.enabled=" + warmUp,
+                "--sse.admission.enabled=false",
+                "--sse.shedding.enabled=false")
+                .redirectErrorStream(true)
+                .redirectOutput(logFile)
+                .start();
+        try {
+            String url = "http://127.0.0.1:" + port;
+            long readyMillis = awaitReady(url, pod, logFile);
+            long[] arrivals = measure(url, events, concurrency);
+            assertEquals(events, arrivals.length, "有事件未收到");
+            long[] first = Arrays.stream(arrivals).limit(1000).sorted().toArray();
+            long[] all = Arrays.stream(arrivals).sorted().toArray();
+            return String.format("%-8s %10d %12.1f %10.1f %10.1f %10.1f %10.1f", warmUp ? "on" : "off", readyMillis,
+                    percentile(first, 0.99), percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999),
+                    all[all.length - 1] / 1e6);
+        } finally {
+            pod.destroy();
+            pod.waitFor(30, TimeUnit.SECONDS);
+        }
+    }
+
+    // 每筆: initialize 後送出 callback，記錄送出 callback 到 SSE 收到該訂單事件的時間 (依收到的順序)
+    private long[] measure(String url, int events, int concurrency) throws InterruptedException {
+        WebClient client = WebClient.create(url);
+        Map<String, Long> sentAt = new ConcurrentHashMap<>();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        CountDownLatch connected = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(events);
+
+        Disposable subscriber = client.get().uri(SSE_PATH)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .retrieve()
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                })
+                .subscribe(event -> {
+                    if (event.comment() != null) {
+                        connected.countDown();
+                        return;
+                    }
+                    Long start = event.id() != null ? sentAt.remove(event.id()) : null;
+                    if (start != null) {
+                        latencies.add(System.nanoTime() - start);
+                        done.countDown();
+                    }
+                });
+        try {
+            assertTrue(connected.await(10, TimeUnit.SECONDS), "SSE 連接未建立");
+            Flux.range(0, events)
+                    .flatMap(i -> client.post().uri("/api/payment/initialize")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(Map.of("amount", "100.00"))
+                            .retrieve()
+                            .bodyToMono(Map.class)
+                            .flatMap(order -> {
+                                String orderId = (String) order.get("orderId");
+                                return Mono.defer(() -> {
+                                    sentAt.put(orderId, System.nanoTime());
+                                    return client.post().uri("/api/payment/callback")
+                                            .contentType(MediaType.APPLICATION_JSON)
+                                            .bodyValue(Map.of("orderId", orderId, "status", "SUCCESS"))
+                                            .retrieve()
+                                            .bodyToMono(String.class);
+                                });
+                            }), concurrency)
+                    .blockLast(Duration.ofMinutes(10));
+            done.await(30, TimeUnit.SECONDS);
+        } finally {
+            subscriber.dispose();
+        }
+        // 依收到的順序
+        return latencies.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long awaitReady(String url, Process pod, File logFile) throws InterruptedException {
+        WebClient client = WebClient.create(url);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MINUTES.toNanos(3);
+        while (System.nanoTime() < deadline) {
+            assertTrue(pod.isAlive(), "pod 啟動失敗, 請見 " + logFile);
+            Integer status = client.get().uri("/actuator/health/readiness")
+                    .exchangeToMono(response -> Mono.just(response.statusCode().value()))
+                    .onErrorReturn(0)
+                    .block(Duration.ofSeconds(5));
+            if (status != null && status == 200) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("pod 未在時間內 ready, 請見 " + logFile);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private static String javaCommand() {
+        return ProcessHandle.current().info().command().orElse("java");
+    }
+}
@@ -0,0 +1,134 @@
+package com.bill.sse.repository;
+
+import com.bill.sse.vo.OrderRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileOrderRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    private static OrderRecord record(String orderId, String status, long version) {
+        return new OrderRecord(orderId, "default", status, "FAILURE".equals(status) ? "信用卡被拒" : null, version, 1000, 2000);
+    }
+
+    private static Map<String, OrderRecord> byId(List<OrderRecord> records) {
+        return records.stream().collect(Collectors.toMap(OrderRecord::orderId, Function.identity()));
+    }
+
+    @Test
+    void testReplaysLatestStateAfterReopen() {
+        Path path = dir.resolve("orders.db");
+        try (FileOrderRepository repository = new FileOrderRepository(path, true, Long.MAX_VALUE)) {
+            repository.write(List.of(record("order-1", "PENDING", 0), record("order-2", "PENDING", 0)), List.of());
+            repository.write(List.of(record("order-1", "FAILURE", 1)), List.of("order-2"));
+            assertEquals(1, repository.count());
+        }
+
+        try (FileOrderRepository repository = new FileOrderRepository(path, true, Long.MAX_VALUE)) {
+            Map<String, OrderRecord> records = byId(repository.findAll());
+            assertEquals(1, records.size());
+            assertEquals(record("order-1", "FAILURE", 1), records.get("order-1"));
+        }
+    }
+
+    @Test
+    void testTruncatesTornTail() throws IOException {
+        Path path = dir.resolve("orders.db");
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, Long.MAX_VALUE)) {
+            repository.write(List.of(record("order-1", "SUCCESS", 1)), List.of());
+        }
+        long intact = Files.size(path);
+        // 模擬寫到一半時當機: 長度欄位完整但內容不足
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5}));
+        }
+
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, Long.MAX_VALUE)) {
+            assertEquals(1, repository.findAll().size());
+            assertEquals(intact, repository.sizeBytes());
+            // 截斷後繼續附加的紀錄可以正常讀取
+            repository.write(List.of(record("order-2", "PENDING", 0)), List.of());
+        }
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, Long.MAX_VALUE)) {
+            assertEquals(2, repository.findAll().size());
+        }
+    }
+
+    @Test
+    void testRejectsOversizedRecords() {
+        Path path = dir.resolve("orders.db");
+        // UUID 訂單代碼加上 64 KB 請求內放得下的原因，紀錄超過單筆上限；以及超過 writeUTF 的 65535 bytes
+        String uuid = "0f8fad5b-d9cb-469f-a165-70867728950e";
+        OrderRecord large = new OrderRecord(uuid, "default", "FAILURE", "x".repeat(65_455), 1, 1000, 2000);
+        OrderRecord huge = new OrderRecord("order-2", "default", "FAILURE", "x".repeat(70_000), 1, 1000, 2000);
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, Long.MAX_VALUE)) {
+            repository.write(List.of(record(uuid, "PENDING", 0)), List.of());
+            assertEquals(List.of(uuid, "order-2"),
+                    repository.write(List.of(large, huge, record("order-3", "PENDING", 0)), List.of()));
+            assertEquals(2, repository.count());
+        }
+
+        // 重開後被拒絕的紀錄之前與之後的訂單都還在，該訂單保留較舊的狀態
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, Long.MAX_VALUE)) {
+            Map<String, OrderRecord> records = byId(repository.findAll());
+            assertEquals(2, repository.count());
+            assertEquals(record(uuid, "PENDING", 0), records.get(uuid));
+            assertEquals(record("order-3", "PENDING", 0), records.get("order-3"));
+        }
+    }
+
+    @Test
+    void testRejectsUnencodableRecords() {
+        Path path = dir.resolve("orders.db");
+        // 欄位為 null 的紀錄無法編碼，只略過這一筆
+        OrderRecord nullStatus = new OrderRecord("order-1", "default", null, null, 1, 1000, 2000);
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, Long.MAX_VALUE)) {
+            assertEquals(List.of("order-1"),
+                    repository.write(List.of(nullStatus, record("order-2", "PENDING", 0)), List.of()));
+            assertEquals(1, repository.count());
+        }
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, Long.MAX_VALUE)) {
+            assertEquals(List.of(record("order-2", "PENDING", 0)), repository.findAll());
+        }
+    }
+
+    @Test
+    void testCompactsWhenMostRecordsAreStale() {
+        Path path = dir.resolve("orders.db");
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, 1)) {
+            repository.write(List.of(record("order-1", "PENDING", 0)), List.of());
+            long single = repository.sizeBytes();
+            for (int version = 1; version <= 10; version++) {
+                repository.write(List.of(record("order-1", "PENDING", version)), List.of());
+            }
+            // 只剩一筆訂單，舊紀錄超過一半時重寫，檔案不會隨更新次數成長
+            assertTrue(repository.sizeBytes() < single * 3);
+            assertEquals(record("order-1", "PENDING", 10), repository.findAll().get(0));
+        }
+        assertFalse(Files.exists(dir.resolve("orders.db.compact")));
+    }
+
+    @Test
+    void testRejectsSecondOpen() {
+        Path path = dir.resolve("orders.db");
+        try (FileOrderRepository repository = new FileOrderRepository(path, false, Long.MAX_VALUE)) {
+            assertThrows(RuntimeException.class, () -> new FileOrderRepository(path, false, Long.MAX_VALUE));
+            assertEquals(0, repository.count());
+        }
+    }
+}
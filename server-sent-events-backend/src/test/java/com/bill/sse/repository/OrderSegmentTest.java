@@ -0,0 +1,90 @@
+package com.bill.sse.repository;
+
+import com.bill.sse.vo.OrderRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderSegmentTest {
+
+    @TempDir
+    Path dir;
+
+    private static OrderRecord record(String orderId, long updatedAt) {
+        return new OrderRecord(orderId, "default", "SUCCESS", null, 1, 1000, updatedAt);
+    }
+
+    @Test
+    void testFindsEveryRecordAcrossIndexGaps() {
+        List<OrderRecord> records = new ArrayList<>();
+        // 未排序，且數量不是 index-interval 的倍數
+        for (int i = 999; i >= 0; i -= 2) {
+            records.add(record("order-" + i, i));
+        }
+        OrderSegment segment = OrderSegment.write(dir.resolve("a.seg"), records, 16, 10);
+
+        assertEquals(500, segment.count());
+        assertEquals(999, segment.maxUpdatedAt());
+        for (OrderRecord record : records) {
+            assertEquals(record, segment.find(record.orderId()));
+        }
+        // 介於兩筆之間、比第一筆小、比最後一筆大
+        assertNull(segment.find("order-2"));
+        assertNull(segment.find("a"));
+        assertNull(segment.find("z"));
+        assertFalse(Files.exists(dir.resolve("a.seg.tmp")));
+    }
+
+    @Test
+    void testReopenAndReadAll() {
+        OrderRecord failed = new OrderRecord("訂單-1", "merchant-a", "FAILURE", "信用卡被拒", 3, 1000, 2000);
+        OrderSegment.write(dir.resolve("a.seg"), List.of(record("order-2", 5), failed), 64, 10);
+
+        OrderSegment reopened = OrderSegment.open(dir.resolve("a.seg"));
+        assertEquals(failed, reopened.find("訂單-1"));
+        // 依 UTF-8 bytes 排序
+        assertEquals(List.of("order-2", "訂單-1"), reopened.readAll().stream().map(OrderRecord::orderId).toList());
+    }
+
+    @Test
+    void testTruncatesOversizedReason() {
+        // 超過 writeUTF 上限的原因不會讓整個 segment 寫入失敗
+        OrderRecord failed = new OrderRecord("order-1", "default", "FAILURE", "x".repeat(70_000), 3, 1000, 2000);
+        OrderSegment segment = OrderSegment.write(dir.resolve("a.seg"), List.of(failed, record("order-2", 5)), 64, 10);
+
+        assertEquals(OrderRecord.MAX_REASON_LENGTH, segment.find("order-1").reason().length());
+        assertEquals(record("order-2", 5), segment.find("order-2"));
+    }
+
+    @Test
+    void testBloomFilterRejectsMostMisses() {
+        List<OrderRecord> records = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            records.add(record("order-" + i, i));
+        }
+        OrderSegment segment = OrderSegment.write(dir.resolve("a.seg"), records, 64, 10);
+
+        int maybe = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (segment.mightContain("missing-" + i)) {
+                maybe++;
+            }
+        }
+        // 每筆 10 bit 約 1% 誤判
+        assertTrue(maybe < 300, "誤判數: " + maybe);
+        assertTrue(records.stream().allMatch(record -> segment.mightContain(record.orderId())));
+    }
+
+    @Test
+    void testRejectsInvalidFile() throws IOException {
+        Path path = Files.write(dir.resolve("broken.seg"), new byte[100]);
+        assertThrows(IllegalStateException.class, () -> OrderSegment.open(path));
+    }
+}
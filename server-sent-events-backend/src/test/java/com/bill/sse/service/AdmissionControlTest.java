@@ -0,0 +1,111 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseAdmissionProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+    private SseAdmissionProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseAdmissionProperties();
+        properties.setPerIpRate(1.0);
+        properties.setPerIpBurst(3);
+        properties.setMaxConcurrentPerIp(100);
+        properties.setMaxConnections(100);
+        properties.setIdleEviction(Duration.ofSeconds(10));
+    }
+
+    private AdmissionControl newAdmission() {
+        return new AdmissionControl(properties, clock::get);
+    }
+
+    @Test
+    void testRateLimitAllowsBurstThenRejects() {
+        AdmissionControl admission = newAdmission();
+
+        // 容量 3，前三次成功
+        for (int i = 0; i < 3; i++) {
+            assertTrue(admission.tryAcquire("1.1.1.1").admitted());
+        }
+
+        AdmissionControl.Decision rejected = admission.tryAcquire("1.1.1.1");
+        assertFalse(rejected.admitted());
+        assertEquals(AdmissionControl.Rejection.IP_RATE, rejected.rejection());
+        assertEquals(Duration.ofSeconds(1), rejected.retryAfter());
+
+        // 其他 IP 不受影響
+        assertTrue(admission.tryAcquire("2.2.2.2").admitted());
+
+        // 補充一個 token 後可再建立一條
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(admission.tryAcquire("1.1.1.1").admitted());
+        assertEquals(1, admission.rejections(AdmissionControl.Rejection.IP_RATE));
+    }
+
+    @Test
+    void testPerIpConcurrencyCap() {
+        properties.setPerIpBurst(100);
+        properties.setMaxConcurrentPerIp(2);
+        AdmissionControl admission = newAdmission();
+
+        AdmissionControl.Decision first = admission.tryAcquire("1.1.1.1");
+        assertTrue(first.admitted());
+        assertTrue(admission.tryAcquire("1.1.1.1").admitted());
+
+        AdmissionControl.Decision rejected = admission.tryAcquire("1.1.1.1");
+        assertEquals(AdmissionControl.Rejection.IP_CONCURRENCY, rejected.rejection());
+        assertEquals(2, admission.activeConnections());
+
+        // 釋放後可以再連，重複釋放不會多算
+        first.permit().release();
+        first.permit().release();
+        assertEquals(1, admission.activeConnections());
+        assertTrue(admission.tryAcquire("1.1.1.1").admitted());
+    }
+
+    @Test
+    void testGlobalCeiling() {
+        properties.setMaxConnections(2);
+        AdmissionControl admission = newAdmission();
+
+        assertTrue(admission.tryAcquire("1.1.1.1").admitted());
+        assertTrue(admission.tryAcquire("2.2.2.2").admitted());
+
+        AdmissionControl.Decision rejected = admission.tryAcquire("3.3.3.3");
+        assertEquals(AdmissionControl.Rejection.GLOBAL_LIMIT, rejected.rejection());
+        assertEquals(2, admission.activeConnections());
+    }
+
+    @Test
+    void testIdleIpStateIsEvicted() {
+        AdmissionControl admission = newAdmission();
+
+        AdmissionControl.Decision active = admission.tryAcquire("1.1.1.1");
+        admission.tryAcquire("2.2.2.2").permit().release();
+        assertEquals(2, admission.trackedIps());
+
+        // 閒置超過時間，只有沒有連接的 IP 會被移除
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        admission.evictIdle();
+        assertEquals(1, admission.trackedIps());
+
+        active.permit().release();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        admission.evictIdle();
+        assertEquals(0, admission.trackedIps());
+
+        // 移除後重新連線會建立新的狀態
+        assertTrue(admission.tryAcquire("1.1.1.1").admitted());
+        assertEquals(1, admission.trackedIps());
+    }
+}
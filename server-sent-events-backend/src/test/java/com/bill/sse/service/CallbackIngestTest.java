@@ -0,0 +1,141 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseIngestProperties;
+import com.bill.sse.config.SseTenantProperties;
+import com.bill.sse.config.SseTracingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class CallbackIngestTest {
+
+    private SseIngestProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private OrderStore orderStore;
+    private TenantRegistry tenantRegistry;
+    private CallbackIngest ingest;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseIngestProperties();
+        properties.setCapacity(2);
+        properties.setDrainTimeout(Duration.ofSeconds(2));
+        meterRegistry = new SimpleMeterRegistry();
+        orderStore = mock(OrderStore.class);
+        // 第一筆 callback 處理到一半卡住，模擬 fan-out 變慢
+        when(orderStore.transition(anyString(), anyString(), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            processed.add(invocation.getArgument(0));
+            return OrderStore.PENDING;
+        });
+        SseTenantProperties tenantProperties = new SseTenantProperties();
+        tenantProperties.setMerchants(List.of("noisy", "quiet"));
+        tenantRegistry = new TenantRegistry(tenantProperties, meterRegistry);
+        ingest = new CallbackIngest(properties, orderStore, tenantRegistry,
+                new Tracer(new SseTracingProperties(), SpanExporter.NONE, meterRegistry), meterRegistry);
+        ingest.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        ingest.stop();
+    }
+
+    @Test
+    void testRejectsWhenQueueFull() {
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit("order-1", "SUCCESS", null, "test"));
+        // 等 worker 取出第一筆，佇列只剩容量 2
+        verify(orderStore, timeout(1000)).transition(eq("order-1"), anyString(), any(), any());
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit("order-2", "SUCCESS", null, "test"));
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit("order-3", "FAILURE", "信用卡被拒", "test"));
+        assertEquals(CallbackIngest.Result.FULL, ingest.submit("order-4", "SUCCESS", null, "test"));
+        assertEquals(2, ingest.depth());
+        assertEquals(2.0, meterRegistry.get("sse.ingest.queue.depth").gauge().value());
+        assertEquals(1.0, meterRegistry.get("sse.ingest.rejected").tag("reason", "full").counter().count());
+
+        // 恢復後依受理的順序處理
+        release.countDown();
+        verify(orderStore, timeout(1000)).transition(eq("order-3"), eq("FAILURE"), eq("信用卡被拒"), isNull());
+        assertEquals(List.of("order-1", "order-2", "order-3"), processed);
+        assertEquals(3, meterRegistry.get("sse.ingest.queue.time").timer().count());
+    }
+
+    @Test
+    void testTenantsTakeTurns() {
+        TenantRegistry.Tenant noisy = tenantRegistry.get("noisy");
+        TenantRegistry.Tenant quiet = tenantRegistry.get("quiet");
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit(noisy, "noisy-1", "SUCCESS", null, "test"));
+        verify(orderStore, timeout(1000)).transition(eq("noisy-1"), anyString(), any(), any());
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit(noisy, "noisy-2", "SUCCESS", null, "test"));
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit(noisy, "noisy-3", "SUCCESS", null, "test"));
+        // 每個商家的佇列各自計算容量
+        assertEquals(CallbackIngest.Result.FULL, ingest.submit(noisy, "noisy-4", "SUCCESS", null, "test"));
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit(quiet, "quiet-1", "SUCCESS", null, "test"));
+        assertEquals(2, ingest.depth("noisy"));
+        assertEquals(3, ingest.depth());
+        assertEquals(1.0, meterRegistry.get("sse.tenant.ingest.depth").tag("tenant", "quiet").gauge().value());
+
+        // 後到的商家不用等先到的商家累積的 callback 全部處理完
+        release.countDown();
+        verify(orderStore, timeout(1000)).transition(eq("noisy-3"), anyString(), any(), any());
+        assertEquals(List.of("noisy-1", "quiet-1", "noisy-2", "noisy-3"), processed);
+        assertEquals(1, meterRegistry.get("sse.tenant.callback.latency").tag("tenant", "quiet").timer().count());
+    }
+
+    @Test
+    void testRejectsOverTenantRate() {
+        release.countDown();
+        SseTenantProperties tenantProperties = new SseTenantProperties();
+        tenantProperties.getOverrides().put("flash-sale", new SseTenantProperties.Quota());
+        tenantProperties.getOverrides().get("flash-sale").setEventRate(1);
+        tenantProperties.getOverrides().get("flash-sale").setEventBurst(2);
+        tenantProperties.setMerchants(List.of("other"));
+        tenantRegistry = new TenantRegistry(tenantProperties, meterRegistry, () -> 0L);
+        TenantRegistry.Tenant flashSale = tenantRegistry.get("flash-sale");
+
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit(flashSale, "order-1", "SUCCESS", null, "test"));
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit(flashSale, "order-2", "SUCCESS", null, "test"));
+        assertEquals(CallbackIngest.Result.RATE_LIMITED, ingest.submit(flashSale, "order-3", "SUCCESS", null, "test"));
+        // 其他商家不受影響
+        assertEquals(CallbackIngest.Result.QUEUED, ingest.submit(tenantRegistry.get("other"), "order-4", "SUCCESS", null, "test"));
+        assertEquals(1.0, meterRegistry.get("sse.ingest.rejected").tag("reason", "rate").counter().count());
+        assertEquals(1.0, meterRegistry.get("sse.tenant.rejected").tag("tenant", "flash-sale").tag("reason", "event-rate").counter().count());
+    }
+
+    @Test
+    void testStopDrainsAcceptedCallbacks() throws InterruptedException {
+        release.countDown();
+        for (int i = 0; i < 2; i++) {
+            ingest.submit("order-" + i, "SUCCESS", null, "test");
+        }
+        ingest.stop();
+
+        assertEquals(List.of("order-0", "order-1"), processed);
+        assertEquals(CallbackIngest.Result.STOPPED, ingest.submit("order-9", "SUCCESS", null, "test"));
+        assertEquals(1.0, meterRegistry.get("sse.ingest.rejected").tag("reason", "stopped").counter().count());
+    }
+
+    @Test
+    void testDisabledProcessesInline() {
+        release.countDown();
+        properties.setEnabled(false);
+
+        assertEquals(CallbackIngest.Result.PROCESSED, ingest.submit("order-1", "SUCCESS", null, "test"));
+        assertEquals(List.of("order-1"), processed);
+    }
+}
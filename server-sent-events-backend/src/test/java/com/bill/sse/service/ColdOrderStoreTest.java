@@ -0,0 +1,110 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseColdStorageProperties;
+import com.bill.sse.vo.OrderRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColdOrderStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SseColdStorageProperties properties;
+    private ColdOrderStore coldOrderStore;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseColdStorageProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(dir);
+        properties.setSegmentSize(100);
+        properties.setMergeFactor(3);
+        properties.setRetention(Duration.ofDays(1));
+        coldOrderStore = new ColdOrderStore(properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coldOrderStore.stop();
+    }
+
+    private static OrderRecord record(String orderId, long updatedAt) {
+        return new OrderRecord(orderId, "default", "SUCCESS", null, 1, updatedAt, updatedAt);
+    }
+
+    @Test
+    void testFindsPendingAndFlushedOrders() {
+        coldOrderStore.offer(record("order-1", 1000));
+        assertEquals(record("order-1", 1000), coldOrderStore.find("order-1"));
+
+        assertEquals(1, coldOrderStore.flush());
+        coldOrderStore.offer(record("order-2", 2000));
+        assertEquals(record("order-1", 1000), coldOrderStore.find("order-1"));
+        assertEquals(record("order-2", 2000), coldOrderStore.find("order-2"));
+        assertNull(coldOrderStore.find("missing"));
+        assertEquals(2, coldOrderStore.size());
+        assertEquals(3, meterRegistry.get("sse.cold.lookup").tag("result", "hit").timer().count());
+        assertEquals(1, meterRegistry.get("sse.cold.lookup").tag("result", "miss").timer().count());
+    }
+
+    @Test
+    void testReopensExistingSegments() {
+        coldOrderStore.offer(record("order-1", 1000));
+        // 關機時暫存的訂單寫成最後一個 segment
+        coldOrderStore.stop();
+
+        coldOrderStore = new ColdOrderStore(properties, new SimpleMeterRegistry());
+        assertEquals(record("order-1", 1000), coldOrderStore.find("order-1"));
+        coldOrderStore.offer(record("order-2", 2000));
+        coldOrderStore.flush();
+        assertEquals(2, coldOrderStore.stats().get("segments"));
+    }
+
+    @Test
+    void testMergesSmallSegments() {
+        for (int i = 0; i < 3; i++) {
+            coldOrderStore.offer(record("order-" + i, 1000));
+            coldOrderStore.flush();
+        }
+        assertEquals(3, coldOrderStore.merge());
+
+        assertEquals(1, coldOrderStore.stats().get("segments"));
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(coldOrderStore.find("order-" + i));
+        }
+        assertEquals(0, coldOrderStore.merge());
+    }
+
+    @Test
+    void testExpiresOldSegments() {
+        long now = Duration.ofDays(10).toMillis();
+        coldOrderStore.offer(record("old", now - Duration.ofDays(2).toMillis()));
+        coldOrderStore.flush();
+        coldOrderStore.offer(record("recent", now - Duration.ofHours(1).toMillis()));
+        coldOrderStore.flush();
+
+        assertEquals(1, coldOrderStore.expire(now));
+        assertNull(coldOrderStore.find("old"));
+        assertNotNull(coldOrderStore.find("recent"));
+    }
+
+    @Test
+    void testDisabledKeepsNothing() {
+        ColdOrderStore disabled = new ColdOrderStore(new SseColdStorageProperties(), new SimpleMeterRegistry());
+        disabled.offer(record("order-1", 1000));
+
+        assertNull(disabled.find("order-1"));
+        assertEquals(0, disabled.size());
+        disabled.stop();
+    }
+}
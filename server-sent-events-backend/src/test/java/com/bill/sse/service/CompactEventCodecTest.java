@@ -0,0 +1,112 @@
+package com.bill.sse.service;
+
+import com.bill.sse.vo.PaymentEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactEventCodecTest {
+
+    @Test
+    void testRoundTrip() {
+        PaymentEvent success = PaymentEvent.createSuccessEvent("order-1", null);
+        PaymentEvent failure = PaymentEvent.createFailureEvent("order-2", "餘額不足");
+        PaymentEvent heartbeat = PaymentEvent.createHeartbeatEvent();
+        PaymentEvent custom = new PaymentEvent("REFUND", "order-3", "PARTIAL", "部分退款", null);
+
+        for (PaymentEvent event : new PaymentEvent[]{success, failure, heartbeat, custom}) {
+            assertEquals(event, CompactEventCodec.decode(CompactEventCodec.encode(event)));
+        }
+    }
+
+    @Test
+    void testDictionaryCodedFieldsAreSmallerThanJson() throws Exception {
+        PaymentEvent event = PaymentEvent.createSuccessEvent("ORDER_1700000000000_ab12cd34", null);
+        byte[] json = new ObjectMapper().writeValueAsBytes(event);
+        byte[] compact = CompactEventCodec.encode(event);
+
+        // eventType、status、message 各 1 byte，orderId 1 + 28 byte，timestamp 6 byte
+        assertEquals(38, compact.length);
+        assertTrue(compact.length * 3 < json.length);
+    }
+
+    @Test
+    void testOpenFrameCarriesSubscriptionToken() {
+        String token = "3f2b6c1e-8d4a-4c5e-9b7a-0e1f2a3b4c5d";
+        CompactEventCodec.Frame frame = CompactEventCodec.readFrame(CompactEventCodec.openFrame("abcd1234", token), 0);
+        byte[] body = frame.body();
+        // 版本 + 連接ID + token，訂閱全部事件的連接 token 為 null (0)
+        assertEquals(1 + 1 + 8 + 1 + token.length(), body.length);
+        assertEquals(token, new String(body, body.length - token.length(), token.length(), StandardCharsets.UTF_8));
+        assertEquals(0, CompactEventCodec.readFrame(CompactEventCodec.openFrame("abcd1234"), 0).body()[10]);
+    }
+
+    @Test
+    void testFrames() {
+        byte[] open = CompactEventCodec.openFrame("abcd1234");
+        byte[] event = CompactEventCodec.eventFrame(CompactEventCodec.encode(PaymentEvent.createHeartbeatEvent()));
+        byte[] reconnect = CompactEventCodec.reconnectFrame(Duration.ofMillis(1500), "order-1");
+        byte[] stream = concat(open, CompactEventCodec.heartbeatFrame(), event, reconnect);
+
+        CompactEventCodec.Frame frame = CompactEventCodec.readFrame(stream, 0);
+        assertEquals(CompactEventCodec.OPEN, frame.type());
+        assertEquals(CompactEventCodec.VERSION, frame.body()[0]);
+
+        frame = CompactEventCodec.readFrame(stream, frame.nextOffset());
+        assertEquals(CompactEventCodec.HEARTBEAT, frame.type());
+        assertEquals(0, frame.body().length);
+
+        frame = CompactEventCodec.readFrame(stream, frame.nextOffset());
+        assertEquals(CompactEventCodec.EVENT, frame.type());
+        assertEquals("HEARTBEAT", CompactEventCodec.decode(frame.body()).eventType());
+
+        frame = CompactEventCodec.readFrame(stream, frame.nextOffset());
+        assertEquals(CompactEventCodec.RECONNECT, frame.type());
+        assertEquals(stream.length, frame.nextOffset());
+    }
+
+    @Test
+    void testEncodedOnceAndShared() {
+        EncodedPaymentEvent encoded = new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-1", null));
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // 同一事件的各種編碼只產生一次，每個訂閱者拿到同一個實例
+        assertTrue(IntStream.range(0, 100).parallel()
+                .mapToObj(i -> encoded.compactFrame())
+                .allMatch(frame -> frame == encoded.compactFrame()));
+        assertSame(encoded.json(objectMapper), encoded.json(objectMapper));
+        assertEquals(encoded.json(objectMapper).getBytes(StandardCharsets.UTF_8).length, encoded.jsonLength());
+    }
+
+    @Test
+    void testSnapshotSharesEncoding() {
+        EncodedPaymentEvent encoded = new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-1", null), 3);
+        EncodedPaymentEvent snapshot = encoded.asSnapshot();
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // 快照不重新編碼，與即時投遞共用原事件的結果
+        assertSame(encoded.compactFrame(), snapshot.compactFrame());
+        assertSame(encoded.json(objectMapper), snapshot.json(objectMapper));
+        assertEquals(encoded.jsonLength(), snapshot.jsonLength());
+        assertSame(snapshot, snapshot.asSnapshot());
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.ChannelActivity;
+import com.bill.sse.config.ChannelActivityHandler;
+import com.bill.sse.config.ChannelWritabilityHandler;
+import com.bill.sse.config.SseConnectionProperties;
+import com.bill.sse.config.SseReaperProperties;
+import com.bill.sse.vo.ReapedConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionReaperTest {
+
+    private SseReaperProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private ConnectionRegistry registry;
+    private ConnectionReaper reaper;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseReaperProperties();
+        properties.setWriteStallTimeout(Duration.ofMillis(50));
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new ConnectionRegistry(new SseConnectionProperties());
+        reaper = new ConnectionReaper(registry, properties, meterRegistry);
+    }
+
+    @Test
+    void testReapsStalledWrites() throws InterruptedException {
+        EmbeddedChannel stalled = open();
+        EmbeddedChannel healthy = open();
+        // 寫入後沒有 flush，模擬 socket buffer 已滿、寫入一直沒有完成
+        stalled.write(Unpooled.wrappedBuffer(new byte[16]));
+        healthy.writeAndFlush(Unpooled.wrappedBuffer(new byte[16]));
+        Thread.sleep(100);
+
+        assertEquals(1, reaper.sweep());
+        assertFalse(stalled.isOpen());
+        assertTrue(healthy.isOpen());
+        assertEquals(1.0, meterRegistry.get("sse.connections.reaped").tag("reason", "write-stall").counter().count());
+
+        @SuppressWarnings("unchecked")
+        List<ReapedConnection> recent = (List<ReapedConnection>) reaper.stats().get("recent");
+        assertEquals(1, recent.size());
+        assertEquals("write-stall", recent.get(0).reason());
+        assertEquals(1, recent.get(0).pendingWrites());
+        SseConnection connection = registry.get(recent.get(0).connectionId());
+        assertEquals("write-stall", connection.getCloseReason());
+
+        // 已關閉的連接不會重複回收
+        assertEquals(0, reaper.sweep());
+        assertEquals(Map.of("write-stall", 1L, "half-open", 0L, "idle", 0L), reaper.stats().get("reaped"));
+    }
+
+    @Test
+    void testClassify() {
+        long stallTimeout = properties.getWriteStallTimeout().toNanos();
+        long ackTimeout = properties.getAckTimeout().toMillis();
+
+        assertNull(reaper.classify(0, TimeUnit.HOURS.toNanos(1), null));
+        assertEquals(ConnectionReaper.Reason.WRITE_STALL, reaper.classify(stallTimeout, 0, null));
+        // 沒有 ACK 且 kernel 已在重送才算 half-open；資料都已 ACK 或還沒逾時重送的連接只是閒置
+        assertEquals(ConnectionReaper.Reason.HALF_OPEN,
+                reaper.classify(0, 0, new ChannelActivity.TcpState(1, ackTimeout, 3)));
+        assertNull(reaper.classify(0, 0, new ChannelActivity.TcpState(0, ackTimeout * 10, 0)));
+        assertNull(reaper.classify(0, 0, new ChannelActivity.TcpState(1, ackTimeout * 10, 0)));
+        assertNull(reaper.classify(0, 0, new ChannelActivity.TcpState(1, ackTimeout - 1, 3)));
+
+        properties.setIdleTimeout(Duration.ofMinutes(5));
+        assertEquals(ConnectionReaper.Reason.IDLE, reaper.classify(0, TimeUnit.MINUTES.toNanos(5), null));
+    }
+
+    private EmbeddedChannel open() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelActivityHandler(meterRegistry));
+        SseConnection connection = registry.register("127.0.0.1", "test", Set.of());
+        ChannelWritabilityHandler.bind(channel, connection);
+        assertNotNull(connection.getChannelActivity());
+        return channel;
+    }
+}
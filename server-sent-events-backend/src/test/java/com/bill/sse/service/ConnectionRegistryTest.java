@@ -0,0 +1,253 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseConnectionProperties;
+import com.bill.sse.vo.ConnectionSnapshot;
+import com.bill.sse.vo.PaymentEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionRegistryTest {
+
+    private SseConnectionProperties properties;
+    private ConnectionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseConnectionProperties();
+        properties.setRegistryStripes(4);
+        properties.setLagQueueDepth(3);
+        registry = new ConnectionRegistry(properties);
+    }
+
+    @Test
+    void testStripeCountIsPowerOfTwo() {
+        properties.setRegistryStripes(5);
+        assertEquals(8, new ConnectionRegistry(properties).stripeCount());
+        assertEquals(4, registry.stripeCount());
+    }
+
+    @Test
+    void testUnregisterOnlyOnce() {
+        SseConnection connection = registry.register("127.0.0.1", "test", Set.of());
+        assertEquals(1, registry.size());
+        assertSame(connection, registry.get(connection.getId()));
+
+        // 重複移除不會讓計數變成負數
+        assertTrue(registry.unregister(connection));
+        assertFalse(registry.unregister(connection));
+        assertEquals(0, registry.size());
+        assertNull(registry.get(connection.getId()));
+    }
+
+    @Test
+    void testSnapshotsArePaginated() {
+        for (int i = 0; i < 25; i++) {
+            registry.register("10.0.0." + i, "test", Set.of());
+        }
+
+        StepVerifier.create(registry.snapshots(0, 10, false)).expectNextCount(10).verifyComplete();
+        StepVerifier.create(registry.snapshots(2, 10, false)).expectNextCount(5).verifyComplete();
+        StepVerifier.create(registry.snapshots(3, 10, false)).verifyComplete();
+    }
+
+    @Test
+    void testSnapshotCarriesDeliveryStats() {
+        SseConnection connection = registry.register("127.0.0.1", "test", Set.of("order-1"));
+        connection.onEnqueued();
+        connection.onEnqueued();
+        connection.onDequeued();
+        connection.onWritten(120);
+
+        ConnectionSnapshot snapshot = registry.snapshots(0, 10, false).blockFirst();
+        assertNotNull(snapshot);
+        assertEquals(connection.getId(), snapshot.connectionId());
+        assertEquals(List.of("order-1"), snapshot.orderIds());
+        assertEquals(1, snapshot.eventsSent());
+        assertEquals(120, snapshot.bytesSent());
+        assertEquals(1, snapshot.queueDepth());
+        assertFalse(snapshot.lagging());
+    }
+
+    @Test
+    void testSubscribedOrders() {
+        SseConnection all = registry.register("127.0.0.1", "test", Set.of());
+        SseConnection single = registry.register("127.0.0.1", "test", Set.of("order-1"));
+
+        assertTrue(all.isSubscribed("order-2"));
+        assertTrue(single.isSubscribed("order-1"));
+        assertFalse(single.isSubscribed("order-2"));
+        assertFalse(single.isSubscribed(null));
+    }
+
+    @Test
+    void testWarmUpEventsOnlyForExplicitSubscribers() {
+        SseConnection all = registry.register("127.0.0.1", "test", Set.of());
+        SseConnection warmUp = registry.register("127.0.0.1", "test", Set.of("warmup-1"));
+        EncodedPaymentEvent event = EncodedPaymentEvent.warmUp(PaymentEvent.createSuccessEvent("warmup-1", null));
+
+        // 訂閱全部訂單的連接不會收到預熱事件
+        assertFalse(all.accepts(event));
+        assertTrue(warmUp.accepts(event));
+        assertTrue(all.accepts(new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-1", null))));
+    }
+
+    @Test
+    void testCloseLaggingConnections() {
+        SseConnection healthy = registry.register("127.0.0.1", "test", Set.of());
+        SseConnection lagging = registry.register("127.0.0.2", "test", Set.of());
+        for (int i = 0; i < 3; i++) {
+            lagging.onEnqueued();
+        }
+
+        StepVerifier.create(registry.snapshots(0, 10, true))
+                .expectNextMatches(snapshot -> snapshot.connectionId().equals(lagging.getId()) && snapshot.lagging())
+                .verifyComplete();
+
+        assertEquals(1, registry.closeLagging("test"));
+        StepVerifier.create(lagging.onClose()).expectNext("test").verifyComplete();
+        StepVerifier.create(healthy.onClose().timeout(Duration.ofMillis(50), Mono.just("open")))
+                .expectNext("open")
+                .verifyComplete();
+
+        // 已關閉的連接不會重複關閉
+        assertFalse(registry.close(lagging.getId(), "again"));
+        assertEquals("test", lagging.getCloseReason());
+    }
+
+    @Test
+    void testRouteOnlyReachesSubscribers() {
+        SseConnection first = registry.register("127.0.0.1", "test", Set.of("order-1", "order-2"));
+        SseConnection second = registry.register("127.0.0.2", "test", Set.of("order-2"));
+        registry.register("127.0.0.3", "test", Set.of());
+        EncodedPaymentEvent event = new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-2", null));
+
+        // 訂閱全部訂單的連接不在索引中
+        assertEquals(2, registry.indexedOrders());
+        assertEquals(2, registry.route(event));
+        assertEquals(0, registry.route(new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-3", null))));
+        StepVerifier.create(first.inbox()).expectNext(event).thenCancel().verify(Duration.ofSeconds(1));
+        StepVerifier.create(second.inbox()).expectNext(event).thenCancel().verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void testRouteSkipsOtherTenants() {
+        SseConnection own = registry.register("merchant-a", "127.0.0.1", "test", Set.of("order-1"), true);
+        SseConnection other = registry.register("merchant-b", "127.0.0.2", "test", Set.of("order-1"), true);
+        EncodedPaymentEvent event = new EncodedPaymentEvent("merchant-a", PaymentEvent.createSuccessEvent("order-1", null), 1);
+
+        // 訂閱其他商家的訂單ID 也收不到該商家的事件
+        assertEquals(1, registry.route(event));
+        assertTrue(own.accepts(event));
+        assertFalse(other.accepts(event));
+        StepVerifier.create(own.inbox()).expectNext(event).thenCancel().verify(Duration.ofSeconds(1));
+        assertEquals("merchant-b", other.snapshot(256, Duration.ofMinutes(1)).tenant());
+    }
+
+    @Test
+    void testScopedConnectionWithoutOrders() {
+        SseConnection dashboard = registry.register("127.0.0.1", "test", Set.of(), true);
+
+        // 沒有訂閱任何訂單的後台連接不接收任何事件
+        assertTrue(dashboard.isScoped());
+        assertFalse(dashboard.isSubscribed("order-1"));
+        assertEquals(0, registry.indexedOrders());
+
+        assertEquals(List.of("order-1", "order-2"), registry.subscribe(dashboard, List.of("order-1", "order-2", "order-1")));
+        assertTrue(dashboard.isSubscribed("order-1"));
+        assertEquals(1, registry.subscriberCount("order-1"));
+        assertEquals(1, registry.route(new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-2", null))));
+    }
+
+    @Test
+    void testUnsubscribeAndUnregisterClearIndex() {
+        SseConnection first = registry.register("127.0.0.1", "test", Set.of("order-1", "order-2"));
+        SseConnection second = registry.register("127.0.0.2", "test", Set.of("order-2"));
+
+        assertEquals(1, registry.unsubscribe(first, List.of("order-1", "order-3")));
+        assertFalse(first.isSubscribed("order-1"));
+        assertEquals(0, registry.subscriberCount("order-1"));
+        assertEquals(2, registry.subscriberCount("order-2"));
+
+        registry.unregister(first);
+        assertEquals(1, registry.subscriberCount("order-2"));
+        registry.unregister(second);
+        assertEquals(0, registry.indexedOrders());
+
+        // 已移除的連接再訂閱不會留在索引中
+        assertEquals(List.of("order-4"), registry.subscribe(second, List.of("order-4")));
+        assertEquals(0, registry.indexedOrders());
+    }
+
+    @Test
+    void testRemovedOrderAcceptsVersionsAgain() {
+        SseConnection connection = registry.register("127.0.0.1", "test", Set.of("order-1"));
+        EncodedPaymentEvent event = new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-1", null), 2);
+
+        assertTrue(connection.isNewVersion(event));
+        assertFalse(connection.isNewVersion(event));
+        // 取消後重新訂閱時需要再次收到目前狀態
+        registry.unsubscribe(connection, List.of("order-1"));
+        registry.subscribe(connection, List.of("order-1"));
+        assertTrue(connection.isNewVersion(event));
+    }
+
+    @Test
+    void testConcurrentDeliveriesAreNotDropped() throws InterruptedException {
+        SseConnection connection = registry.register("127.0.0.1", "test", Set.of("order-1"));
+        List<EncodedPaymentEvent> received = new CopyOnWriteArrayList<>();
+        // 下游處理比 SinkEmitter 的重試時間慢，並行投遞一定會遇到競爭
+        connection.inbox().subscribe(encoded -> {
+            received.add(encoded);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        int threads = 4;
+        int perThread = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    connection.deliver(new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-1", null)));
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(threads * perThread, received.size());
+        assertEquals(0, connection.getEventsDropped().get());
+    }
+
+    @Test
+    void testDeliveryAfterCloseIsNotCountedAsDrop() {
+        SseConnection connection = registry.register("127.0.0.1", "test", Set.of("order-1"));
+        connection.inbox().subscribe().dispose();
+
+        connection.deliver(new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-1", null)));
+        assertEquals(0, connection.getEventsDropped().get());
+    }
+}
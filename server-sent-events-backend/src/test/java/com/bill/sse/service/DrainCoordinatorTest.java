@@ -0,0 +1,98 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseConnectionProperties;
+import com.bill.sse.config.SseDrainProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrainCoordinatorTest {
+
+    private ConnectionRegistry registry;
+    private SseDrainProperties properties;
+    private DrainCoordinator drainCoordinator;
+    private final List<Object> readinessEvents = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        registry = new ConnectionRegistry(new SseConnectionProperties());
+        properties = new SseDrainProperties();
+        properties.setBatchSize(2);
+        properties.setBatchInterval(Duration.ofMillis(10));
+        properties.setReconnectBase(Duration.ofSeconds(1));
+        properties.setReconnectJitter(Duration.ofSeconds(4));
+        properties.setTimeout(Duration.ofSeconds(2));
+        drainCoordinator = new DrainCoordinator(registry, properties, readinessEvents::add);
+    }
+
+    @Test
+    void testReconnectDelayIsJittered() {
+        for (int i = 0; i < 100; i++) {
+            Duration delay = drainCoordinator.nextReconnectDelay();
+            assertTrue(delay.compareTo(Duration.ofSeconds(1)) >= 0);
+            assertTrue(delay.compareTo(Duration.ofSeconds(5)) <= 0);
+        }
+    }
+
+    @Test
+    void testDrainClosesConnectionsInBatches() {
+        List<SseConnection> connections = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            SseConnection connection = registry.register("127.0.0.1", "test", Set.of());
+            // 模擬事件流結束時移除連接
+            connection.onClose().subscribe(reason -> registry.unregister(connection));
+            connections.add(connection);
+        }
+
+        StepVerifier.create(drainCoordinator.drain("test"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(3));
+
+        assertTrue(drainCoordinator.isDraining());
+        assertEquals(0, registry.size());
+        for (SseConnection connection : connections) {
+            assertEquals("drain", connection.getCloseReason());
+            assertNotNull(connection.getReconnectDelay());
+        }
+        assertEquals(5L, drainCoordinator.status().get("drainedConnections"));
+    }
+
+    @Test
+    void testDrainTimesOutWhenConnectionsStayOpen() {
+        properties.setTimeout(Duration.ofMillis(200));
+        SseConnection stuck = registry.register("127.0.0.1", "test", Set.of());
+
+        // 連接沒有被移除，drain 到逾時後仍會結束，不會卡住關機
+        StepVerifier.create(drainCoordinator.drain("test"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+        assertEquals("drain", stuck.getCloseReason());
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void testResumeStopsDraining() {
+        drainCoordinator.drain("test").block(Duration.ofSeconds(1));
+        assertTrue(drainCoordinator.isDraining());
+
+        drainCoordinator.resume();
+        assertFalse(drainCoordinator.isDraining());
+
+        // 恢復後新的連接不會被 drain
+        SseConnection connection = registry.register("127.0.0.1", "test", Set.of());
+        assertNull(connection.getCloseReason());
+
+        // drain 時 readiness 轉為 REFUSING_TRAFFIC，恢復後轉回 ACCEPTING_TRAFFIC
+        assertEquals(List.of(ReadinessState.REFUSING_TRAFFIC, ReadinessState.ACCEPTING_TRAFFIC),
+                readinessEvents.stream().map(event -> ((AvailabilityChangeEvent<?>) event).getState()).toList());
+    }
+}
@@ -0,0 +1,85 @@
+package com.bill.sse.service;
+
+import com.bill.sse.vo.PaymentEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventFilterTest {
+
+    private static final EncodedPaymentEvent SUCCESS = new EncodedPaymentEvent(PaymentEvent.createSuccessEvent("order-1", null));
+    private static final EncodedPaymentEvent FAILURE = new EncodedPaymentEvent(PaymentEvent.createFailureEvent("order-2", "信用卡被拒"));
+    private static final EncodedPaymentEvent HEARTBEAT = new EncodedPaymentEvent(PaymentEvent.createHeartbeatEvent());
+
+    @Test
+    void testMatchesExpression() {
+        EventFilter filter = EventFilter.compile("status in (FAILURE) and eventType = PAYMENT_STATUS");
+
+        assertFalse(filter.test(SUCCESS));
+        assertTrue(filter.test(FAILURE));
+        assertFalse(filter.test(HEARTBEAT));
+    }
+
+    @Test
+    void testOperatorsAndPrecedence() {
+        // and 優先於 or
+        EventFilter filter = EventFilter.compile("orderId = order-1 or status = FAILURE and orderId != order-2");
+        assertTrue(filter.test(SUCCESS));
+        assertFalse(filter.test(FAILURE));
+
+        EventFilter negated = EventFilter.compile("NOT (status not in (SUCCESS, FAILURE))");
+        assertTrue(negated.test(SUCCESS));
+        assertFalse(negated.test(HEARTBEAT));
+
+        // 沒有 orderId 的事件不等於任何值
+        assertTrue(EventFilter.compile("orderId != 'order 3'").test(HEARTBEAT));
+    }
+
+    @Test
+    void testEquivalentExpressionsShareCanonicalForm() {
+        EventFilter first = EventFilter.compile("status in (FAILURE, SUCCESS) AND eventType=PAYMENT_STATUS");
+        EventFilter second = EventFilter.compile("  status IN ( SUCCESS ,FAILURE )  and  eventType = 'PAYMENT_STATUS'");
+
+        assertEquals("(status in (FAILURE, SUCCESS) and eventType = PAYMENT_STATUS)", first.expression());
+        assertEquals(first.expression(), second.expression());
+        // 含分隔符號的值加上引號，不會與多個值混淆
+        assertNotEquals(EventFilter.compile("status in ('A, B')").expression(), EventFilter.compile("status in (A, B)").expression());
+    }
+
+    @Test
+    void testInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> EventFilter.compile(" "));
+        assertThrows(IllegalArgumentException.class, () -> EventFilter.compile("amount = 100"));
+        assertThrows(IllegalArgumentException.class, () -> EventFilter.compile("status in (FAILURE"));
+        assertThrows(IllegalArgumentException.class, () -> EventFilter.compile("status = FAILURE and"));
+        assertThrows(IllegalArgumentException.class, () -> EventFilter.compile("status = FAILURE)"));
+        assertThrows(IllegalArgumentException.class, () -> EventFilter.compile("status ~ FAILURE"));
+        assertThrows(IllegalArgumentException.class, () -> EventFilter.compile("status = 'FAILURE"));
+        assertThrows(IllegalArgumentException.class, () -> EventFilter.compile("status = " + "A".repeat(EventFilter.MAX_LENGTH)));
+    }
+
+    @Test
+    void testSharedFilterEvaluatesOncePerEvent() {
+        EventFilterRegistry registry = new EventFilterRegistry(new SimpleMeterRegistry());
+        EventFilter first = registry.acquire("status = FAILURE");
+        EventFilter second = registry.acquire("status=FAILURE");
+
+        assertSame(first, second);
+        assertEquals(1, registry.size());
+        assertEquals(2, registry.references("status = FAILURE"));
+
+        // 同一個事件依序經過兩條連接，只計算一次
+        for (EncodedPaymentEvent event : new EncodedPaymentEvent[]{SUCCESS, FAILURE}) {
+            first.test(event);
+            second.test(event);
+        }
+        assertEquals(2, first.evaluations());
+
+        registry.release(first);
+        assertEquals(1, registry.size());
+        registry.release(second);
+        assertEquals(0, registry.size());
+        assertNotSame(first, registry.acquire("status = FAILURE"));
+    }
+}
@@ -0,0 +1,42 @@
+package com.bill.sse.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @Test
+    void testLatencyWindowPercentiles() {
+        LoadGenerator.LatencyWindow window = new LoadGenerator.LatencyWindow(1000);
+        for (int i = 1; i <= 100; i++) {
+            window.record(i * 1_000_000L);
+        }
+
+        Map<String, Object> result = window.drain();
+        assertEquals(100L, result.get("count"));
+        assertEquals(50.0, result.get("p50"));
+        assertEquals(99.0, result.get("p99"));
+        assertEquals(100.0, result.get("max"));
+
+        // 取出後清空
+        assertEquals(Map.of("count", 0L, "p50", 0.0, "p95", 0.0, "p99", 0.0, "max", 0.0), window.drain());
+    }
+
+    @Test
+    void testLatencyWindowSamplesBeyondCapacity() {
+        LoadGenerator.LatencyWindow window = new LoadGenerator.LatencyWindow(100);
+        for (int i = 1; i <= 10_000; i++) {
+            window.record(i * 1_000L);
+        }
+
+        // 筆數與最大值不受取樣影響，百分位數來自均勻的樣本
+        Map<String, Object> result = window.drain();
+        assertEquals(10_000L, result.get("count"));
+        assertEquals(10.0, result.get("max"));
+        double p50 = (double) result.get("p50");
+        assertTrue(p50 > 2.5 && p50 < 7.5, "p50: " + p50);
+    }
+}
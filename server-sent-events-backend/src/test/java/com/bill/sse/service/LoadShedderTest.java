@@ -0,0 +1,115 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseSheddingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadShedderTest {
+
+    private SseSheddingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private LoadShedder loadShedder;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseSheddingProperties();
+        properties.setEscalationSamples(2);
+        properties.setRecoveryDelay(Duration.ofSeconds(1));
+        meterRegistry = new SimpleMeterRegistry();
+        loadShedder = new LoadShedder(new EventLoopLagMonitor(List::of), properties, meterRegistry);
+    }
+
+    private static long millis(long value) {
+        return TimeUnit.MILLISECONDS.toNanos(value);
+    }
+
+    @Test
+    void testEscalatesOnlyAfterSustainedLag() {
+        // 單次高延遲不升級
+        loadShedder.update(millis(500), millis(0));
+        loadShedder.update(millis(1), millis(100));
+        assertEquals(LoadShedder.Level.NORMAL, loadShedder.level());
+
+        // 連續兩次，升到兩次中較低的等級
+        loadShedder.update(millis(500), millis(200));
+        loadShedder.update(millis(60), millis(300));
+        assertEquals(LoadShedder.Level.CONFLATE, loadShedder.level());
+        assertTrue(loadShedder.shouldConflate());
+        assertFalse(loadShedder.shouldRejectConnections());
+        assertEquals(2.0, meterRegistry.get("sse.shedding.level").gauge().value());
+    }
+
+    @Test
+    void testRecoversAfterDelay() {
+        loadShedder.update(millis(300), millis(0));
+        loadShedder.update(millis(300), millis(100));
+        assertEquals(LoadShedder.Level.REJECT_INITIALIZE, loadShedder.level());
+        assertTrue(loadShedder.shouldRejectInitialize());
+
+        // 延遲回落後需維持 recoveryDelay 才降級
+        loadShedder.update(millis(1), millis(200));
+        loadShedder.update(millis(1), millis(700));
+        assertEquals(LoadShedder.Level.REJECT_INITIALIZE, loadShedder.level());
+        loadShedder.update(millis(1), millis(1300));
+        assertEquals(LoadShedder.Level.NORMAL, loadShedder.level());
+    }
+
+    @Test
+    void testHeartbeatStretchAndSkip() {
+        properties.setHeartbeatStretchFactor(4);
+        assertTrue(loadShedder.shouldSendHeartbeat(1));
+
+        loadShedder.update(millis(30), millis(0));
+        loadShedder.update(millis(30), millis(100));
+        assertEquals(LoadShedder.Level.STRETCH_HEARTBEAT, loadShedder.level());
+        assertTrue(loadShedder.shouldSendHeartbeat(4));
+        assertFalse(loadShedder.shouldSendHeartbeat(5));
+
+        loadShedder.update(millis(60), millis(200));
+        loadShedder.update(millis(60), millis(300));
+        assertFalse(loadShedder.shouldSendHeartbeat(8));
+        assertEquals(2.0, meterRegistry.get("sse.shedding.decisions").tag("action", "heartbeat_skipped").counter().count());
+    }
+
+    @Test
+    void testLagMonitorSeesBlockedLoop() throws Exception {
+        DefaultEventLoop loop = new DefaultEventLoop();
+        try {
+            EventLoopLagMonitor monitor = new EventLoopLagMonitor(() -> List.<EventExecutor>of(loop));
+            // 第一次探測只啟動 loop，不計入延遲
+            assertEquals(0, monitor.probe());
+            Thread.sleep(20);
+
+            CountDownLatch release = new CountDownLatch(1);
+            loop.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            // loop 被佔住時，延遲隨等待時間增加
+            monitor.probe();
+            Thread.sleep(60);
+            assertTrue(monitor.probe() >= millis(50));
+
+            // 探測任務執行後記錄實際等待的時間
+            release.countDown();
+            Thread.sleep(20);
+            assertTrue(monitor.lags()[0] >= millis(50));
+        } finally {
+            loop.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseColdStorageProperties;
+import com.bill.sse.config.SseExportProperties;
+import com.bill.sse.config.SseOrderProperties;
+import com.bill.sse.config.SsePersistenceProperties;
+import com.bill.sse.config.SseSheddingProperties;
+import com.bill.sse.vo.OrderRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderExporterTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SseExportProperties properties;
+    private OrderStore orderStore;
+    private ColdOrderStore coldOrderStore;
+    private LoadShedder loadShedder;
+    private OrderExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseExportProperties();
+        properties.setChunkSize(2);
+        properties.setMaxConcurrent(1);
+        properties.setPauseWhileShedding(Duration.ofMillis(10));
+        SseColdStorageProperties coldProperties = new SseColdStorageProperties();
+        coldProperties.setEnabled(true);
+        coldProperties.setDirectory(dir);
+        coldOrderStore = new ColdOrderStore(coldProperties, meterRegistry);
+        orderStore = new OrderStore(new SseOrderProperties(), new PaymentService(),
+                new OrderPersistence(new SsePersistenceProperties(), meterRegistry), coldOrderStore, meterRegistry);
+        SseSheddingProperties sheddingProperties = new SseSheddingProperties();
+        sheddingProperties.setEscalationSamples(1);
+        loadShedder = new LoadShedder(new EventLoopLagMonitor(List::of), sheddingProperties, meterRegistry);
+        exporter = new OrderExporter(properties, orderStore, coldOrderStore, loadShedder, objectMapper, meterRegistry);
+        exporter.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        exporter.stop();
+        coldOrderStore.stop();
+    }
+
+    private List<OrderRecord> export(OrderExporter.Filter filter) {
+        Flux<DataBuffer> body = exporter.export(filter, DefaultDataBufferFactory.sharedInstance);
+        assertNotNull(body);
+        String ndjson = String.join("", body.map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                .collectList()
+                .block(Duration.ofSeconds(5)));
+        return Arrays.stream(ndjson.split("\n"))
+                .filter(line -> !line.isEmpty())
+                .map(line -> {
+                    try {
+                        return objectMapper.readValue(line, OrderRecord.class);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(line, e);
+                    }
+                })
+                .toList();
+    }
+
+    @Test
+    void testExportsHotAndColdOrders() {
+        for (int i = 0; i < 5; i++) {
+            orderStore.create("hot-" + i);
+        }
+        orderStore.transition("hot-0", "SUCCESS", null);
+        coldOrderStore.offer(new OrderRecord("cold-1", TenantRegistry.DEFAULT, "FAILURE", "信用卡被拒", 1, 1000, 2000));
+        coldOrderStore.flush();
+        coldOrderStore.offer(new OrderRecord("cold-2", TenantRegistry.DEFAULT, "SUCCESS", null, 1, 1000, 3000));
+
+        List<OrderRecord> records = export(new OrderExporter.Filter(TenantRegistry.DEFAULT, null, null, null));
+
+        assertEquals(7, records.size());
+        assertTrue(records.contains(new OrderRecord("cold-1", TenantRegistry.DEFAULT, "FAILURE", "信用卡被拒", 1, 1000, 2000)));
+        assertEquals("SUCCESS", records.stream().filter(record -> record.orderId().equals("hot-0")).findFirst().orElseThrow().status());
+        assertEquals(7.0, meterRegistry.get("sse.export.records").counter().count());
+        assertEquals(0, exporter.active());
+    }
+
+    @Test
+    void testFiltersByTenantStatusAndWindow() {
+        orderStore.create("order-1");
+        orderStore.create("order-2", "merchant-a");
+        orderStore.transition("order-2", "SUCCESS", null);
+        coldOrderStore.offer(new OrderRecord("old", "merchant-a", "SUCCESS", null, 1, 1000, 2000));
+        coldOrderStore.offer(new OrderRecord("older", "merchant-a", "SUCCESS", null, 1, 1000, 1000));
+
+        List<OrderRecord> success = export(new OrderExporter.Filter("merchant-a", Set.of("SUCCESS"), null, null));
+        assertEquals(Set.of("order-2", "old", "older"), success.stream().map(OrderRecord::orderId).collect(java.util.stream.Collectors.toSet()));
+
+        // 含 from 不含 to
+        List<OrderRecord> window = export(new OrderExporter.Filter("merchant-a", null, 1000L, 2000L));
+        assertEquals(List.of("older"), window.stream().map(OrderRecord::orderId).toList());
+
+        assertTrue(export(new OrderExporter.Filter(TenantRegistry.DEFAULT, Set.of("SUCCESS"), null, null)).isEmpty());
+    }
+
+    @Test
+    void testRejectsOverConcurrencyLimit() {
+        orderStore.create("order-1");
+        Flux<DataBuffer> first = exporter.export(new OrderExporter.Filter(null, null, null, null), DefaultDataBufferFactory.sharedInstance);
+
+        assertNull(exporter.export(new OrderExporter.Filter(null, null, null, null), DefaultDataBufferFactory.sharedInstance));
+        assertEquals(1.0, meterRegistry.get("sse.export.rejected").counter().count());
+        // 第一個結束後釋放名額
+        first.blockLast(Duration.ofSeconds(5));
+        assertEquals(0, exporter.active());
+        assertNotNull(exporter.export(new OrderExporter.Filter(null, null, null, null), DefaultDataBufferFactory.sharedInstance));
+    }
+
+    @Test
+    void testPausesWhileShedding() {
+        for (int i = 0; i < 6; i++) {
+            orderStore.create("order-" + i);
+        }
+        loadShedder.update(TimeUnit.MILLISECONDS.toNanos(500), System.nanoTime());
+        assertNotEquals(LoadShedder.Level.NORMAL, loadShedder.level());
+
+        assertEquals(6, export(new OrderExporter.Filter(null, null, null, null)).size());
+        // 每批 2 筆，三批都延後送出
+        assertEquals(3.0, meterRegistry.get("sse.export.paused").counter().count());
+    }
+}
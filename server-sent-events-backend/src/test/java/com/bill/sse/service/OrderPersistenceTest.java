@@ -0,0 +1,200 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SsePersistenceProperties;
+import com.bill.sse.repository.OrderRepository;
+import com.bill.sse.vo.OrderRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderPersistenceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SsePersistenceProperties properties = new SsePersistenceProperties();
+    private RecordingRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new RecordingRepository();
+        properties.setBatchSize(3);
+    }
+
+    private static OrderRecord record(String orderId, String status, long version) {
+        return new OrderRecord(orderId, "default", status, null, version, 1000, 2000);
+    }
+
+    @Test
+    void testWriteBehindCoalescesUpdates() {
+        properties.setMode(SsePersistenceProperties.Mode.WRITE_BEHIND);
+        OrderPersistence persistence = new OrderPersistence(properties, repository, meterRegistry);
+
+        persistence.save(record("order-1", "PENDING", 0));
+        persistence.save(record("order-1", "FAILURE", 1));
+        persistence.save(record("order-1", "SUCCESS", 2));
+        persistence.save(record("order-2", "PENDING", 0));
+        persistence.delete("order-2");
+        // 尚未寫入
+        assertTrue(repository.batches.isEmpty());
+        assertEquals(2, persistence.pending());
+
+        assertEquals(2, persistence.flush());
+        assertEquals(1, repository.batches.size());
+        assertEquals(record("order-1", "SUCCESS", 2), repository.stored.get("order-1"));
+        assertFalse(repository.stored.containsKey("order-2"));
+        assertEquals(3.0, meterRegistry.get("sse.persistence.coalesced").counter().count());
+        assertEquals(2.0, meterRegistry.get("sse.persistence.batch.size").summary().max());
+    }
+
+    @Test
+    void testFlushSplitsIntoBatches() {
+        properties.setMode(SsePersistenceProperties.Mode.WRITE_BEHIND);
+        OrderPersistence persistence = new OrderPersistence(properties, repository, meterRegistry);
+        for (int i = 0; i < 7; i++) {
+            persistence.save(record("order-" + i, "PENDING", 0));
+        }
+
+        assertEquals(7, persistence.flush());
+        assertEquals(List.of(3, 3, 1), repository.batches);
+        assertEquals(0, persistence.pending());
+    }
+
+    @Test
+    void testFailedBatchIsRetried() {
+        properties.setMode(SsePersistenceProperties.Mode.WRITE_BEHIND);
+        OrderPersistence persistence = new OrderPersistence(properties, repository, meterRegistry);
+        persistence.save(record("order-1", "PENDING", 0));
+        repository.failing = true;
+
+        assertThrows(IllegalStateException.class, persistence::flush);
+        assertEquals(1, persistence.pending());
+        // 失敗期間的新狀態不會被舊的一批蓋掉
+        persistence.save(record("order-1", "SUCCESS", 1));
+        repository.failing = false;
+        persistence.flush();
+        assertEquals(record("order-1", "SUCCESS", 1), repository.stored.get("order-1"));
+        assertEquals(1.0, meterRegistry.get("sse.persistence.failures").counter().count());
+    }
+
+    @Test
+    void testRejectedRecordIsNotRetried() {
+        properties.setMode(SsePersistenceProperties.Mode.WRITE_BEHIND);
+        OrderPersistence persistence = new OrderPersistence(properties, repository, meterRegistry);
+        persistence.save(new OrderRecord("order-1", "default", "FAILURE", "x".repeat(OrderRecord.MAX_REASON_LENGTH + 1), 1, 1000, 2000));
+        persistence.save(record("order-2", "PENDING", 0));
+
+        // 無法寫入的一筆被略過，同批的其他紀錄照常寫入，之後也不會再重試
+        assertEquals(2, persistence.flush());
+        assertEquals(0, persistence.pending());
+        assertEquals(record("order-2", "PENDING", 0), repository.stored.get("order-2"));
+        assertFalse(repository.stored.containsKey("order-1"));
+        assertEquals(1.0, meterRegistry.get("sse.persistence.rejected").counter().count());
+        assertEquals(0.0, meterRegistry.get("sse.persistence.failures").counter().count());
+    }
+
+    @Test
+    void testIncompleteRecordIsNotQueued() {
+        properties.setMode(SsePersistenceProperties.Mode.WRITE_BEHIND);
+        OrderPersistence persistence = new OrderPersistence(properties, repository, meterRegistry);
+        persistence.save(record("order-1", "PENDING", 0));
+        persistence.save(record("order-1", null, 1));
+        persistence.save(record("order-2", "PENDING", 0));
+
+        // 缺少狀態的更新在進入 dirty map 前就被拒絕，資料檔保留該訂單較舊的狀態
+        assertEquals(2, persistence.flush());
+        assertEquals(record("order-1", "PENDING", 0), repository.stored.get("order-1"));
+        assertEquals(record("order-2", "PENDING", 0), repository.stored.get("order-2"));
+        assertEquals(1.0, meterRegistry.get("sse.persistence.rejected").counter().count());
+    }
+
+    @Test
+    void testSyncWritesInline() {
+        properties.setMode(SsePersistenceProperties.Mode.SYNC);
+        OrderPersistence persistence = new OrderPersistence(properties, repository, meterRegistry);
+
+        // save 在訂單的鎖內只放進 dirty map，鎖外的 flushIfSync 才寫入
+        persistence.save(record("order-1", "PENDING", 0));
+        assertTrue(repository.batches.isEmpty());
+        persistence.flushIfSync();
+        persistence.save(record("order-1", "SUCCESS", 1));
+        persistence.flushIfSync();
+        assertEquals(List.of(1, 1), repository.batches);
+        assertEquals(record("order-1", "SUCCESS", 1), repository.stored.get("order-1"));
+        assertEquals(0, persistence.pending());
+    }
+
+    @Test
+    void testSyncFailureIsRetriedWithNextWrite() {
+        properties.setMode(SsePersistenceProperties.Mode.SYNC);
+        OrderPersistence persistence = new OrderPersistence(properties, repository, meterRegistry);
+        repository.failing = true;
+
+        // 狀態已更新並發布，寫入失敗不拋給呼叫端
+        persistence.save(record("order-1", "PENDING", 0));
+        assertDoesNotThrow(persistence::flushIfSync);
+        assertEquals(1, persistence.pending());
+
+        repository.failing = false;
+        persistence.save(record("order-2", "PENDING", 0));
+        persistence.flushIfSync();
+        assertEquals(0, persistence.pending());
+        assertEquals(2, repository.stored.size());
+    }
+
+    @Test
+    void testOffIgnoresUpdates() {
+        OrderPersistence persistence = new OrderPersistence(properties, meterRegistry);
+
+        persistence.save(record("order-1", "PENDING", 0));
+        assertFalse(persistence.enabled());
+        assertEquals(0, persistence.pending());
+        assertTrue(persistence.load().isEmpty());
+    }
+
+    // 記錄每批寫入的大小
+    private static final class RecordingRepository implements OrderRepository {
+
+        private final Map<String, OrderRecord> stored = new LinkedHashMap<>();
+        private final List<Integer> batches = new ArrayList<>();
+        private volatile boolean failing;
+
+        @Override
+        public List<String> write(Collection<OrderRecord> saves, Collection<String> deletes) {
+            if (failing) {
+                throw new IllegalStateException("disk full");
+            }
+            List<String> rejected = new ArrayList<>();
+            saves.forEach(record -> {
+                if (record.reason() != null && record.reason().length() > OrderRecord.MAX_REASON_LENGTH) {
+                    rejected.add(record.orderId());
+                } else {
+                    stored.put(record.orderId(), record);
+                }
+            });
+            deletes.forEach(stored::remove);
+            batches.add(saves.size() + deletes.size());
+            return rejected;
+        }
+
+        @Override
+        public List<OrderRecord> findAll() {
+            return new ArrayList<>(stored.values());
+        }
+
+        @Override
+        public int count() {
+            return stored.size();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
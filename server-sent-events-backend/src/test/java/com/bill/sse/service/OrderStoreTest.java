@@ -0,0 +1,269 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseColdStorageProperties;
+import com.bill.sse.config.SseOrderProperties;
+import com.bill.sse.config.SsePersistenceProperties;
+import com.bill.sse.repository.FileOrderRepository;
+import com.bill.sse.repository.OrderRepository;
+import com.bill.sse.vo.OrderRecord;
+import com.bill.sse.vo.PaymentEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.Disposable;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderStoreTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+    private SseOrderProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private PaymentService paymentService;
+    private OrderStore orderStore;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseOrderProperties();
+        properties.setPendingTimeout(Duration.ofMinutes(15));
+        properties.setRetention(Duration.ofMinutes(10));
+        meterRegistry = new SimpleMeterRegistry();
+        paymentService = new PaymentService();
+        orderStore = new OrderStore(properties, paymentService,
+                new OrderPersistence(new SsePersistenceProperties(), meterRegistry),
+                new ColdOrderStore(new SseColdStorageProperties(), meterRegistry), meterRegistry, clock::get);
+    }
+
+    private long elapse(Duration duration) {
+        return clock.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void testPendingOrderExpires() {
+        List<PaymentEvent> events = new CopyOnWriteArrayList<>();
+        Disposable subscription = paymentService.getPaymentEvents().subscribe(events::add);
+        orderStore.create("order-1");
+
+        assertEquals(0, orderStore.advance(elapse(Duration.ofMinutes(14))));
+        assertEquals(OrderStore.PENDING, orderStore.status("order-1"));
+
+        assertEquals(1, orderStore.advance(elapse(Duration.ofMinutes(1).plusMillis(100))));
+        assertEquals(OrderStore.EXPIRED, orderStore.status("order-1"));
+        assertEquals(1, events.size());
+        assertEquals("FAILURE", events.get(0).status());
+        assertTrue(events.get(0).message().contains(OrderStore.EXPIRED_REASON));
+        assertEquals(1.0, meterRegistry.get("sse.orders.expired").counter().count());
+        assertEquals(1, meterRegistry.get("sse.orders.deadline.lateness").timer().count());
+        subscription.dispose();
+    }
+
+    @Test
+    void testExpiredOrderEvictedAfterRetention() {
+        orderStore.create("order-1");
+        orderStore.advance(elapse(Duration.ofMinutes(16)));
+        assertTrue(orderStore.contains("order-1"));
+
+        orderStore.advance(elapse(Duration.ofMinutes(11)));
+        assertFalse(orderStore.contains("order-1"));
+        assertNull(orderStore.status("order-1"));
+        assertEquals(1.0, meterRegistry.get("sse.orders.evicted").counter().count());
+        assertEquals(0.0, meterRegistry.get("sse.orders").gauge().value());
+        assertEquals(0.0, meterRegistry.get("sse.orders.deadlines").gauge().value());
+    }
+
+    @Test
+    void testCallbackCancelsExpiry() {
+        orderStore.create("order-1");
+        assertEquals(OrderStore.PENDING, orderStore.transition("order-1", "SUCCESS", null));
+
+        // 付款逾時不再觸發，保留期限從 callback 開始算
+        orderStore.advance(elapse(Duration.ofMinutes(9)));
+        assertEquals("SUCCESS", orderStore.status("order-1"));
+        orderStore.advance(elapse(Duration.ofMinutes(2)));
+        assertFalse(orderStore.contains("order-1"));
+        assertEquals(0.0, meterRegistry.get("sse.orders.expired").counter().count());
+    }
+
+    @Test
+    void testLateCallbackAfterExpiryKeepsRetention() {
+        orderStore.create("order-1");
+        orderStore.advance(elapse(Duration.ofMinutes(16)));
+
+        assertEquals(OrderStore.EXPIRED, orderStore.transition("order-1", "SUCCESS", null));
+        assertEquals("SUCCESS", orderStore.status("order-1"));
+        orderStore.advance(elapse(Duration.ofMinutes(10)));
+        assertFalse(orderStore.contains("order-1"));
+    }
+
+    @Test
+    void testTransitionsPublishVersionedSnapshots() {
+        List<EncodedPaymentEvent> events = new CopyOnWriteArrayList<>();
+        Disposable subscription = paymentService.getEncodedEvents().subscribe(events::add);
+        orderStore.create("order-1");
+        assertNull(orderStore.snapshot("order-1"));
+
+        orderStore.transition("order-1", "FAILURE", "信用卡被拒");
+        orderStore.transition("order-1", "SUCCESS", null);
+
+        assertEquals(List.of(1L, 2L), events.stream().map(EncodedPaymentEvent::version).toList());
+        // 快照是最後發布事件的副本，內容與版本相同但標記為快照，不帶發布時間
+        EncodedPaymentEvent snapshot = orderStore.snapshot("order-1");
+        assertSame(events.get(1).event(), snapshot.event());
+        assertEquals(2L, snapshot.version());
+        assertTrue(snapshot.isSnapshot());
+        assertFalse(events.get(1).isSnapshot());
+        assertEquals(0, snapshot.publishedAt());
+        assertNotEquals(0, events.get(1).publishedAt());
+        assertEquals("SUCCESS", snapshot.event().status());
+        assertTrue(events.get(0).event().message().contains("信用卡被拒"));
+        subscription.dispose();
+    }
+
+    @Test
+    void testEventsPublishedToTenantPartition() {
+        List<EncodedPaymentEvent> defaultEvents = new CopyOnWriteArrayList<>();
+        List<EncodedPaymentEvent> merchantEvents = new CopyOnWriteArrayList<>();
+        Disposable first = paymentService.getEncodedEvents().subscribe(defaultEvents::add);
+        Disposable second = paymentService.getEncodedEvents("merchant-a").subscribe(merchantEvents::add);
+        orderStore.create("order-1", "merchant-a");
+
+        assertEquals("merchant-a", orderStore.tenant("order-1"));
+        orderStore.transition("order-1", "SUCCESS", null);
+
+        // 只發布到訂單所屬商家的 partition
+        assertTrue(defaultEvents.isEmpty());
+        assertEquals(1, merchantEvents.size());
+        assertEquals("merchant-a", merchantEvents.get(0).tenant());
+        assertNull(orderStore.tenant("missing"));
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    void testRecoversOrdersAfterRestart(@TempDir Path dir) {
+        SsePersistenceProperties persistenceProperties = new SsePersistenceProperties();
+        persistenceProperties.setMode(SsePersistenceProperties.Mode.WRITE_BEHIND);
+        OrderPersistence persistence = new OrderPersistence(persistenceProperties,
+                new FileOrderRepository(dir.resolve("orders.db"), false, Long.MAX_VALUE), meterRegistry);
+        ColdOrderStore disabled = new ColdOrderStore(new SseColdStorageProperties(), new SimpleMeterRegistry());
+        OrderStore before = new OrderStore(properties, paymentService, persistence, disabled, meterRegistry, clock::get);
+        before.create("paid", "merchant-a");
+        before.create("pending");
+        before.transition("paid", "FAILURE", "信用卡被拒");
+        before.transition("paid", "SUCCESS", null);
+        persistence.stop();
+
+        OrderPersistence reopened = new OrderPersistence(persistenceProperties,
+                new FileOrderRepository(dir.resolve("orders.db"), false, Long.MAX_VALUE), new SimpleMeterRegistry());
+        OrderStore after = new OrderStore(properties, paymentService, reopened, disabled, new SimpleMeterRegistry(), clock::get);
+        assertEquals(2, after.recover());
+
+        // 快照與版本延續，重連的客戶端以版本略過已收到的事件
+        assertEquals("SUCCESS", after.status("paid"));
+        assertEquals("merchant-a", after.tenant("paid"));
+        assertEquals(2L, after.snapshot("paid").version());
+        assertNull(after.snapshot("pending"));
+
+        // 保留期限到期後的移除也寫入資料檔，付款逾時從原本的建立時間起算
+        after.advance(elapse(Duration.ofMinutes(11)));
+        assertFalse(after.contains("paid"));
+        assertEquals(OrderStore.PENDING, after.status("pending"));
+        reopened.flush();
+        assertEquals(1, reopened.stats().get("stored"));
+        after.advance(elapse(Duration.ofMinutes(5)));
+        assertEquals(OrderStore.EXPIRED, after.status("pending"));
+        assertEquals(1L, after.snapshot("pending").version());
+        reopened.stop();
+    }
+
+    @Test
+    void testSyncWriteDoesNotHoldOrderLock() throws Exception {
+        SsePersistenceProperties persistenceProperties = new SsePersistenceProperties();
+        persistenceProperties.setMode(SsePersistenceProperties.Mode.SYNC);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 寫入 SUCCESS 時卡住，模擬緩慢的 fsync
+        OrderRepository slow = new OrderRepository() {
+
+            @Override
+            public List<String> write(Collection<OrderRecord> saves, Collection<String> deletes) {
+                if (saves.stream().anyMatch(record -> "SUCCESS".equals(record.status()))) {
+                    writing.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return List.of();
+            }
+
+            @Override
+            public List<OrderRecord> findAll() {
+                return List.of();
+            }
+
+            @Override
+            public int count() {
+                return 0;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        OrderStore synced = new OrderStore(properties, paymentService, new OrderPersistence(persistenceProperties, slow, meterRegistry),
+                new ColdOrderStore(new SseColdStorageProperties(), meterRegistry), meterRegistry, clock::get);
+        synced.create("order-1");
+
+        CompletableFuture<String> transition = CompletableFuture.supplyAsync(() -> synced.transition("order-1", "SUCCESS", null));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // 寫檔期間讀取訂單 (需取得訂單的鎖) 不會被擋住，呼叫端仍等待寫入完成
+        OrderRecord record = CompletableFuture.supplyAsync(() -> synced.records().next()).get(5, TimeUnit.SECONDS);
+        assertEquals("SUCCESS", record.status());
+        assertFalse(transition.isDone());
+        release.countDown();
+        assertEquals(OrderStore.PENDING, transition.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testEvictedOrderAnsweredFromColdStorage(@TempDir Path dir) {
+        SseColdStorageProperties coldProperties = new SseColdStorageProperties();
+        coldProperties.setEnabled(true);
+        coldProperties.setDirectory(dir);
+        ColdOrderStore coldOrderStore = new ColdOrderStore(coldProperties, meterRegistry);
+        OrderStore tiered = new OrderStore(properties, paymentService,
+                new OrderPersistence(new SsePersistenceProperties(), meterRegistry), coldOrderStore, meterRegistry, clock::get);
+        tiered.create("order-1");
+        tiered.transition("order-1", "SUCCESS", null);
+
+        tiered.advance(elapse(Duration.ofMinutes(11)));
+        assertFalse(tiered.contains("order-1"));
+        // 寫入 segment 前後都查得到
+        assertEquals("SUCCESS", tiered.status("order-1"));
+        assertEquals(1, coldOrderStore.flush());
+        assertEquals("SUCCESS", tiered.status("order-1"));
+        assertNull(tiered.status("missing"));
+        // 只能查詢狀態，不再接受 callback
+        assertNull(tiered.transition("order-1", "FAILURE", "重複的 callback"));
+        coldOrderStore.stop();
+    }
+
+    @Test
+    void testUnknownOrder() {
+        assertNull(orderStore.transition("missing", "SUCCESS", null));
+        assertNull(orderStore.transition(null, "SUCCESS", null));
+        assertFalse(orderStore.contains(null));
+    }
+}
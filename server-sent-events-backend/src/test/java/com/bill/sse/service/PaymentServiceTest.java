@@ -11,6 +11,8 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 class PaymentServiceTest {
 
     private PaymentService paymentService;
@@ -42,11 +44,9 @@ class PaymentServiceTest {
         // 取得事件流
         Flux<PaymentEvent> eventFlux = paymentService.getPaymentEvents();
         
-        // 發布事件
-        paymentService.publishPaymentEvent(testEvent);
-        
-        // 驗證事件可以收到
+        // 訂閱後發布事件，驗證事件可以收到
         StepVerifier.create(eventFlux.take(1))
+                .then(() -> paymentService.publishPaymentEvent(testEvent))
                 .expectNext(testEvent)
                 .expectComplete()
                 .verify(Duration.ofSeconds(1));
@@ -59,11 +59,9 @@ class PaymentServiceTest {
         // 取得事件流
         Flux<PaymentEvent> eventFlux = paymentService.getPaymentEvents();
         
-        // 發送付款成功通知
-        paymentService.notifyPaymentSuccess(orderId);
-        
-        // 驗證事件內容
+        // 訂閱後發送付款成功通知，驗證事件內容
         StepVerifier.create(eventFlux.take(1))
+                .then(() -> paymentService.notifyPaymentSuccess(orderId))
                 .expectNextMatches(event -> 
                     "PAYMENT_STATUS".equals(event.eventType()) &&
                     orderId.equals(event.orderId()) &&
@@ -82,11 +80,9 @@ class PaymentServiceTest {
         // 取得事件流
         Flux<PaymentEvent> eventFlux = paymentService.getPaymentEvents();
         
-        // 發送付款失敗通知
-        paymentService.notifyPaymentFailure(orderId, reason);
-        
-        // 驗證事件內容
+        // 訂閱後發送付款失敗通知，驗證事件內容
         StepVerifier.create(eventFlux.take(1))
+                .then(() -> paymentService.notifyPaymentFailure(orderId, reason))
                 .expectNextMatches(event -> 
                     "PAYMENT_STATUS".equals(event.eventType()) &&
                     orderId.equals(event.orderId()) &&
@@ -97,6 +93,21 @@ class PaymentServiceTest {
                 .verify(Duration.ofSeconds(1));
     }
     
+    @Test
+    void testLateSubscriberDoesNotReplayOldEvents() {
+        // 沒有訂閱者時發布的事件不暫存，之後的訂閱者只收到訂閱後的事件
+        for (int i = 0; i < 10; i++) {
+            paymentService.notifyPaymentSuccess("stale-" + i);
+        }
+        assertEquals(10, paymentService.getTotalEventsPublished());
+
+        StepVerifier.create(paymentService.getPaymentEvents().take(1))
+                .then(() -> paymentService.notifyPaymentSuccess("live-order"))
+                .expectNextMatches(event -> "live-order".equals(event.orderId()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+    }
+
     @Test
     void testMultipleSubscribers() throws Exception {
         // 建立測試事件
@@ -0,0 +1,45 @@
+package com.bill.sse.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SinkEmitterTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRetriesWhileNonSerialized() {
+        Sinks.Many<String> sink = mock(Sinks.Many.class);
+        when(sink.tryEmitNext("event")).thenReturn(Sinks.EmitResult.FAIL_NON_SERIALIZED, Sinks.EmitResult.FAIL_NON_SERIALIZED,
+                Sinks.EmitResult.OK);
+
+        assertEquals(Sinks.EmitResult.OK, SinkEmitter.tryEmitNext(sink, "event"));
+        verify(sink, times(3)).tryEmitNext("event");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGivesUpAfterRetryWindow() {
+        // 另一個 thread 一直佔用 sink 時不會無限等待
+        Sinks.Many<String> sink = mock(Sinks.Many.class);
+        when(sink.tryEmitNext("event")).thenReturn(Sinks.EmitResult.FAIL_NON_SERIALIZED);
+
+        long start = System.nanoTime();
+        assertEquals(Sinks.EmitResult.FAIL_NON_SERIALIZED, SinkEmitter.tryEmitNext(sink, "event"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testOtherFailuresNotRetried() {
+        Sinks.Many<String> sink = mock(Sinks.Many.class);
+        when(sink.tryEmitNext("event")).thenReturn(Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER);
+
+        assertEquals(Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER, SinkEmitter.tryEmitNext(sink, "event"));
+        verify(sink, times(1)).tryEmitNext("event");
+    }
+}
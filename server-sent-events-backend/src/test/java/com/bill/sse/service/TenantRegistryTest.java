@@ -0,0 +1,105 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseTenantProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantRegistryTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+    private SseTenantProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private TenantRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseTenantProperties();
+        properties.setMerchants(List.of("merchant-a", "merchant-b"));
+        SseTenantProperties.Quota flashSale = new SseTenantProperties.Quota();
+        flashSale.setMaxConnections(2);
+        flashSale.setEventRate(10);
+        flashSale.setEventBurst(5);
+        properties.getOverrides().put("flash-sale", flashSale);
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new TenantRegistry(properties, meterRegistry, clock::get);
+    }
+
+    @Test
+    void testResolveFromHeaderOrParam() {
+        assertEquals("merchant-a", registry.resolve(MockServerHttpRequest.get("/api/sse/payment-events")
+                .header("X-Merchant-Id", "merchant-a").build()).key());
+        assertEquals("merchant-b", registry.resolve(MockServerHttpRequest.get("/api/sse/payment-events?merchant=merchant-b")
+                .build()).key());
+        assertEquals(TenantRegistry.DEFAULT, registry.resolve(MockServerHttpRequest.get("/api/sse/payment-events").build()).key());
+        assertSame(registry.get("merchant-a"), registry.get("merchant-a"));
+
+        // 格式錯誤與未設定的代碼都無效，也不會建立商家
+        assertNull(registry.resolve(MockServerHttpRequest.get("/").header("X-Merchant-Id", "a b").build()));
+        assertNull(registry.resolve(MockServerHttpRequest.get("/").header("X-Merchant-Id", "merchant-c").build()));
+        assertNull(registry.get("merchant-c"));
+        assertEquals(3, registry.size());
+
+        // 關閉隔離時全部屬於 default
+        properties.setEnabled(false);
+        assertEquals(TenantRegistry.DEFAULT, registry.resolve(MockServerHttpRequest.get("/")
+                .header("X-Merchant-Id", "merchant-a").build()).key());
+    }
+
+    @Test
+    void testUnknownMerchantsAllocateNothing() {
+        for (int i = 0; i < 1000; i++) {
+            assertNull(registry.resolve(MockServerHttpRequest.get("/").header("X-Merchant-Id", "junk-" + i).build()));
+        }
+        assertEquals(0, registry.size());
+        assertTrue(meterRegistry.find("sse.tenant.connections").gauges().isEmpty());
+
+        // 設定的商家仍可使用
+        assertEquals("merchant-a", registry.get("merchant-a").key());
+        assertEquals("flash-sale", registry.get("flash-sale").key());
+        assertEquals(TenantRegistry.DEFAULT, registry.get(TenantRegistry.DEFAULT).key());
+    }
+
+    @Test
+    void testConnectionQuota() {
+        TenantRegistry.Tenant flashSale = registry.get("flash-sale");
+        assertTrue(flashSale.tryAcquireConnection());
+        assertTrue(flashSale.tryAcquireConnection());
+        assertFalse(flashSale.tryAcquireConnection());
+        // 其他商家不受影響，預設不限制
+        assertTrue(registry.get("merchant-a").tryAcquireConnection());
+
+        flashSale.releaseConnection();
+        assertTrue(flashSale.tryAcquireConnection());
+        assertEquals(2.0, meterRegistry.get("sse.tenant.connections").tag("tenant", "flash-sale").gauge().value());
+        assertEquals(1.0, meterRegistry.get("sse.tenant.rejected").tag("tenant", "flash-sale").tag("reason", "connections")
+                .counter().count());
+    }
+
+    @Test
+    void testEventRateQuota() {
+        TenantRegistry.Tenant flashSale = registry.get("flash-sale");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(flashSale.tryAcquireEvent());
+        }
+        assertFalse(flashSale.tryAcquireEvent());
+
+        // 每 100ms 補回一個
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(flashSale.tryAcquireEvent());
+        assertFalse(flashSale.tryAcquireEvent());
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> tenants = (List<Map<String, Object>>) registry.stats().get("tenants");
+        assertEquals("flash-sale", tenants.get(0).get("tenant"));
+        assertEquals(2L, tenants.get(0).get("rejectedEvents"));
+    }
+}
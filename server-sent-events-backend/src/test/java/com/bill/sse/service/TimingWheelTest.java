@@ -0,0 +1,129 @@
+package com.bill.sse.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final List<TimingWheel.Timeout<Long>> fired = new ArrayList<>();
+
+    private TimingWheel<Long> wheel(int wheelSize, int levels) {
+        return new TimingWheel<>(TICK, wheelSize, levels, 0, fired::add);
+    }
+
+    @Test
+    void testFiresAtDeadlineNotBefore() {
+        TimingWheel<Long> wheel = wheel(8, 2);
+        wheel.schedule(1L, millis(35));
+
+        assertEquals(0, wheel.advance(millis(30)));
+        assertEquals(1, wheel.size());
+        // 到期時間向上取整到下一個 tick
+        assertEquals(1, wheel.advance(millis(40)));
+        assertTrue(fired.get(0).isExpired());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCascadesFromHigherLevels() {
+        // 8 x 8 x 8 = 512 ticks
+        TimingWheel<Long> wheel = wheel(8, 3);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long deadline = millis(random.nextInt(5000));
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        // 每次推進一個 tick，每個 timeout 都要在它的 tick 觸發
+        for (long now = 0; now <= millis(5000); now += TICK) {
+            int before = fired.size();
+            wheel.advance(now);
+            for (int i = before; i < fired.size(); i++) {
+                long deadline = fired.get(i).payload();
+                assertTrue(deadline <= now && now - deadline < TICK, "deadline " + deadline + " fired at " + now);
+            }
+        }
+        assertEquals(deadlines.size(), fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testDeadlineBeyondRange() {
+        // 4 x 4 = 16 ticks，到期時間超過範圍時先暫放再重新計算
+        TimingWheel<Long> wheel = wheel(4, 2);
+        wheel.schedule(1L, millis(1000));
+
+        assertEquals(0, wheel.advance(millis(990)));
+        assertEquals(1, wheel.advance(millis(1000)));
+    }
+
+    @Test
+    void testCancel() {
+        TimingWheel<Long> wheel = wheel(8, 2);
+        TimingWheel.Timeout<Long> kept = wheel.schedule(1L, millis(100));
+        TimingWheel.Timeout<Long> cancelledBeforePlaced = wheel.schedule(2L, millis(100));
+        assertTrue(cancelledBeforePlaced.cancel());
+
+        // 已放進 bucket 後取消
+        wheel.advance(millis(10));
+        TimingWheel.Timeout<Long> cancelledAfterPlaced = wheel.schedule(3L, millis(200));
+        wheel.advance(millis(20));
+        assertTrue(cancelledAfterPlaced.cancel());
+        assertFalse(cancelledAfterPlaced.cancel());
+        assertEquals(1, wheel.size());
+
+        wheel.advance(millis(500));
+        assertEquals(List.of(kept), fired);
+        assertTrue(cancelledAfterPlaced.isCancelled());
+        assertFalse(kept.cancel());
+    }
+
+    @Test
+    void testCatchUpAfterLongPause() {
+        TimingWheel<Long> wheel = wheel(64, 4);
+        for (long i = 1; i <= 100; i++) {
+            wheel.schedule(i, millis(i * 100));
+        }
+        // 一次推進很多 tick 時依序觸發
+        assertEquals(100, wheel.advance(millis(60_000)));
+        for (int i = 0; i < fired.size(); i++) {
+            assertEquals(i + 1, fired.get(i).payload());
+        }
+    }
+
+    @Test
+    void testScheduleFromCallback() {
+        List<Long> order = new ArrayList<>();
+        TimingWheel<Long>[] holder = new TimingWheel[1];
+        holder[0] = new TimingWheel<>(TICK, 8, 2, 0, timeout -> {
+            order.add(timeout.payload());
+            if (timeout.payload() == 1L) {
+                holder[0].schedule(2L, timeout.deadlineNanos() + millis(50));
+            }
+        });
+        holder[0].schedule(1L, millis(50));
+
+        holder[0].advance(millis(200));
+        assertEquals(List.of(1L, 2L), order);
+    }
+
+    @Test
+    void testRejectsInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<>(TICK, 10, 2, 0, timeout -> {
+        }));
+    }
+
+    private static long millis(long value) {
+        return TimeUnit.MILLISECONDS.toNanos(value);
+    }
+}
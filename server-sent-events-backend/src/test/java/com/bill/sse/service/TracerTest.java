@@ -0,0 +1,95 @@
+package com.bill.sse.service;
+
+import com.bill.sse.config.SseTracingProperties;
+import com.bill.sse.vo.TraceContext;
+import com.bill.sse.vo.TraceSpan;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracerTest {
+
+    private static final String SAMPLED = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+    private static final String NOT_SAMPLED = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00";
+
+    private SseTracingProperties properties;
+    private InMemorySpanExporter exporter;
+    private SimpleMeterRegistry meterRegistry;
+    private Tracer tracer;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SseTracingProperties();
+        properties.setSampleRate(0);
+        exporter = new InMemorySpanExporter(3);
+        meterRegistry = new SimpleMeterRegistry();
+        tracer = new Tracer(properties, exporter, meterRegistry);
+    }
+
+    @Test
+    void testIngressAcceptsOrGeneratesTrace() {
+        TraceContext upstream = tracer.ingress(SAMPLED);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", upstream.traceId());
+        assertTrue(upstream.sampled());
+
+        // 上游未取樣且本地比例為 0
+        assertFalse(tracer.ingress(NOT_SAMPLED).sampled());
+        properties.setSampleRate(1);
+        TraceContext resampled = tracer.ingress(NOT_SAMPLED);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", resampled.traceId());
+        assertTrue(resampled.sampled());
+
+        // 格式錯誤時產生新的
+        TraceContext generated = tracer.ingress("not-a-traceparent");
+        assertNotNull(generated);
+        assertNotEquals("4bf92f3577b34da6a3ce929d0e0e4736", generated.traceId());
+        assertTrue(generated.sampled());
+
+        properties.setEnabled(false);
+        assertNull(tracer.ingress(SAMPLED));
+    }
+
+    @Test
+    void testExportsOnlySampledSpans() {
+        TraceContext sampled = tracer.ingress(SAMPLED);
+        long start = System.nanoTime();
+        tracer.span(sampled, "callback.process", "order-1", null, start, start + 1500);
+        tracer.span(tracer.ingress(NOT_SAMPLED), "callback.process", "order-2", null, start, start + 1500);
+        tracer.span(null, "callback.process", "order-3", null, start, start + 1500);
+
+        List<TraceSpan> spans = tracer.spans(sampled.traceId());
+        assertEquals(1, spans.size());
+        TraceSpan span = spans.get(0);
+        assertEquals("callback.process", span.name());
+        assertEquals("order-1", span.orderId());
+        assertEquals(sampled.spanId(), span.parentSpanId());
+        assertEquals(1500, span.durationNanos());
+        assertEquals(1.0, meterRegistry.get("sse.tracing.spans").counter().count());
+    }
+
+    @Test
+    void testMemoryExporterDropsOldest() {
+        TraceContext sampled = tracer.ingress(SAMPLED);
+        for (int i = 0; i < 5; i++) {
+            tracer.span(sampled, "sse.deliver", "order-1", "connection-" + i, 0, 1);
+        }
+
+        assertEquals(List.of("connection-2", "connection-3", "connection-4"),
+                exporter.spans().stream().map(TraceSpan::connectionId).toList());
+    }
+
+    @Test
+    void testCurrentReadsReactorContext() {
+        TraceContext trace = TraceContext.generate(false);
+
+        assertEquals(trace, Mono.deferContextual(context -> Mono.just(Tracer.current(context)))
+                .contextWrite(context -> context.put(TraceContext.class, trace))
+                .block());
+        assertNull(Mono.deferContextual(context -> Mono.justOrEmpty(Tracer.current(context))).block());
+    }
+}
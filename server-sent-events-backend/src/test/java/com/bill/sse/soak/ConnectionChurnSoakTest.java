@@ -0,0 +1,236 @@
+package com.bill.sse.soak;
+
+import com.bill.sse.service.CompactEventCodec;
+import com.bill.sse.service.ConnectionRegistry;
+import com.bill.sse.service.EncodedPaymentEvent;
+import com.bill.sse.service.EventFilterRegistry;
+import com.bill.sse.service.OrderEventRouter;
+import com.bill.sse.service.PaymentService;
+import com.bill.sse.vo.PaymentEvent;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import reactor.core.Disposable;
+import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 連接生命週期的 soak 測試: 反覆建立後突然中斷大量 SSE 連接 (收到開頭、收到部分事件、header 還沒回來就斷線、
+ * 送出請求後立即關閉 socket)，
+ * 結束後檢查連接計數、sink 訂閱者、索引、過濾條件、heartbeat 計時器、Netty pooled buffer 與 heap 是否回到基準
+ * 有任何一項沒有回到基準時輸出比較表並失敗
+ *
+ * 先跑一小段暖身再取基準，lazy 初始化的快取與 buffer pool 不會被當成洩漏
+ * heartbeat 間隔設得比等待斷線處理的時間 (soak.settleSeconds) 長，只靠 heartbeat 寫入失敗才移除的連接會被當成洩漏
+ * 執行: ./gradlew soakTest -Dsoak.connections=500000 -Dsoak.concurrency=500
+ */
+@Tag("soak")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "sse.admission.enabled=false",
+        "sse.shedding.enabled=false",
+        "sse.connection.heartbeat-interval=60s",
+        "logging.level.com.bill.sse=WARN"
+})
+class ConnectionChurnSoakTest {
+
+    private static final String SSE_PATH = "/api/sse/payment-events";
+    private static final int ORDERS = 64;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ConnectionRegistry connectionRegistry;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private OrderEventRouter orderEventRouter;
+
+    @Autowired
+    private EventFilterRegistry eventFilterRegistry;
+
+    @Test
+    void testChurnReturnsToBaseline() throws InterruptedException {
+        int connections = Integer.getInteger("soak.connections", 200_000);
+        int concurrency = Integer.getInteger("soak.concurrency", 200);
+        long heapToleranceBytes = Long.getLong("soak.heapToleranceMb", 32) << 20;
+
+        HttpClient client = HttpClient.create(ConnectionProvider.newConnection()).baseUrl("http://127.0.0.1:" + port);
+
+        churn(client, Math.min(connections, 5_000), concurrency);
+        Map<String, Long> baseline = measure();
+
+        long start = System.nanoTime();
+        Stats stats = churn(client, connections, concurrency);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Map<String, Long> after = measure();
+
+        Map<String, Long> tolerances = Map.of("heap used (bytes)", heapToleranceBytes);
+        List<String> rows = new ArrayList<>();
+        boolean leaked = false;
+        for (Map.Entry<String, Long> entry : after.entrySet()) {
+            long before = baseline.get(entry.getKey());
+            long tolerance = tolerances.getOrDefault(entry.getKey(), 0L);
+            boolean ok = entry.getValue() - before <= tolerance;
+            leaked |= !ok;
+            rows.add(String.format("%-28s %14d %14d %12d  %s", entry.getKey(), before, entry.getValue(), tolerance,
+                    ok ? "OK" : "LEAK"));
+        }
+        String report = String.format("%n=== 連接 churn soak (%d 條連接, 並行 %d, %.0f conn/s) ===%n"
+                        + "斷線方式: 收到開頭 %d, 收到部分事件 %d, header 前 %d, 送出請求即關閉 %d, 錯誤 %d, 期間發布事件 %d%n"
+                        + "%-28s %14s %14s %12s%n%s%n",
+                connections, concurrency, connections / seconds,
+                stats.afterOpen.sum(), stats.afterEvents.sum(), stats.beforeHeaders.sum(), stats.afterRequest.sum(),
+                stats.errors.sum(),
+                stats.published.get(), "", "baseline", "after", "tolerance", String.join("\n", rows));
+        System.out.print(report);
+        if (leaked) {
+            fail("連接 churn 後資源未回到基準" + report);
+        }
+    }
+
+    // 建立 total 條連接，每條以隨機的方式中斷；期間持續發布事件
+    private Stats churn(HttpClient client, int total, int concurrency) {
+        Stats stats = new Stats();
+        Disposable publisher = Flux.interval(Duration.ofMillis(2))
+                .subscribe(tick -> {
+                    long n = stats.published.incrementAndGet();
+                    PaymentEvent event = n % 2 == 0
+                            ? PaymentEvent.createSuccessEvent("soak-" + n % ORDERS, null)
+                            : PaymentEvent.createFailureEvent("soak-" + n % ORDERS, "soak");
+                    paymentService.publish(new EncodedPaymentEvent(event, n));
+                });
+        try {
+            Flux.range(0, total)
+                    .flatMap(i -> session(client, i, stats), concurrency)
+                    .blockLast(Duration.ofHours(6));
+        } finally {
+            publisher.dispose();
+        }
+        return stats;
+    }
+
+    // 各種訂閱方式輪流: 全部事件 / 指定訂單 / 後台 / 過濾條件 / 精簡格式
+    private Mono<Void> session(HttpClient client, int i, Stats stats) {
+        String uri = switch (i % 5) {
+            case 1 -> SSE_PATH + "?orderId=soak-" + i % ORDERS + "&orderId=soak-" + (i + 1) % ORDERS;
+            case 2 -> SSE_PATH + "?scoped=true";
+            case 3 -> SSE_PATH + "?filter=status%20%3D%20FAILURE";
+            default -> SSE_PATH;
+        };
+        String accept = i % 5 == 4 ? CompactEventCodec.MEDIA_TYPE_VALUE : "text/event-stream";
+        Flux<String> body = client.headers(headers -> headers.set(HttpHeaderNames.ACCEPT, accept))
+                .get()
+                .uri(uri)
+                .responseContent()
+                .asString();
+
+        // 取消 response body 時非 pooled 連接直接關閉，等同客戶端突然斷線
+        Mono<Void> dropped = switch (i % 4) {
+            case 0 -> body.take(1).then().doOnSuccess(v -> stats.afterOpen.increment());
+            case 1 -> body.take(Duration.ofMillis(ThreadLocalRandom.current().nextInt(5, 50)))
+                    .then().doOnSuccess(v -> stats.afterEvents.increment());
+            case 2 -> Mono.firstWithSignal(body.then(), Mono.delay(Duration.ofMillis(1)).then())
+                    .doOnSuccess(v -> stats.beforeHeaders.increment());
+            default -> closeAfterRequest(uri, accept).doOnSuccess(v -> stats.afterRequest.increment());
+        };
+        return dropped.onErrorResume(error -> {
+            stats.errors.increment();
+            return Mono.empty();
+        });
+    }
+
+    // 直接以 socket 送出請求後立即關閉，伺服器端可能在 channel 已關閉後才開始處理並註冊連接
+    private Mono<Void> closeAfterRequest(String uri, String accept) {
+        byte[] request = ("GET " + uri + " HTTP/1.1\r\nHost: 127.0.0.1:" + port + "\r\nAccept: " + accept + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        return Mono.<Void>fromRunnable(() -> {
+                    try (Socket socket = new Socket("127.0.0.1", port)) {
+                        socket.getOutputStream().write(request);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Map<String, Long> measure() throws InterruptedException {
+        // 等伺服器端處理完所有斷線，不等到 heartbeat
+        long deadline = System.nanoTime() + Duration.ofSeconds(Long.getLong("soak.settleSeconds", 5)).toNanos();
+        while (connectionRegistry.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        // 等已取消的計時器與 buffer 釋放
+        Thread.sleep(500);
+
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("active connections", (long) connectionRegistry.size());
+        values.put("sink subscribers", (long) paymentService.subscriberCount());
+        values.put("router attachments", (long) orderEventRouter.attachedCount());
+        values.put("indexed orders", (long) connectionRegistry.indexedOrders());
+        values.put("shared filters", (long) eventFilterRegistry.size());
+        values.put("parallel timers", scheduledTasks());
+        values.put("netty pinned direct", PooledByteBufAllocator.DEFAULT.pinnedDirectMemory());
+        values.put("netty pinned heap", PooledByteBufAllocator.DEFAULT.pinnedHeapMemory());
+        values.put("heap used (bytes)", heapAfterGc());
+        return values;
+    }
+
+    // Flux.interval 預設在 parallel scheduler 排程，沒有取消的 heartbeat 會留在 executor 的佇列中
+    // Schedulers.parallel() 是共用的包裝，需取出實際的 scheduler 才能走訪各 executor
+    private static long scheduledTasks() {
+        Object parallel = Schedulers.parallel() instanceof Supplier<?> cached ? cached.get() : Schedulers.parallel();
+        return Scannable.from(parallel).inners()
+                .mapToLong(worker -> {
+                    Integer buffered = worker.scan(Scannable.Attr.BUFFERED);
+                    return buffered != null ? buffered : 0;
+                })
+                .sum();
+    }
+
+    private static long heapAfterGc() throws InterruptedException {
+        LongSupplier used = () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return used.getAsLong();
+    }
+
+    private static final class Stats {
+        private final LongAdder afterOpen = new LongAdder();
+        private final LongAdder afterEvents = new LongAdder();
+        private final LongAdder beforeHeaders = new LongAdder();
+        private final LongAdder afterRequest = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicLong published = new AtomicLong();
+    }
+}
@@ -0,0 +1,42 @@
+package com.bill.sse.vo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceContextTest {
+
+    @Test
+    void testParseTraceparent() {
+        TraceContext trace = TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+
+        assertNotNull(trace);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", trace.traceId());
+        assertEquals("00f067aa0ba902b7", trace.spanId());
+        assertTrue(trace.sampled());
+        assertEquals("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01", trace.traceparent());
+        assertFalse(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00").sampled());
+    }
+
+    @Test
+    void testRejectsInvalidTraceparent() {
+        assertNull(TraceContext.parse(null));
+        assertNull(TraceContext.parse("abc"));
+        // 大寫、全為 0、保留的版本 ff
+        assertNull(TraceContext.parse("00-4BF92F3577B34DA6A3CE929D0E0E4736-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-0000000000000000-01"));
+        assertNull(TraceContext.parse("ff-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("00_4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"));
+    }
+
+    @Test
+    void testGenerateRoundTrip() {
+        TraceContext trace = TraceContext.generate(true);
+
+        assertEquals(32, trace.traceId().length());
+        assertEquals(16, trace.spanId().length());
+        assertEquals(trace, TraceContext.parse(trace.traceparent()));
+        assertNotEquals(trace.traceId(), TraceContext.generate(true).traceId());
+    }
+}
@@ -0,0 +1,40 @@
+console.log("payment event 0");
+console.log("payment event 1");
+console.log("payment event 2");
+console.log("payment event 3");
+console.log("payment event 4");
+console.log("payment event 5");
+console.log("payment event 6");
+console.log("payment event 7");
+console.log("payment event 8");
+console.log("payment event 9");
+console.log("payment event 10");
+console.log("payment event 11");
+console.log("payment event 12");
+console.log("payment event 13");
+console.log("payment event 14");
+console.log("payment event 15");
+console.log("payment event 16");
+console.log("payment event 17");
+console.log("payment event 18");
+console.log("payment event 19");
+console.log("payment event 20");
+console.log("payment event 21");
+console.log("payment event 22");
+console.log("payment event 23");
+console.log("payment event 24");
+console.log("payment event 25");
+console.log("payment event 26");
+console.log("payment event 27");
+console.log("payment event 28");
+console.log("payment event 29");
+console.log("payment event 30");
+console.log("payment event 31");
+console.log("payment event 32");
+console.log("payment event 33");
+console.log("payment event 34");
+console.log("payment event 35");
+console.log("payment event 36");
+console.log("payment event 37");
+console.log("payment event 38");
+console.log("payment event 39");
@@ -65,13 +65,21 @@ export const usePaymentStore = defineStore('payment', () => {
     if (eventSource) {
       // 如果已經有連接，先關閉
       eventSource.close();
+      eventSource = null;
+    }
+    
+    // 沒有訂單時不建立連接 (空的 orderId 不是有效的訂單)
+    const orderId = currentOrderId.value;
+    if (!orderId) {
+      console.warn('%c 沒有進行中的訂單, 不建立 SSE 連接', 'background: #FF9800; color: white; padding: 2px 5px; border-radius: 2px;');
+      return;
     }
     
     // 重置重連計數
     reconnectAttempts = 0;
     
-    // 建立新的 SSE 連接
-    eventSource = new EventSource('http://localhost:8080/api/sse/payment-events');
+    // 建立新的 SSE 連接，只訂閱目前的訂單；連上時後端會先送出訂單目前的狀態，callback 早到也不會錯過
+    eventSource = new EventSource(`http://localhost:8080/api/sse/payment-events?orderId=${encodeURIComponent(orderId)}`);
     
     // 連接建立時的處理
     eventSource.onopen = (event) => {